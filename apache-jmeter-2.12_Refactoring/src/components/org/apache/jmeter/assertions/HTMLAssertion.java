@@ -81,7 +81,7 @@ public class HTMLAssertion extends AbstractTestElement implements Serializable,
         // no error as default
         AssertionResult result = new AssertionResult(getName());
 
-        if (inResponse.getResponseData().length == 0) {
+        if (inResponse.getResponseDataLength() == 0) {
             return result.setResultForNull();
         }
 
@@ -140,7 +140,7 @@ public class HTMLAssertion extends AbstractTestElement implements Serializable,
             // ByteArrayInputStream(response.getResponseData()), null);
             ByteArrayOutputStream os = new ByteArrayOutputStream();
             log.debug("Start : parse");
-            Node node = tidy.parse(new ByteArrayInputStream(inResponse.getResponseData()), os);
+            Node node = tidy.parse(new ByteArrayInputStream(inResponse.getBoundedResponseData()), os);
             if (log.isDebugEnabled()) {
                 log.debug("node : " + node);
                 log.debug("End   : parse");
@@ -25,6 +25,8 @@
  */
 package org.apache.jmeter.assertions;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -55,9 +57,7 @@ public class MD5HexAssertion extends AbstractTestElement implements Serializable
 
         AssertionResult result = new AssertionResult(getName());
         result.setFailure(false);
-        byte[] resultData = response.getResponseData();
-
-        if (resultData.length == 0) {
+        if (response.getResponseDataLength() == 0) {
             result.setError(false);
             result.setFailure(true);
             result.setFailureMessage("Response was null");
@@ -72,7 +72,14 @@ public class MD5HexAssertion extends AbstractTestElement implements Serializable
             return result;
         }
 
-        String md5Result = baMD5Hex(resultData);
+        String md5Result;
+        try {
+            md5Result = streamMD5Hex(response.getResponseDataAsStream());
+        } catch (IOException e) {
+            result.setError(true);
+            result.setFailureMessage("Could not read response data: " + e.getMessage());
+            return result;
+        }
 
         // String md5Result = DigestUtils.md5Hex(resultData);
 
@@ -109,4 +116,24 @@ public class MD5HexAssertion extends AbstractTestElement implements Serializable
         }
         return JOrphanUtils.baToHexString(md5Result);
     }
+
+    // Digests the stream in blocks, so that large response data need not be on the heap; closes the stream
+    static String streamMD5Hex(InputStream in) throws IOException {
+        byte[] md5Result = {};
+
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+            md5Result = md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            log.error("", e);
+        } finally {
+            JOrphanUtils.closeQuietly(in);
+        }
+        return JOrphanUtils.baToHexString(md5Result);
+    }
 }
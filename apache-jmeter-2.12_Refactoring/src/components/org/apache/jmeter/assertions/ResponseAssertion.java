@@ -23,6 +23,7 @@ import java.net.URL;
 import java.util.ArrayList;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.jmeter.samplers.ResponseDataChars;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.AbstractScopedAssertion;
 import org.apache.jmeter.testelement.property.CollectionProperty;
@@ -295,7 +296,7 @@ public class ResponseAssertion extends AbstractScopedAssertion implements Serial
      */
     private AssertionResult evaluateResponse(SampleResult response) {
         AssertionResult result = new AssertionResult(getName());
-        String toCheck = ""; // The string to check (Url or data)
+        CharSequence toCheck = ""; // The string to check (Url or data)
 
         if (getAssumeSuccess()) {
             response.setSuccessful(true);// Allow testing of failure codes
@@ -305,9 +306,9 @@ public class ResponseAssertion extends AbstractScopedAssertion implements Serial
         if (isScopeVariable()){
             toCheck = getThreadContext().getVariables().get(getVariableName());
         } else if (isTestFieldResponseData()) {
-            toCheck = response.getResponseDataAsString(); // (bug25052)
+            toCheck = response.getResponseDataAsChars(); // (bug25052) decoded once for all assertions
         } else if (isTestFieldResponseDataAsDocument()) {
-            toCheck = Document.getTextFromDocument(response.getResponseData()); 
+            toCheck = Document.getTextFromDocument(response.getBoundedResponseData()); 
         } else if (isTestFieldResponseCode()) {
             toCheck = response.getResponseCode();
         } else if (isTestFieldResponseMessage()) {
@@ -349,28 +350,33 @@ public class ResponseAssertion extends AbstractScopedAssertion implements Serial
         try {
             // Get the Matcher for this thread
             Perl5Matcher localMatcher = JMeterUtils.getMatcher();
+            // The matchers would otherwise copy a String to a new array for each pattern
+            char[] toCheckChars = null;
             PropertyIterator iter = getTestStrings().iterator();
             while (iter.hasNext()) {
                 String stringPattern = iter.next().getStringValue();
                 Pattern pattern = null;
                 if (contains || matches) {
                     pattern = JMeterUtils.getPatternCache().getPattern(stringPattern, Perl5Compiler.READ_ONLY_MASK);
+                    if (toCheckChars == null) {
+                        toCheckChars = ResponseDataChars.getChars(toCheck);
+                    }
                 }
                 boolean found;
                 if (contains) {
-                    found = localMatcher.contains(toCheck, pattern);
+                    found = localMatcher.contains(toCheckChars, pattern);
                 } else if (equals) {
-                    found = toCheck.equals(stringPattern);
+                    found = stringPattern.contentEquals(toCheck);
                 } else if (substring) {
-                    found = toCheck.indexOf(stringPattern) != -1;
+                    found = toCheck.toString().indexOf(stringPattern) != -1;
                 } else {
-                    found = localMatcher.matches(toCheck, pattern);
+                    found = localMatcher.matches(toCheckChars, pattern);
                 }
                 pass = notTest ? !found : found;
                 if (!pass) {
                     if (debugEnabled){log.debug("Failed: "+stringPattern);}
                     result.setFailure(true);
-                    result.setFailureMessage(getFailText(stringPattern,toCheck));
+                    result.setFailureMessage(getFailText(stringPattern,toCheck.toString()));
                     break;
                 }
                 if (debugEnabled){log.debug("Passed: "+stringPattern);}
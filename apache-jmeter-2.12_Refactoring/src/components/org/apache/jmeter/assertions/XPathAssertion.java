@@ -84,7 +84,7 @@ public class XPathAssertion extends AbstractScopedAssertion implements Serializa
                     responseData = inputString.getBytes("UTF-8");
                 } 
             } else {
-                responseData = response.getResponseData();
+                responseData = response.getBoundedResponseData();
             }
             
             if (responseData == null || responseData.length == 0) {
@@ -57,6 +57,13 @@ public class ForeachController extends GenericController implements Serializable
 
     private static final String DEFAULT_SEPARATOR = "_";// $NON-NLS-1$
 
+    // Input variable names by index, for the input name and separator below
+    private transient String[] inputVariableNames;
+
+    private transient String inputVariablePrefix;
+
+    private transient boolean inputVariableSeparator;
+
     public ForeachController() {
     }
     
@@ -153,14 +160,8 @@ public class ForeachController extends GenericController implements Serializable
             return true;
         }
         JMeterContext context = getThreadContext();
-        StringBuilder builder = new StringBuilder(
-                getInputVal().length()+getSeparator().length()+3);
-        String inputVariable = 
-                builder.append(getInputVal())
-                .append(getSeparator())
-                .append(Integer.toString(loopCount+1)).toString();
         final JMeterVariables variables = context.getVariables();
-        final Object currentVariable = variables.getObject(inputVariable);
+        final Object currentVariable = getInputVariable(variables, loopCount+1);
         if (currentVariable != null) {
             variables.putObject(getReturnVal(), currentVariable);
             if (log.isDebugEnabled()) {
@@ -176,8 +177,7 @@ public class ForeachController extends GenericController implements Serializable
      */
     private boolean endOfArguments() {
         JMeterContext context = getThreadContext();
-        String inputVariable = getInputVal() + getSeparator() + (loopCount + 1);
-        if (context.getVariables().getObject(inputVariable) != null) {
+        if (getInputVariable(context.getVariables(), loopCount+1) != null) {
             log.debug("ForEach resultstring eofArgs= false");
             return false;
         }
@@ -204,21 +204,47 @@ public class ForeachController extends GenericController implements Serializable
     private boolean emptyList() {
         JMeterContext context = getThreadContext();
 
-        StringBuilder builder = new StringBuilder(
-                getInputVal().length()+getSeparator().length()+3);
-        String inputVariable = 
-                builder.append(getInputVal())
-                .append(getSeparator())
-                .append(Integer.toString(loopCount+1)).toString();
-        if (context.getVariables().getObject(inputVariable) != null) {
+        if (getInputVariable(context.getVariables(), loopCount+1) != null) {
             return false;
         }
         if (log.isDebugEnabled()) {
-            log.debug("No entries found - null first entry: " + inputVariable);
+            log.debug("No entries found - null first entry: " + getInputVal() + getSeparator() + (loopCount+1));
         }
         return true;
     }
 
+    /**
+     * Get the input variable with the given index.
+     * The variable names are only built once for each index, unless the input name changes.
+     *
+     * @param variables the variables of the current thread
+     * @param index the index of the variable
+     * @return the value of the variable, or {@code null} if it does not exist
+     */
+    private Object getInputVariable(JMeterVariables variables, int index) {
+        String prefix = getInputVal();
+        boolean useSeparator = getUseSeparator();
+        if (inputVariableNames == null || !prefix.equals(inputVariablePrefix) || useSeparator != inputVariableSeparator) {
+            inputVariablePrefix = prefix;
+            inputVariableSeparator = useSeparator;
+            inputVariableNames = new String[0];
+        }
+        if (index < 0) {
+            return variables.getObject(prefix + getSeparator() + index);
+        }
+        if (index >= inputVariableNames.length) {
+            int length = Math.max(index + 1, inputVariableNames.length * 2);
+            String[] names = new String[length];
+            System.arraycopy(inputVariableNames, 0, names, 0, inputVariableNames.length);
+            inputVariableNames = names;
+        }
+        if (inputVariableNames[index] == null) {
+            inputVariableNames[index] = prefix + getSeparator() + index;
+        }
+        // Not given a slot, as the names are created at run time by extractors
+        return variables.getObject(inputVariableNames[index]);
+    }
+
     /**
      * {@inheritDoc}
      */
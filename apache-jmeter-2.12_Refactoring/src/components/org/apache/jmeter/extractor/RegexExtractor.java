@@ -25,6 +25,7 @@ import java.util.List;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.jmeter.processor.PostProcessor;
+import org.apache.jmeter.samplers.ResponseDataChars;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.AbstractScopedTestElement;
 import org.apache.jmeter.testelement.property.IntegerProperty;
@@ -170,15 +171,15 @@ public class RegexExtractor extends AbstractScopedTestElement implements PostPro
         }
     }
 
-    private String getInputString(SampleResult result) {
-        String inputString = useUrl() ? result.getUrlAsString() // Bug 39707
+    private CharSequence getInputString(SampleResult result) {
+        CharSequence inputString = useUrl() ? result.getUrlAsString() // Bug 39707
                 : useHeaders() ? result.getResponseHeaders()
                 : useRequestHeaders() ? result.getRequestHeaders()
                 : useCode() ? result.getResponseCode() // Bug 43451
                 : useMessage() ? result.getResponseMessage() // Bug 43451
                 : useUnescapedBody() ? StringEscapeUtils.unescapeHtml4(result.getResponseDataAsString())
-                : useBodyAsDocument() ? Document.getTextFromDocument(result.getResponseData())
-                : result.getResponseDataAsString() // Bug 36898
+                : useBodyAsDocument() ? Document.getTextFromDocument(result.getBoundedResponseData())
+                : result.getResponseDataAsChars() // Bug 36898; decoded once for all extractors and assertions
                 ;
        if (log.isDebugEnabled()) {
            log.debug("Input = " + inputString);
@@ -206,7 +207,7 @@ public class RegexExtractor extends AbstractScopedTestElement implements PostPro
         } else {
             List<SampleResult> sampleList = getSampleList(result);
             for (SampleResult sr : sampleList) {
-                String inputString = getInputString(sr);
+                CharSequence inputString = getInputString(sr);
                 found = matchStrings(matchNumber, matcher, pattern, matches, found,
                         inputString);
                 if (matchNumber > 0 && found == matchNumber){// no need to process further
@@ -219,8 +220,9 @@ public class RegexExtractor extends AbstractScopedTestElement implements PostPro
 
     private int matchStrings(int matchNumber, Perl5Matcher matcher,
             Pattern pattern, List<MatchResult> matches, int found,
-            String inputString) {
-        PatternMatcherInput input = new PatternMatcherInput(inputString);
+            CharSequence inputString) {
+        // Avoids copying the response data to a new array
+        PatternMatcherInput input = new PatternMatcherInput(ResponseDataChars.getChars(inputString));
         while (matchNumber <=0 || found != matchNumber) {
             if (matcher.contains(input, pattern)) {
                 log.debug("RegexExtractor: Match found!");
@@ -52,6 +52,7 @@ public class ConstantThroughputTimer extends AbstractTestElement implements Time
     private static class ThroughputInfo{
         final Object MUTEX = new Object();
         long lastScheduledTime = 0;
+        long intendedTime = 0;
     }
     private static final Logger log = LoggingManager.getLoggerForClass();
 
@@ -86,6 +87,13 @@ public class ConstantThroughputTimer extends AbstractTestElement implements Time
      */
     private long previousTime = 0;
 
+    /**
+     * Start time of the current request if no request had been late. Unlike
+     * previousTime it does not catch up, so the difference with the actual start
+     * time is the delay caused by slow responses (coordinated omission).
+     */
+    private long intendedTime = 0;
+
     private Mode mode = Mode.ThisThreadOnly;
 
     /**
@@ -147,7 +155,13 @@ public class ConstantThroughputTimer extends AbstractTestElement implements Time
          * If previous time is zero, then target will be in the past.
          * This is what we want, so first sample is run without a delay.
         */
-        long currentTarget = previousTime  + calculateDelay();
+        long delay = calculateDelay();
+        long currentTarget = previousTime  + delay;
+        if (mode != Mode.AllActiveThreads_Shared && mode != Mode.AllActiveThreadsInCurrentThreadGroup_Shared) {
+            // The shared modes keep the schedule in calculateSharedDelay
+            intendedTime = previousTime == 0 ? currentTime : intendedTime + delay;
+        }
+        JMeterContextService.getContext().setSampleIntendedStartTime(intendedTime);
         if (currentTime > currentTarget) {
             // We're behind schedule -- try to catch up:
             previousTime = currentTime; // assume the sample will run immediately
@@ -216,6 +230,8 @@ public class ConstantThroughputTimer extends AbstractTestElement implements Time
             final long nextRequstTime = info.lastScheduledTime + milliSecPerRequest;
             info.lastScheduledTime = Math.max(now, nextRequstTime);
             calculatedDelay = info.lastScheduledTime - now;
+            info.intendedTime = info.intendedTime == 0 ? now : info.intendedTime + milliSecPerRequest;
+            intendedTime = info.intendedTime;
         }
 
         return Math.max(calculatedDelay, 0);
@@ -224,10 +240,12 @@ public class ConstantThroughputTimer extends AbstractTestElement implements Time
     private void reset() {
         synchronized (allThreadsInfo.MUTEX) {
             allThreadsInfo.lastScheduledTime = 0;
+            allThreadsInfo.intendedTime = 0;
         }
         threadGroupsInfoMap.clear();
         // no need to sync as one per instance
         previousTime = 0;
+        intendedTime = 0;
     }
 
     /**
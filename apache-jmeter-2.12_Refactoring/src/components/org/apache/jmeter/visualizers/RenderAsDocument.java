@@ -41,7 +41,7 @@ public class RenderAsDocument extends SamplerResultTab implements ResultRenderer
     }
 
     private void showDocumentResponse(SampleResult sampleResult) {
-        String response = Document.getTextFromDocument(sampleResult.getResponseData());
+        String response = Document.getTextFromDocument(sampleResult.getBoundedResponseData());
 
         results.setContentType("text/plain"); // $NON-NLS-1$
         results.setText(response);
@@ -64,7 +64,7 @@ public class RenderAsXML extends SamplerResultTab
     private void showRenderXMLResponse(SampleResult res) {
         results.setContentType("text/xml"); // $NON-NLS-1$
         results.setCaretPosition(0);
-        byte[] source = res.getResponseData();
+        byte[] source = res.getBoundedResponseData();
         final ByteArrayInputStream baIS = new ByteArrayInputStream(source);
         for(int i=0; i<source.length-XML_PFX.length; i++){
             if (JOrphanUtils.startsWith(source, XML_PFX, i)){
@@ -30,8 +30,6 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -124,7 +122,10 @@ public class StatGraphVisualizer extends AbstractVisualizer implements Clearable
         		            "aggregate_report_max",           //$NON-NLS-1$
         		            "aggregate_report_error%",        //$NON-NLS-1$
         		            "aggregate_report_rate",          //$NON-NLS-1$
-        		            "aggregate_report_bandwidth" };   //$NON-NLS-1$
+        		            "aggregate_report_bandwidth",     //$NON-NLS-1$
+        		            "aggregate_report_corrected_average", //$NON-NLS-1$
+        		            "aggregate_report_corrected_xx_pct3_line", //$NON-NLS-1$
+        		            "aggregate_report_corrected_max" }; //$NON-NLS-1$
         
         // Column formats
             static final Format[] FORMATS =
@@ -140,7 +141,10 @@ public class StatGraphVisualizer extends AbstractVisualizer implements Clearable
                     null, // Max
                     new DecimalFormat("#0.00%"), // Error %age //$NON-NLS-1$
                     new DecimalFormat("#.0"),      // Throughput //$NON-NLS-1$
-                    new DecimalFormat("#.0")    // pageSize   //$NON-NLS-1$
+                    new DecimalFormat("#.0"),   // pageSize   //$NON-NLS-1$
+                    null, // CO Mean
+                    null, // CO 99%
+                    null, // CO Max
                 };
             
         		    
@@ -155,6 +159,9 @@ public class StatGraphVisualizer extends AbstractVisualizer implements Clearable
         		            null,                             //$NON-NLS-1$
         		            null,                             //$NON-NLS-1$
         		            null,                             //$NON-NLS-1$
+        		            null,                             //$NON-NLS-1$
+        		            null,                             //$NON-NLS-1$
+        		            new Object[]{pct3Label},                      //$NON-NLS-1$
         		            null };                           //$NON-NLS-1$
         		
         		    private final String[] GRAPH_COLUMNS = {"average",//$NON-NLS-1$
@@ -176,13 +183,7 @@ public class StatGraphVisualizer extends AbstractVisualizer implements Clearable
 
     private transient ObjectTableModel model;
 
-    /**
-     * Lock used to protect tableRows update + model update
-     */
-    private final transient Object lock = new Object();
-    
-    private final Map<String, SamplingStatCalculator> tableRows =
-        new ConcurrentHashMap<String, SamplingStatCalculator>();
+    private transient SampleAggregator<SamplingStatCalculator> aggregator;
 
     private AxisGraph graphPanel = null;
 
@@ -266,6 +267,17 @@ public class StatGraphVisualizer extends AbstractVisualizer implements Clearable
     public StatGraphVisualizer() {
         super();
                 model = createObjectTableModel();
+                aggregator = new SampleAggregator<SamplingStatCalculator>(model, TOTAL_ROW_LABEL) {
+                    @Override
+                    protected SamplingStatCalculator createRow(String label) {
+                        return new SamplingStatCalculator(label);
+                    }
+
+                    @Override
+                    protected void addSample(SamplingStatCalculator row, SampleResult res) {
+                        row.addSample(res);
+                    }
+                };
                 eltList.add(new BarGraph(JMeterUtils.getResString("average"), true, new Color(202, 0, 0)));
                 eltList.add(new BarGraph(JMeterUtils.getResString("aggregate_report_median"), false, new Color(49, 49, 181)));
                 eltList.add(new BarGraph(MessageFormat.format(JMeterUtils.getResString("aggregate_report_xx_pct1_line"),new Object[]{pct1Label}), false, new Color(42, 121, 42)));
@@ -299,11 +311,16 @@ public class StatGraphVisualizer extends AbstractVisualizer implements Clearable
                 new Functor("getMax"),                         //$NON-NLS-1$
                 new Functor("getErrorPercentage"),            //$NON-NLS-1$
                 new Functor("getRate"),                        //$NON-NLS-1$
-                new Functor("getKBPerSecond") },            //$NON-NLS-1$
-                new Functor[] { null, null, null, null, null, null, null, null, null, null, null, null },
+                new Functor("getKBPerSecond"),              //$NON-NLS-1$
+                new Functor("getCorrectedMeanAsNumber"),    //$NON-NLS-1$
+                new Functor("getCorrectedPercentPoint",     //$NON-NLS-1$
+                 new Object[] { pct3Value }),
+                new Functor("getCorrectedMax") },           //$NON-NLS-1$
+                new Functor[] { null, null, null, null, null, null, null, null, null, null, null, null,
+                                null, null, null },
                                 new Class[] { String.class, Long.class, Long.class, Long.class, Long.class, 
                                             Long.class, Long.class, Long.class, Long.class, String.class, 
-                                            String.class, String.class });
+                                            String.class, String.class, Long.class, Long.class, Long.class });
     }
 
     // Column renderers
@@ -321,6 +338,9 @@ public class StatGraphVisualizer extends AbstractVisualizer implements Clearable
             new NumberRenderer("#0.00%"), // Error %age //$NON-NLS-1$
             new RateRenderer("#.0"),      // Throughput //$NON-NLS-1$
             new NumberRenderer("#.0"),    // pageSize
+            null, // CO Mean
+            null, // CO 99%
+            null, // CO Max
         };
 
     public static boolean testFunctors(){
@@ -341,23 +361,7 @@ public class StatGraphVisualizer extends AbstractVisualizer implements Clearable
             statGraphVisualizerProduct2.setMatcher(statGraphVisualizerProduct2.getPattern().matcher(sampleLabel));
         }
         if ((statGraphVisualizerProduct2.getMatcher() == null) || (statGraphVisualizerProduct2.getMatcher().find())) {
-            JMeterUtils.runSafe(new Runnable() {
-                @Override
-                public void run() {
-                    SamplingStatCalculator row = null;
-                    synchronized (lock) {
-                        row = tableRows.get(sampleLabel);
-                        if (row == null) {
-                            row = new SamplingStatCalculator(sampleLabel);
-                            tableRows.put(row.getLabel(), row);
-                            model.insertRow(row, model.getRowCount() - 1);
-                        }
-                    }
-                    row.addSample(res);
-                    tableRows.get(TOTAL_ROW_LABEL).addSample(res);
-                    model.fireTableDataChanged();                    
-                }
-            });
+            aggregator.add(sampleLabel, res);
         }
     }
 
@@ -366,12 +370,7 @@ public class StatGraphVisualizer extends AbstractVisualizer implements Clearable
      */
     @Override
     public void clearData() {
-        synchronized (lock) {
-            model.clearData();
-            tableRows.clear();
-            tableRows.put(TOTAL_ROW_LABEL, new SamplingStatCalculator(TOTAL_ROW_LABEL));
-            model.addRow(tableRows.get(TOTAL_ROW_LABEL));
-        }
+        aggregator.clear();
     }
 
     /**
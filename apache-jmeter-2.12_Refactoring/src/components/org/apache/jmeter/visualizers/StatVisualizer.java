@@ -25,8 +25,6 @@ import java.awt.event.ActionListener;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
@@ -84,17 +82,22 @@ public class StatVisualizer extends AbstractVisualizer implements Clearable, Act
 
     private transient ObjectTableModel model;
 
-    /**
-     * Lock used to protect tableRows update + model update
-     */
-    private final transient Object lock = new Object();
-
-    private final Map<String, SamplingStatCalculator> tableRows =
-        new ConcurrentHashMap<String, SamplingStatCalculator>();
+    private transient SampleAggregator<SamplingStatCalculator> aggregator;
 
     public StatVisualizer() {
         super();
         model = StatGraphVisualizer.createObjectTableModel();
+        aggregator = new SampleAggregator<SamplingStatCalculator>(model, TOTAL_ROW_LABEL) {
+            @Override
+            protected SamplingStatCalculator createRow(String label) {
+                return new SamplingStatCalculator(label);
+            }
+
+            @Override
+            protected void addSample(SamplingStatCalculator row, SampleResult res) {
+                row.addSample(res);
+            }
+        };
         clearData();
         init();
     }
@@ -113,32 +116,7 @@ public class StatVisualizer extends AbstractVisualizer implements Clearable, Act
 
     @Override
     public void add(final SampleResult res) {
-        JMeterUtils.runSafe(new Runnable() {
-            @Override
-            public void run() {
-                SamplingStatCalculator row = null;
-                final String sampleLabel = res.getSampleLabel(useGroupName.isSelected());
-                synchronized (lock) {
-                    row = tableRows.get(sampleLabel);
-                    if (row == null) {
-                        row = new SamplingStatCalculator(sampleLabel);
-                        tableRows.put(row.getLabel(), row);
-                        model.insertRow(row, model.getRowCount() - 1);
-                    }
-                }
-                /*
-                 * Synch is needed because multiple threads can update the counts.
-                 */
-                synchronized(row) {
-                    row.addSample(res);
-                }
-                SamplingStatCalculator tot = tableRows.get(TOTAL_ROW_LABEL);
-                synchronized(tot) {
-                    tot.addSample(res);
-                }
-                model.fireTableDataChanged();                
-            }
-        });
+        aggregator.add(res.getSampleLabel(useGroupName.isSelected()), res);
     }
 
     /**
@@ -146,12 +124,7 @@ public class StatVisualizer extends AbstractVisualizer implements Clearable, Act
      */
     @Override
     public void clearData() {
-        synchronized (lock) {
-            model.clearData();
-            tableRows.clear();
-            tableRows.put(TOTAL_ROW_LABEL, new SamplingStatCalculator(TOTAL_ROW_LABEL));
-            model.addRow(tableRows.get(TOTAL_ROW_LABEL));
-        }
+        aggregator.clear();
     }
 
     /**
@@ -25,8 +25,6 @@ import java.awt.event.ActionListener;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
@@ -80,6 +78,8 @@ public class SummaryReport extends AbstractVisualizer implements Clearable, Acti
             "aggregate_report_rate",       //$NON-NLS-1$
             "aggregate_report_bandwidth",  //$NON-NLS-1$
             "average_bytes",               //$NON-NLS-1$
+            "aggregate_report_corrected_average", //$NON-NLS-1$
+            "aggregate_report_corrected_max",     //$NON-NLS-1$
             };
 
     private final String TOTAL_ROW_LABEL
@@ -100,13 +100,7 @@ public class SummaryReport extends AbstractVisualizer implements Clearable, Acti
 
     private transient ObjectTableModel model;
 
-    /**
-     * Lock used to protect tableRows update + model update
-     */
-    private final transient Object lock = new Object();
-
-    private final Map<String, Calculator> tableRows =
-        new ConcurrentHashMap<String, Calculator>();
+    private transient SampleAggregator<Calculator> aggregator;
 
     // Column renderers
     private static final TableCellRenderer[] RENDERERS =
@@ -121,6 +115,8 @@ public class SummaryReport extends AbstractVisualizer implements Clearable, Acti
             new RateRenderer("#.0"),      // Throughput //$NON-NLS-1$
             new NumberRenderer("#0.00"),  // kB/sec //$NON-NLS-1$
             new NumberRenderer("#.0"), 
+            null, // CO Mean
+            null, // CO Max
         };
     
     // Column formats
@@ -136,6 +132,8 @@ public class SummaryReport extends AbstractVisualizer implements Clearable, Acti
                 new DecimalFormat("#.0"),      // Throughput //$NON-NLS-1$
                 new DecimalFormat("#0.00"),  // kB/sec //$NON-NLS-1$
                 new DecimalFormat("#.0"),    // avg. pageSize //$NON-NLS-1$
+                null, // CO Mean
+                null, // CO Max
              };
 
     public SummaryReport() {
@@ -153,10 +151,24 @@ public class SummaryReport extends AbstractVisualizer implements Clearable, Acti
                     new Functor("getRate"),               //$NON-NLS-1$
                     new Functor("getKBPerSecond"),        //$NON-NLS-1$
                     new Functor("getAvgPageBytes"),       //$NON-NLS-1$
+                    new Functor("getCorrectedMeanAsNumber"), //$NON-NLS-1$
+                    new Functor("getCorrectedMax"),       //$NON-NLS-1$
                 },
-                new Functor[] { null, null, null, null, null, null, null, null , null, null },
+                new Functor[] { null, null, null, null, null, null, null, null , null, null, null, null },
                 new Class[] { String.class, Long.class, Long.class, Long.class, Long.class,
-                              String.class, String.class, String.class, String.class, String.class });
+                              String.class, String.class, String.class, String.class, String.class,
+                              Long.class, Long.class });
+        aggregator = new SampleAggregator<Calculator>(model, TOTAL_ROW_LABEL) {
+            @Override
+            protected Calculator createRow(String label) {
+                return new Calculator(label);
+            }
+
+            @Override
+            protected void addSample(Calculator row, SampleResult res) {
+                row.addSample(res);
+            }
+        };
         clearData();
         init();
     }
@@ -175,32 +187,7 @@ public class SummaryReport extends AbstractVisualizer implements Clearable, Acti
 
     @Override
     public void add(final SampleResult res) {
-        final String sampleLabel = res.getSampleLabel(useGroupName.isSelected());
-        JMeterUtils.runSafe(new Runnable() {
-            @Override
-            public void run() {
-                Calculator row = null;
-                synchronized (lock) {
-                    row = tableRows.get(sampleLabel);
-                    if (row == null) {
-                        row = new Calculator(sampleLabel);
-                        tableRows.put(row.getLabel(), row);
-                        model.insertRow(row, model.getRowCount() - 1);
-                    }
-                }
-                /*
-                 * Synch is needed because multiple threads can update the counts.
-                 */
-                synchronized(row) {
-                    row.addSample(res);
-                }
-                Calculator tot = tableRows.get(TOTAL_ROW_LABEL);
-                synchronized(tot) {
-                    tot.addSample(res);
-                }
-                model.fireTableDataChanged();                
-            }
-        });
+        aggregator.add(res.getSampleLabel(useGroupName.isSelected()), res);
     }
 
     /**
@@ -208,13 +195,7 @@ public class SummaryReport extends AbstractVisualizer implements Clearable, Acti
      */
     @Override
     public void clearData() {
-        //Synch is needed because a clear can occur while add occurs
-        synchronized (lock) {
-            model.clearData();
-            tableRows.clear();
-            tableRows.put(TOTAL_ROW_LABEL, new Calculator(TOTAL_ROW_LABEL));
-            model.addRow(tableRows.get(TOTAL_ROW_LABEL));
-        }
+        aggregator.clear();
     }
 
     /**
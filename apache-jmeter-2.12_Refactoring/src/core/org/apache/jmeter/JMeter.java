@@ -822,6 +822,9 @@ public class JMeter implements JMeterPlugin {
                 if(failingEngines.size()>0) {
                     throw new IllegalArgumentException("The following remote engines could not be configured:"+failingEngines);
                 }
+                println("Sending the test to remote engines");
+                log.info("Sending the test to remote engines");
+                ClientJMeterEngine.configureRemotes(engines);
                 println("Starting remote engines");
                 log.info("Starting remote engines");
                 long now=System.currentTimeMillis();
@@ -19,13 +19,22 @@
 package org.apache.jmeter.engine;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.rmi.Naming;
 import java.rmi.NotBoundException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.server.RemoteObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.jmeter.services.FileServer;
 import org.apache.jmeter.threads.JMeterContextService;
@@ -42,10 +51,21 @@ public class ClientJMeterEngine implements JMeterEngine {
 
     private static final Object LOCK = new Object();
 
+    // Send the test plan and data files only if the engine does not already have them
+    private static final boolean DISTRIBUTE_CONTENT =
+        JMeterUtils.getPropDefault("client.distribute", true); // $NON-NLS-1$
+
+    // Number of remote engines sent the test plan at the same time by configureRemotes()
+    private static final int CONFIGURE_THREADS =
+        JMeterUtils.getPropDefault("client.configure_threads", 10); // $NON-NLS-1$
+
     private RemoteJMeterEngine remote;
 
     private HashTree test;
 
+    // Whether the remote engine has been sent the test plan by configureRemote()
+    private volatile boolean configured;
+
     private final String host;
 
     private static RemoteJMeterEngine getEngine(String h) throws MalformedURLException, RemoteException,
@@ -74,6 +94,7 @@ public class ClientJMeterEngine implements JMeterEngine {
         TreeCloner cloner = new TreeCloner(false);
         testTree.traverse(cloner);
         test = cloner.getClonedTree();
+        configured = false;
     }
 
     /** {@inheritDoc} */
@@ -90,6 +111,7 @@ public class ClientJMeterEngine implements JMeterEngine {
     /** {@inheritDoc} */
     @Override
     public void reset() {
+        configured = false;
         try {
             try {
                 remote.rreset();
@@ -109,30 +131,15 @@ public class ClientJMeterEngine implements JMeterEngine {
         
         // See https://issues.apache.org/bugzilla/show_bug.cgi?id=55510
         JMeterContextService.clearTotalThreads();
-        HashTree testTree = test;
-
-        synchronized(testTree) {
-            testTree.traverse(new PreCompiler(true));  // limit the changes to client only test elements
-            testTree.traverse(new TurnElementsOn());
-            testTree.traverse(new ConvertListeners());
-        }
 
         String methodName="unknown";
         try {
             JMeterContextService.startTest();
-            /*
-             * Add fix for Deadlocks, see:
-             * 
-             * See https://issues.apache.org/bugzilla/show_bug.cgi?id=48350
-            */
-            File baseDirRelative = FileServer.getFileServer().getBaseDirRelative();
-            String scriptName = FileServer.getFileServer().getScriptName();
-            synchronized(LOCK)
-            {
-                methodName="rconfigure()";
-                remote.rconfigure(testTree, host, baseDirRelative, scriptName);
+            methodName="rconfigure()";
+            if (!configured) {
+                sendTest();
             }
-            log.info("sent test to " + host + " basedir='"+baseDirRelative+"'"); // $NON-NLS-1$
+            configured = false; // the plan is used by this run only
             if(savep == null) {
                 savep = new Properties();
             }
@@ -157,6 +164,129 @@ public class ClientJMeterEngine implements JMeterEngine {
         }
     }
 
+    /**
+     * Sends the test plan to the remote engine, so that {@link #runTest()} then only has to start it.
+     * Several engines can be sent the plan at once, see {@link #configureRemotes(Collection)}.
+     *
+     * @throws JMeterEngineException if the test plan could not be sent
+     * @throws IllegalStateException if the remote engine is busy
+     */
+    public void configureRemote() throws JMeterEngineException {
+        try {
+            sendTest();
+            configured = true;
+        } catch (IllegalStateException ex) {
+            log.error("Error in rconfigure() method "+ex); // $NON-NLS-1$
+            tidyRMI(log);
+            throw ex; // Don't wrap this error - display it as is
+        } catch (Exception ex) {
+            log.error("Error in rconfigure() method "+ex); // $NON-NLS-1$
+            tidyRMI(log);
+            throw new JMeterEngineException("Error in rconfigure() method "+ex, ex); // $NON-NLS-1$
+        }
+    }
+
+    /**
+     * Sends the test plan to several remote engines at the same time, as sending the plan and
+     * its data files to each engine in turn would delay the start of the test.
+     *
+     * @param engines the engines, of which only ClientJMeterEngines are sent the plan
+     * @throws JMeterEngineException if the test plan could not be sent to one of the engines;
+     * the others have been sent it
+     * @throws IllegalStateException if one of the remote engines is busy
+     */
+    public static void configureRemotes(Collection<? extends JMeterEngine> engines) throws JMeterEngineException {
+        List<ClientJMeterEngine> clients = new ArrayList<ClientJMeterEngine>();
+        for (JMeterEngine engine : engines) {
+            if (engine instanceof ClientJMeterEngine) {
+                clients.add((ClientJMeterEngine) engine);
+            }
+        }
+        if (clients.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(CONFIGURE_THREADS, clients.size())));
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(clients.size());
+            for (final ClientJMeterEngine client : clients) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws JMeterEngineException {
+                        client.configureRemote();
+                        return null;
+                    }
+                }));
+            }
+            Throwable failure = null;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new JMeterEngineException("Interrupted while configuring remote engines", e);
+                }
+            }
+            if (failure instanceof JMeterEngineException) {
+                throw (JMeterEngineException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure != null) {
+                throw new JMeterEngineException("Error configuring remote engines " + failure, failure);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Prepares the test plan and sends it to the remote engine.
+     */
+    private void sendTest() throws IOException {
+        HashTree testTree = test;
+
+        synchronized(testTree) {
+            testTree.traverse(new PreCompiler(true));  // limit the changes to client only test elements
+            testTree.traverse(new TurnElementsOn());
+            testTree.traverse(new ConvertListeners());
+        }
+        /*
+         * Add fix for Deadlocks, see:
+         * 
+         * See https://issues.apache.org/bugzilla/show_bug.cgi?id=48350
+        */
+        File baseDirRelative = FileServer.getFileServer().getBaseDirRelative();
+        String scriptName = FileServer.getFileServer().getScriptName();
+        if (!DISTRIBUTE_CONTENT || !distribute(testTree, baseDirRelative, scriptName)) {
+            synchronized(LOCK)
+            {
+                remote.rconfigure(testTree, host, baseDirRelative, scriptName);
+            }
+        }
+        log.info("sent test to " + host + " basedir='"+baseDirRelative+"'"); // $NON-NLS-1$
+    }
+
+    /**
+     * Configures the remote engine with the test plan and data files it does not already have.
+     *
+     * @return <code>false</code> if the remote engine does not support this, so was not configured
+     */
+    private boolean distribute(HashTree testTree, File baseDirRelative, String scriptName) throws IOException {
+        ContentDistributor.Plan plan;
+        synchronized(LOCK) {
+            plan = ContentDistributor.encodePlan(testTree);
+        }
+        ContentDistributor distributor = new ContentDistributor();
+        File base = new File(FileServer.getFileServer().getBaseDir());
+        return distributor.configure(remote, host, plan, distributor.findFiles(testTree, base),
+                baseDirRelative, scriptName);
+    }
+
     /**
      * Tidy up RMI access to allow JMeter client to exit.
      * Currently just interrups the "RMI Reaper" thread.
@@ -0,0 +1,464 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.property.JMeterProperty;
+import org.apache.jmeter.testelement.property.MultiProperty;
+import org.apache.jmeter.testelement.property.PropertyIterator;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.collections.HashTree;
+import org.apache.jorphan.collections.ListedHashTree;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Sends a test plan and the data files it uses to a {@link RemoteJMeterEngine},
+ * skipping whatever the engine already has in its {@link ContentStore} from a previous run.
+ * <p>
+ * The plan is encoded as the elements of the tree in traversal order, so the same plan always gives
+ * the same bytes and the same digest. Remote objects in the plan (the listener stubs created for each run)
+ * are replaced by their index, and sent with each run instead of being part of the content.
+ * <p>
+ * Data files are found from the test element properties named by <code>client.distribute.properties</code>
+ * (e.g. the CSV Data Set <code>filename</code>) plus the names listed in <code>client.distribute.files</code>.
+ * Only relative names of existing files below the client base directory are sent,
+ * as they are resolved against the same base directory on the engine.
+ * Missing content is sent in chunks, several items in parallel.
+ */
+public class ContentDistributor {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final int DEFAULT_THREADS = 4;
+
+    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final String VARIABLE_START = "${"; // $NON-NLS-1$
+
+    private final int threads;
+
+    private final int chunkSize;
+
+    private final Set<String> fileProperties;
+
+    private final List<String> fileNames;
+
+    /**
+     * Creates a distributor configured from the <code>client.distribute.*</code> properties.
+     */
+    public ContentDistributor() {
+        this(JMeterUtils.getPropDefault("client.distribute.threads", DEFAULT_THREADS), // $NON-NLS-1$
+                JMeterUtils.getPropDefault("client.distribute.chunk_size", DEFAULT_CHUNK_SIZE), // $NON-NLS-1$
+                split(JMeterUtils.getPropDefault("client.distribute.properties", "filename,File.path")), // $NON-NLS-1$ $NON-NLS-2$
+                split(JMeterUtils.getPropDefault("client.distribute.files", ""))); // $NON-NLS-1$ $NON-NLS-2$
+    }
+
+    /**
+     * @param threads number of items sent in parallel to an engine
+     * @param chunkSize maximum bytes sent in one call
+     * @param fileProperties names of the properties holding data file names
+     * @param fileNames data files to send in addition to those found in the properties
+     */
+    public ContentDistributor(int threads, int chunkSize, Collection<String> fileProperties,
+            Collection<String> fileNames) {
+        this.threads = Math.max(1, threads);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.fileProperties = new LinkedHashSet<String>(fileProperties);
+        this.fileNames = new ArrayList<String>(fileNames);
+    }
+
+    /**
+     * Configures the engine with the plan, sending only the content it does not already have.
+     *
+     * @param engine the engine to configure
+     * @param host the engine host, for log messages and {@link RemoteJMeterEngine#rconfigure}
+     * @param plan the encoded test plan
+     * @param files the data files, by the name used in the plan
+     * @param jmxBase base directory for relative file names, relative to the engine working directory
+     * @param scriptName name of the test script
+     * @return <code>false</code> if the engine does not support content distribution, so was not configured
+     * @throws IOException if the content cannot be read or sent
+     */
+    public boolean configure(RemoteJMeterEngine engine, String host, Plan plan, Map<String, File> files,
+            File jmxBase, String scriptName) throws IOException {
+        long start = System.currentTimeMillis();
+        Map<String, Content> contents = new LinkedHashMap<String, Content>();
+        contents.put(plan.getDigest(), new Content(plan.getDigest(), plan.getBytes(), null));
+        Map<String, String> fileDigests = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            String digest = ContentStore.digest(entry.getValue());
+            fileDigests.put(entry.getKey(), digest);
+            contents.put(digest, new Content(digest, null, entry.getValue()));
+        }
+        Set<String> missing;
+        try {
+            missing = engine.rgetMissingContent(new LinkedHashSet<String>(contents.keySet()));
+        } catch (RemoteException e) {
+            log.warn("Engine on " + host + " does not support content distribution, sending the whole test plan: " + e);
+            return false;
+        }
+        List<Content> toSend = new ArrayList<Content>();
+        long bytes = 0;
+        for (String digest : missing) {
+            Content content = contents.get(digest);
+            if (content == null) {
+                throw new IOException("Engine on " + host + " asked for unknown content " + digest);
+            }
+            toSend.add(content);
+            bytes += content.getLength();
+        }
+        send(engine, toSend);
+        engine.rconfigure(plan.getDigest(), plan.getRemotes(), fileDigests, host, jmxBase, scriptName);
+        log.info("Sent " + toSend.size() + " of " + contents.size() + " items (" + bytes + " bytes) to " + host
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    private void send(final RemoteJMeterEngine engine, List<Content> contents) throws IOException {
+        if (contents.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, contents.size()));
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(contents.size());
+            for (final Content content : contents) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        content.send(engine, chunkSize);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException("Could not send content", cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while sending content", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Finds the data files used by a test plan.
+     *
+     * @param tree the test plan
+     * @param base the directory relative names are resolved against
+     * @return the files found, by the name used in the plan
+     */
+    public Map<String, File> findFiles(HashTree tree, File base) {
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        List<Object> nodes = new ArrayList<Object>();
+        addNodes(tree, nodes);
+        for (Object node : nodes) {
+            if (node instanceof TestElement) {
+                addFiles(((TestElement) node).propertyIterator(), base, files);
+            }
+        }
+        for (String name : fileNames) {
+            addFile(name, base, files);
+        }
+        return files;
+    }
+
+    private void addFiles(PropertyIterator iter, File base, Map<String, File> files) {
+        while (iter.hasNext()) {
+            JMeterProperty property = iter.next();
+            if (property instanceof MultiProperty) {
+                addFiles(((MultiProperty) property).iterator(), base, files);
+            } else if (fileProperties.contains(property.getName())) {
+                addFile(property.getStringValue(), base, files);
+            }
+        }
+    }
+
+    private static void addFile(String name, File base, Map<String, File> files) {
+        if (name == null || name.contains(VARIABLE_START) || files.containsKey(name)) {
+            return;
+        }
+        // The engine would refuse it
+        if (!ContentStore.isRelativeName(name)) {
+            return;
+        }
+        File file = new File(base, name);
+        if (file.isFile()) {
+            files.put(name, file);
+        }
+    }
+
+    /**
+     * Encodes a test plan, with the remote objects it contains replaced by their index.
+     *
+     * @param tree the test plan, which must be serializable
+     * @return the encoded plan
+     * @throws IOException if the plan cannot be serialized
+     */
+    public static Plan encodePlan(HashTree tree) throws IOException {
+        List<Object> nodes = new ArrayList<Object>();
+        List<Integer> depths = new ArrayList<Integer>();
+        addNodes(tree, 0, nodes, depths);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PlanOutputStream out = new PlanOutputStream(bytes);
+        for (int i = 0; i < nodes.size(); i++) {
+            out.writeInt(depths.get(i).intValue());
+            out.writeObject(nodes.get(i));
+        }
+        out.writeInt(-1);
+        out.close();
+        byte[] data = bytes.toByteArray();
+        return new Plan(data, ContentStore.digest(data), out.remotes.toArray(new Remote[out.remotes.size()]));
+    }
+
+    /**
+     * Decodes a test plan encoded by {@link #encodePlan(HashTree)}.
+     *
+     * @param in the encoded plan
+     * @param remotes the remote objects to put back in the plan
+     * @return the test plan
+     * @throws IOException if the plan cannot be read
+     * @throws ClassNotFoundException if an element class is not available
+     */
+    public static HashTree decodePlan(InputStream in, Remote[] remotes) throws IOException, ClassNotFoundException {
+        PlanInputStream ois = new PlanInputStream(in, remotes);
+        try {
+            ListedHashTree tree = new ListedHashTree();
+            List<HashTree> path = new ArrayList<HashTree>();
+            path.add(tree);
+            int depth;
+            while ((depth = ois.readInt()) >= 0) {
+                if (depth >= path.size()) {
+                    throw new IOException("Invalid depth " + depth + " in test plan");
+                }
+                HashTree child = path.get(depth).add(ois.readObject());
+                while (path.size() > depth + 1) {
+                    path.remove(path.size() - 1);
+                }
+                path.add(child);
+            }
+            return tree;
+        } finally {
+            JOrphanUtils.closeQuietly(ois);
+        }
+    }
+
+    private static void addNodes(HashTree tree, List<Object> nodes) {
+        for (Object node : tree.list()) {
+            nodes.add(node);
+            addNodes(tree.getTree(node), nodes);
+        }
+    }
+
+    private static void addNodes(HashTree tree, int depth, List<Object> nodes, List<Integer> depths) {
+        for (Object node : tree.list()) {
+            nodes.add(node);
+            depths.add(Integer.valueOf(depth));
+            addNodes(tree.getTree(node), depth + 1, nodes, depths);
+        }
+    }
+
+    private static List<String> split(String names) {
+        List<String> list = new ArrayList<String>();
+        for (String name : JOrphanUtils.split(names, ",", true)) { // $NON-NLS-1$
+            String trimmed = name.trim();
+            if (trimmed.length() > 0) {
+                list.add(trimmed);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * A test plan encoded by {@link ContentDistributor#encodePlan(HashTree)}.
+     */
+    public static final class Plan {
+        private final byte[] bytes;
+        private final String digest;
+        private final Remote[] remotes;
+
+        Plan(byte[] bytes, String digest, Remote[] remotes) {
+            this.bytes = bytes;
+            this.digest = digest;
+            this.remotes = remotes;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        public Remote[] getRemotes() {
+            return remotes;
+        }
+    }
+
+    /**
+     * Content to send: either an encoded plan or a file.
+     */
+    private static final class Content {
+        private final String digest;
+        private final byte[] bytes;
+        private final File file;
+
+        Content(String digest, byte[] bytes, File file) {
+            this.digest = digest;
+            this.bytes = bytes;
+            this.file = file;
+        }
+
+        long getLength() {
+            return bytes != null ? bytes.length : file.length();
+        }
+
+        void send(RemoteJMeterEngine engine, int chunkSize) throws IOException {
+            long length = getLength();
+            InputStream in = bytes != null ? new ByteArrayInputStream(bytes) : new FileInputStream(file);
+            try {
+                long offset = 0;
+                do {
+                    byte[] chunk = new byte[(int) Math.min(chunkSize, length - offset)];
+                    if (fill(in, chunk) != chunk.length) {
+                        throw new IOException(file + " was changed while being sent");
+                    }
+                    engine.rputContent(digest, offset, chunk, offset + chunk.length == length);
+                    offset += chunk.length;
+                } while (offset < length);
+            } finally {
+                JOrphanUtils.closeQuietly(in);
+            }
+        }
+
+        private static int fill(InputStream in, byte[] buffer) throws IOException {
+            int total = 0;
+            int n;
+            while (total < buffer.length && (n = in.read(buffer, total, buffer.length - total)) != -1) {
+                total += n;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Stands for the remote object at an index of {@link Plan#getRemotes()}.
+     */
+    private static final class RemoteIndex implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+
+        RemoteIndex(int index) {
+            this.index = index;
+        }
+    }
+
+    private static final class PlanOutputStream extends ObjectOutputStream {
+        private final List<Remote> remotes = new ArrayList<Remote>();
+
+        private final Map<Object, RemoteIndex> indexes = new IdentityHashMap<Object, RemoteIndex>();
+
+        PlanOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (!(obj instanceof Remote)) {
+                return obj;
+            }
+            RemoteIndex index = indexes.get(obj);
+            if (index == null) {
+                Remote stub;
+                try {
+                    stub = RemoteObject.toStub((Remote) obj);
+                } catch (NoSuchObjectException e) {
+                    // Not exported, so is serialized as any other object
+                    return obj;
+                }
+                index = new RemoteIndex(remotes.size());
+                remotes.add(stub);
+                indexes.put(obj, index);
+            }
+            return index;
+        }
+    }
+
+    private static final class PlanInputStream extends ObjectInputStream {
+        private final Remote[] remotes;
+
+        PlanInputStream(InputStream in, Remote[] remotes) throws IOException {
+            super(in);
+            this.remotes = remotes;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof RemoteIndex) {
+                int index = ((RemoteIndex) obj).index;
+                if (index >= remotes.length) {
+                    throw new IOException("Test plan refers to remote object " + index + " of " + remotes.length);
+                }
+                return remotes[index];
+            }
+            return obj;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.engine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Directory of content (test plans and data files) named by the SHA-256 digest of its bytes.
+ * <p>
+ * Used by {@link RemoteJMeterEngineImpl} to keep the content sent by clients between runs,
+ * so a client only has to send what has changed since the previous run.
+ * Content is written in chunks to a <code>.part</code> file, and only becomes visible
+ * once the last chunk has arrived and the digest of the whole file has been checked.
+ * Parts left by a server which stopped, or not written to for an hour, are deleted.
+ * Complete content is never evicted; the directory can be emptied whenever the server is not running.
+ * <p>
+ * Data files are only copied below the <code>files</code> directory of the store, as their names and
+ * base directory come from remote clients: see {@link #getDataDirectory(File)} and {@link #resolve(File, String)}.
+ */
+public class ContentStore {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String DIGEST_ALGORITHM = "SHA-256"; // $NON-NLS-1$
+
+    private static final String PART_SUFFIX = ".part"; // $NON-NLS-1$
+
+    private static final String FILES_DIRECTORY = "files"; // $NON-NLS-1$
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // How long a part may be left unwritten before it is deleted
+    private static final long PART_MAX_AGE = 60 * 60 * 1000L;
+
+    /** Digests of files already hashed, keyed by path, so unchanged files are only read once */
+    private static final Map<String, FileDigest> FILE_DIGESTS = new HashMap<String, FileDigest>();
+
+    private final File directory;
+
+    /** One lock per digest, so chunks of different content are written in parallel; never removed */
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * @param directory where to keep the content, created if necessary; parts left in it are deleted
+     * @throws IOException if the directory cannot be created
+     */
+    public ContentStore(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create content directory " + directory);
+        }
+        this.directory = directory;
+        removeParts(0);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gives the directory the data files of a test are copied to: the base directory of the test,
+     * below the <code>files</code> directory of the store.
+     *
+     * @param jmxBase base directory of the test, which may come from a remote client
+     * @return the directory, which may not exist yet
+     * @throws IOException if the base directory is absolute or contains ".."
+     */
+    public File getDataDirectory(File jmxBase) throws IOException {
+        File root = new File(directory, FILES_DIRECTORY);
+        String path = jmxBase.getPath();
+        if (path.length() == 0 || ".".equals(path)) { // $NON-NLS-1$
+            return root;
+        }
+        return resolve(root, path);
+    }
+
+    /**
+     * @param digests digests of the content needed
+     * @return the digests which are not in the store, in the order given
+     * @throws IOException if one of the digests is not valid
+     */
+    public Set<String> getMissing(Collection<String> digests) throws IOException {
+        removeParts(PART_MAX_AGE);
+        Set<String> missing = new LinkedHashSet<String>();
+        for (String digest : digests) {
+            if (!getFile(digest).isFile()) {
+                missing.add(digest);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * @param digest digest of the content
+     * @return the file holding the content, which may not exist yet
+     * @throws IOException if the digest is not valid
+     */
+    public File getFile(String digest) throws IOException {
+        checkDigest(digest);
+        return new File(directory, digest);
+    }
+
+    /**
+     * Writes a chunk of content. Chunks of different content can be written in parallel.
+     *
+     * @param digest digest of the whole content
+     * @param offset position of the chunk in the content; 0 starts the content again
+     * @param data the chunk
+     * @param last <code>true</code> if this is the last chunk
+     * @throws IOException if the chunk cannot be written, or the content does not match the digest
+     */
+    public void write(String digest, long offset, byte[] data, boolean last) throws IOException {
+        File file = getFile(digest);
+        File part = new File(directory, digest + PART_SUFFIX);
+        synchronized (getLock(digest)) {
+            RandomAccessFile raf = new RandomAccessFile(part, "rw"); // $NON-NLS-1$
+            try {
+                if (offset == 0) {
+                    raf.setLength(0);
+                }
+                raf.seek(offset);
+                raf.write(data);
+            } finally {
+                JOrphanUtils.closeQuietly(raf);
+            }
+            if (!last) {
+                return;
+            }
+            String actual = digest(part);
+            if (!digest.equals(actual)) {
+                deleteFile(part);
+                throw new IOException("Content received for " + digest + " has digest " + actual);
+            }
+            if (file.isFile()) {
+                deleteFile(part);
+            } else if (!part.renameTo(file)) {
+                throw new IOException("Cannot rename " + part + " to " + file);
+            }
+        }
+        log.debug("Stored " + file.length() + " bytes as " + digest);
+    }
+
+    /**
+     * Copies content to a data file, unless the file already has the same content.
+     * An existing file is only replaced if its content is also in the store,
+     * i.e. it was written by a previous update, so files put there by hand are left alone.
+     *
+     * @param digest digest of the content
+     * @param base directory the data files of the test are in, given by {@link #getDataDirectory(File)}
+     * @param name name of the file to create or replace, relative to the base directory
+     * @return <code>true</code> if the file was written
+     * @throws IOException if the name is not allowed, the file would not be below the <code>files</code>
+     * directory of the store, or the content is not in the store or cannot be copied
+     */
+    public boolean update(String digest, File base, String name) throws IOException {
+        File target = resolve(base, name);
+        File root = new File(directory, FILES_DIRECTORY);
+        if (!isBelow(target, root)) {
+            throw new IOException("Data file '" + name + "' is not below " + root);
+        }
+        File file = getFile(digest);
+        if (!file.isFile()) {
+            throw new IOException("No content for " + digest);
+        }
+        if (target.isFile()) {
+            String existing = digest(target);
+            if (digest.equals(existing)) {
+                return false;
+            }
+            if (!getFile(existing).isFile()) {
+                log.warn("Keeping " + target + " which was not sent by a client");
+                return false;
+            }
+        }
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        // Copy next to the target then rename, so readers never see a partial file
+        File temp = File.createTempFile(target.getName(), PART_SUFFIX, parent);
+        try {
+            copy(file, temp);
+            if (target.exists()) {
+                deleteFile(target);
+            }
+            if (!temp.renameTo(target)) {
+                throw new IOException("Cannot rename " + temp + " to " + target);
+            }
+            remember(target, digest);
+        } finally {
+            if (temp.exists()) {
+                deleteFile(temp);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the name of a data file, which may come from a remote client, and gives the file.
+     *
+     * @param base directory the data files of the test are in
+     * @param name name of the file, relative to the base directory
+     * @return the file, which is below the base directory
+     * @throws IOException if the name is not allowed
+     */
+    public static File resolve(File base, String name) throws IOException {
+        if (!isRelativeName(name)) {
+            throw new IOException("Data file name must be relative, without '..': '" + name + "'");
+        }
+        File file = new File(base, name);
+        if (!isBelow(file, base)) {
+            throw new IOException("Data file '" + name + "' is not below " + base);
+        }
+        return file;
+    }
+
+    /**
+     * @return <code>true</code> if the file is below the directory once links are followed
+     */
+    private static boolean isBelow(File file, File directory) throws IOException {
+        String path = directory.getCanonicalPath();
+        if (!path.endsWith(File.separator)) {
+            path += File.separator;
+        }
+        return file.getCanonicalPath().startsWith(path);
+    }
+
+    /**
+     * @param name file name to check
+     * @return <code>true</code> if the name is not empty, not absolute and has no ".." segment
+     */
+    static boolean isRelativeName(String name) {
+        if (name == null || name.length() == 0 || new File(name).isAbsolute()
+                || name.startsWith("/") || name.startsWith("\\")) { // $NON-NLS-1$ $NON-NLS-2$
+            return false;
+        }
+        for (String segment : name.split("[/\\\\]")) { // $NON-NLS-1$
+            if ("..".equals(segment)) { // $NON-NLS-1$
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param data the content
+     * @return the hex SHA-256 digest of the content
+     */
+    public static String digest(byte[] data) {
+        return JOrphanUtils.baToHexString(newDigest().digest(data));
+    }
+
+    /**
+     * Digests a file, reusing the previous digest if the file has the same length and modification time.
+     *
+     * @param file the file to digest
+     * @return the hex SHA-256 digest of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static String digest(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        long length = file.length();
+        long modified = file.lastModified();
+        synchronized (FILE_DIGESTS) {
+            FileDigest previous = FILE_DIGESTS.get(path);
+            if (previous != null && previous.length == length && previous.modified == modified) {
+                return previous.digest;
+            }
+        }
+        MessageDigest md = newDigest();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                md.update(buffer, 0, n);
+            }
+        } finally {
+            JOrphanUtils.closeQuietly(in);
+        }
+        String digest = JOrphanUtils.baToHexString(md.digest());
+        synchronized (FILE_DIGESTS) {
+            FILE_DIGESTS.put(path, new FileDigest(length, modified, digest));
+        }
+        return digest;
+    }
+
+    private Object getLock(String digest) {
+        Object lock = locks.get(digest);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = locks.putIfAbsent(digest, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    // Deletes the parts not written to for the given time, left by clients which stopped sending
+    private void removeParts(long maxAge) {
+        File[] parts = directory.listFiles();
+        if (parts == null) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - maxAge;
+        for (File part : parts) {
+            String name = part.getName();
+            if (!name.endsWith(PART_SUFFIX)) {
+                continue;
+            }
+            synchronized (getLock(name.substring(0, name.length() - PART_SUFFIX.length()))) {
+                if (part.lastModified() <= oldest && part.delete()) {
+                    log.info("Deleted incomplete content " + part);
+                }
+            }
+        }
+    }
+
+    // The file may have the same length and modification time as the one it replaced
+    private static void remember(File file, String digest) throws IOException {
+        synchronized (FILE_DIGESTS) {
+            FILE_DIGESTS.put(file.getCanonicalPath(), new FileDigest(file.length(), file.lastModified(), digest));
+        }
+    }
+
+    /**
+     * @param digest value to check, which may come from a remote client
+     * @throws IOException unless the value is a hex SHA-256 digest, so it is safe to use as a file name
+     */
+    static void checkDigest(String digest) throws IOException {
+        boolean valid = digest != null && digest.length() == 64;
+        for (int i = 0; valid && i < digest.length(); i++) {
+            char c = digest.charAt(i);
+            valid = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+        }
+        if (!valid) {
+            throw new IOException("Invalid content digest '" + digest + "'");
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            JOrphanUtils.closeQuietly(in);
+        }
+    }
+
+    private static void deleteFile(File file) throws IOException {
+        if (!file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+
+    private static final class FileDigest {
+        private final long length;
+        private final long modified;
+        private final String digest;
+
+        FileDigest(long length, long modified, String digest) {
+            this.length = length;
+            this.modified = modified;
+            this.digest = digest;
+        }
+    }
+}
@@ -21,7 +21,9 @@ package org.apache.jmeter.engine;
 import java.io.File;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.jorphan.collections.HashTree;
 
@@ -31,6 +33,40 @@ import org.apache.jorphan.collections.HashTree;
 public interface RemoteJMeterEngine extends Remote {
     void rconfigure(HashTree testTree, String host, File jmxBase, String scriptName) throws RemoteException;
 
+    /**
+     * Configures the engine with a test plan and data files previously sent with {@link #rputContent}.
+     *
+     * @param planDigest digest of the plan encoded by {@link ContentDistributor#encodePlan(HashTree)}
+     * @param remotes the remote objects to put back in the plan
+     * @param files digests of the data files, by the name used in the plan
+     * @param host the host name of the engine, as used by the client
+     * @param jmxBase base directory for relative file names; if there are data files, it is taken
+     * below the content cache, see {@link ContentStore#getDataDirectory(File)}
+     * @param scriptName name of the test script
+     * @throws RemoteException if the content is missing, the plan cannot be decoded
+     * or a data file name is not allowed
+     */
+    void rconfigure(String planDigest, Remote[] remotes, Map<String, String> files, String host, File jmxBase,
+            String scriptName) throws RemoteException;
+
+    /**
+     * @param digests digests of the content needed for a test
+     * @return the digests of the content which has not been sent yet
+     * @throws RemoteException if the engine cannot store content
+     */
+    Set<String> rgetMissingContent(Set<String> digests) throws RemoteException;
+
+    /**
+     * Sends a chunk of content, see {@link ContentStore#write(String, long, byte[], boolean)}.
+     *
+     * @param digest digest of the whole content
+     * @param offset position of the chunk in the content
+     * @param data the chunk
+     * @param last <code>true</code> if this is the last chunk
+     * @throws RemoteException if the chunk cannot be stored
+     */
+    void rputContent(String digest, long offset, byte[] data, boolean last) throws RemoteException;
+
     void rrunTest() throws RemoteException, JMeterEngineException;
 
     void rstopTest(boolean now) throws RemoteException;
@@ -19,20 +19,27 @@
 package org.apache.jmeter.engine;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.rmi.NotBoundException;
+import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.ServerNotActiveException;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.jmeter.services.FileServer;
 import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.collections.HashTree;
 import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
 import org.apache.log.Logger;
 
 /**
@@ -65,8 +72,15 @@ public final class RemoteJMeterEngineImpl extends java.rmi.server.UnicastRemoteO
     private static final boolean createServer =
         JMeterUtils.getPropDefault("server.rmi.create", true); // $NON-NLS-1$
 
+    // Where test plans and data files sent by clients are kept between runs
+    private static final String CONTENT_CACHE =
+        JMeterUtils.getPropDefault("server.content_cache", // $NON-NLS-1$
+                new File(System.getProperty("java.io.tmpdir"), "jmeter-content-cache").getPath()); // $NON-NLS-1$ $NON-NLS-2$
+
     private final Object LOCK = new Object();
 
+    private transient ContentStore contentStore;
+
     private final int rmiPort;
 
     private Properties remotelySetProperties;
@@ -158,6 +172,84 @@ public final class RemoteJMeterEngineImpl extends java.rmi.server.UnicastRemoteO
         FileServer.getFileServer().setBase(jmxBase);
     }
 
+    @Override
+    public void rconfigure(String planDigest, Remote[] remotes, Map<String, String> files, String host, File jmxBase,
+            String scriptName) throws RemoteException {
+        log.info("Creating JMeter engine on host "+host+" base '"+jmxBase+"' from test plan "+planDigest);
+        try {
+            log.info("Remote client host: " + getClientHost());
+        } catch (ServerNotActiveException e) {
+            // ignored
+        }
+        synchronized(LOCK) { // close window where another remote client might jump in
+            if (backingEngine != null && backingEngine.isActive()) {
+                log.warn("Engine is busy - cannot create JMeter engine");
+                throw new IllegalStateException("Engine is busy - please try later");
+            }
+            HashTree testTree;
+            try {
+                ContentStore store = getContentStore();
+                InputStream in = new FileInputStream(store.getFile(planDigest));
+                try {
+                    testTree = ContentDistributor.decodePlan(in, remotes);
+                } finally {
+                    JOrphanUtils.closeQuietly(in);
+                }
+                FileServer.getFileServer().setScriptName(scriptName);
+                File base = jmxBase;
+                if (!files.isEmpty()) {
+                    // The base and names come from the client, so data files are only written below
+                    // the content cache, and the names are all checked before writing anything
+                    base = store.getDataDirectory(jmxBase);
+                    for (String name : files.keySet()) {
+                        ContentStore.resolve(base, name);
+                    }
+                }
+                FileServer.getFileServer().setBase(base);
+                for (Map.Entry<String, String> entry : files.entrySet()) {
+                    if (store.update(entry.getValue(), base, entry.getKey())) {
+                        log.info("Updated data file " + entry.getKey());
+                    }
+                }
+            } catch (IOException e) {
+                throw new RemoteException("Cannot configure test plan " + planDigest, e);
+            } catch (ClassNotFoundException e) {
+                throw new RemoteException("Cannot configure test plan " + planDigest, e);
+            }
+            ownerThread = Thread.currentThread();
+            backingEngine = new StandardJMeterEngine(host);
+            backingEngine.configure(testTree); // sets active = true
+        }
+    }
+
+    @Override
+    public Set<String> rgetMissingContent(Set<String> digests) throws RemoteException {
+        try {
+            Set<String> missing = getContentStore().getMissing(digests);
+            log.info("Client needs " + digests.size() + " items, " + missing.size() + " missing");
+            return missing;
+        } catch (IOException e) {
+            throw new RemoteException("Cannot check content", e);
+        }
+    }
+
+    @Override
+    public void rputContent(String digest, long offset, byte[] data, boolean last) throws RemoteException {
+        try {
+            getContentStore().write(digest, offset, data, last);
+        } catch (IOException e) {
+            throw new RemoteException("Cannot store content " + digest, e);
+        }
+    }
+
+    private synchronized ContentStore getContentStore() throws IOException {
+        if (contentStore == null) {
+            contentStore = new ContentStore(new File(CONTENT_CACHE));
+            log.info("Using content cache " + contentStore.getDirectory());
+        }
+        return contentStore;
+    }
+
     @Override
     public void rrunTest() throws RemoteException, JMeterEngineException, IllegalStateException {
         log.info("Running test");
@@ -36,10 +36,12 @@ import org.apache.jmeter.testelement.TestStateListener;
 import org.apache.jmeter.testelement.TestPlan;
 import org.apache.jmeter.threads.AbstractThreadGroup;
 import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
 import org.apache.jmeter.threads.ListenerNotifier;
 import org.apache.jmeter.threads.PostThreadGroup;
 import org.apache.jmeter.threads.SetupThreadGroup;
 import org.apache.jmeter.threads.TestCompiler;
+import org.apache.jmeter.timers.TimerService;
 import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.collections.HashTree;
 import org.apache.jorphan.collections.ListedHashTree;
@@ -220,6 +222,11 @@ public class StandardJMeterEngine implements JMeterEngine, Runnable {
 
     private void notifyTestListenersOfEnd(SearchByClass<TestStateListener> testListeners) {
         log.info("Notifying test listeners of end of test");
+        ListenerNotifier.waitForAsyncListeners();
+        TimerService.Lateness lateness = TimerService.getInstance().getLateness();
+        if (lateness.getCount() > 0) {
+            log.info("Timer lateness: " + lateness);
+        }
         for (TestStateListener tl : testListeners.getSearchResults()) {
             try {
                 if (host == null) {
@@ -308,7 +315,9 @@ public class StandardJMeterEngine implements JMeterEngine, Runnable {
          * Ensure that the sample variables are correctly initialised for each run.
          * TODO is this the best way to do this? should it be done elsewhere ?
          */
+        JMeterVariables.resetSlots(); // before anything resolves variable names for this run
         SampleEvent.initSampleVariables();
+        TimerService.getInstance().getLateness().reset();
 
         JMeterContextService.startTest();
         try {
@@ -21,6 +21,7 @@ package org.apache.jmeter.engine;
 import java.util.LinkedList;
 
 import org.apache.jmeter.engine.util.NoThreadClone;
+import org.apache.jmeter.testelement.AbstractTestElement;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jorphan.collections.HashTree;
 import org.apache.jorphan.collections.HashTreeTraverser;
@@ -37,6 +38,8 @@ public class TreeCloner implements HashTreeTraverser {
 
     private final boolean honourNoThreadClone;
 
+    private final boolean shareProperties;
+
     /**
      * Clone the test tree, honouring NoThreadClone markers.
      * 
@@ -51,8 +54,20 @@ public class TreeCloner implements HashTreeTraverser {
      * @param honourNoThreadClone set false to clone NoThreadClone nodes as well
      */
     public TreeCloner(boolean honourNoThreadClone) {
+        this(honourNoThreadClone, false);
+    }
+
+    /**
+     * Clone the test tree.
+     * 
+     * @param honourNoThreadClone set false to clone NoThreadClone nodes as well
+     * @param shareProperties set true to share the properties of the cloned elements
+     * until they are changed, see {@link AbstractTestElement#cloneShared()}
+     */
+    public TreeCloner(boolean honourNoThreadClone, boolean shareProperties) {
         newTree = new ListedHashTree();
         this.honourNoThreadClone = honourNoThreadClone;
+        this.shareProperties = shareProperties;
     }
 
     /**
@@ -74,7 +89,11 @@ public class TreeCloner implements HashTreeTraverser {
            // Don't clone NoThreadClone unless honourNoThreadClone == false
           && (!honourNoThreadClone || !(node instanceof NoThreadClone))
         ) {
-            node = ((TestElement) node).clone();
+            if (shareProperties && node instanceof AbstractTestElement) {
+                node = ((AbstractTestElement) node).cloneShared();
+            } else {
+                node = ((TestElement) node).clone();
+            }
             newTree.add(objects, node);
         } else {
             newTree.add(objects, node);
@@ -24,6 +24,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.jmeter.functions.Function;
 import org.apache.jmeter.functions.InvalidVariableException;
@@ -31,6 +32,7 @@ import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.samplers.Sampler;
 import org.apache.jmeter.threads.JMeterContext;
 import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
 import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.jorphan.reflect.ClassFinder;
@@ -38,11 +40,18 @@ import org.apache.log.Logger;
 
 /**
  * CompoundFunction.
- *
+ * <p>
+ * The parameters are compiled once into an array of components: adjacent
+ * static text is folded into a single String, variable references become
+ * {@link SimpleVariable}s and function calls become {@link Function}s.
+ * The array is never modified after compilation, so copies made by
+ * {@link #getFunction()} for each property share it with the original.
  */
 public class CompoundVariable implements Function {
     private static final Logger log = LoggingManager.getLoggerForClass();
 
+    private static final Object[] NO_COMPONENTS = new Object[0];
+
     private String rawParameters;
 
     private static final FunctionParser functionParser = new FunctionParser();
@@ -51,11 +60,24 @@ public class CompoundVariable implements Function {
     private static final Map<String, Class<? extends Function>> functions =
         new HashMap<String, Class<? extends Function>>();
 
-    private boolean hasFunction, isDynamic;
+    /**
+     * Maximum number of compiled strings remembered by {@link #setParameters(String)}.
+     * Only strings without function calls are remembered, as functions may hold state.
+     */
+    private static final int COMPILE_CACHE_SIZE =
+        JMeterUtils.getPropDefault("function.compile_cache_size", 5000); // $NON-NLS-1$
+
+    // Compiled components of function-free strings, keyed by the raw string
+    private static final Map<String, Object[]> compileCache = new ConcurrentHashMap<String, Object[]>();
+
+    private boolean hasFunction, isDynamic, hasVariable;
 
     private String permanentResults;
 
-    private LinkedList<Object> compiledComponents = new LinkedList<Object>();
+    private Object[] compiledComponents = NO_COMPONENTS;
+
+    // Length of the last result, used to size the buffer of the next one
+    private int lengthHint;
 
     static {
         try {
@@ -115,7 +137,7 @@ public class CompoundVariable implements Function {
             JMeterContext context = JMeterContextService.getContext();
             SampleResult previousResult = context.getPreviousResult();
             Sampler currentSampler = context.getCurrentSampler();
-            return execute(previousResult, currentSampler);
+            return execute(context.getVariables(), previousResult, currentSampler);
         }
         return permanentResults; // $NON-NLS-1$
     }
@@ -132,39 +154,59 @@ public class CompoundVariable implements Function {
     /** {@inheritDoc} */
     @Override
     public String execute(SampleResult previousResult, Sampler currentSampler) {
-        if (compiledComponents == null || compiledComponents.size() == 0) {
+        if (!isDynamic && permanentResults != null) {
+            return permanentResults;
+        }
+        JMeterVariables vars = hasVariable ? JMeterContextService.getContext().getVariables() : null;
+        return execute(vars, previousResult, currentSampler);
+    }
+
+    private String execute(JMeterVariables vars, SampleResult previousResult, Sampler currentSampler) {
+        final Object[] components = compiledComponents;
+        if (components.length == 0) {
             return ""; // $NON-NLS-1$
         }
-        StringBuilder results = new StringBuilder();
-        for (Object item : compiledComponents) {
-            if (item instanceof Function) {
-                try {
-                    results.append(((Function) item).execute(previousResult, currentSampler));
-                } catch (InvalidVariableException e) {
-                    // TODO should level be more than debug ?
-                    if(log.isDebugEnabled()) {
-                        log.debug("Invalid variable:"+item, e);
-                    }
-                }
-            } else if (item instanceof SimpleVariable) {
-                results.append(((SimpleVariable) item).toString());
-            } else {
-                results.append(item);
-            }
+        if (components.length == 1) {
+            // Most properties are a single variable or function; no need to copy the value
+            String result = evaluate(components[0], vars, previousResult, currentSampler);
+            return result == null ? "null" : result; // $NON-NLS-1$
         }
-        if (!isDynamic) {
-            permanentResults = results.toString();
+        StringBuilder results = new StringBuilder(lengthHint);
+        for (int i = 0; i < components.length; i++) {
+            results.append(evaluate(components[i], vars, previousResult, currentSampler));
         }
+        lengthHint = results.length();
         return results.toString();
     }
 
-    @SuppressWarnings("unchecked") // clone will produce correct type
+    private static String evaluate(Object item, JMeterVariables vars, SampleResult previousResult, Sampler currentSampler) {
+        if (item instanceof String) {
+            return (String) item;
+        } else if (item instanceof SimpleVariable) {
+            return ((SimpleVariable) item).getValue(vars);
+        } else if (item instanceof Function) {
+            try {
+                return ((Function) item).execute(previousResult, currentSampler);
+            } catch (InvalidVariableException e) {
+                // TODO should level be more than debug ?
+                if(log.isDebugEnabled()) {
+                    log.debug("Invalid variable:"+item, e);
+                }
+                return ""; // $NON-NLS-1$
+            }
+        }
+        return String.valueOf(item);
+    }
+
     public CompoundVariable getFunction() {
         CompoundVariable func = new CompoundVariable();
-        func.compiledComponents = (LinkedList<Object>) compiledComponents.clone();
+        func.compiledComponents = compiledComponents; // never modified, so can be shared
         func.rawParameters = rawParameters;
         func.hasFunction = hasFunction;
         func.isDynamic = isDynamic;
+        func.hasVariable = hasVariable;
+        func.permanentResults = permanentResults;
+        func.lengthHint = lengthHint;
         return func;
     }
 
@@ -175,9 +217,11 @@ public class CompoundVariable implements Function {
     }
 
     public void clear() {
-        // TODO should this also clear isDynamic, rawParameters, permanentResults?
+        // TODO should this also clear isDynamic, rawParameters?
         hasFunction = false;
-        compiledComponents.clear();
+        hasVariable = false;
+        permanentResults = null;
+        compiledComponents = NO_COMPONENTS;
     }
 
     public void setParameters(String parameters) throws InvalidVariableException {
@@ -186,18 +230,68 @@ public class CompoundVariable implements Function {
             return;
         }
 
-        compiledComponents = functionParser.compileString(parameters);
-        if (compiledComponents.size() > 1 || !(compiledComponents.get(0) instanceof String)) {
-            hasFunction = true;
+        Object[] components = compileCache.get(parameters);
+        boolean parsedFunction = false;
+        if (components == null) {
+            LinkedList<Object> parsed = functionParser.compileString(parameters);
+            // Invalid references are parsed as several Strings; they are still treated as functions
+            parsedFunction = parsed.size() > 1 || !(parsed.get(0) instanceof String);
+            components = fold(parsed);
+            boolean cacheable = !parsedFunction || components.length > 1;
+            for (int i = 0; i < components.length; i++) {
+                if (components[i] instanceof Function) {
+                    cacheable = false;
+                    break;
+                }
+            }
+            if (cacheable && compileCache.size() < COMPILE_CACHE_SIZE) {
+                compileCache.put(parameters, components);
+            }
         }
-        permanentResults = null; // To be calculated and cached on first execution
+        compiledComponents = components;
+        lengthHint = parameters.length();
         isDynamic = false;
-        for (Object item : compiledComponents) {
-            if (item instanceof Function || item instanceof SimpleVariable) {
+        hasVariable = false;
+        for (int i = 0; i < components.length; i++) {
+            Object item = components[i];
+            if (item instanceof Function) {
+                isDynamic = true;
+            } else if (item instanceof SimpleVariable) {
                 isDynamic = true;
-                break;
+                hasVariable = true;
+            }
+        }
+        hasFunction = isDynamic || parsedFunction;
+        permanentResults = isDynamic ? null : execute(null, null, null);
+    }
+
+    /**
+     * Fold adjacent static text into single Strings.
+     *
+     * @param parsed the components produced by the parser
+     * @return the folded components
+     */
+    private static Object[] fold(List<Object> parsed) {
+        List<Object> folded = new LinkedList<Object>();
+        StringBuilder text = null;
+        for (Object item : parsed) {
+            if (item instanceof Function || item instanceof SimpleVariable) {
+                if (text != null) {
+                    folded.add(text.toString());
+                    text = null;
+                }
+                folded.add(item);
+            } else {
+                if (text == null) {
+                    text = new StringBuilder();
+                }
+                text.append(item);
             }
         }
+        if (text != null) {
+            folded.add(text.toString());
+        }
+        return folded.toArray();
     }
 
     static Object getNamedFunction(String functionName) throws InvalidVariableException {
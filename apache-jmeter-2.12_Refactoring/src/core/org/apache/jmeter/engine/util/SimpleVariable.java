@@ -26,12 +26,18 @@ public class SimpleVariable {
 
     private String name;
 
+    // The value returned when the variable is not defined
+    private String reference;
+
+    // Shared by the threads using a compiled expression, so replaced as a whole
+    private volatile Slot slot;
+
     public SimpleVariable(String name) {
-        this.name = name;
+        setName(name);
     }
 
     public SimpleVariable() {
-        this.name = ""; //$NON-NLS-1$
+        this(""); //$NON-NLS-1$
     }
 
     public String getName() {
@@ -40,6 +46,20 @@ public class SimpleVariable {
 
     public void setName(String name) {
         this.name = name;
+        this.reference = "${" + name + "}"; //$NON-NLS-1$ //$NON-NLS-2$
+        resolveSlot();
+    }
+
+    private Slot resolveSlot() {
+        while (true) {
+            int generation = JMeterVariables.getSlotGeneration();
+            int index = JMeterVariables.slotOf(name);
+            if (generation == JMeterVariables.getSlotGeneration()) { // the slot is of that generation
+                Slot resolved = new Slot(generation, index);
+                slot = resolved;
+                return resolved;
+            }
+        }
     }
 
     /**
@@ -47,15 +67,29 @@ public class SimpleVariable {
      */
     @Override
     public String toString() {
+        return getValue(getVariables());
+    }
+
+    /**
+     * Look up the variable in the given variables, so callers evaluating several
+     * variables only need to fetch the thread context once.
+     *
+     * @param vars the variables of the current thread, may be null
+     * @return the value of the variable, or its reference if it is not defined
+     */
+    String getValue(JMeterVariables vars) {
         String ret = null;
-        JMeterVariables vars = getVariables();
 
         if (vars != null) {
-            ret = vars.get(name);
+            Slot current = slot;
+            if (current.generation != JMeterVariables.getSlotGeneration()) {
+                current = resolveSlot(); // a new test has started
+            }
+            ret = current.index >= 0 ? vars.get(name, current.index, current.generation) : vars.get(name);
         }
 
         if (ret == null) {
-            return "${" + name + "}";
+            return reference;
         }
 
         return ret;
@@ -66,4 +100,18 @@ public class SimpleVariable {
         return context.getVariables();
     }
 
+    /**
+     * The slot of the variable and the generation it was given in.
+     */
+    private static final class Slot {
+        private final int generation;
+
+        private final int index;
+
+        Slot(int generation, int index) {
+            this.generation = generation;
+            this.index = index;
+        }
+    }
+
 }
@@ -20,8 +20,10 @@ package org.apache.jmeter.gui.action;
 
 import java.awt.Component;
 import java.awt.event.ActionEvent;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -87,6 +89,7 @@ public class RemoteStart extends AbstractAction {
                 String el = (String) st.nextElement();
                 doRemoteInit(el.trim());
             }
+            doRemoteConfigure(remote_hosts_string);
             st = new java.util.StringTokenizer(remote_hosts_string, REMOTE_HOSTS_SEPARATOR);
             while (st.hasMoreElements()) {
                 String el = (String) st.nextElement();
@@ -169,6 +172,31 @@ public class RemoteStart extends AbstractAction {
         }
     }
 
+    /**
+     * Sends the test plan to the initialised remote engines at the same time.
+     * An engine which could not be sent it is tried again, and reported, by {@link #doRemoteStart(String)}.
+     *
+     * @param remote_hosts_string
+     *            the remote hosts separated by {@link #REMOTE_HOSTS_SEPARATOR}
+     */
+    private void doRemoteConfigure(String remote_hosts_string) {
+        List<JMeterEngine> engines = new ArrayList<JMeterEngine>();
+        java.util.StringTokenizer st = new java.util.StringTokenizer(remote_hosts_string, REMOTE_HOSTS_SEPARATOR);
+        while (st.hasMoreElements()) {
+            JMeterEngine engine = remoteEngines.get(((String) st.nextElement()).trim());
+            if (engine != null) {
+                engines.add(engine);
+            }
+        }
+        try {
+            ClientJMeterEngine.configureRemotes(engines);
+        } catch (IllegalStateException e) {
+            log.warn("Failed to configure remote engines: " + e.getMessage());
+        } catch (JMeterEngineException e) {
+            log.warn("Failed to configure remote engines: " + e.getMessage());
+        }
+    }
+
     /**
      * Initializes remote engines
      */
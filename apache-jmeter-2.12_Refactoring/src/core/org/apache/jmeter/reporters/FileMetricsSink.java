@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.jorphan.util.JOrphanUtils;
+
+/**
+ * Appends batches of metrics lines to a local file, in UTF-8.
+ * The destination is <code>file:</code> followed by the name of the file.
+ */
+public class FileMetricsSink implements MetricsSink {
+
+    static final String SCHEME = "file:"; // $NON-NLS-1$
+
+    private Writer out;
+
+    @Override
+    public void open(String destination) throws IOException {
+        String name = destination.startsWith(SCHEME) ? destination.substring(SCHEME.length()) : destination;
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(name, true), "UTF-8")); // $NON-NLS-1$
+    }
+
+    @Override
+    public void send(CharSequence batch) throws IOException {
+        out.append(batch);
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        JOrphanUtils.closeQuietly(out);
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Writes the records of a result file from a background thread, so that sampling threads
+ * do not wait for each other or for the disk.
+ * <p>
+ * Each thread appends its records to its own staging buffer; each call to a <code>write</code>
+ * method should add whole records, as it is what is dropped on overflow. A single flusher thread
+ * collects the buffers of all the threads every <code>interval</code> milliseconds, or
+ * sooner when more than <code>batchSize</code> characters are waiting, writes them to the
+ * file in one go and flushes it. Records of one thread stay in order, but records of
+ * different threads may be interleaved differently from the order in which they were added.
+ * <p>
+ * At most <code>maxPending</code> characters are held in memory. When that is reached,
+ * the adding thread waits for the flusher, or the record is dropped and counted if
+ * <code>dropOnOverflow</code> is set. The buffer of a thread which has ended is discarded once
+ * it has been written, and a buffer grown by a burst of large records is replaced by a small one.
+ * <p>
+ * {@link #flush()} writes everything added so far from the calling thread, which is what
+ * the shutdown hook of {@link ResultCollector} relies on.
+ */
+final class GroupCommitWriter extends Writer implements Runnable {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    // How long a producer waits for room before trying again, in nanoseconds
+    private static final long PRODUCER_WAIT = 100000L;
+
+    private static final int INITIAL_BUFFER = 256;
+
+    // Buffers larger than this are not kept once written, in characters
+    private static final int MAX_RETAINED_BUFFER = 65536;
+
+    private static final class Staging {
+        // Guarded by this
+        StringBuilder buffer = new StringBuilder(INITIAL_BUFFER);
+
+        // The thread which adds to the buffer; a weak reference so ended threads can be collected
+        final WeakReference<Thread> owner = new WeakReference<Thread>(Thread.currentThread());
+
+        boolean isOwnerAlive() {
+            Thread t = owner.get();
+            return t != null && t.isAlive();
+        }
+    }
+
+    private final PrintWriter out;
+
+    private final String name;
+
+    private final long interval;
+
+    private final long batchSize;
+
+    private final long maxPending;
+
+    private final boolean dropOnOverflow;
+
+    private final ThreadLocal<Staging> staging = new ThreadLocal<Staging>() {
+        @Override
+        protected Staging initialValue() {
+            Staging s = new Staging();
+            stagings.add(s);
+            return s;
+        }
+    };
+
+    private final CopyOnWriteArrayList<Staging> stagings = new CopyOnWriteArrayList<Staging>();
+
+    // Characters added but not yet written
+    private final AtomicLong pending = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong waits = new AtomicLong();
+
+    // Guards writing to out, so that the flusher and flush() do not interleave batches
+    private final Object writeLock = new Object();
+
+    // Only used while holding writeLock
+    private char[] chars = new char[8192];
+
+    private final Thread thread;
+
+    private volatile boolean closed;
+
+    private volatile long batches;
+
+    private volatile long maxPendingSeen;
+
+    /**
+     * @param out the writer of the file, which is only used by the flusher thread and by
+     * {@link #flush()} and {@link #close()}
+     * @param name name of the file, used for the thread name and logging
+     * @param interval maximum time in milliseconds before added records are written
+     * @param batchSize number of waiting characters which cause an early write
+     * @param maxPending maximum number of characters held in memory
+     * @param dropOnOverflow true to drop records rather than wait when <code>maxPending</code> is reached
+     */
+    GroupCommitWriter(PrintWriter out, String name, long interval, long batchSize, long maxPending,
+            boolean dropOnOverflow) {
+        this.out = out;
+        this.name = name;
+        this.interval = interval;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.dropOnOverflow = dropOnOverflow;
+        this.thread = new Thread(this, "Group commit " + name); // $NON-NLS-1$
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Add a record, which should include its line end.
+     */
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        if (!reserve(len)) {
+            return;
+        }
+        Staging s = staging.get();
+        synchronized (s) {
+            s.buffer.append(cbuf, off, len);
+        }
+        added(len);
+    }
+
+    /**
+     * Add a record, which should include its line end.
+     */
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    /**
+     * Add a record, which should include its line end.
+     */
+    @Override
+    public void write(String str, int off, int len) {
+        if (!reserve(len)) {
+            return;
+        }
+        Staging s = staging.get();
+        synchronized (s) {
+            s.buffer.append(str, off, off + len);
+        }
+        added(len);
+    }
+
+    // returns false if the record is dropped
+    private boolean reserve(int length) {
+        if (pending.get() + length > maxPending && !waitForRoom(length)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (closed) {
+            log.warn("Record added after " + name + " was closed, ignored");
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private void added(int length) {
+        long now = pending.addAndGet(length);
+        if (now > maxPendingSeen) {
+            maxPendingSeen = now; // not atomic, but close enough for a statistic
+        }
+        if (now > batchSize) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // returns false if the record should be dropped
+    private boolean waitForRoom(int length) {
+        if (dropOnOverflow) {
+            return false;
+        }
+        waits.incrementAndGet();
+        // A record larger than maxPending is accepted once everything else has been written
+        while (pending.get() + length > maxPending && pending.get() > 0) {
+            if (closed) {
+                return true;
+            }
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(this, PRODUCER_WAIT);
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        long wait = interval * 1000000L;
+        while (!closed) {
+            LockSupport.parkNanos(this, wait);
+            if (pending.get() > 0) {
+                writeBatch();
+            }
+        }
+    }
+
+    /**
+     * Write the records added so far and flush the file.
+     */
+    @Override
+    public void flush() {
+        writeBatch();
+    }
+
+    /**
+     * Stop the flusher thread and write the remaining records.
+     * The file is flushed but not closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for the flusher of " + name);
+        }
+        writeBatch();
+        log.info("Group commit " + this);
+    }
+
+    private void writeBatch() {
+        synchronized (writeLock) {
+            long length = 0;
+            List<Staging> ended = null;
+            for (Staging st : stagings) {
+                int n;
+                synchronized (st) {
+                    n = st.buffer.length();
+                    if (n > chars.length) {
+                        chars = new char[Math.max(n, chars.length * 2)];
+                    }
+                    st.buffer.getChars(0, n, chars, 0);
+                    if (st.buffer.capacity() > MAX_RETAINED_BUFFER) {
+                        st.buffer = new StringBuilder(INITIAL_BUFFER);
+                    } else {
+                        st.buffer.setLength(0);
+                    }
+                }
+                if (n > 0) {
+                    out.write(chars, 0, n);
+                    length += n;
+                }
+                // An ended thread cannot add any more, so its empty buffer can go
+                if (!st.isOwnerAlive()) {
+                    if (ended == null) {
+                        ended = new ArrayList<Staging>();
+                    }
+                    ended.add(st);
+                }
+            }
+            if (ended != null) {
+                stagings.removeAll(ended);
+            }
+            if (chars.length > MAX_RETAINED_BUFFER) {
+                chars = new char[8192];
+            }
+            if (length > 0) {
+                batches++;
+            }
+            out.flush();
+            pending.addAndGet(-length);
+        }
+    }
+
+    /**
+     * @return the number of threads which have a staging buffer
+     */
+    int getStagingCount() {
+        return stagings.size();
+    }
+
+    /**
+     * @return the number of characters waiting to be written
+     */
+    long getPending() {
+        return pending.get();
+    }
+
+    /**
+     * @return the largest number of characters seen waiting
+     */
+    long getMaxPending() {
+        return maxPendingSeen;
+    }
+
+    /**
+     * @return the number of writes to the file
+     */
+    long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the number of records dropped because too many characters were waiting
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of times a thread had to wait for room
+     */
+    long getWaits() {
+        return waits.get();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": batches=" + batches + " dropped=" + dropped.get() + " waits=" + waits.get() // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+                + " max pending=" + maxPendingSeen + "/" + maxPending; // $NON-NLS-1$ $NON-NLS-2$
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.jmeter.engine.util.NoThreadClone;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleListener;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.math.LongHistogram;
+import org.apache.log.Logger;
+
+/**
+ * Aggregates the samples per label over short intervals (one second by default) where they are taken,
+ * and sends one compact batch of lines per interval to a {@link MetricsSink} from a background thread,
+ * instead of sending every sample.
+ * <p>
+ * For each label with samples in the interval, and for all of them under the name <code>all</code>,
+ * the lines use the Graphite plaintext protocol,
+ * <code>prefix.label.metric value timestamp</code>, with the metrics
+ * <code>count</code>, <code>errors</code>, <code>bytes</code>, <code>avg</code>, <code>min</code>,
+ * <code>max</code>, <code>pct50</code>, <code>pct90</code>, <code>pct95</code>, <code>pct99</code>
+ * (elapsed times in milliseconds, from a {@link LongHistogram}) and <code>latency</code> (average).
+ * Characters other than letters, digits, '-' and '_' in labels are replaced by '_'.
+ * <p>
+ * The destination is <code>tcp://host:port</code>, <code>udp://host:port</code> or <code>file:name</code>,
+ * unless a {@link MetricsSink} class is given, which then receives the destination as it is.
+ * If a batch cannot be sent, it is dropped and counted; sampling threads never wait for the sink.
+ * <p>
+ * This listener is not {@link org.apache.jmeter.samplers.Remoteable}, so in distributed tests
+ * each server aggregates and sends its own samples.
+ */
+public class MetricsListener extends AbstractTestElement
+    implements Serializable, SampleListener, TestStateListener, NoThreadClone {
+
+    private static final long serialVersionUID = 240L;
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    public static final String DESTINATION = "MetricsListener.destination"; // $NON-NLS-1$
+
+    public static final String SINK_CLASS = "MetricsListener.sinkClass"; // $NON-NLS-1$
+
+    public static final String PREFIX = "MetricsListener.prefix"; // $NON-NLS-1$
+
+    public static final String INTERVAL = "MetricsListener.interval"; // $NON-NLS-1$
+
+    public static final String DEFAULT_PREFIX = "jmeter"; // $NON-NLS-1$
+
+    public static final int DEFAULT_INTERVAL = 1; // seconds
+
+    private static final String ALL_LABEL = "all"; // $NON-NLS-1$
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    // How long testEnded waits for the sending thread, before and after closing the sink
+    private static final long STOP_TIMEOUT = 5000; // ms
+
+    /**
+     * Statistics of the samples of one label during one interval.
+     */
+    private static final class Window {
+        long count;
+
+        long errors;
+
+        long bytes;
+
+        long sum;
+
+        long latency;
+
+        final LongHistogram elapsed = new LongHistogram(SIGNIFICANT_DIGITS);
+
+        void add(SampleResult res) {
+            int n = res.getSampleCount();
+            long time = res.getTime();
+            count += n;
+            errors += res.getErrorCount();
+            bytes += res.getBytes();
+            sum += time;
+            latency += res.getLatency();
+            if (n > 1) {
+                elapsed.record(time / n, n);
+            } else {
+                elapsed.record(time);
+            }
+        }
+
+        void add(Window other) {
+            count += other.count;
+            errors += other.errors;
+            bytes += other.bytes;
+            sum += other.sum;
+            latency += other.latency;
+            elapsed.add(other.elapsed);
+        }
+
+        void clear() {
+            count = 0;
+            errors = 0;
+            bytes = 0;
+            sum = 0;
+            latency = 0;
+            elapsed.clear();
+        }
+    }
+
+    /**
+     * Samples of one label: sampling threads add to the current window,
+     * which the sending thread swaps with the spare one at the end of each interval.
+     */
+    private static final class LabelMetrics {
+        final String path;
+
+        //@GuardedBy("this")
+        Window current = new Window();
+
+        // Only used by the sending thread
+        Window spare = new Window();
+
+        LabelMetrics(String path) {
+            this.path = path;
+        }
+    }
+
+    private transient ConcurrentMap<String, LabelMetrics> labels;
+
+    private transient MetricsSink sink;
+
+    private transient Thread sender;
+
+    private transient volatile boolean running;
+
+    // Only used by the sending thread, then by testEnded once it has stopped
+    private transient StringBuilder batch;
+
+    private transient Window all;
+
+    private transient long batches;
+
+    private transient long failedBatches;
+
+    public MetricsListener() {
+        super();
+    }
+
+    public String getDestination() {
+        return getPropertyAsString(DESTINATION);
+    }
+
+    public void setDestination(String destination) {
+        setProperty(DESTINATION, destination);
+    }
+
+    public String getSinkClass() {
+        return getPropertyAsString(SINK_CLASS);
+    }
+
+    public void setSinkClass(String className) {
+        setProperty(SINK_CLASS, className, ""); // $NON-NLS-1$
+    }
+
+    public String getPrefix() {
+        return getPropertyAsString(PREFIX, DEFAULT_PREFIX);
+    }
+
+    public void setPrefix(String prefix) {
+        setProperty(PREFIX, prefix, DEFAULT_PREFIX);
+    }
+
+    public int getInterval() {
+        return Math.max(1, getPropertyAsInt(INTERVAL, DEFAULT_INTERVAL));
+    }
+
+    public void setInterval(String seconds) {
+        setProperty(INTERVAL, seconds, ""); // $NON-NLS-1$
+    }
+
+    /**
+     * Create the sink for the destination.
+     *
+     * @param className the {@link MetricsSink} class, or an empty string to choose one from the destination
+     * @param destination the destination
+     * @return the sink, not opened yet
+     * @throws IOException if the sink cannot be created
+     */
+    static MetricsSink createSink(String className, String destination) throws IOException {
+        if (className.length() > 0) {
+            try {
+                return (MetricsSink) Class.forName(className).newInstance();
+            } catch (Exception e) {
+                throw new IOException("Cannot create metrics sink " + className + ": " + e);
+            }
+        }
+        if (destination.startsWith("tcp:")) { // $NON-NLS-1$
+            return new TcpMetricsSink();
+        }
+        if (destination.startsWith("udp:")) { // $NON-NLS-1$
+            return new UdpMetricsSink();
+        }
+        if (destination.startsWith(FileMetricsSink.SCHEME)) {
+            return new FileMetricsSink();
+        }
+        throw new IOException("Unknown metrics destination " + destination
+                + ", expected tcp://host:port, udp://host:port or file:name");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sampleOccurred(SampleEvent e) {
+        ConcurrentMap<String, LabelMetrics> map = labels;
+        if (map == null) { // not started, or could not be started
+            return;
+        }
+        SampleResult res = e.getResult();
+        String label = res.getSampleLabel();
+        LabelMetrics metrics = map.get(label);
+        if (metrics == null) {
+            metrics = new LabelMetrics(getPrefix() + '.' + sanitize(label) + '.');
+            LabelMetrics previous = map.putIfAbsent(label, metrics);
+            if (previous != null) {
+                metrics = previous;
+            }
+        }
+        synchronized (metrics) {
+            metrics.current.add(res);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sampleStarted(SampleEvent e) {
+        // not used
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void sampleStopped(SampleEvent e) {
+        // not used
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void testStarted() {
+        testStarted("local"); // $NON-NLS-1$
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void testStarted(String host) {
+        try {
+            sink = createSink(getSinkClass().trim(), getDestination().trim());
+            sink.open(getDestination().trim());
+        } catch (IOException e) {
+            log.error("Metrics will not be sent: " + e.getMessage());
+            sink = null;
+            return;
+        }
+        labels = new ConcurrentHashMap<String, LabelMetrics>();
+        batch = new StringBuilder(4096);
+        all = new Window();
+        batches = 0;
+        failedBatches = 0;
+        running = true;
+        final long interval = getInterval() * 1000L;
+        sender = new Thread("MetricsListener " + getName()) { // $NON-NLS-1$
+            @Override
+            public void run() {
+                while (running) {
+                    // Send at the end of each interval of the clock, as Summariser does
+                    long now = System.currentTimeMillis();
+                    long next = (now / interval + 1) * interval;
+                    try {
+                        Thread.sleep(next - now);
+                    } catch (InterruptedException e) {
+                        return; // testEnded sends the last samples
+                    }
+                    send(next);
+                }
+            }
+        };
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void testEnded() {
+        testEnded("local"); // $NON-NLS-1$
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void testEnded(String host) {
+        if (sink == null) {
+            return;
+        }
+        running = false;
+        sender.interrupt();
+        if (join(sender)) {
+            send(System.currentTimeMillis());
+        } else {
+            // The sink is blocked sending a batch: closing it makes the send fail
+            log.warn(getName() + ": could not send metrics to " + getDestination()
+                    + " within " + STOP_TIMEOUT + " ms, dropping the last ones");
+            sink.close();
+            join(sender);
+            failedBatches++;
+        }
+        sink.close();
+        log.info(getName() + ": sent " + batches + " batches of metrics, failed to send " + failedBatches);
+        sink = null;
+        labels = null;
+    }
+
+    /**
+     * @param thread the thread to wait for
+     * @return true if the thread has stopped within {@link #STOP_TIMEOUT}
+     */
+    private static boolean join(Thread thread) {
+        try {
+            thread.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+
+    /**
+     * Send the samples of the interval ending at the given time.
+     *
+     * @param time end of the interval in milliseconds
+     */
+    void send(long time) {
+        String stamp = Long.toString(time / 1000);
+        batch.setLength(0);
+        all.clear();
+        for (LabelMetrics metrics : labels.values()) {
+            Window window;
+            synchronized (metrics) {
+                window = metrics.current;
+                metrics.current = metrics.spare;
+            }
+            if (window.count > 0) {
+                append(metrics.path, window, stamp);
+                all.add(window);
+            }
+            window.clear();
+            metrics.spare = window;
+        }
+        if (all.count == 0) {
+            return;
+        }
+        append(getPrefix() + '.' + ALL_LABEL + '.', all, stamp);
+        try {
+            sink.send(batch);
+            batches++;
+        } catch (IOException e) {
+            if (failedBatches == 0 || log.isDebugEnabled()) {
+                log.warn(getName() + ": could not send metrics to " + getDestination() + ": " + e.getMessage());
+            }
+            failedBatches++;
+        }
+    }
+
+    private void append(String path, Window window, String stamp) {
+        line(path, "count", window.count, stamp); // $NON-NLS-1$
+        line(path, "errors", window.errors, stamp); // $NON-NLS-1$
+        line(path, "bytes", window.bytes, stamp); // $NON-NLS-1$
+        line(path, "avg", window.sum / window.count, stamp); // $NON-NLS-1$
+        line(path, "min", window.elapsed.getMin(), stamp); // $NON-NLS-1$
+        line(path, "max", window.elapsed.getMax(), stamp); // $NON-NLS-1$
+        line(path, "pct50", window.elapsed.getPercentPoint(0.5), stamp); // $NON-NLS-1$
+        line(path, "pct90", window.elapsed.getPercentPoint(0.9), stamp); // $NON-NLS-1$
+        line(path, "pct95", window.elapsed.getPercentPoint(0.95), stamp); // $NON-NLS-1$
+        line(path, "pct99", window.elapsed.getPercentPoint(0.99), stamp); // $NON-NLS-1$
+        line(path, "latency", window.latency / window.count, stamp); // $NON-NLS-1$
+    }
+
+    private void line(String path, String metric, long value, String stamp) {
+        batch.append(path).append(metric).append(' ').append(value).append(' ').append(stamp).append('\n');
+    }
+
+    /**
+     * @param label a sample label
+     * @return the label with the characters which have a meaning in metric paths replaced by '_'
+     */
+    static String sanitize(String label) {
+        StringBuilder sb = new StringBuilder(label.length());
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_') {
+                sb.append(c);
+            } else {
+                sb.append('_');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the number of batches sent
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the number of batches which could not be sent
+     */
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+}
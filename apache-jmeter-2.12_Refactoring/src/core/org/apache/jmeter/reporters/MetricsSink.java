@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters;
+
+import java.io.IOException;
+
+/**
+ * Destination of the batches of metrics lines sent by {@link MetricsListener}.
+ * <p>
+ * Implementations must have a public no-argument constructor.
+ * The methods are called by one thread at a time, except {@link #close()}.
+ */
+public interface MetricsSink {
+
+    /**
+     * Prepare to send batches, called once at the start of the test.
+     *
+     * @param destination where to send the batches, as entered in the listener
+     * @throws IOException if the destination is invalid
+     */
+    void open(String destination) throws IOException;
+
+    /**
+     * Send one batch. If this fails, the batch is dropped and the next one is sent with a further call.
+     *
+     * @param batch lines, each ended with a line feed
+     * @throws IOException if the batch could not be sent
+     */
+    void send(CharSequence batch) throws IOException;
+
+    /**
+     * Release the resources, called at the end of the test.
+     * If a {@link #send(CharSequence)} does not finish in time, this is also called from another thread
+     * while it is in progress, and should make it fail.
+     */
+    void close();
+}
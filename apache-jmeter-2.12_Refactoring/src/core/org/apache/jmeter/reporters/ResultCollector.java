@@ -27,10 +27,12 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -43,6 +45,9 @@ import org.apache.jmeter.samplers.SampleEvent;
 import org.apache.jmeter.samplers.SampleListener;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.save.BinaryResultReader;
+import org.apache.jmeter.save.BinaryResultWriter;
+import org.apache.jmeter.save.CSVResultSerializer;
 import org.apache.jmeter.save.CSVSaveService;
 import org.apache.jmeter.save.OldSaveService;
 import org.apache.jmeter.save.SaveService;
@@ -64,6 +69,26 @@ import com.thoughtworks.xstream.converters.ConversionException;
 /**
  * This class handles all saving of samples.
  * The class must be thread-safe because it is shared between threads (NoThreadClone).
+ * <p>
+ * If <code>jmeter.save.saveservice.group_commit</code> is true, CSV and XML files are written
+ * by a {@link GroupCommitWriter} rather than by the sampling threads:
+ * <ul>
+ * <li><code>jmeter.save.saveservice.group_commit.interval</code>: maximum time in milliseconds
+ * before a sample is written (default 1000)</li>
+ * <li><code>jmeter.save.saveservice.group_commit.batch_size</code>: number of waiting characters
+ * which cause an early write (default 65536)</li>
+ * <li><code>jmeter.save.saveservice.group_commit.max_pending</code>: maximum number of characters
+ * waiting per file (default 8388608)</li>
+ * <li><code>jmeter.save.saveservice.group_commit.overflow</code>: <code>block</code> (default)
+ * to wait for room, or <code>drop</code> to count and skip the sample</li>
+ * </ul>
+ * The file is flushed after each write, so <code>jmeter.save.saveservice.autoflush</code> is not used.
+ * <p>
+ * If <code>jmeter.save.saveservice.retain_every</code> is set to N greater than 1, only failed samples,
+ * one in N successful samples, and the <code>jmeter.save.saveservice.retain_slowest</code> slowest
+ * successful samples so far for each label keep their response data, headers, sampler data and sub-results
+ * in the file and in the visualizer. The other samples only keep their timings and status,
+ * so statistics computed from them are still exact. See {@link SampleRetention}.
  */
 public class ResultCollector extends AbstractListenerElement implements SampleListener, Clearable, Serializable,
         TestStateListener, Remoteable, NoThreadClone {
@@ -99,6 +124,21 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
     /** AutoFlush on each line */
     private static final boolean SAVING_AUTOFLUSH = JMeterUtils.getPropDefault("jmeter.save.saveservice.autoflush", false); //$NON-NLS-1$
 
+    /** Write text files from a background thread */
+    private static final boolean GROUP_COMMIT = JMeterUtils.getPropDefault("jmeter.save.saveservice.group_commit", false); //$NON-NLS-1$
+
+    private static final long GROUP_COMMIT_INTERVAL =
+        JMeterUtils.getPropDefault("jmeter.save.saveservice.group_commit.interval", 1000L); //$NON-NLS-1$
+
+    private static final long GROUP_COMMIT_BATCH_SIZE =
+        JMeterUtils.getPropDefault("jmeter.save.saveservice.group_commit.batch_size", 65536L); //$NON-NLS-1$
+
+    private static final long GROUP_COMMIT_MAX_PENDING =
+        JMeterUtils.getPropDefault("jmeter.save.saveservice.group_commit.max_pending", 8388608L); //$NON-NLS-1$
+
+    private static final boolean GROUP_COMMIT_DROP =
+        "drop".equals(JMeterUtils.getPropDefault("jmeter.save.saveservice.group_commit.overflow", "block")); //$NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+
     // Static variables
 
     // Lock used to guard static mutable variables
@@ -119,10 +159,14 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
      * them. This means one cannot use the saved PrintWriter or use getSaveConfig()
      */
     private static class FileEntry{
-        final PrintWriter pw;
+        final PrintWriter pw; // null for binary files
+        final BinaryResultWriter bw; // null for text files
+        final GroupCommitWriter gw; // null unless group commit is used
         final SampleSaveConfiguration config;
-        FileEntry(PrintWriter _pw, SampleSaveConfiguration _config){
+        FileEntry(PrintWriter _pw, BinaryResultWriter _bw, GroupCommitWriter _gw, SampleSaveConfiguration _config){
             pw =_pw;
+            bw = _bw;
+            gw = _gw;
             config = _config;
         }
     }
@@ -140,6 +184,16 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
 
     private transient volatile PrintWriter out;
 
+    private transient volatile BinaryResultWriter binaryOut;
+
+    private transient volatile GroupCommitWriter groupOut;
+
+    // Created for the save configuration of the first CSV sample
+    private transient volatile CSVResultSerializer csvSerializer;
+
+    // Created for the save configuration of the first sample of each test
+    private transient volatile SampleRetention retention;
+
     private volatile boolean inTest = false;
 
     private volatile boolean isStats = false;
@@ -276,6 +330,11 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
                 inTest = false;
             }
         }
+        SampleRetention r = retention;
+        if (r != null && r.isEnabled()) {
+            log.info("Kept full data of " + r.getRetained() + " samples and timings only of "
+                    + r.getSummarised() + " samples for " + getName());
+        }
 
         if(summariser != null) {
             summariser.testEnded(host);
@@ -290,6 +349,7 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
                 Runtime.getRuntime().addShutdownHook(shutdownHook);
             }
             instanceCount++;
+            retention = null;
             try {
                 initializeFileOutput();
                 if (getVisualizer() != null) {
@@ -322,6 +382,7 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
      * - XStream format
      * - Avalon format
      * - CSV format
+     * - binary format
      *
      */
     public void loadExistingFile() {
@@ -343,6 +404,9 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
                 dataReader = null;
                 if (line == null) {
                     log.warn(filename+" is empty");
+                } else if (BinaryResultReader.isBinary(file)) {
+                    BinaryResultReader.processSamples(filename, visualizer, this);
+                    parsedOK = true;
                 } else {
                     if (!line.startsWith("<?xml ")){// No, must be CSV //$NON-NLS-1$
                         CSVSaveService.processSamples(filename, visualizer, this);
@@ -424,7 +488,7 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
         }
     }
 
-    private static PrintWriter getFileWriter(String filename, SampleSaveConfiguration saveConfig)
+    private static FileEntry getFileEntry(String filename, SampleSaveConfiguration saveConfig)
             throws IOException {
         if (filename == null || filename.length() == 0) {
             return null;
@@ -435,7 +499,19 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
         boolean trimmed = true;
 
         if (fe == null) {
-            if (saveConfig.saveAsXml()) {
+            // Appending samples in another format would make the file unreadable
+            File file = new File(filename);
+            if (file.length() > 0 && BinaryResultReader.isBinary(file) != saveConfig.saveAsBinary()) {
+                if (saveConfig.saveAsBinary()) {
+                    throw new IOException("Cannot append binary samples to " + filename
+                            + ", which is not a binary result file");
+                }
+                throw new IOException("Cannot append CSV or XML samples to " + filename
+                        + ", which is a binary result file");
+            }
+            if (saveConfig.saveAsBinary()) {
+                trimmed = file.length() > 0;
+            } else if (saveConfig.saveAsXml()) {
                 trimmed = trimLastLine(filename);
             } else {
                 trimmed = new File(filename).exists();
@@ -452,17 +528,30 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
                     log.warn("Error creating directories for "+pdir.toString());
                 }
             }
-            writer = new PrintWriter(new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(filename,
-                    trimmed)), SaveService.getFileEncoding("UTF-8")), SAVING_AUTOFLUSH); // $NON-NLS-1$
+            OutputStream stream = new BufferedOutputStream(new FileOutputStream(filename, trimmed));
+            if (saveConfig.saveAsBinary()) {
+                // Binary files write their own header
+                fe = new FileEntry(null, new BinaryResultWriter(stream, saveConfig, trimmed), null, saveConfig);
+                trimmed = true;
+            } else {
+                writer = new PrintWriter(new OutputStreamWriter(stream,
+                        SaveService.getFileEncoding("UTF-8")), SAVING_AUTOFLUSH && !GROUP_COMMIT); // $NON-NLS-1$
+                GroupCommitWriter groupWriter = null;
+                if (GROUP_COMMIT) {
+                    groupWriter = new GroupCommitWriter(writer, filename, GROUP_COMMIT_INTERVAL,
+                            GROUP_COMMIT_BATCH_SIZE, GROUP_COMMIT_MAX_PENDING, GROUP_COMMIT_DROP);
+                }
+                fe = new FileEntry(writer, null, groupWriter, saveConfig);
+            }
             log.debug("Opened file: "+filename);
-            files.put(filename, new FileEntry(writer, saveConfig));
+            files.put(filename, fe);
         } else {
             writer = fe.pw;
         }
         if (!trimmed) {
             writeFileStart(writer, saveConfig);
         }
-        return writer;
+        return fe;
     }
 
     // returns false if the file did not contain the terminator
@@ -531,16 +620,48 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
         SampleResult result = event.getResult();
 
         if (isSampleWanted(result.isSuccessful())) {
-            sendToVisualizer(result);
-            if (out != null && !isResultMarked(result) && !this.isStats) {
-                SampleSaveConfiguration config = getSaveConfig();
-                result.setSaveConfig(config);
+            SampleSaveConfiguration config = getSaveConfig();
+            SampleRetention policy = retention;
+            if (policy == null || policy.getSaveConfig() != config) {
+                policy = new SampleRetention(config);
+                retention = policy;
+            }
+            boolean retained = policy.retain(result);
+            if (retained) {
+                sendToVisualizer(result);
+            } else if (getVisualizer() != null) {
+                sendToVisualizer(SampleRetention.summarise(result));
+            }
+            if ((out != null || binaryOut != null) && !isResultMarked(result) && !this.isStats) {
+                result.setSaveConfig(retained ? config : policy.getSummaryConfig());
                 try {
-                    if (config.saveAsXml()) {
-                        SaveService.saveSampleResult(event, out);
+                    if (binaryOut != null) {
+                        binaryOut.write(event);
+                        if (SAVING_AUTOFLUSH) {
+                            binaryOut.flush();
+                        }
+                    } else if (config.saveAsXml()) {
+                        if (groupOut != null) {
+                            StringWriter xml = new StringWriter();
+                            SaveService.saveSampleResult(event, xml);
+                            groupOut.write(xml.toString());
+                        } else {
+                            SaveService.saveSampleResult(event, out);
+                        }
                     } else { // !saveAsXml
-                        String savee = CSVSaveService.resultToDelimitedString(event);
-                        out.println(savee);
+                        CSVResultSerializer serializer = csvSerializer;
+                        if (serializer == null || serializer.getSaveConfig() != config) {
+                            serializer = new CSVResultSerializer(config);
+                            csvSerializer = serializer;
+                        }
+                        if (groupOut != null) {
+                            serializer.writeLine(event, groupOut);
+                        } else {
+                            serializer.writeLine(event, out);
+                            if (SAVING_AUTOFLUSH) {
+                                out.flush();
+                            }
+                        }
                     }
                 } catch (Exception err) {
                     log.error("Error trying to record a sample", err); // should throw exception back to caller
@@ -567,7 +688,11 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
      */
     // Used by: MonitorHealthVisualizer.add(SampleResult res)
     public void recordStats(TestElement e) throws IOException {
-        if (out != null) {
+        if (groupOut != null) {
+            StringWriter xml = new StringWriter();
+            SaveService.saveTestElement(e, xml);
+            groupOut.write(xml.toString());
+        } else if (out != null) {
             SaveService.saveTestElement(e, out);
         }
     }
@@ -586,9 +711,14 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
 
         String filename = getFilename();
         if (filename != null) {
-            if (out == null) {
+            if (out == null && binaryOut == null) {
                 try {
-                    out = getFileWriter(filename, getSaveConfig());
+                    FileEntry fe = getFileEntry(filename, getSaveConfig());
+                    if (fe != null) {
+                        out = fe.pw;
+                        binaryOut = fe.bw;
+                        groupOut = fe.gw;
+                    }
                 } catch (FileNotFoundException e) {
                     out = null;
                 }
@@ -600,10 +730,21 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
      * Flush PrintWriter to synchronize file contents
      */
     protected void flushFile() {
-        if (out != null) {
+        if (groupOut != null) {
+            log.info("forced flush through ResultCollecto#flushFile");
+            groupOut.flush();
+        } else if (out != null) {
             log.info("forced flush through ResultCollecto#flushFile");
             out.flush();
         }
+        if (binaryOut != null) {
+            log.info("forced flush through ResultCollecto#flushFile");
+            try {
+                binaryOut.flush();
+            } catch (IOException e) {
+                log.warn("Problem flushing " + getFilename(), e);
+            }
+        }
     }
 
     /**
@@ -613,6 +754,17 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
         for(Map.Entry<String,ResultCollector.FileEntry> me : files.entrySet()){
             log.debug("Flushing: "+me.getKey());
             FileEntry fe = me.getValue();
+            if (fe.bw != null) {
+                try {
+                    fe.bw.flush();
+                } catch (IOException e) {
+                    log.warn("Problem detected during use of "+me.getKey(), e);
+                }
+                continue;
+            }
+            if (fe.gw != null) {
+                fe.gw.flush();
+            }
             fe.pw.flush();
             if (fe.pw.checkError()){
                 log.warn("Problem detected during use of "+me.getKey());
@@ -624,6 +776,17 @@ public class ResultCollector extends AbstractListenerElement implements SampleLi
         for(Map.Entry<String,ResultCollector.FileEntry> me : files.entrySet()){
             log.debug("Closing: "+me.getKey());
             FileEntry fe = me.getValue();
+            if (fe.bw != null) {
+                try {
+                    fe.bw.close();
+                } catch (IOException e) {
+                    log.warn("Problem detected during use of "+me.getKey(), e);
+                }
+                continue;
+            }
+            if (fe.gw != null) {
+                fe.gw.close();
+            }
             writeFileEnd(fe.pw, fe.config);
             fe.pw.close();
             if (fe.pw.checkError()){
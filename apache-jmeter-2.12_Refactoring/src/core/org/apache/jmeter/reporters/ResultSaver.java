@@ -22,11 +22,13 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.jmeter.samplers.SampleEvent;
 import org.apache.jmeter.samplers.SampleListener;
 import org.apache.jmeter.samplers.SampleResult;
@@ -186,7 +188,16 @@ public class ResultSaver extends AbstractTestElement implements Serializable, Sa
         FileOutputStream pw = null;
         try {
             pw = new FileOutputStream(out);
-            JOrphanUtils.write(s.getResponseData(), pw); // chunk the output if necessary
+            if (s.getSpilledResponseData() != null) { // copy without reading it all into the heap
+                InputStream in = s.getResponseDataAsStream();
+                try {
+                    IOUtils.copyLarge(in, pw);
+                } finally {
+                    JOrphanUtils.closeQuietly(in);
+                }
+            } else {
+                JOrphanUtils.write(s.getResponseData(), pw); // chunk the output if necessary
+            }
         } catch (FileNotFoundException e1) {
             log.error("Error creating sample file for " + s.getSampleLabel(), e1);
         } catch (IOException e1) {
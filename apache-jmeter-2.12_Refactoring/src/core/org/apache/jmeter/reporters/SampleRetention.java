@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+
+/**
+ * Decides which samples keep their full data (response data, headers, sampler data and sub-results)
+ * when {@link SampleSaveConfiguration#retainEvery()} is greater than one.
+ * The retained samples are the failed samples, one in N successful samples,
+ * and the successful samples which are among the K slowest seen so far for their label.
+ * <p>
+ * The other samples are still saved and shown, but only with their timings and status,
+ * so that counts and percentiles computed from them are exact.
+ * <p>
+ * The class is thread-safe.
+ */
+class SampleRetention {
+
+    private final SampleSaveConfiguration config;
+
+    private final SampleSaveConfiguration summaryConfig;
+
+    private final int every;
+
+    private final int slowest;
+
+    private final AtomicLong successes = new AtomicLong();
+
+    private final AtomicLong retained = new AtomicLong();
+
+    private final AtomicLong summarised = new AtomicLong();
+
+    private final ConcurrentMap<String, SlowestTimes> slowestByLabel = new ConcurrentHashMap<String, SlowestTimes>();
+
+    /**
+     * @param config the save configuration of the listener; the policy is read from it
+     */
+    SampleRetention(SampleSaveConfiguration config) {
+        this.config = config;
+        this.every = config.retainEvery();
+        this.slowest = config.retainSlowest();
+        if (isEnabled()) {
+            summaryConfig = (SampleSaveConfiguration) config.clone();
+            summaryConfig.setResponseData(false);
+            summaryConfig.setSamplerData(false);
+            summaryConfig.setRequestHeaders(false);
+            summaryConfig.setResponseHeaders(false);
+            summaryConfig.setSubresults(false);
+        } else {
+            summaryConfig = config;
+        }
+    }
+
+    /**
+     * @return true if some samples lose their full data
+     */
+    boolean isEnabled() {
+        return every > 1;
+    }
+
+    /**
+     * @return the configuration this policy was created from
+     */
+    SampleSaveConfiguration getSaveConfig() {
+        return config;
+    }
+
+    /**
+     * @return the configuration used to save the samples which are not retained
+     */
+    SampleSaveConfiguration getSummaryConfig() {
+        return summaryConfig;
+    }
+
+    /**
+     * Decide whether the full data of a sample is kept. Must be called once for each sample.
+     *
+     * @param res the sample
+     * @return true if the sample keeps its full data
+     */
+    boolean retain(SampleResult res) {
+        if (!isEnabled()) {
+            return true;
+        }
+        boolean keep = !res.isSuccessful();
+        if (!keep) {
+            // Always offer the time, so a retained sample also counts towards the slowest
+            boolean slow = slowest > 0 && getSlowestTimes(res.getSampleLabel()).offer(res.getTime());
+            keep = successes.incrementAndGet() % every == 0 || slow;
+        }
+        if (keep) {
+            retained.incrementAndGet();
+        } else {
+            summarised.incrementAndGet();
+        }
+        return keep;
+    }
+
+    /**
+     * @return the number of samples which kept their full data
+     */
+    long getRetained() {
+        return retained.get();
+    }
+
+    /**
+     * @return the number of samples which only kept their timings
+     */
+    long getSummarised() {
+        return summarised.get();
+    }
+
+    private SlowestTimes getSlowestTimes(String label) {
+        SlowestTimes times = slowestByLabel.get(label);
+        if (times == null) {
+            times = new SlowestTimes(slowest);
+            SlowestTimes previous = slowestByLabel.putIfAbsent(label, times);
+            if (previous != null) {
+                times = previous;
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Create a copy of a sample without the data which is not needed for statistics.
+     * The sample itself is not changed, as other listeners may still need its data.
+     *
+     * @param res the sample
+     * @return a copy with the timings, status and sizes of the sample
+     */
+    static SampleResult summarise(SampleResult res) {
+        SampleResult copy = new SampleResult(res);
+        // Samplers which do not set the sizes (e.g. JDBC, TCP, Java) get them from the data, which goes
+        copy.setBytes(res.getBytes());
+        copy.setBodySize(res.getBodySize());
+        copy.setResponseData(SampleResult.EMPTY_BA);
+        copy.setRequestHeaders(""); // $NON-NLS-1$
+        copy.setResponseHeaders(""); // $NON-NLS-1$
+        copy.setSamplerData(null);
+        copy.removeSubResults();
+        return copy;
+    }
+
+    /**
+     * The K largest times seen so far, kept in a min-heap so that the smallest can be replaced.
+     */
+    private static final class SlowestTimes {
+
+        private final long[] heap;
+
+        private int size;
+
+        SlowestTimes(int capacity) {
+            heap = new long[capacity];
+        }
+
+        /**
+         * @param time the elapsed time of a sample
+         * @return true if the time is now one of the K largest
+         */
+        synchronized boolean offer(long time) {
+            if (size < heap.length) {
+                int i = size++;
+                while (i > 0) { // sift up
+                    int parent = (i - 1) / 2;
+                    if (heap[parent] <= time) {
+                        break;
+                    }
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = time;
+                return true;
+            }
+            if (time <= heap[0]) {
+                return false;
+            }
+            int i = 0;
+            while (true) { // sift down from the root, which is replaced
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= time) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = time;
+            return true;
+        }
+    }
+}
@@ -20,12 +20,17 @@ package org.apache.jmeter.reporters;
 
 import java.io.Serializable;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.jmeter.engine.util.NoThreadClone;
+import org.apache.jmeter.samplers.AsynchSampleSender;
 import org.apache.jmeter.samplers.Remoteable;
 import org.apache.jmeter.samplers.SampleEvent;
 import org.apache.jmeter.samplers.SampleListener;
@@ -34,6 +39,7 @@ import org.apache.jmeter.testelement.AbstractTestElement;
 import org.apache.jmeter.testelement.TestStateListener;
 import org.apache.jmeter.threads.JMeterContextService;
 import org.apache.jmeter.threads.JMeterContextService.ThreadCounts;
+import org.apache.jmeter.timers.TimerService;
 import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jmeter.visualizers.RunningSample;
 import org.apache.jorphan.logging.LoggingManager;
@@ -81,6 +87,18 @@ public class Summariser extends AbstractTestElement
     /** Write messages to System.out ? */
     private static final boolean TOOUT = JMeterUtils.getPropDefault("summariser.out", true); //$NON-NLS-1$
 
+    /** Number of response codes of failed samples to show, the most frequent first; 0 shows none */
+    private static final int ERROR_CODES = JMeterUtils.getPropDefault("summariser.error_codes", 5); //$NON-NLS-1$
+
+    /** Orders response codes by decreasing number of failures, then by code */
+    private static final Comparator<Map.Entry<String, Long>> BY_FAILURES = new Comparator<Map.Entry<String, Long>>() {
+        @Override
+        public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2) {
+            int result = e2.getValue().compareTo(e1.getValue());
+            return result != 0 ? result : String.valueOf(e1.getKey()).compareTo(String.valueOf(e2.getKey()));
+        }
+    };
+
     /*
      * Ensure that a report is not skipped if we are slightly late in checking
      * the time.
@@ -217,6 +235,30 @@ public class Summariser extends AbstractTestElement
                     System.out.println(str);
                 }
             }
+
+            // Remote Asynch mode: how the queue of samples to the client is coping
+            String queueStatistics = AsynchSampleSender.getQueueStatistics();
+            if (queueStatistics != null) {
+                str = myName + " q " + queueStatistics;
+                if (TOLOG) {
+                    log.info(str);
+                }
+                if (TOOUT) {
+                    System.out.println(str);
+                }
+            }
+
+            // How late the timers are waking up the threads since the start of the test
+            TimerService.Lateness lateness = TimerService.getInstance().getLateness();
+            if (lateness.getCount() > 0) {
+                str = myName + " t " + lateness;
+                if (TOLOG) {
+                    log.info(str);
+                }
+                if (TOOUT) {
+                    System.out.println(str);
+                }
+            }
         }
     }
 
@@ -285,9 +327,41 @@ public class Summariser extends AbstractTestElement
             sb.append(" Finished: ");
             sb.append(tc.finishedThreads);
         }
+        if (s.hasCorrectedTimes()) {
+            // Response times corrected for coordinated omission
+            sb.append(" CO Avg: ");
+            sb.append(longToSb(tmp, s.getCorrectedAverage(), 5));
+            sb.append(" CO Max: ");
+            sb.append(longToSb(tmp, s.getCorrectedMax(), 5));
+        }
+        if (ERROR_CODES > 0 && !s.getErrorCodeCounts().isEmpty()) {
+            sb.append(" Err codes:");
+            appendErrorCodes(sb, s.getErrorCodeCounts());
+        }
         return sb.toString();
     }
 
+    /**
+     * Appends the most frequent response codes of the failed samples, e.g. " 500=20 404=12";
+     * failures without a response code are shown as "-"
+     */
+    private static void appendErrorCodes(StringBuilder sb, Map<String, Long> counts) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(counts.entrySet());
+        Collections.sort(entries, BY_FAILURES);
+        for (int i = 0; i < entries.size(); i++) {
+            if (i == ERROR_CODES) {
+                sb.append(" ...");
+                break;
+            }
+            Map.Entry<String, Long> entry = entries.get(i);
+            String code = entry.getKey();
+            sb.append(' ');
+            sb.append(code == null || code.length() == 0 ? "-" : code); // $NON-NLS-1$
+            sb.append('=');
+            sb.append(entry.getValue());
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public void sampleStarted(SampleEvent e) {
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+
+import org.apache.jorphan.util.JOrphanUtils;
+
+/**
+ * Sends batches of metrics lines over a TCP connection, e.g. to the Graphite plaintext port.
+ * The destination is <code>tcp://host:port</code>.
+ * The connection is opened when the first batch is sent, and opened again after a failure.
+ * <p>
+ * A batch which cannot be written within {@link #WRITE_TIMEOUT} milliseconds, because the receiver
+ * does not read, fails and the connection is closed, so a stalled receiver cannot block the sender.
+ */
+public class TcpMetricsSink implements MetricsSink {
+
+    private static final int CONNECT_TIMEOUT = 5000; // ms
+
+    static final long WRITE_TIMEOUT = 5000; // ms
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); // $NON-NLS-1$
+
+    private InetSocketAddress address;
+
+    // Closed by close(), possibly while another thread waits in send()
+    private volatile SocketChannel channel;
+
+    private volatile Selector selector;
+
+    /**
+     * @param destination the URI of the destination
+     * @return the host and port of the destination
+     * @throws IOException if the destination has no host or port
+     */
+    static InetSocketAddress parseAddress(String destination) throws IOException {
+        try {
+            URI uri = new URI(destination);
+            if (uri.getHost() == null || uri.getPort() < 0) {
+                throw new IOException("Expected scheme://host:port, found " + destination);
+            }
+            return new InetSocketAddress(uri.getHost(), uri.getPort());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid destination " + destination + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void open(String destination) throws IOException {
+        address = parseAddress(destination);
+    }
+
+    @Override
+    public void send(CharSequence batch) throws IOException {
+        try {
+            if (channel == null) {
+                connect();
+            }
+            SocketChannel sc = channel;
+            Selector s = selector;
+            if (sc == null || s == null) {
+                throw new IOException("Closed while sending the metrics");
+            }
+            ByteBuffer buffer = UTF8.encode(batch.toString());
+            long deadline = System.currentTimeMillis() + WRITE_TIMEOUT;
+            while (buffer.hasRemaining()) {
+                if (sc.write(buffer) > 0) {
+                    continue;
+                }
+                // The send buffer is full: wait until the receiver reads some of it
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    throw new SocketTimeoutException("Could not send the metrics within " + WRITE_TIMEOUT + " ms");
+                }
+                try {
+                    s.select(wait);
+                    s.selectedKeys().clear();
+                } catch (ClosedSelectorException e) {
+                    throw new IOException("Closed while sending the metrics");
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void connect() throws IOException {
+        SocketChannel sc = SocketChannel.open();
+        try {
+            sc.socket().connect(address, CONNECT_TIMEOUT);
+            sc.configureBlocking(false);
+            Selector s = Selector.open();
+            sc.register(s, SelectionKey.OP_WRITE);
+            selector = s;
+            channel = sc;
+        } catch (IOException e) {
+            JOrphanUtils.closeQuietly(sc);
+            throw e;
+        }
+    }
+
+    /**
+     * Close the connection. May be called by another thread to abort a {@link #send(CharSequence)}.
+     */
+    @Override
+    public void close() {
+        Selector s = selector;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // ignored
+            }
+        }
+        JOrphanUtils.closeQuietly(channel);
+        selector = null;
+        channel = null;
+    }
+}
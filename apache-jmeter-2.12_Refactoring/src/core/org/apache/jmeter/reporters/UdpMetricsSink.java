@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+
+/**
+ * Sends batches of metrics lines as UDP datagrams. The destination is <code>udp://host:port</code>.
+ * A batch is split into datagrams of at most {@link #MAX_DATAGRAM} bytes between lines,
+ * so that a lost datagram only loses whole lines.
+ */
+public class UdpMetricsSink implements MetricsSink {
+
+    /** Fits in an Ethernet frame */
+    static final int MAX_DATAGRAM = 1400;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); // $NON-NLS-1$
+
+    private InetSocketAddress address;
+
+    private DatagramSocket socket;
+
+    @Override
+    public void open(String destination) throws IOException {
+        address = TcpMetricsSink.parseAddress(destination);
+        socket = new DatagramSocket();
+    }
+
+    @Override
+    public void send(CharSequence batch) throws IOException {
+        byte[] bytes = batch.toString().getBytes(UTF8);
+        int start = 0;
+        while (start < bytes.length) {
+            int end = Math.min(start + MAX_DATAGRAM, bytes.length);
+            if (end < bytes.length) {
+                // Cut after the last line feed, unless a single line is too long
+                int cut = end;
+                while (cut > start && bytes[cut - 1] != '\n') {
+                    cut--;
+                }
+                if (cut > start) {
+                    end = cut;
+                }
+            }
+            socket.send(new DatagramPacket(bytes, start, end - start, address));
+            start = end;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            socket.close();
+        }
+    }
+}
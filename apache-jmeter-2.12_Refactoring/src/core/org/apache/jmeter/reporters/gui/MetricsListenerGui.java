@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters.gui;
+
+import java.awt.BorderLayout;
+
+import javax.swing.Box;
+
+import org.apache.jmeter.reporters.MetricsListener;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jmeter.visualizers.gui.AbstractListenerGui;
+import org.apache.jorphan.gui.JLabeledTextField;
+
+/**
+ * Create a MetricsListener test element GUI.
+ *
+ */
+public class MetricsListenerGui extends AbstractListenerGui {
+
+    private static final long serialVersionUID = 240L;
+
+    private JLabeledTextField destination;
+
+    private JLabeledTextField sinkClass;
+
+    private JLabeledTextField prefix;
+
+    private JLabeledTextField interval;
+
+    public MetricsListenerGui() {
+        super();
+        init();
+    }
+
+    @Override
+    public String getLabelResource() {
+        return "metrics_listener_title"; //$NON-NLS-1$
+    }
+
+    @Override
+    public void configure(TestElement el) {
+        super.configure(el);
+        MetricsListener listener = (MetricsListener) el;
+        destination.setText(listener.getDestination());
+        sinkClass.setText(listener.getSinkClass());
+        prefix.setText(listener.getPrefix());
+        interval.setText(el.getPropertyAsString(MetricsListener.INTERVAL));
+    }
+
+    /**
+     * @see org.apache.jmeter.gui.JMeterGUIComponent#createTestElement()
+     */
+    @Override
+    public TestElement createTestElement() {
+        MetricsListener listener = new MetricsListener();
+        modifyTestElement(listener);
+        return listener;
+    }
+
+    /**
+     * Modifies a given TestElement to mirror the data in the gui components.
+     *
+     * @see org.apache.jmeter.gui.JMeterGUIComponent#modifyTestElement(TestElement)
+     */
+    @Override
+    public void modifyTestElement(TestElement te) {
+        super.configureTestElement(te);
+        MetricsListener listener = (MetricsListener) te;
+        listener.setDestination(destination.getText());
+        listener.setSinkClass(sinkClass.getText());
+        listener.setPrefix(prefix.getText());
+        listener.setInterval(interval.getText());
+    }
+
+    /**
+     * Implements JMeterGUIComponent.clearGui
+     */
+    @Override
+    public void clearGui() {
+        super.clearGui();
+        destination.setText(""); //$NON-NLS-1$
+        sinkClass.setText(""); //$NON-NLS-1$
+        prefix.setText(MetricsListener.DEFAULT_PREFIX);
+        interval.setText(""); //$NON-NLS-1$
+    }
+
+    private void init() {
+        setLayout(new BorderLayout());
+        setBorder(makeBorder());
+        Box box = Box.createVerticalBox();
+        box.add(makeTitlePanel());
+        destination = new JLabeledTextField(JMeterUtils.getResString("metrics_listener_destination")); //$NON-NLS-1$
+        box.add(destination);
+        prefix = new JLabeledTextField(JMeterUtils.getResString("metrics_listener_prefix")); //$NON-NLS-1$
+        box.add(prefix);
+        interval = new JLabeledTextField(JMeterUtils.getResString("metrics_listener_interval")); //$NON-NLS-1$
+        box.add(interval);
+        sinkClass = new JLabeledTextField(JMeterUtils.getResString("metrics_listener_sink_class")); //$NON-NLS-1$
+        box.add(sinkClass);
+        add(box, BorderLayout.NORTH);
+    }
+}
@@ -22,17 +22,35 @@ import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.collections.RingBuffer;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.jorphan.util.JMeterError;
 import org.apache.log.Logger;
 
 /**
  * Sends samples in a separate Thread and in Batch mode
+ * <p>
+ * The sampling threads add the samples to a lock-free {@link RingBuffer} of
+ * <code>asynch.batch.queue.size</code> samples (rounded up to a power of 2), and the worker
+ * thread sends everything it finds in the queue as one batch.
+ * When the queue is full, <code>asynch.batch.overflow</code> decides what happens:
+ * <ul>
+ * <li><code>block</code> (default) - the sampling thread waits for room in the queue</li>
+ * <li><code>drop_oldest</code> - the oldest queued sample is dropped to make room</li>
+ * <li><code>summarize</code> - the sample is added to a {@link StatisticalSampleResult} for its
+ * thread group and label, which is sent with the next batch</li>
+ * </ul>
+ * The time spent waiting and the number of samples dropped or summarized are logged at the end
+ * of the test, and added to the Summariser output by {@link #getQueueStatistics()}.
  */
 public class AsynchSampleSender extends AbstractSampleSender implements Serializable {
 
@@ -40,8 +58,11 @@ public class AsynchSampleSender extends AbstractSampleSender implements Serializ
 
     private static final Logger log = LoggingManager.getLoggerForClass();
 
-    // Create unique object as marker for end of queue
-    private transient static final SampleEvent FINAL_EVENT = new SampleEvent();
+    public static final String OVERFLOW_BLOCK = "block"; // $NON-NLS-1$
+
+    public static final String OVERFLOW_DROP_OLDEST = "drop_oldest"; // $NON-NLS-1$
+
+    public static final String OVERFLOW_SUMMARIZE = "summarize"; // $NON-NLS-1$
 
     private static final int DEFAULT_QUEUE_SIZE = 100;
     
@@ -49,14 +70,47 @@ public class AsynchSampleSender extends AbstractSampleSender implements Serializ
     
     private final int clientConfiguredCapacity = JMeterUtils.getPropDefault("asynch.batch.queue.size", DEFAULT_QUEUE_SIZE); // $NON-NLS-1$
 
+    private static final String serverConfiguredOverflow = JMeterUtils.getPropDefault("asynch.batch.overflow", OVERFLOW_BLOCK); // $NON-NLS-1$
+
+    private final String clientConfiguredOverflow = JMeterUtils.getPropDefault("asynch.batch.overflow", OVERFLOW_BLOCK); // $NON-NLS-1$
+
+    // precision of the histograms of the summarized samples, as for StatisticalSampleSender
+    private static final int SIGNIFICANT_DIGITS = JMeterUtils.getPropDefault("statcalculator.significant_digits", 3); // $NON-NLS-1$
+
+    // How long the worker waits for samples before checking again, in nanoseconds
+    private static final long WORKER_WAIT = 10000000L;
+
+    // How long a sampling thread waits for room in a full queue before trying again, in nanoseconds
+    private static final long PRODUCER_WAIT = 100000L;
+
+    // The senders of the tests running on this server
+    private static final List<AsynchSampleSender> RUNNING = new CopyOnWriteArrayList<AsynchSampleSender>();
+
     // created by client 
     private final RemoteSampleListener listener;
 
-    private transient BlockingQueue<SampleEvent> queue; // created by server in readResolve method
-    
-    private transient long queueWaits; // how many times we had to wait to queue a sample
+    // The remaining fields are created by server in readResolve method
+
+    private transient RingBuffer<SampleEvent> queue;
+
+    private transient String overflow;
+
+    // Samples summarized while the queue was full, by key, @GuardedBy("itself")
+    private transient Map<String, SampleEvent> summaries;
+
+    private transient volatile boolean hasSummaries;
+
+    private transient Worker worker;
+
+    private transient AtomicLong queueWaits; // how many times we had to wait to queue a sample
     
-    private transient long queueWaitTime; // how long we had to wait (nanoSeconds)
+    private transient AtomicLong queueWaitTime; // how long we had to wait (nanoSeconds)
+
+    private transient AtomicLong dropped; // how many samples were dropped because the queue was full
+
+    private transient AtomicLong summarized; // how many samples were summarized because the queue was full
+
+    private transient volatile int maxDepth;
 
     /**
      * Processed by the RMI server code.
@@ -64,10 +118,18 @@ public class AsynchSampleSender extends AbstractSampleSender implements Serializ
      */
     private Object readResolve() throws ObjectStreamException{
         int capacity = getCapacity();
-        log.info("Using batch queue size (asynch.batch.queue.size): " + capacity); // server log file
-        queue = new ArrayBlockingQueue<SampleEvent>(capacity);        
-        Worker worker = new Worker(queue, listener);
+        overflow = getOverflow();
+        log.info("Using batch queue size (asynch.batch.queue.size): " + capacity // server log file
+                + ", overflow (asynch.batch.overflow): " + overflow);
+        queue = new RingBuffer<SampleEvent>(capacity);
+        summaries = new LinkedHashMap<String, SampleEvent>();
+        queueWaits = new AtomicLong();
+        queueWaitTime = new AtomicLong();
+        dropped = new AtomicLong();
+        summarized = new AtomicLong();
+        worker = new Worker(this);
         worker.setDaemon(true);
+        RUNNING.add(this);
         worker.start();
         return this;
     }
@@ -84,7 +146,8 @@ public class AsynchSampleSender extends AbstractSampleSender implements Serializ
     // Created by SampleSenderFactory
     protected AsynchSampleSender(RemoteSampleListener listener) {
         this.listener = listener;
-        log.info("Using Asynch Remote Sampler for this test run, queue size "+getCapacity());  // client log file
+        log.info("Using Asynch Remote Sampler for this test run, queue size "+getCapacity()  // client log file
+                + ", overflow " + getOverflow());
     }
 
     /**
@@ -94,71 +157,227 @@ public class AsynchSampleSender extends AbstractSampleSender implements Serializ
         return isClientConfigured() ? 
                 clientConfiguredCapacity : serverConfiguredCapacity;
     }
-    
+
+    private String getOverflow() {
+        String value = isClientConfigured() ? clientConfiguredOverflow : serverConfiguredOverflow;
+        if (OVERFLOW_DROP_OLDEST.equals(value) || OVERFLOW_SUMMARIZE.equals(value)) {
+            return value;
+        }
+        if (!OVERFLOW_BLOCK.equals(value)) {
+            log.warn("Unknown asynch.batch.overflow: " + value + ", using " + OVERFLOW_BLOCK);
+        }
+        return OVERFLOW_BLOCK;
+    }
+
+    /**
+     * Sends the queued samples, then tells the client that the test has ended,
+     * so that the client sees all the samples before the end of the test.
+     */
     @Override
     public void testEnded(String host) {
         log.debug("Test Ended on " + host);
+        worker.finish();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for queued samples to be sent");
+        }
+        RUNNING.remove(this);
         try {
             listener.testEnded(host);
-            queue.put(FINAL_EVENT);
         } catch (Exception ex) {
             log.warn("testEnded(host)"+ex);
         }
-        if (queueWaits > 0) {
-            log.info("QueueWaits: "+queueWaits+"; QueueWaitTime: "+queueWaitTime+" (nanoseconds)");            
+        if (queueWaits.get() > 0 || dropped.get() > 0 || summarized.get() > 0) {
+            log.info(getStatistics());
         }
     }
 
     @Override
     public void sampleOccurred(SampleEvent e) {
+        if (!queue.offer(e)) { // we failed to add the element first time
+            if (OVERFLOW_DROP_OLDEST.equals(overflow)) {
+                do {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                } while (!queue.offer(e));
+            } else if (OVERFLOW_SUMMARIZE.equals(overflow)) {
+                summarize(e);
+                summarized.incrementAndGet();
+            } else if (!waitToQueue(e)) {
+                return;
+            }
+        }
+        int depth = queue.size();
+        if (depth > maxDepth) {
+            maxDepth = depth; // not atomic, but close enough for a statistic
+        }
+        worker.wakeUp();
+    }
+
+    /**
+     * Wait until the sample can be queued.
+     *
+     * @return false if the sample was dropped because the worker has stopped
+     */
+    private boolean waitToQueue(SampleEvent e) {
+        queueWaits.incrementAndGet();
+        long t1 = System.nanoTime();
         try {
-            if (!queue.offer(e)){ // we failed to add the element first time
-                queueWaits++;
-                long t1 = System.nanoTime();
-                queue.put(e);
-                long t2 = System.nanoTime();
-                queueWaitTime += t2-t1;
+            do {
+                if (!worker.isAlive()) {
+                    log.error("sampleOccurred; failed to queue the sample, the worker has stopped");
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                worker.wakeUp();
+                LockSupport.parkNanos(this, PRODUCER_WAIT);
+            } while (!queue.offer(e));
+            return true;
+        } finally {
+            queueWaitTime.addAndGet(System.nanoTime() - t1);
+        }
+    }
+
+    private void summarize(SampleEvent e) {
+        SampleResult res = e.getResult();
+        String key = StatisticalSampleResult.getKey(e, false);
+        synchronized (summaries) {
+            SampleEvent summary = summaries.get(key);
+            if (summary == null) {
+                summary = new SampleEvent(new StatisticalSampleResult(res, SIGNIFICANT_DIGITS), e.getThreadGroup());
+                summaries.put(key, summary);
+            }
+            ((StatisticalSampleResult) summary.getResult()).add(res);
+            hasSummaries = true;
+        }
+    }
+
+    // Called by the worker, adds the summaries to the batch
+    private void drainSummaries(List<SampleEvent> batch) {
+        if (!hasSummaries) {
+            return;
+        }
+        synchronized (summaries) {
+            for (Iterator<SampleEvent> it = summaries.values().iterator(); it.hasNext();) {
+                batch.add(it.next());
+                it.remove();
             }
-        } catch (Exception err) {
-            log.error("sampleOccurred; failed to queue the sample", err);
+            hasSummaries = false;
         }
     }
 
+    /**
+     * @return the queue statistics of this sender
+     */
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder(100);
+        sb.append("Queue: ").append(queue.size()).append('/').append(queue.capacity());
+        sb.append(" Max: ").append(maxDepth);
+        sb.append(" Waits: ").append(queueWaits.get());
+        sb.append(" (").append(queueWaitTime.get() / 1000000L).append(" ms)");
+        sb.append(" Dropped: ").append(dropped.get());
+        sb.append(" Summarized: ").append(summarized.get());
+        return sb.toString();
+    }
+
+    /**
+     * @return the number of times a sampling thread waited for room in the queue
+     */
+    public long getQueueWaits() {
+        return queueWaits.get();
+    }
+
+    /**
+     * @return how long the sampling threads waited for room in the queue, in nanoseconds
+     */
+    public long getQueueWaitTime() {
+        return queueWaitTime.get();
+    }
+
+    /**
+     * @return the number of samples dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of samples summarized because the queue was full
+     */
+    public long getSummarized() {
+        return summarized.get();
+    }
+
+    /**
+     * @return the queue statistics of the Asynch senders of the tests running on this server,
+     * or null if there are none
+     */
+    public static String getQueueStatistics() {
+        StringBuilder sb = null;
+        for (AsynchSampleSender sender : RUNNING) {
+            if (sb == null) {
+                sb = new StringBuilder(100);
+            } else {
+                sb.append("; ");
+            }
+            sb.append(sender.getStatistics());
+        }
+        return sb == null ? null : sb.toString();
+    }
+
     private static class Worker extends Thread {
         
-        private final BlockingQueue<SampleEvent> queue;
-        
-        private final RemoteSampleListener listener;
+        private final AsynchSampleSender sender;
+
+        // Set by the worker before it waits for samples
+        private volatile boolean waiting;
+
+        private volatile boolean finishing;
         
-        private Worker(BlockingQueue<SampleEvent> q, RemoteSampleListener l){
-            queue = q;
-            listener = l;
+        private Worker(AsynchSampleSender sender){
+            this.sender = sender;
+        }
+
+        void wakeUp() {
+            if (waiting) {
+                LockSupport.unpark(this);
+            }
+        }
+
+        void finish() {
+            finishing = true;
+            LockSupport.unpark(this);
         }
 
         @Override
         public void run() {
-            try {
-                boolean eof = false;
-                while (!eof) {
-                    List<SampleEvent> l = new ArrayList<SampleEvent>();
-                    SampleEvent e = queue.take();
-                    while (!(eof = (e == FINAL_EVENT)) && e != null) { // try to process as many as possible
-                        l.add(e);
-                        e = queue.poll(); // returns null if nothing on queue currently
-                    }
-                    int size = l.size();
-                    if (size > 0) {
-                        try {
-                            listener.processBatch(l);
-                        } catch (RemoteException err) {
-                            if (err.getCause() instanceof java.net.ConnectException){
-                                throw new JMeterError("Could not return sample",err);
-                            }
-                            log.error("Failed to return sample", err);
+            RingBuffer<SampleEvent> queue = sender.queue;
+            while (true) {
+                List<SampleEvent> l = new ArrayList<SampleEvent>();
+                queue.drainTo(l, queue.capacity()); // process as many as possible
+                sender.drainSummaries(l);
+                int size = l.size();
+                if (size > 0) {
+                    try {
+                        sender.listener.processBatch(l);
+                    } catch (RemoteException err) {
+                        if (err.getCause() instanceof java.net.ConnectException){
+                            throw new JMeterError("Could not return sample",err);
                         }
+                        log.error("Failed to return sample", err);
                     }
+                    continue;
+                }
+                if (finishing && queue.isEmpty() && !sender.hasSummaries) {
+                    break;
+                }
+                waiting = true;
+                if (queue.isEmpty() && !finishing) { // re-check, a sample may have been added before the flag was set
+                    LockSupport.parkNanos(this, WORKER_WAIT);
                 }
-            } catch (InterruptedException e) {
+                waiting = false;
             }
             log.debug("Worker ended");
         }
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.jmeter.save.BinaryResultReader;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Client side of {@link BinarySampleSender}: accepts the connections of the servers
+ * and passes the samples they stream to the local listeners.
+ * <p>
+ * A single receiver is started by the client when the first sender is created.
+ * It listens on the port given by the property <code>binary_sender.port</code>
+ * (default 0: any free port) of the address given by <code>binary_sender.host</code>,
+ * which defaults to the <code>java.rmi.server.hostname</code> system property or else the
+ * address of the local host; this is also the address the servers are told to connect to.
+ * <p>
+ * Each listener is given a random token when it is registered for a test, which the servers
+ * receive with their sender over RMI. Each connection starts with the token of the listener
+ * the samples are for, followed by a binary JTL stream read with {@link BinaryResultReader}.
+ * Connections which do not send a known token within {@link #HANDSHAKE_TIMEOUT} milliseconds
+ * are closed. Each connection is read by its own thread, which calls the listener directly
+ * rather than through RMI.
+ * When the server closes its side, a single byte is written back once all the samples have been
+ * passed on, so that the server can report the end of the test only after its samples.
+ */
+final class BinarySampleReceiver implements Runnable {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /** Number of bytes of the token which identifies a listener */
+    static final int TOKEN_LENGTH = 16;
+
+    /** Time allowed to a server to send its token, in milliseconds */
+    static final int HANDSHAKE_TIMEOUT = 30000;
+
+    private static BinarySampleReceiver instance;
+
+    private final ServerSocketChannel server;
+
+    private final String host;
+
+    private final int port;
+
+    // Keyed by the hex string of the token.
+    // The listeners are only weakly held, as they are not needed once their test has ended
+    private final Map<String, WeakReference<RemoteSampleListener>> listeners =
+        new HashMap<String, WeakReference<RemoteSampleListener>>();
+
+    private final SecureRandom random = new SecureRandom();
+
+    private BinarySampleReceiver() throws IOException {
+        String address = JMeterUtils.getPropDefault("binary_sender.host", // $NON-NLS-1$
+                System.getProperty("java.rmi.server.hostname")); // $NON-NLS-1$
+        host = address != null ? address : InetAddress.getLocalHost().getHostAddress();
+        server = ServerSocketChannel.open();
+        try {
+            // Only the address given to the servers, rather than all the interfaces
+            server.socket().bind(new InetSocketAddress(InetAddress.getByName(host),
+                    JMeterUtils.getPropDefault("binary_sender.port", 0))); // $NON-NLS-1$
+        } catch (IOException e) {
+            JOrphanUtils.closeQuietly(server);
+            throw e;
+        }
+        port = server.socket().getLocalPort();
+        Thread acceptor = new Thread(this, "BinarySampleReceiver " + port); // $NON-NLS-1$
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Receiving binary samples on " + host + ":" + port);
+    }
+
+    /**
+     * @return the receiver of this JVM, started on the first call
+     * @throws IOException if the receiver cannot be started
+     */
+    static synchronized BinarySampleReceiver getInstance() throws IOException {
+        if (instance == null) {
+            instance = new BinarySampleReceiver();
+        }
+        return instance;
+    }
+
+    /**
+     * @return the host name or address the servers should connect to
+     */
+    String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the address the receiver is listening on
+     */
+    InetAddress getLocalAddress() {
+        return server.socket().getInetAddress();
+    }
+
+    /**
+     * @return the port the receiver is listening on
+     */
+    int getPort() {
+        return port;
+    }
+
+    /**
+     * Register a listener for the samples of a test.
+     *
+     * @param listener the listener to pass the samples to
+     * @return the random token to be sent by the servers, {@link #TOKEN_LENGTH} bytes long
+     */
+    synchronized byte[] register(RemoteSampleListener listener) {
+        for (Iterator<WeakReference<RemoteSampleListener>> it = listeners.values().iterator(); it.hasNext();) {
+            if (it.next().get() == null) {
+                it.remove();
+            }
+        }
+        byte[] token = new byte[TOKEN_LENGTH];
+        String key;
+        do {
+            random.nextBytes(token);
+            key = JOrphanUtils.baToHexString(token);
+        } while (listeners.containsKey(key));
+        listeners.put(key, new WeakReference<RemoteSampleListener>(listener));
+        return token;
+    }
+
+    private synchronized RemoteSampleListener getListener(byte[] token) {
+        WeakReference<RemoteSampleListener> ref = listeners.get(JOrphanUtils.baToHexString(token));
+        return ref != null ? ref.get() : null;
+    }
+
+    /**
+     * Accepts the connections of the servers.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            final SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                log.error("Stopped receiving binary samples", e);
+                return;
+            }
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    receive(channel);
+                }
+            }, "BinarySampleReceiver " + channel.socket().getRemoteSocketAddress()); // $NON-NLS-1$
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    private void receive(SocketChannel channel) {
+        SocketAddress remote = channel.socket().getRemoteSocketAddress();
+        BinaryResultReader reader = null;
+        try {
+            // The socket stream, unlike the channel stream, can time out
+            channel.socket().setSoTimeout(HANDSHAKE_TIMEOUT);
+            byte[] token = new byte[TOKEN_LENGTH];
+            new DataInputStream(channel.socket().getInputStream()).readFully(token);
+            channel.socket().setSoTimeout(0);
+            RemoteSampleListener listener = getListener(token);
+            if (listener == null) {
+                log.warn("Rejected binary samples from " + remote + ": unknown token");
+                return;
+            }
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+            reader = new BinaryResultReader(in);
+            long count = 0;
+            SampleEvent event;
+            while ((event = reader.next()) != null) {
+                try {
+                    listener.sampleOccurred(event);
+                } catch (RemoteException e) { // not expected, as the listener is local
+                    log.error("sampleOccurred", e);
+                }
+                count++;
+            }
+            channel.write(ByteBuffer.wrap(new byte[] { 1 }));
+            log.info("Received " + count + " binary samples from " + remote);
+        } catch (IOException e) {
+            log.error("Error receiving binary samples from " + remote, e);
+        } finally {
+            JOrphanUtils.closeQuietly(reader);
+            JOrphanUtils.closeQuietly(channel);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.apache.jmeter.reporters.ResultCollector;
+import org.apache.jmeter.save.BinaryResultWriter;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Streams samples to the client over a socket in the binary JTL format
+ * instead of sending them with RMI, see {@link BinarySampleReceiver}.
+ * <p>
+ * Only the fields selected by the save configuration of the listener are sent, and as the
+ * binary format holds the CSV fields only, response data is never sent unless the listener saves
+ * it as XML. Samples with such XML-only data are sent with RMI as in Standard mode.
+ * <p>
+ * The sampling threads only queue the samples, in a queue of at most
+ * <code>binary_sender.queue.size</code> samples. A worker thread encodes them and sends them in a
+ * block when either the count or time threshold is exceeded, using the same properties as
+ * {@link BatchSampleSender}. The blocks are compressed unless the property
+ * <code>binary_sender.compress</code> is false on the client.
+ * The connection is opened by the first sample and closed at the end of the test.
+ * If it fails, the samples which were not sent yet and the remaining samples are sent with RMI.
+ */
+public class BinarySampleSender extends AbstractSampleSender implements Serializable {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final long serialVersionUID = 240L;
+
+    private static final int DEFAULT_NUM_SAMPLE_THRESHOLD = 100;
+
+    private static final long DEFAULT_TIME_THRESHOLD = 60000L;
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final int QUEUE_SIZE =
+        JMeterUtils.getPropDefault("binary_sender.queue.size", 10000); // $NON-NLS-1$
+
+    // How long the worker waits for a sample before checking the time threshold
+    private static final long WORKER_WAIT_MS = 100;
+
+    // How long a sampling thread waits for room in a full queue before checking the worker again
+    private static final long PRODUCER_WAIT_MS = 100;
+
+    // Static fields are resolved on the server
+    private static final int NUM_SAMPLES_THRESHOLD =
+        JMeterUtils.getPropDefault("num_sample_threshold", DEFAULT_NUM_SAMPLE_THRESHOLD); // $NON-NLS-1$
+
+    private static final long TIME_THRESHOLD_MS =
+        JMeterUtils.getPropDefault("time_threshold", DEFAULT_TIME_THRESHOLD); // $NON-NLS-1$
+
+    // instance fields are copied from the client instance
+    private final int clientConfiguredNumSamplesThreshold =
+            JMeterUtils.getPropDefault("num_sample_threshold", DEFAULT_NUM_SAMPLE_THRESHOLD); // $NON-NLS-1$
+
+    private final long clientConfiguredTimeThresholdMs =
+            JMeterUtils.getPropDefault("time_threshold", DEFAULT_TIME_THRESHOLD); // $NON-NLS-1$
+
+    private final boolean compress = JMeterUtils.getPropDefault("binary_sender.compress", true); // $NON-NLS-1$
+
+    private final RemoteSampleListener listener;
+
+    private final SampleSaveConfiguration saveConfig;
+
+    private final String host;
+
+    private final int port;
+
+    // Identifies the listener to the receiver
+    private final byte[] token;
+
+    // Server-only work items
+    private transient BlockingQueue<SampleEvent> queue;
+
+    private transient Worker worker;
+
+    private transient volatile boolean failed;
+
+    // The remaining items are only used by the worker
+
+    private transient SocketChannel channel;
+
+    private transient BinaryResultWriter writer;
+
+    // The samples encoded since the last flush, sent with RMI if the connection fails
+    private transient List<SampleEvent> unsent;
+
+    private transient long batchSendTime;
+
+    // Configuration items, set up by readResolve
+    private transient volatile int numSamplesThreshold;
+
+    private transient volatile long timeThresholdMs;
+
+    /**
+     * @deprecated only for use by test code
+     */
+    @Deprecated
+    public BinarySampleSender() {
+        listener = null;
+        saveConfig = null;
+        host = null;
+        port = 0;
+        token = null;
+        log.warn("Constructor only intended for use in testing"); // $NON-NLS-1$
+    }
+
+    /**
+     * Create the sender on the client, starting the receiver if necessary.
+     *
+     * @param listener the listener the samples are for
+     */
+    BinarySampleSender(RemoteSampleListener listener) {
+        this(listener, getSaveConfig(listener));
+    }
+
+    /**
+     * Create the sender on the client, starting the receiver if necessary.
+     *
+     * @param listener the listener the samples are for
+     * @param saveConfig the fields of the samples to send
+     */
+    BinarySampleSender(RemoteSampleListener listener, SampleSaveConfiguration saveConfig) {
+        this.listener = listener;
+        this.saveConfig = saveConfig;
+        try {
+            BinarySampleReceiver receiver = BinarySampleReceiver.getInstance();
+            host = receiver.getHost();
+            port = receiver.getPort();
+            token = receiver.register(listener);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start the receiver of binary samples", e);
+        }
+        log.info("Using BinarySampleSender for this run, receiver: " + host + ":" + port);
+    }
+
+    // The fields to send are those saved by the listener, or the default ones
+    private static SampleSaveConfiguration getSaveConfig(RemoteSampleListener listener) {
+        if (listener instanceof RemoteSampleListenerImpl) {
+            Object target = ((RemoteSampleListenerImpl) listener).getSampleListener();
+            if (target instanceof ResultCollector) {
+                return ((ResultCollector) target).getSaveConfig();
+            }
+        }
+        return new SampleSaveConfiguration();
+    }
+
+    /**
+     * Send the queued samples and close the connection,
+     * then inform the listener that the test has ended.
+     *
+     * @param host the host that the test has ended on
+     */
+    @Override
+    public void testEnded(String host) {
+        log.info("Test Ended on " + host);
+        worker.finish();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for the queued binary samples to be sent");
+            Thread.currentThread().interrupt();
+        }
+        try {
+            listener.testEnded(host);
+        } catch (RemoteException err) {
+            log.error("testEnded(host)", err);
+        }
+    }
+
+    /**
+     * Queue a sample for the worker, or send it with RMI if the binary format cannot hold it
+     * or the connection has failed.
+     *
+     * @param e the sample event
+     */
+    @Override
+    public void sampleOccurred(SampleEvent e) {
+        if (!failed && !needsRmi(e.getResult())) {
+            try {
+                while (!queue.offer(e, PRODUCER_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                    if (!worker.isAlive()) {
+                        log.error("The binary sample worker has stopped, sending the sample with RMI");
+                        sendWithRmi(e);
+                        return;
+                    }
+                }
+                return;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sendWithRmi(e);
+    }
+
+    private void sendWithRmi(SampleEvent e) {
+        try {
+            listener.sampleOccurred(e);
+        } catch (RemoteException err) {
+            log.error("sampleOccurred", err);
+        }
+    }
+
+    /**
+     * @param res the sample
+     * @return true if the sample has data that must be saved but which the binary format does not hold
+     */
+    private boolean needsRmi(SampleResult res) {
+        SampleSaveConfiguration config = saveConfig;
+        if (!config.saveAsXml()) {
+            return false;
+        }
+        return config.saveResponseData(res) || config.saveSamplerData(res)
+                || config.saveRequestHeaders() || config.saveResponseHeaders()
+                || (config.saveSubresults() && res.getSubResults().length > 0)
+                || (config.saveAssertions() && res.getAssertionResults().length > 0);
+    }
+
+    // Called by the worker
+    private void write(SampleEvent e) {
+        if (failed) {
+            sendWithRmi(e);
+            return;
+        }
+        try {
+            if (writer == null) {
+                writer = new BinaryResultWriter(connect(), saveConfig, false,
+                        compress ? Deflater.BEST_SPEED : Deflater.NO_COMPRESSION);
+                log.info("Sending binary samples to " + host + ":" + port);
+            }
+            writer.write(e);
+            unsent.add(e);
+            if (writer.getBufferedRows() == 0) {
+                // The block is full and has been written
+                send();
+            }
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    // Called by the worker
+    private void sendIfNeeded() {
+        if (writer == null || unsent.isEmpty()) {
+            return;
+        }
+        boolean sendNow = numSamplesThreshold != -1 && unsent.size() >= numSamplesThreshold;
+        if (timeThresholdMs != -1) {
+            long now = System.currentTimeMillis();
+            if (batchSendTime == 0) {
+                batchSendTime = now + timeThresholdMs;
+            }
+            if (batchSendTime < now) {
+                sendNow = true;
+                batchSendTime = now + timeThresholdMs;
+            }
+        }
+        if (sendNow) {
+            try {
+                send();
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        }
+    }
+
+    // Called by the worker
+    private void send() throws IOException {
+        writer.flush();
+        unsent.clear();
+    }
+
+    // Called by the worker at the end of the test
+    private void end() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            send();
+        } catch (IOException ex) {
+            fail(ex);
+            return;
+        }
+        if (channel != null) {
+            try {
+                // Wait until the client has passed on all the samples
+                channel.socket().shutdownOutput();
+                channel.read(ByteBuffer.allocate(1));
+            } catch (IOException ex) {
+                log.error("Error sending the last binary samples", ex);
+            }
+        }
+        close();
+    }
+
+    // Called by the worker
+    private void fail(IOException ex) {
+        log.error("Error sending binary samples, using RMI for the rest of the run", ex);
+        failed = true;
+        close();
+        for (SampleEvent e : unsent) {
+            sendWithRmi(e);
+        }
+        unsent.clear();
+    }
+
+    /**
+     * Open the connection to the receiver and identify the listener.
+     * Called by the worker.
+     *
+     * @return the stream to write the samples to
+     * @throws IOException if the connection cannot be opened
+     */
+    OutputStream connect() throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        out.write(token);
+        return out;
+    }
+
+    // Called by the worker
+    private void close() {
+        JOrphanUtils.closeQuietly(writer);
+        JOrphanUtils.closeQuietly(channel);
+        writer = null;
+        channel = null;
+    }
+
+    /**
+     * Processed by the RMI server code; acts as testStarted().
+     * @throws ObjectStreamException
+     */
+    protected Object readResolve() throws ObjectStreamException {
+        if (isClientConfigured()) {
+            numSamplesThreshold = clientConfiguredNumSamplesThreshold;
+            timeThresholdMs = clientConfiguredTimeThresholdMs;
+        } else {
+            numSamplesThreshold = NUM_SAMPLES_THRESHOLD;
+            timeThresholdMs = TIME_THRESHOLD_MS;
+        }
+        log.info("Using BinarySampleSender for this run, receiver: " + host + ":" + port
+                + ", thresholds: num=" + numSamplesThreshold + ", time=" + timeThresholdMs);
+        queue = new LinkedBlockingQueue<SampleEvent>(QUEUE_SIZE);
+        unsent = new ArrayList<SampleEvent>();
+        worker = new Worker(this);
+        worker.start();
+        return this;
+    }
+
+    /**
+     * Encodes and sends the queued samples, off the sampling threads.
+     */
+    private static class Worker extends Thread {
+
+        private final BinarySampleSender sender;
+
+        private volatile boolean finishing;
+
+        private Worker(BinarySampleSender sender) {
+            super("BinarySampleSender"); // $NON-NLS-1$
+            this.sender = sender;
+            setDaemon(true);
+        }
+
+        // Send the queued samples and stop
+        void finish() {
+            finishing = true;
+        }
+
+        @Override
+        public void run() {
+            BlockingQueue<SampleEvent> queue = sender.queue;
+            while (true) {
+                SampleEvent e;
+                try {
+                    e = queue.poll(WORKER_WAIT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    e = queue.poll();
+                    finishing = true;
+                }
+                if (e != null) {
+                    sender.write(e);
+                } else if (finishing) {
+                    break;
+                }
+                sender.sendIfNeeded();
+            }
+            sender.end();
+            log.debug("Worker ended");
+        }
+    }
+}
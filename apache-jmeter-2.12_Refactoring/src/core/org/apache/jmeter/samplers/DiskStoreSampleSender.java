@@ -19,27 +19,26 @@
 package org.apache.jmeter.samplers;
 
 import org.apache.log.Logger;
-import org.apache.commons.io.IOUtils;
+import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.jorphan.util.JMeterError;
 
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamException;
-import java.io.OutputStream;
 import java.io.Serializable;
 import java.rmi.RemoteException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
 
 /**
- * Version of HoldSampleSender that stores the samples on disk as a serialised stream.
+ * Version of HoldSampleSender that stores the samples on disk, in a {@link SampleSpool}.
+ * <p>
+ * The sampling threads append their samples to memory-mapped segment files of
+ * <code>diskstore.segment_size</code> bytes (default 64 MB), in the directory given by
+ * <code>diskstore.directory</code> (default the temporary directory).
+ * At the end of the test the segments are read by <code>diskstore.replay_threads</code> threads
+ * (default 4), which send the samples to the client in batches of
+ * <code>diskstore.replay_batch_size</code> samples (default 1000).
  */
 
 public class DiskStoreSampleSender extends AbstractSampleSender implements Serializable {
@@ -47,11 +46,18 @@ public class DiskStoreSampleSender extends AbstractSampleSender implements Seria
 
     private static final long serialVersionUID = 252L;
 
+    // Static fields are resolved on the server
+    private static final String DIRECTORY = JMeterUtils.getPropDefault("diskstore.directory", ""); // $NON-NLS-1$ $NON-NLS-2$
+
+    private static final int SEGMENT_SIZE = JMeterUtils.getPropDefault("diskstore.segment_size", 64 * 1024 * 1024); // $NON-NLS-1$
+
+    private static final int REPLAY_THREADS = JMeterUtils.getPropDefault("diskstore.replay_threads", 4); // $NON-NLS-1$
+
+    private static final int REPLAY_BATCH_SIZE = JMeterUtils.getPropDefault("diskstore.replay_batch_size", 1000); // $NON-NLS-1$
+
     private final RemoteSampleListener listener;
 
-    private transient volatile ObjectOutputStream oos;
-    private transient volatile File temporaryFile;
-    private transient volatile ExecutorService singleExecutor;
+    private transient volatile SampleSpool spool;
 
     /**
      * @deprecated only for use by test code
@@ -70,46 +76,29 @@ public class DiskStoreSampleSender extends AbstractSampleSender implements Seria
     @Override
     public void testEnded(String host) {
         log.info("Test Ended on " + host);
-        singleExecutor.submit(new Runnable(){
-            @Override
-            public void run() {
-                try {
-                    oos.close(); // ensure output is flushed
-                } catch (IOException e) {
-                    log.error("Failed to close data file ", e);
-                }                
-            }});
-        singleExecutor.shutdown(); // finish processing samples
         try {
-            if (!singleExecutor.awaitTermination(3, TimeUnit.SECONDS)) {
-                log.error("Executor did not terminate in a timely fashion");
-            }
-        } catch (InterruptedException e1) {
-            log.error("Executor did not terminate in a timely fashion", e1);
-        }
-        ObjectInputStream ois = null;
-        try {
-            ois = new ObjectInputStream(new FileInputStream(temporaryFile));
-            Object obj = null;
-            while((obj = ois.readObject()) != null) {
-                if (obj instanceof SampleEvent) {
-                    try {
-                        listener.sampleOccurred((SampleEvent) obj);
-                    } catch (RemoteException err) {
-                        if (err.getCause() instanceof java.net.ConnectException){
-                            throw new JMeterError("Could not return sample",err);
+            if (spool != null) {
+                long start = System.currentTimeMillis();
+                long count = spool.replay(REPLAY_THREADS, REPLAY_BATCH_SIZE, new SampleSpool.Handler() {
+                    @Override
+                    public void handle(List<SampleEvent> events) throws IOException {
+                        try {
+                            listener.processBatch(events);
+                        } catch (RemoteException err) {
+                            if (err.getCause() instanceof java.net.ConnectException){
+                                throw err; // stops the replay
+                            }
+                            log.error("returning sample", err);
                         }
-                        log.error("returning sample", err);
                     }
-                } else {
-                    log.error("Unexpected object type found in data file "+obj.getClass().getName());
-                }
-            }                    
-        } catch (EOFException err) {
-            // expected
+                });
+                log.info("Returned " + count + " samples from " + spool.getSegmentCount() + " spool files ("
+                        + spool.getSize() / 1024 + " kB) in " + (System.currentTimeMillis() - start) + " ms");
+            }
         } catch (IOException err) {
-            log.error("returning sample", err);
-        } catch (ClassNotFoundException err) {
+            if (err.getCause() instanceof java.net.ConnectException){
+                throw new JMeterError("Could not return sample",err);
+            }
             log.error("returning sample", err);
         } finally {
             try {
@@ -117,29 +106,23 @@ public class DiskStoreSampleSender extends AbstractSampleSender implements Seria
             } catch (RemoteException e) {
                 log.error("returning sample", e);
             }
-            IOUtils.closeQuietly(ois);
-            if(!temporaryFile.delete()) {
-                log.warn("Could not delete file:"+temporaryFile.getAbsolutePath());
+            if (spool != null) {
+                spool.close();
             }
         }
     }
 
     @Override
     public void sampleOccurred(final SampleEvent e) {
-        // sampleOccurred is called from multiple threads; not safe to write from multiple threads.
-        // also decouples the file IO from sample generation
-        singleExecutor.submit(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        oos.writeObject(e);
-                    } catch (IOException err) {
-                        log.error("sampleOccurred", err);
-                    }                
-                }
-            
-            }
-        );
+        // sampleOccurred is called from multiple threads; the spool allows concurrent appends
+        if (spool == null) { // could not be created, already reported
+            return;
+        }
+        try {
+            spool.append(e);
+        } catch (IOException err) {
+            log.error("sampleOccurred", err);
+        }
     }
 
     /**
@@ -149,21 +132,8 @@ public class DiskStoreSampleSender extends AbstractSampleSender implements Seria
     // TODO should errors be thrown back through RMI?
     private Object readResolve() throws ObjectStreamException{
         log.info("Using DiskStoreSampleSender for this test run"); // server log file
-        singleExecutor = Executors.newSingleThreadExecutor();
         try {
-            temporaryFile = File.createTempFile("SerialisedSampleSender", ".ser");
-            temporaryFile.deleteOnExit();
-            singleExecutor.submit(new Runnable(){
-                @Override
-                public void run() {
-                    OutputStream anOutputStream;
-                    try {
-                        anOutputStream = new FileOutputStream(temporaryFile);
-                        oos = new ObjectOutputStream(anOutputStream);
-                    } catch (IOException e) {
-                        log.error("Failed to create output Stream", e);
-                    }
-                }});
+            spool = new SampleSpool(DIRECTORY.length() > 0 ? new File(DIRECTORY) : null, SEGMENT_SIZE);
         } catch (IOException e) {
             log.error("Failed to create output file", e);
         }
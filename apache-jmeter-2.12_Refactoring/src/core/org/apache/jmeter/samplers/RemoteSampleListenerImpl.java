@@ -53,6 +53,13 @@ public class RemoteSampleListenerImpl extends java.rmi.server.UnicastRemoteObjec
         }
     }
 
+    /**
+     * @return the local listener the samples are passed to, may be null
+     */
+    SampleListener getSampleListener() {
+        return sampleListener;
+    }
+
     @Override
     public void testStarted() {
         if (testListener != null) {
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Collects response data while it is read by a sampler.
+ * The data is kept on the heap until it exceeds a threshold,
+ * after which it is written to a temporary file, see {@link SpilledResponseData}.
+ * This bounds the heap used by a sample however large the response is.
+ * <p>
+ * The default threshold in bytes is given by the property
+ * <code>sampleresult.response_data.spill_threshold</code>;
+ * the default of 0 keeps all data on the heap.
+ * <p>
+ * Not thread-safe; a buffer is used by a single sampler thread.
+ */
+public class ResponseDataBuffer extends OutputStream {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final int SPILL_THRESHOLD =
+        JMeterUtils.getPropDefault("sampleresult.response_data.spill_threshold", 0); // $NON-NLS-1$
+
+    private static final int DEFAULT_INITIAL_SIZE = 4 * 1024;
+
+    private static final int FILE_BUFFER_SIZE = 8192;
+
+    private final int threshold;
+
+    private ByteArrayOutputStream heap;
+
+    private File file;
+
+    private OutputStream fileOut;
+
+    private long length;
+
+    /**
+     * Create a buffer using the threshold from the properties.
+     *
+     * @param expectedLength the expected length of the data, or zero or less if unknown
+     */
+    public ResponseDataBuffer(long expectedLength) {
+        this(expectedLength, SPILL_THRESHOLD);
+    }
+
+    /**
+     * @param expectedLength the expected length of the data, or zero or less if unknown
+     * @param threshold number of bytes above which the data is written to a file; 0 to never write a file
+     */
+    public ResponseDataBuffer(long expectedLength, int threshold) {
+        this.threshold = threshold;
+        long initialSize = expectedLength <= 0 ? DEFAULT_INITIAL_SIZE : expectedLength;
+        if (threshold > 0) {
+            initialSize = Math.min(initialSize, threshold);
+        }
+        heap = new ByteArrayOutputStream((int) Math.min(initialSize, Integer.MAX_VALUE - 8));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (fileOut == null && threshold > 0 && length + 1 > threshold) {
+            spill();
+        }
+        if (fileOut != null) {
+            fileOut.write(b);
+        } else {
+            heap.write(b);
+        }
+        length++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (fileOut == null && threshold > 0 && length + len > threshold) {
+            spill();
+        }
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+        } else {
+            heap.write(b, off, len);
+        }
+        length += len;
+    }
+
+    private void spill() throws IOException {
+        file = SpilledResponseData.createFile();
+        fileOut = new BufferedOutputStream(new FileOutputStream(file), FILE_BUFFER_SIZE);
+        heap.writeTo(fileOut);
+        heap = null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileOut != null) {
+            fileOut.close();
+        }
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long size() {
+        return length;
+    }
+
+    /**
+     * @return true if the data has been written to a file
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * @return a copy of the data; it is read back into the heap if it has been written to a file
+     * @throws IOException if the file cannot be read
+     */
+    public byte[] toByteArray() throws IOException {
+        if (file == null) {
+            return heap.toByteArray();
+        }
+        close();
+        byte[] data = new SpilledResponseData(file, length).getBytes();
+        file = null; // now owned by the SpilledResponseData
+        return data;
+    }
+
+    /**
+     * Close the buffer and set the data as the response data of a sample.
+     * The buffer must not be used afterwards.
+     *
+     * @param res the sample to update
+     * @throws IOException if the file cannot be closed
+     */
+    public void store(SampleResult res) throws IOException {
+        close();
+        if (file == null) {
+            res.setResponseData(heap.toByteArray());
+        } else {
+            res.setResponseData(new SpilledResponseData(file, length));
+            file = null; // now owned by the SpilledResponseData
+        }
+    }
+
+    /**
+     * Close the buffer and delete the file if the data was not stored in a sample,
+     * for example because reading failed.
+     */
+    public void discard() {
+        JOrphanUtils.closeQuietly(fileOut);
+        if (file != null && !file.delete()) {
+            log.warn("Could not delete " + file);
+        }
+        file = null;
+    }
+}
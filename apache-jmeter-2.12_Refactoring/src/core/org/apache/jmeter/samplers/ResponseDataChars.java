@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Read-only view of response data as characters, decoded once and shared by the
+ * assertions and post-processors of a sample, see {@link SampleResult#getResponseDataAsChars()}.
+ * <p>
+ * If the data is pure ASCII in an ASCII-compatible encoding (UTF-8, US-ASCII, ISO-8859-x, windows-125x),
+ * no decoding is needed: characters and regions are read from the bytes,
+ * and the character array is only created when {@link #getChars()} is called.
+ * Other data is decoded in a single pass.
+ * <p>
+ * Unlike {@link String#toCharArray()}, {@link #getChars()} does not copy,
+ * so the ORO matchers can be given the same array by all the elements which test a sample.
+ */
+public final class ResponseDataChars implements CharSequence {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1"); // $NON-NLS-1$
+
+    private final byte[] ascii; // null unless the data is pure ASCII
+
+    private volatile char[] chars; // created lazily for ASCII data
+
+    private volatile String string;
+
+    /**
+     * @param data the response data, which must not be changed afterwards
+     * @param charset the encoding of the data
+     */
+    public ResponseDataChars(byte[] data, Charset charset) {
+        if (isAsciiCompatible(charset) && isAscii(data)) {
+            ascii = data;
+        } else {
+            ascii = null;
+            CharBuffer decoded = charset.decode(ByteBuffer.wrap(data));
+            if (decoded.hasArray() && decoded.arrayOffset() == 0 && decoded.array().length == decoded.remaining()) {
+                chars = decoded.array();
+            } else {
+                chars = new char[decoded.remaining()];
+                decoded.get(chars);
+            }
+        }
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        String name = charset.name();
+        return name.equals("UTF-8") || name.equals("US-ASCII") // $NON-NLS-1$ $NON-NLS-2$
+                || name.startsWith("ISO-8859-") || name.startsWith("windows-125"); // $NON-NLS-1$ $NON-NLS-2$
+    }
+
+    private static boolean isAscii(byte[] data) {
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the characters, which are shared and must not be changed.
+     *
+     * @return the characters; the array has exactly {@link #length()} elements
+     */
+    public char[] getChars() {
+        char[] c = chars;
+        if (c == null) { // Only ASCII data is decoded lazily
+            c = new char[ascii.length];
+            for (int i = 0; i < c.length; i++) {
+                c[i] = (char) ascii[i];
+            }
+            chars = c;
+        }
+        return c;
+    }
+
+    /**
+     * Get the characters of a sequence without copying them if possible.
+     *
+     * @param text the characters
+     * @return the shared array of a ResponseDataChars, otherwise a new array
+     */
+    public static char[] getChars(CharSequence text) {
+        if (text instanceof ResponseDataChars) {
+            return ((ResponseDataChars) text).getChars();
+        }
+        return text.toString().toCharArray();
+    }
+
+    @Override
+    public int length() {
+        return ascii != null ? ascii.length : chars.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return ascii != null ? (char) ascii[index] : chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        if (ascii != null) {
+            return new String(ascii, start, end - start, ISO_8859_1);
+        }
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        String s = string;
+        if (s == null) {
+            s = ascii != null ? new String(ascii, ISO_8859_1) : new String(chars);
+            string = s;
+        }
+        return s;
+    }
+}
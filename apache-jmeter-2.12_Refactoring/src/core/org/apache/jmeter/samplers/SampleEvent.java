@@ -44,6 +44,9 @@ public class SampleEvent implements Serializable {
     // List of variable names to be saved in JTL files
     private static volatile String[] variableNames = new String[0];
 
+    // The slots of the variables, in the same order as the names
+    private static volatile VariableSlots variableSlots = new VariableSlots(-1, new int[0]);
+
     // The values. Entries may be null, but there will be the correct number.
     private final String[] values;
 
@@ -59,7 +62,17 @@ public class SampleEvent implements Serializable {
      */
     public static void initSampleVariables() {
         String vars = JMeterUtils.getProperty(SAMPLE_VARIABLES);
-        variableNames=vars != null ? vars.split(",") : new String[0];
+        String[] names = vars != null ? vars.split(",") : new String[0];
+        int generation;
+        int[] slots = new int[names.length];
+        do {
+            generation = JMeterVariables.getSlotGeneration();
+            for (int i = 0; i < names.length; i++) {
+                slots[i] = JMeterVariables.slotOf(names[i]);
+            }
+        } while (generation != JMeterVariables.getSlotGeneration()); // all the slots are of that generation
+        variableSlots = new VariableSlots(generation, slots);
+        variableNames = names;
         log.info("List of sample_variables: " + Arrays.toString(variableNames));
     }
 
@@ -111,6 +124,25 @@ public class SampleEvent implements Serializable {
     public SampleEvent(SampleResult result, String threadGroup, String hostname) {
        this(result, threadGroup, hostname, false);
     }
+
+    /**
+     * Only intended for use when loading results from a file.
+     *
+     * @param result
+     * @param threadGroup
+     * @param hostname
+     * @param values the values of the sample variables, in the order of {@link #getVarName(int)}
+     */
+    public SampleEvent(SampleResult result, String threadGroup, String hostname, String[] values) {
+       this(result, threadGroup, hostname, values, false);
+    }
+
+    // Used by SampleSpool, which keeps transaction events
+    SampleEvent(SampleResult result, String threadGroup, String hostname, String[] values,
+            boolean isTransactionSampleEvent) {
+       this(result, threadGroup, hostname, isTransactionSampleEvent);
+       System.arraycopy(values, 0, this.values, 0, Math.min(values.length, this.values.length));
+    }
     
     private SampleEvent(SampleResult result, String threadGroup, String hostname, boolean isTransactionSampleEvent) {
         this.result = result;
@@ -132,8 +164,15 @@ public class SampleEvent implements Serializable {
     }
 
     private void saveVars(JMeterVariables vars){
-        for(int i = 0; i < variableNames.length; i++){
-            values[i] = vars.get(variableNames[i]);
+        final VariableSlots current = variableSlots;
+        final String[] names = variableNames;
+        final int[] slots = current.slots;
+        if (slots.length != values.length || names.length != values.length) { // the names were changed after this event was created
+            return;
+        }
+        for(int i = 0; i < slots.length; i++){
+            // The slots are only used if they are still current
+            values[i] = slots[i] >= 0 ? vars.get(names[i], slots[i], current.generation) : vars.get(names[i]);
         }
     }
 
@@ -175,4 +214,17 @@ public class SampleEvent implements Serializable {
         return isTransactionSampleEvent;
     }
 
+    /**
+     * The slots of the sample variables and the generation they were given in.
+     */
+    private static final class VariableSlots {
+        private final int generation;
+
+        private final int[] slots;
+
+        VariableSlots(int generation, int[] slots) {
+            this.generation = generation;
+            this.slots = slots;
+        }
+    }
 }
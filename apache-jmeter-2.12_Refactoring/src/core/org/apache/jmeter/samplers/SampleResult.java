@@ -18,6 +18,9 @@
 
 package org.apache.jmeter.samplers;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
@@ -95,6 +98,15 @@ public class SampleResult implements Serializable {
 
     private static final AssertionResult[] EMPTY_AR = new AssertionResult[0];
     
+    /**
+     * Number of bytes of response data kept in a file which are read to get the data as text,
+     * see {@link #getBoundedResponseData()}; 0 for no limit
+     */
+    private static final int TEXT_LIMIT =
+        JMeterUtils.getPropDefault("sampleresult.response_data.text_limit", 10 * 1024 * 1024); // $NON-NLS-1$
+
+    private static volatile boolean textLimitLogged;
+
     private static final boolean GETBYTES_BODY_REALSIZE = 
         JMeterUtils.getPropDefault("sampleresult.getbytes.body_real_size", true); // $NON-NLS-1$
 
@@ -122,6 +134,9 @@ public class SampleResult implements Serializable {
 
     private byte[] responseData = EMPTY_BA;
 
+    /** Response data kept in a file; if not null, responseData is empty */
+    private SpilledResponseData spilledResponseData;
+
     private String responseCode = "";// Never return null
 
     private String label = "";// Never return null
@@ -155,6 +170,9 @@ public class SampleResult implements Serializable {
     /** Start of pause (if any) */
     private long pauseTime = 0;
 
+    /** When the sample should have started according to its schedule, 0 if not scheduled */
+    private long intendedStartTime = 0;
+
     private List<AssertionResult> assertionResults;
 
     private List<SampleResult> subResults;
@@ -253,6 +271,11 @@ public class SampleResult implements Serializable {
      * Cache for responseData as string to avoid multiple computations
      */
     private volatile transient String responseDataAsString;
+
+    /**
+     * Cache for responseData as characters, shared by assertions and post-processors
+     */
+    private volatile transient ResponseDataChars responseDataAsChars;
     
     private long initOffset(){
         if (useNanoTime){
@@ -298,6 +321,7 @@ public class SampleResult implements Serializable {
         // files is created automatically, and applies per instance
         groupThreads = res.groupThreads;//OK
         idleTime = res.idleTime;
+        intendedStartTime = res.intendedStartTime;
         isMonitor = res.isMonitor;
         label = res.label;//OK
         latency = res.latency;
@@ -307,7 +331,9 @@ public class SampleResult implements Serializable {
         requestHeaders = res.requestHeaders;//OK
         responseCode = res.responseCode;//OK
         responseData = res.responseData;//OK
+        spilledResponseData = res.spilledResponseData;
         responseDataAsString = null;
+        responseDataAsChars = null;
         responseHeaders = res.responseHeaders;//OK
         responseMessage = res.responseMessage;//OK
         // Don't copy this; it is per instance resultFileName = res.resultFileName;
@@ -558,6 +584,24 @@ public class SampleResult implements Serializable {
         return assertionResults.toArray(new AssertionResult[assertionResults.size()]);
     }
 
+    /**
+     * Gets the first non-null failure message of the assertion results,
+     * without copying the results.
+     *
+     * @return the message, or null if there is none
+     */
+    public String getFirstAssertionFailureMessage() {
+        if (assertionResults != null) {
+            for (int i = 0; i < assertionResults.size(); i++) {
+                String message = assertionResults.get(i).getFailureMessage();
+                if (message != null) {
+                    return message;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * Add a subresult and adjust the parent byte count and end-time.
      * 
@@ -632,9 +676,25 @@ public class SampleResult implements Serializable {
      */
     public void setResponseData(byte[] response) {
         responseDataAsString = null;
+        responseDataAsChars = null;
+        spilledResponseData = null;
         responseData = response == null ? EMPTY_BA : response;
     }
 
+    /**
+     * Sets the responseData attribute of the SampleResult object to data kept in a file.
+     *
+     * @param response
+     *            the new responseData value
+     * @see ResponseDataBuffer
+     */
+    public void setResponseData(SpilledResponseData response) {
+        responseDataAsString = null;
+        responseDataAsChars = null;
+        responseData = EMPTY_BA;
+        spilledResponseData = response;
+    }
+
     /**
      * Sets the responseData attribute of the SampleResult object.
      * Should only be called after setting the dataEncoding (if necessary)
@@ -647,6 +707,8 @@ public class SampleResult implements Serializable {
     @Deprecated
     public void setResponseData(String response) {
         responseDataAsString = null;
+        responseDataAsChars = null;
+        spilledResponseData = null;
         try {
             responseData = response.getBytes(getDataEncodingWithDefault());
         } catch (UnsupportedEncodingException e) {
@@ -664,6 +726,8 @@ public class SampleResult implements Serializable {
      */
     public void setResponseData(final String response, final String encoding) {
         responseDataAsString = null;
+        responseDataAsChars = null;
+        spilledResponseData = null;
         String encodeUsing = encoding != null? encoding : DEFAULT_CHARSET;
         try {
             responseData = response.getBytes(encodeUsing);
@@ -684,29 +748,121 @@ public class SampleResult implements Serializable {
      *
      * Instead, always use {@link #getBytes()} to obtain the sample result byte count.
      * </p>
+     * If the data is kept in a file, the whole of it is read into a new array on each call;
+     * use {@link #getResponseDataAsStream()} or {@link #getBoundedResponseData()} where possible.
+     *
      * @return the responseData value (cannot be null)
      */
     public byte[] getResponseData() {
+        if (spilledResponseData != null) {
+            return spilledResponseData.getBytes();
+        }
         return responseData;
     }
 
     /**
-     * Gets the responseData of the SampleResult object as a String
+     * Gets the responseData to be parsed or searched, e.g. by an assertion or an extractor.
+     * If the data is kept in a file, only its first <code>sampleresult.response_data.text_limit</code>
+     * bytes are read (10 MB by default), so the memory needed does not depend on the size of the response.
+     * The text returned by {@link #getResponseDataAsString()} and {@link #getResponseDataAsChars()}
+     * is decoded from these bytes.
+     *
+     * @return the responseData, or its start if it is kept in a file which is larger than the limit
+     */
+    public byte[] getBoundedResponseData() {
+        if (spilledResponseData == null) {
+            return responseData;
+        }
+        if (TEXT_LIMIT > 0 && spilledResponseData.length() > TEXT_LIMIT) {
+            if (!textLimitLogged) {
+                textLimitLogged = true;
+                log.warn("Only the first " + TEXT_LIMIT + " of the " + spilledResponseData.length()
+                        + " bytes of response data of " + getSampleLabel() + " are used as text,"
+                        + " see sampleresult.response_data.text_limit; this is only logged once");
+            }
+            return spilledResponseData.getBytes(TEXT_LIMIT);
+        }
+        return spilledResponseData.getBytes();
+    }
+
+    /**
+     * Gets the responseData as a stream, without copying it into the heap if it is kept in a file.
+     *
+     * @return a new stream, which the caller must close
+     * @throws IOException if the file holding the data cannot be opened
+     */
+    public InputStream getResponseDataAsStream() throws IOException {
+        if (spilledResponseData != null) {
+            return spilledResponseData.openStream();
+        }
+        return new ByteArrayInputStream(responseData);
+    }
+
+    /**
+     * @return the length of the responseData, without reading it if it is kept in a file
+     */
+    public long getResponseDataLength() {
+        if (spilledResponseData != null) {
+            return spilledResponseData.length();
+        }
+        return responseData.length;
+    }
+
+    /**
+     * @return the responseData if it is kept in a file, else null
+     */
+    public SpilledResponseData getSpilledResponseData() {
+        return spilledResponseData;
+    }
+
+    /**
+     * Gets the responseData of the SampleResult object as a String.
+     * If the data is kept in a file, only its start is used, see {@link #getBoundedResponseData()}.
      *
      * @return the responseData value as a String, converted according to the encoding
      */
     public String getResponseDataAsString() {
         try {
+            if (spilledResponseData != null) { // Don't keep a second copy of large data
+                return getResponseDataAsChars().toString();
+            }
             if(responseDataAsString == null) {
-                responseDataAsString= new String(responseData,getDataEncodingWithDefault());
+                ResponseDataChars chars = responseDataAsChars;
+                responseDataAsString = chars != null ? chars.toString() // already decoded
+                        : new String(responseData,getDataEncodingWithDefault());
             }
             return responseDataAsString;
         } catch (UnsupportedEncodingException e) {
             log.warn("Using platform default as "+getDataEncodingWithDefault()+" caused "+e);
-            return new String(responseData); // N.B. default charset is used deliberately here
+            return new String(getResponseData()); // N.B. default charset is used deliberately here
         }
     }
 
+    /**
+     * Gets the responseData of the SampleResult object as characters, decoded once and shared by all callers.
+     * Prefer this to {@link #getResponseDataAsString()} when the data is only searched,
+     * as the characters can be given to the regular expression matchers without copying.
+     * If the data is kept in a file, only its start is used, see {@link #getBoundedResponseData()};
+     * the characters are kept until {@link #cleanAfterSample()}.
+     *
+     * @return the responseData value as characters, converted according to the encoding
+     */
+    public ResponseDataChars getResponseDataAsChars() {
+        ResponseDataChars chars = responseDataAsChars;
+        if (chars == null) {
+            Charset charset;
+            try {
+                charset = Charset.forName(getDataEncodingWithDefault());
+            } catch (IllegalArgumentException e) { // illegal or unsupported name
+                log.warn("Using platform default as "+getDataEncodingWithDefault()+" caused "+e);
+                charset = Charset.defaultCharset();
+            }
+            chars = new ResponseDataChars(getBoundedResponseData(), charset);
+            responseDataAsChars = chars;
+        }
+        return chars;
+    }
+
     public void setSamplerData(String s) {
         samplerData = s;
     }
@@ -715,6 +871,11 @@ public class SampleResult implements Serializable {
         return samplerData;
     }
 
+    // The sampler data as set, which subclasses may add to in getSamplerData(); for SampleSpool
+    String getRawSamplerData() {
+        return samplerData;
+    }
+
     /**
      * Get the time it took this sample to occur.
      *
@@ -855,6 +1016,11 @@ public class SampleResult implements Serializable {
         return dataEncoding;
     }
 
+    // The encoding as set, which subclasses may guess from the data in getDataEncodingNoDefault(); for SampleSpool
+    String getRawDataEncoding() {
+        return dataEncoding;
+    }
+
     /**
      * Sets the dataEncoding.
      *
@@ -974,6 +1140,49 @@ public class SampleResult implements Serializable {
         return startTime;
     }
 
+    /**
+     * Get the time at which the sample should have started if its thread had not been held up,
+     * e.g. by a previous slow response. This is set when the sample is run by a scheduler
+     * such as the {@link org.apache.jmeter.threads.ArrivalsThreadGroup}.
+     *
+     * @return the intended start time, or 0 if the sample was not scheduled
+     */
+    public long getIntendedStartTime() {
+        return intendedStartTime;
+    }
+
+    /**
+     * @param intendedStartTime
+     *            the time at which the sample should have started, 0 if not scheduled
+     * @see #getIntendedStartTime()
+     */
+    public void setIntendedStartTime(long intendedStartTime) {
+        this.intendedStartTime = intendedStartTime;
+    }
+
+    /**
+     * Get how late the sample started compared with its {@link #getIntendedStartTime() intended start time}.
+     *
+     * @return the delay in milliseconds, 0 if the sample started on time or was not scheduled
+     */
+    public long getStartLag() {
+        if (intendedStartTime <= 0 || intendedStartTime >= startTime) {
+            return 0;
+        }
+        return startTime - intendedStartTime;
+    }
+
+    /**
+     * Get the response time corrected for coordinated omission, i.e. the time a user
+     * who arrived on schedule would have waited for the response: the elapsed time
+     * plus the {@link #getStartLag() start lag}.
+     *
+     * @return the corrected elapsed time in milliseconds
+     */
+    public long getCorrectedTime() {
+        return getTime() + getStartLag();
+    }
+
     /*
      * Helper methods N.B. setStartTime must be called before setEndTime
      *
@@ -1155,7 +1364,7 @@ public class SampleResult implements Serializable {
         } else if (GETBYTES_BODY_REALSIZE) {
             return this.getBodySize();
         }
-        return bytes == 0 ? responseData.length : bytes;
+        return bytes == 0 ? (int) getResponseDataLength() : bytes;
     }
 
     /**
@@ -1288,7 +1497,7 @@ public class SampleResult implements Serializable {
      * @return the body size in bytes
      */
     public int getBodySize() {
-        return bodySize == 0 ? responseData.length : bodySize;
+        return bodySize == 0 ? (int) getResponseDataLength() : bodySize;
     }
 
     /**
@@ -1348,5 +1557,6 @@ public class SampleResult implements Serializable {
      */
     public void cleanAfterSample() {
         this.responseDataAsString = null;
+        this.responseDataAsChars = null;
     }
 }
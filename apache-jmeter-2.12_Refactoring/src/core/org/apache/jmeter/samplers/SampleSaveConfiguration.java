@@ -77,6 +77,9 @@ public class SampleSaveConfiguration implements Cloneable, Serializable {
     /** Indicates that the results file should be in CSV format. * */
     private static final String CSV = "csv"; // $NON_NLS-1$
 
+    /** Indicates that the results file should be in the binary columnar format. * */
+    private static final String BINARY = "binary"; // $NON_NLS-1$
+
     /** Indicates that the results should be stored in a database. * */
     //NOTUSED private static final String DATABASE = "db"; // $NON_NLS-1$
 
@@ -119,7 +122,7 @@ public class SampleSaveConfiguration implements Cloneable, Serializable {
 
     /***************************************************************************
      * The name of the property indicating which format should be used when
-     * saving the results, e.g., xml or csv.
+     * saving the results, e.g., xml, csv or binary.
      **************************************************************************/
     private static final String OUTPUT_FORMAT_PROP = "jmeter.save.saveservice.output_format"; // $NON_NLS-1$
 
@@ -212,6 +215,12 @@ public class SampleSaveConfiguration implements Cloneable, Serializable {
     private static final String SAVE_SAMPLE_COUNT    = "jmeter.save.saveservice.sample_count"; // $NON_NLS-1$
 
     private static final String SAVE_IDLE_TIME       = "jmeter.save.saveservice.idle_time"; // $NON_NLS-1$
+
+    private static final String SAVE_START_LAG       = "jmeter.save.saveservice.start_lag"; // $NON_NLS-1$
+
+    private static final String RETAIN_EVERY_PROP    = "jmeter.save.saveservice.retain_every"; // $NON_NLS-1$
+
+    private static final String RETAIN_SLOWEST_PROP  = "jmeter.save.saveservice.retain_slowest"; // $NON_NLS-1$
     // N.B. Remember to update the equals and hashCode methods when adding new variables.
 
     // Initialise values from properties
@@ -233,6 +242,15 @@ public class SampleSaveConfiguration implements Cloneable, Serializable {
 
     private boolean idleTime = _idleTime;
 
+    private boolean startLag = _startLag;
+
+    private boolean binary = _binary;
+
+    // Don't save these, as not settable via GUI
+    private int retainEvery = _retainEvery;
+
+    private int retainSlowest = _retainSlowest;
+
     // Does not appear to be used (yet)
     private int assertionsResultsToSave = _assertionsResultsToSave;
 
@@ -291,6 +309,14 @@ public class SampleSaveConfiguration implements Cloneable, Serializable {
 
     private static final boolean _idleTime;
 
+    private static final boolean _startLag;
+
+    private static final boolean _binary;
+
+    private static final int _retainEvery;
+
+    private static final int _retainSlowest;
+
     private static final String DEFAULT_DELIMITER = ","; // $NON_NLS-1$
 
     /**
@@ -386,11 +412,16 @@ public class SampleSaveConfiguration implements Cloneable, Serializable {
 
         if (XML.equals(howToSave)) {
             _xml = true;
+            _binary = false;
+        } else if (BINARY.equals(howToSave)) {
+            _xml = false;
+            _binary = true;
         } else {
             if (!CSV.equals(howToSave)) {
                 log.warn(OUTPUT_FORMAT_PROP + " has unexepected value: '" + howToSave + "' - assuming 'csv' format");
             }
             _xml = false;
+            _binary = false;
         }
 
         _threadCounts=TRUE.equalsIgnoreCase(props.getProperty(SAVE_THREAD_COUNTS, TRUE));
@@ -398,6 +429,12 @@ public class SampleSaveConfiguration implements Cloneable, Serializable {
         _sampleCount=TRUE.equalsIgnoreCase(props.getProperty(SAVE_SAMPLE_COUNT, FALSE));
 
         _idleTime=TRUE.equalsIgnoreCase(props.getProperty(SAVE_IDLE_TIME, FALSE));
+
+        _startLag=TRUE.equalsIgnoreCase(props.getProperty(SAVE_START_LAG, FALSE));
+
+        _retainEvery = Math.max(0, JMeterUtils.getPropDefault(RETAIN_EVERY_PROP, 0));
+
+        _retainSlowest = Math.max(0, JMeterUtils.getPropDefault(RETAIN_SLOWEST_PROP, 0));
     }
 
     // Don't save this, as not settable via GUI
@@ -516,6 +553,10 @@ public class SampleSaveConfiguration implements Cloneable, Serializable {
             s.hostname == hostname &&
             s.sampleCount == sampleCount &&
             s.idleTime == idleTime &&
+            s.startLag == startLag &&
+            s.binary == binary &&
+            s.retainEvery == retainEvery &&
+            s.retainSlowest == retainSlowest &&
             s.threadCounts == threadCounts;
 
         boolean stringValues = false;
@@ -564,6 +605,10 @@ public class SampleSaveConfiguration implements Cloneable, Serializable {
         hash = 31 * hash + (formatter != null  ? formatter.hashCode() : 0);
         hash = 31 * hash + (sampleCount ? 1 : 0);
         hash = 31 * hash + (idleTime ? 1 : 0);
+        hash = 31 * hash + (startLag ? 1 : 0);
+        hash = 31 * hash + (binary ? 1 : 0);
+        hash = 31 * hash + retainEvery;
+        hash = 31 * hash + retainSlowest;
 
         return hash;
     }
@@ -717,6 +762,44 @@ public class SampleSaveConfiguration implements Cloneable, Serializable {
         this.xml = xml;
     }
 
+    /**
+     * @return true if results are saved in the binary columnar format;
+     * this takes precedence over {@link #saveAsXml()}
+     * @see org.apache.jmeter.save.BinaryResultWriter
+     */
+    public boolean saveAsBinary() {
+        return binary;
+    }
+
+    public void setAsBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    /**
+     * @return N if the full data is only retained for one in N successful samples;
+     * 0 or 1 if it is retained for all samples
+     * @see #retainSlowest()
+     */
+    public int retainEvery() {
+        return retainEvery;
+    }
+
+    public void setRetainEvery(int n) {
+        retainEvery = n;
+    }
+
+    /**
+     * @return the number of slowest successful samples per label whose full data is retained
+     * in addition to one in {@link #retainEvery()} samples
+     */
+    public int retainSlowest() {
+        return retainSlowest;
+    }
+
+    public void setRetainSlowest(int k) {
+        retainSlowest = k;
+    }
+
     public boolean saveFieldNames() {
         return fieldNames;
     }
@@ -834,4 +917,16 @@ public class SampleSaveConfiguration implements Cloneable, Serializable {
     public void setIdleTime(boolean save) {
         idleTime = save;
     }
+
+    /**
+     * @return true if the delay between the intended and the actual start time of samples is saved
+     * @see SampleResult#getStartLag()
+     */
+    public boolean saveStartLag() {
+        return startLag;
+    }
+
+    public void setStartLag(boolean save) {
+        startLag = save;
+    }
 }
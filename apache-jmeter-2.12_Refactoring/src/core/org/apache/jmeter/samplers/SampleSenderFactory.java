@@ -48,6 +48,8 @@ public class SampleSenderFactory {
 
     private static final String MODE_STRIPPED_DISKSTORE = "StrippedDiskStore"; // $NON-NLS-1$
 
+    private static final String MODE_BINARY = "Binary"; // $NON-NLS-1$
+
     /**
      * Checks for the Jmeter property mode and returns the required class.
      *
@@ -89,6 +91,8 @@ public class SampleSenderFactory {
             return new DiskStoreSampleSender(listener);
         } else if(type.equalsIgnoreCase(MODE_STRIPPED_DISKSTORE)){
             return new DataStrippingSampleSender(new DiskStoreSampleSender(listener));
+        } else if(type.equalsIgnoreCase(MODE_BINARY)){
+            return new BinarySampleSender(listener);
         } else {
             // should be a user provided class name
             SampleSender s = null;
@@ -0,0 +1,863 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Append-only store of sample events in memory-mapped files, used by {@link DiskStoreSampleSender}.
+ * <p>
+ * The spool is a list of segments, each a temporary file mapped into memory.
+ * A sampling thread encodes its event into a buffer of its own, reserves room for it in the current
+ * segment with a single atomic add, and copies it there, so threads only compete for the reservation.
+ * When a segment is full the next one is created. Each record is its length followed by its data;
+ * the length is written last, and unused space is zero, which ends the segment. If the data cannot
+ * be copied, the negated length is written instead, so that replay steps over the room reserved.
+ * <p>
+ * Events are written field by field with variable length numbers, including their assertion results
+ * and sub-results. Subclasses of {@link SampleResult} such as HTTPSampleResult are written the same way,
+ * followed by their own fields, provided these are all strings or primitives; results of other classes
+ * (e.g. {@link StatisticalSampleResult}) are written with Java serialization.
+ * <p>
+ * {@link #replay(int, int, Handler)} reads the segments in parallel and passes the events on in batches,
+ * in the order they were added within a segment, but not across segments.
+ * It must only be called once no more events are being added.
+ */
+public class SampleSpool implements Closeable {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); // $NON-NLS-1$
+
+    private static final byte KIND_FIELDS = 1;
+
+    private static final byte KIND_SERIALIZED = 2;
+
+    private static final int FLAG_SUCCESS = 1;
+
+    private static final int FLAG_STOP_THREAD = 2;
+
+    private static final int FLAG_STOP_TEST = 4;
+
+    private static final int FLAG_STOP_TEST_NOW = 8;
+
+    private static final int FLAG_START_NEXT_LOOP = 16;
+
+    private static final int FLAG_MONITOR = 32;
+
+    private static final int FLAG_FAILURE = 1;
+
+    private static final int FLAG_ERROR = 2;
+
+    /**
+     * Receives the replayed events.
+     */
+    public interface Handler {
+        /**
+         * @param events a batch of events, which the handler may keep
+         * @throws IOException to stop the replay
+         */
+        void handle(List<SampleEvent> events) throws IOException;
+    }
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    // @GuardedBy("this")
+    private final List<Segment> segments = new ArrayList<Segment>();
+
+    private volatile Segment current;
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final ThreadLocal<RecordBuffer> buffers = new ThreadLocal<RecordBuffer>() {
+        @Override
+        protected RecordBuffer initialValue() {
+            return new RecordBuffer();
+        }
+    };
+
+    /**
+     * @param directory the directory of the segment files, or null for the default temporary directory
+     * @param segmentSize the size of each segment file, in bytes; larger records get a segment of their own
+     * @throws IOException if the first segment cannot be created
+     */
+    public SampleSpool(File directory, int segmentSize) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        current = newSegment(segmentSize);
+    }
+
+    // Called with the lock held, or by the constructor
+    private Segment newSegment(int size) throws IOException {
+        Segment segment = new Segment(File.createTempFile("SampleSpool", ".seg", directory), size); // $NON-NLS-1$ $NON-NLS-2$
+        synchronized (this) {
+            segments.add(segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Add an event to the spool. May be called by several threads at once.
+     *
+     * @param event the event
+     * @throws IOException if the event cannot be encoded or a new segment cannot be created
+     */
+    public void append(SampleEvent event) throws IOException {
+        RecordBuffer record = buffers.get();
+        record.reset();
+        record.skip(4); // the length
+        encode(event, record);
+        int length = record.size();
+        while (true) {
+            Segment segment = current;
+            int offset = segment.reserve(length);
+            if (offset >= 0) {
+                boolean written = false;
+                try {
+                    copy(segment.slot(offset, length), record.buffer(), length);
+                    segment.commit(offset, length);
+                    written = true;
+                } finally {
+                    if (!written) {
+                        // Otherwise replay would stop at the empty room
+                        segment.skip(offset, length);
+                    }
+                }
+                count.incrementAndGet();
+                return;
+            }
+            synchronized (this) {
+                if (current == segment) {
+                    current = newSegment(Math.max(segmentSize, length + 4));
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies a record into the room reserved for it in a segment.
+     * Package access so tests can simulate a failure.
+     *
+     * @param slot the room, after the length
+     * @param record the record, starting with room for its length
+     * @param length the length of the record
+     */
+    void copy(ByteBuffer slot, byte[] record, int length) {
+        slot.put(record, 4, length - 4);
+    }
+
+    /**
+     * @return the number of events added
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the number of bytes used by the events
+     */
+    public synchronized long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += Math.min(segment.position.get(), segment.capacity);
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Read all the events, one segment per thread.
+     *
+     * @param threads the number of threads reading segments
+     * @param batchSize the maximum number of events passed to the handler at once
+     * @param handler the handler of the events, called by several threads at once
+     * @return the number of events read
+     * @throws IOException if a segment could not be read, or the handler failed
+     */
+    public long replay(int threads, final int batchSize, final Handler handler) throws IOException {
+        long expected = count.get(); // also makes the events added by other threads visible
+        List<Segment> toRead;
+        synchronized (this) {
+            toRead = new ArrayList<Segment>(segments);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, toRead.size())));
+        try {
+            List<Future<Long>> results = new ArrayList<Future<Long>>(toRead.size());
+            for (final Segment segment : toRead) {
+                results.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws IOException, ClassNotFoundException {
+                        return Long.valueOf(segment.replay(batchSize, handler));
+                    }
+                }));
+            }
+            long read = 0;
+            IOException failure = null;
+            for (Future<Long> result : results) {
+                try {
+                    read += result.get().longValue();
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause() : new IOException(e.getCause());
+                    // No point reading the other segments; the segments not yet started would never end
+                    for (Future<Long> other : results) {
+                        other.cancel(true);
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    throw new IOException("Interrupted while replaying samples", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (read != expected) {
+                log.warn("Replayed " + read + " samples, expected " + expected);
+            }
+            return read;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Delete the segment files.
+     */
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private static void encode(SampleEvent event, RecordBuffer out) throws IOException {
+        int start = out.size();
+        out.write(KIND_FIELDS);
+        out.writeString(event.getThreadGroup());
+        out.writeString(event.getHostname());
+        int vars = SampleEvent.getVarCount();
+        out.writeVarLong(vars);
+        for (int i = 0; i < vars; i++) {
+            out.writeString(event.getVarValue(i));
+        }
+        out.writeVarLong(event.isTransactionSampleEvent() ? 1 : 0);
+        if (writeResult(event.getResult(), out)) {
+            return;
+        }
+        // A result or assertion of a type which cannot be written field by field
+        out.truncate(start);
+        out.write(KIND_SERIALIZED);
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(event);
+        oos.close();
+    }
+
+    /**
+     * Write a result with its assertion results and sub-results.
+     *
+     * @return false if the result or one it contains is of a type which cannot be written field by field
+     */
+    private static boolean writeResult(SampleResult res, RecordBuffer out) throws IOException {
+        ResultType type = ResultType.of(res.getClass());
+        if (type == null) {
+            return false;
+        }
+        out.writeString(type.name);
+        out.writeVarLong(res.getTimeStamp());
+        out.writeVarLong(res.getTime());
+        out.writeVarLong(res.getIdleTime());
+        out.writeVarLong(res.getLatency());
+        long intended = res.getIntendedStartTime();
+        out.writeVarLong(intended == 0 ? 0 : res.getStartTime() - intended);
+        int flags = (res.isSuccessful() ? FLAG_SUCCESS : 0)
+                | (res.isStopThread() ? FLAG_STOP_THREAD : 0)
+                | (res.isStopTest() ? FLAG_STOP_TEST : 0)
+                | (res.isStopTestNow() ? FLAG_STOP_TEST_NOW : 0)
+                | (res.isStartNextThreadLoop() ? FLAG_START_NEXT_LOOP : 0)
+                | (res.isMonitor() ? FLAG_MONITOR : 0);
+        out.writeVarLong(flags);
+        out.writeString(res.getSampleLabel());
+        out.writeString(res.getResponseCode());
+        out.writeString(res.getResponseMessage());
+        out.writeString(res.getThreadName());
+        out.writeString(res.getDataType());
+        out.writeString(res.getRawDataEncoding());
+        out.writeString(res.getContentType());
+        out.writeString(res.getRequestHeaders());
+        out.writeString(res.getResponseHeaders());
+        out.writeString(res.getRawSamplerData());
+        out.writeString(res.getResultFileName());
+        URL url = res.getURL();
+        out.writeString(url == null ? null : url.toExternalForm());
+        out.writeVarLong(res.getSampleCount());
+        out.writeVarLong(res.getErrorCount());
+        out.writeVarLong(res.getBytes());
+        out.writeVarLong(res.getHeadersSize());
+        out.writeVarLong(res.getBodySize());
+        out.writeVarLong(res.getGroupThreads());
+        out.writeVarLong(res.getAllThreads());
+        byte[] data = res.getResponseData();
+        out.writeVarLong(data.length);
+        out.write(data, 0, data.length);
+        type.writeFields(res, out);
+        AssertionResult[] assertions = res.getAssertionResults();
+        out.writeVarLong(assertions.length);
+        for (AssertionResult assertion : assertions) {
+            if (assertion.getClass() != AssertionResult.class) {
+                return false;
+            }
+            out.writeString(assertion.getName());
+            out.writeVarLong((assertion.isFailure() ? FLAG_FAILURE : 0) | (assertion.isError() ? FLAG_ERROR : 0));
+            out.writeString(assertion.getFailureMessage());
+        }
+        SampleResult[] subResults = res.getSubResults();
+        out.writeVarLong(subResults.length);
+        for (SampleResult subResult : subResults) {
+            if (!writeResult(subResult, out)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static SampleEvent decode(RecordReader in) throws IOException, ClassNotFoundException {
+        byte kind = in.readByte();
+        if (kind == KIND_SERIALIZED) {
+            ObjectInputStream ois = new ObjectInputStream(in.remaining());
+            try {
+                return (SampleEvent) ois.readObject();
+            } finally {
+                ois.close();
+            }
+        }
+        if (kind != KIND_FIELDS) {
+            throw new IOException("Invalid spool record type: " + kind);
+        }
+        String threadGroup = in.readString();
+        String hostname = in.readString();
+        String[] values = new String[(int) in.readVarLong()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readString();
+        }
+        boolean transaction = in.readVarLong() != 0;
+        return new SampleEvent(readResult(in), threadGroup, hostname, values, transaction);
+    }
+
+    private static SampleResult readResult(RecordReader in) throws IOException, ClassNotFoundException {
+        ResultType type = ResultType.forName(in.readString());
+        SampleResult res = type.newInstance();
+        long stamp = in.readVarLong();
+        long elapsed = in.readVarLong();
+        res.setStampAndTime(stamp, elapsed);
+        res.setIdleTime(in.readVarLong());
+        res.setLatency(in.readVarLong());
+        long lag = in.readVarLong();
+        if (lag != 0) {
+            res.setIntendedStartTime(res.getStartTime() - lag);
+        }
+        int flags = (int) in.readVarLong();
+        res.setSuccessful((flags & FLAG_SUCCESS) != 0);
+        res.setStopThread((flags & FLAG_STOP_THREAD) != 0);
+        res.setStopTest((flags & FLAG_STOP_TEST) != 0);
+        res.setStopTestNow((flags & FLAG_STOP_TEST_NOW) != 0);
+        res.setStartNextThreadLoop((flags & FLAG_START_NEXT_LOOP) != 0);
+        res.setMonitor((flags & FLAG_MONITOR) != 0);
+        res.setSampleLabel(in.readString());
+        res.setResponseCode(in.readString());
+        res.setResponseMessage(in.readString());
+        res.setThreadName(in.readString());
+        res.setDataType(in.readString());
+        String encoding = in.readString();
+        if (encoding != null) {
+            res.setDataEncoding(encoding);
+        }
+        res.setContentType(in.readString());
+        res.setRequestHeaders(in.readString());
+        res.setResponseHeaders(in.readString());
+        res.setSamplerData(in.readString());
+        res.setResultFileName(in.readString());
+        String url = in.readString();
+        if (url != null) {
+            try {
+                res.setURL(new URL(url));
+            } catch (MalformedURLException e) {
+                log.warn("Invalid URL in spool: " + url);
+            }
+        }
+        res.setSampleCount((int) in.readVarLong());
+        res.setErrorCount((int) in.readVarLong());
+        res.setBytes((int) in.readVarLong());
+        res.setHeadersSize((int) in.readVarLong());
+        res.setBodySize((int) in.readVarLong());
+        res.setGroupThreads((int) in.readVarLong());
+        res.setAllThreads((int) in.readVarLong());
+        byte[] data = new byte[(int) in.readVarLong()];
+        in.readFully(data);
+        res.setResponseData(data);
+        type.readFields(res, in);
+        int assertions = (int) in.readVarLong();
+        for (int i = 0; i < assertions; i++) {
+            AssertionResult assertion = new AssertionResult(in.readString());
+            int assertionFlags = (int) in.readVarLong();
+            assertion.setFailure((assertionFlags & FLAG_FAILURE) != 0);
+            assertion.setError((assertionFlags & FLAG_ERROR) != 0);
+            assertion.setFailureMessage(in.readString());
+            res.addAssertionResult(assertion);
+        }
+        int subResults = (int) in.readVarLong();
+        for (int i = 0; i < subResults; i++) {
+            res.storeSubResult(readResult(in));
+        }
+        return res;
+    }
+
+    /**
+     * How a class of results is written: {@link SampleResult} itself, or a subclass whose own fields are
+     * all strings, ints, longs or booleans, such as HTTPSampleResult. The fields of the subclass are found
+     * by reflection and written after those of SampleResult; it needs a constructor without parameters.
+     */
+    private static final class ResultType {
+        private static final ConcurrentMap<Class<?>, ResultType> TYPES = new ConcurrentHashMap<Class<?>, ResultType>();
+
+        private static final ConcurrentMap<String, ResultType> NAMES = new ConcurrentHashMap<String, ResultType>();
+
+        // Marks the classes which are serialized instead
+        private static final ResultType UNSUPPORTED = new ResultType(null, null, null, null);
+
+        private static final ResultType SAMPLE_RESULT = new ResultType(SampleResult.class, null, null, new Field[0]);
+
+        private final Class<? extends SampleResult> type;
+
+        // Written for subclasses only, so plain samples stay short
+        private final String name;
+
+        private final Constructor<? extends SampleResult> constructor;
+
+        private final Field[] fields;
+
+        private ResultType(Class<? extends SampleResult> type, String name,
+                Constructor<? extends SampleResult> constructor, Field[] fields) {
+            this.type = type;
+            this.name = name;
+            this.constructor = constructor;
+            this.fields = fields;
+        }
+
+        /**
+         * @return the type, or null if results of the class must be serialized
+         */
+        static ResultType of(Class<? extends SampleResult> type) {
+            if (type == SampleResult.class) {
+                return SAMPLE_RESULT;
+            }
+            ResultType resultType = TYPES.get(type);
+            if (resultType == null) {
+                resultType = create(type);
+                TYPES.putIfAbsent(type, resultType);
+            }
+            return resultType == UNSUPPORTED ? null : resultType;
+        }
+
+        static ResultType forName(String name) throws IOException, ClassNotFoundException {
+            if (name == null) {
+                return SAMPLE_RESULT;
+            }
+            ResultType resultType = NAMES.get(name);
+            if (resultType == null) {
+                Class<?> type = Class.forName(name);
+                if (!SampleResult.class.isAssignableFrom(type)) {
+                    throw new IOException("Not a sample result in spool: " + name);
+                }
+                resultType = of(type.asSubclass(SampleResult.class));
+                if (resultType == null) {
+                    throw new IOException("Sample result type cannot be read from spool: " + name);
+                }
+                NAMES.putIfAbsent(name, resultType);
+            }
+            return resultType;
+        }
+
+        private static ResultType create(Class<? extends SampleResult> type) {
+            List<Field> fields = new ArrayList<Field>();
+            for (Class<?> c = type; c != SampleResult.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    Class<?> fieldType = field.getType();
+                    if (fieldType != String.class && fieldType != int.class
+                            && fieldType != long.class && fieldType != boolean.class) {
+                        return UNSUPPORTED;
+                    }
+                    fields.add(field);
+                }
+            }
+            try {
+                Constructor<? extends SampleResult> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                for (Field field : fields) {
+                    field.setAccessible(true);
+                }
+                return new ResultType(type, type.getName(), constructor, fields.toArray(new Field[fields.size()]));
+            } catch (NoSuchMethodException e) {
+                return UNSUPPORTED;
+            } catch (SecurityException e) {
+                return UNSUPPORTED;
+            }
+        }
+
+        SampleResult newInstance() throws IOException {
+            if (constructor == null) {
+                return new SampleResult();
+            }
+            try {
+                return constructor.newInstance();
+            } catch (Exception e) {
+                throw new IOException("Could not create " + type.getName(), e);
+            }
+        }
+
+        void writeFields(SampleResult res, RecordBuffer out) throws IOException {
+            try {
+                for (Field field : fields) {
+                    Class<?> fieldType = field.getType();
+                    if (fieldType == String.class) {
+                        out.writeString((String) field.get(res));
+                    } else if (fieldType == boolean.class) {
+                        out.writeVarLong(field.getBoolean(res) ? 1 : 0);
+                    } else {
+                        out.writeVarLong(field.getLong(res));
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IOException("Could not write " + type.getName(), e);
+            }
+        }
+
+        void readFields(SampleResult res, RecordReader in) throws IOException {
+            try {
+                for (Field field : fields) {
+                    Class<?> fieldType = field.getType();
+                    if (fieldType == String.class) {
+                        field.set(res, in.readString());
+                    } else if (fieldType == boolean.class) {
+                        field.setBoolean(res, in.readVarLong() != 0);
+                    } else if (fieldType == int.class) {
+                        field.setInt(res, (int) in.readVarLong());
+                    } else {
+                        field.setLong(res, in.readVarLong());
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IOException("Could not read " + type.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * One memory-mapped file of the spool.
+     */
+    private static final class Segment {
+        private final File file;
+
+        private final RandomAccessFile raf;
+
+        private final MappedByteBuffer buffer;
+
+        private final int capacity;
+
+        // Offset of the next record
+        private final AtomicInteger position = new AtomicInteger();
+
+        Segment(File file, int capacity) throws IOException {
+            this.file = file;
+            this.capacity = capacity;
+            file.deleteOnExit();
+            raf = new RandomAccessFile(file, "rw"); // $NON-NLS-1$
+            try {
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the offset of the room reserved, or -1 if the segment is full
+         */
+        int reserve(int length) {
+            while (true) {
+                int offset = position.get();
+                if (offset > capacity - length) {
+                    return -1;
+                }
+                if (position.compareAndSet(offset, offset + length)) {
+                    return offset;
+                }
+            }
+        }
+
+        /**
+         * @return a view of the room reserved at the offset, after the length
+         */
+        ByteBuffer slot(int offset, int length) {
+            ByteBuffer view = buffer.duplicate();
+            view.limit(offset + length);
+            view.position(offset + 4);
+            return view;
+        }
+
+        /**
+         * Marks the record at the offset as complete.
+         */
+        void commit(int offset, int length) {
+            buffer.putInt(offset, length);
+        }
+
+        /**
+         * Marks the room reserved at the offset as holding no record.
+         */
+        void skip(int offset, int length) {
+            buffer.putInt(offset, -length);
+        }
+
+        long replay(int batchSize, Handler handler) throws IOException, ClassNotFoundException {
+            ByteBuffer view = buffer.duplicate();
+            int end = Math.min(position.get(), capacity);
+            RecordReader reader = new RecordReader(view);
+            List<SampleEvent> batch = new ArrayList<SampleEvent>(batchSize);
+            long read = 0;
+            int offset = 0;
+            while (offset <= end - 4) {
+                int length = view.getInt(offset);
+                boolean skipped = length < 0; // the record could not be written
+                if (skipped) {
+                    length = -length;
+                }
+                if (length <= 4 || offset + length > end) {
+                    if (length != 0) {
+                        log.warn("Invalid record length " + length + " at " + offset + " in " + file);
+                    } else {
+                        log.warn("Unfinished record at " + offset + " in " + file);
+                    }
+                    break;
+                }
+                if (skipped) {
+                    offset += length;
+                    continue;
+                }
+                view.limit(offset + length);
+                view.position(offset + 4);
+                batch.add(decode(reader));
+                view.limit(view.capacity());
+                offset += length;
+                if (batch.size() >= batchSize) {
+                    handler.handle(batch);
+                    read += batch.size();
+                    batch = new ArrayList<SampleEvent>(batchSize);
+                }
+            }
+            if (batch.size() > 0) {
+                handler.handle(batch);
+                read += batch.size();
+            }
+            return read;
+        }
+
+        void close() {
+            JOrphanUtils.closeQuietly(raf);
+            if (!file.delete()) {
+                log.warn("Could not delete spool file: " + file);
+            }
+        }
+    }
+
+    /**
+     * Buffer a record is encoded into before it is copied to a segment.
+     * Unlike ByteArrayOutputStream it is not synchronized, as each thread has its own.
+     */
+    private static final class RecordBuffer extends OutputStream {
+        private byte[] buf = new byte[1024];
+
+        private int count;
+
+        void reset() {
+            count = 0;
+        }
+
+        int size() {
+            return count;
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (count + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+            }
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+
+        void skip(int n) {
+            ensureCapacity(n);
+            count += n;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            long v = (value << 1) ^ (value >> 63); // zig-zag, so small negative numbers are short too
+            while ((v & ~0x7FL) != 0) {
+                buf[count++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[count++] = (byte) v;
+        }
+
+        void writeString(String s) {
+            if (s == null) {
+                writeVarLong(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(UTF8);
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Reads the fields of a record from a segment.
+     */
+    private static final class RecordReader {
+        private final ByteBuffer buffer;
+
+        private byte[] scratch = new byte[256];
+
+        RecordReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer.get();
+        }
+
+        long readVarLong() throws IOException {
+            long v = 0;
+            int shift = 0;
+            while (true) {
+                if (shift > 63) {
+                    throw new IOException("Invalid number in spool record");
+                }
+                byte b = buffer.get();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+                shift += 7;
+            }
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String readString() throws IOException {
+            int length = (int) readVarLong();
+            if (length < 0) {
+                return null;
+            }
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, UTF8);
+        }
+
+        void readFully(byte[] bytes) {
+            buffer.get(bytes);
+        }
+
+        ByteArrayInputStream remaining() {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+}
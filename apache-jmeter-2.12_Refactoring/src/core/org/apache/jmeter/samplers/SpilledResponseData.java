@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Response data which is kept in a temporary file rather than on the heap.
+ * Created by {@link ResponseDataBuffer} when the data exceeds the spill threshold.
+ * <p>
+ * The file is deleted once the instance can no longer be reached,
+ * and any remaining files are deleted when the JVM exits.
+ * The files are created in the directory given by the property
+ * <code>sampleresult.response_data.spill_dir</code> (default: <code>java.io.tmpdir</code>).
+ * <p>
+ * When serialized, e.g. to send a sample from a server to the client, the data is copied
+ * into the stream and stored in a new file when read back.
+ */
+public final class SpilledResponseData implements Serializable {
+
+    private static final long serialVersionUID = 240L;
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final String SPILL_DIR = JMeterUtils.getPropDefault("sampleresult.response_data.spill_dir", ""); // $NON-NLS-1$
+
+    private static final String PREFIX = "jmeter-response"; // $NON-NLS-1$
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ReferenceQueue<SpilledResponseData> QUEUE = new ReferenceQueue<SpilledResponseData>();
+
+    // Keeps the references reachable until their file has been deleted
+    private static final Set<FileReference> FILES = Collections.synchronizedSet(new HashSet<FileReference>());
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread("SpilledResponseData cleanup") { // $NON-NLS-1$
+            @Override
+            public void run() {
+                List<FileReference> remaining;
+                synchronized (FILES) {
+                    remaining = new ArrayList<FileReference>(FILES);
+                }
+                for (FileReference ref : remaining) {
+                    ref.delete();
+                }
+            }
+        });
+    }
+
+    private transient File file;
+
+    private transient long length;
+
+    /**
+     * @param file the file holding the data; it is owned by the new instance
+     * @param length the number of bytes in the file
+     */
+    SpilledResponseData(File file, long length) {
+        init(file, length);
+    }
+
+    private void init(File file, long length) {
+        deleteUnreachable();
+        this.file = file;
+        this.length = length;
+        FILES.add(new FileReference(this, file));
+    }
+
+    /**
+     * Create an empty temporary file for response data.
+     *
+     * @return the new file
+     * @throws IOException if the file cannot be created
+     */
+    static File createFile() throws IOException {
+        return File.createTempFile(PREFIX, ".tmp", SPILL_DIR.length() == 0 ? null : new File(SPILL_DIR)); // $NON-NLS-1$
+    }
+
+    /**
+     * Delete the files of the instances which have been garbage collected.
+     */
+    private static void deleteUnreachable() {
+        Reference<? extends SpilledResponseData> ref;
+        while ((ref = QUEUE.poll()) != null) {
+            ((FileReference) ref).delete();
+        }
+    }
+
+    /**
+     * @return the number of bytes of data
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return a new stream reading the data, which the caller must close
+     * @throws IOException if the file cannot be opened
+     */
+    public InputStream openStream() throws IOException {
+        return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+    }
+
+    /**
+     * Read the whole data into a new array.
+     * Use {@link #openStream()} instead where possible, as the data may be large.
+     *
+     * @return the data, or an empty array if it cannot be read
+     */
+    public byte[] getBytes() {
+        if (length > Integer.MAX_VALUE) {
+            log.error("Response data of " + length + " bytes is too large for an array, file: " + file);
+            return SampleResult.EMPTY_BA;
+        }
+        return getBytes((int) length);
+    }
+
+    /**
+     * Read the start of the data into a new array.
+     *
+     * @param maxLength the maximum number of bytes to read
+     * @return the first <code>maxLength</code> bytes of the data, or all of it if it is shorter,
+     * or an empty array if it cannot be read
+     */
+    public byte[] getBytes(int maxLength) {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] data = new byte[(int) Math.min(length, maxLength)];
+            IOUtils.readFully(in, data);
+            return data;
+        } catch (IOException e) {
+            log.error("Could not read response data from " + file, e);
+            return SampleResult.EMPTY_BA;
+        } finally {
+            JOrphanUtils.closeQuietly(in);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file + " (" + length + " bytes)"; // $NON-NLS-1$ $NON-NLS-2$
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeLong(length);
+        InputStream in = openStream();
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new EOFException("Response data file " + file + " is shorter than " + length + " bytes");
+                }
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        } finally {
+            JOrphanUtils.closeQuietly(in);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        long size = in.readLong();
+        File newFile = createFile();
+        OutputStream out = null;
+        boolean done = false;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(newFile), BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = size;
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new EOFException("Expected " + remaining + " more bytes of response data");
+                }
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+            out.close();
+            done = true;
+        } finally {
+            JOrphanUtils.closeQuietly(out);
+            if (!done && !newFile.delete()) {
+                log.warn("Could not delete " + newFile);
+            }
+        }
+        init(newFile, size);
+    }
+
+    /**
+     * Deletes the file once the data can no longer be reached.
+     */
+    private static final class FileReference extends PhantomReference<SpilledResponseData> {
+
+        private final File file;
+
+        FileReference(SpilledResponseData data, File file) {
+            super(data, QUEUE);
+            this.file = file;
+        }
+
+        void delete() {
+            FILES.remove(this);
+            if (file.exists() && !file.delete()) {
+                log.warn("Could not delete response data file " + file);
+            }
+        }
+    }
+}
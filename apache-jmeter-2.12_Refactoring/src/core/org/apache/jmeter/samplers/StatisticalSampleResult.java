@@ -19,10 +19,21 @@
 package org.apache.jmeter.samplers;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jorphan.math.LongHistogram;
 
 /**
  * Aggregates sample results for use by the Statistical remote batch mode.
  * Samples are aggregated by the key defined by getKey().
+ * <p>
+ * Besides the totals, the exact minimum and maximum elapsed times and the number of failures
+ * per response code are kept. Results created with a number of significant digits also count
+ * the elapsed times in a {@link LongHistogram}, which the client can merge so that its
+ * percentiles are the same as if it had received every sample, see
+ * {@link org.apache.jmeter.visualizers.SamplingStatCalculator#addSample(SampleResult)}.
  * TODO: merge error count into parent class?
  */
 public class StatisticalSampleResult extends SampleResult implements
@@ -35,6 +46,16 @@ public class StatisticalSampleResult extends SampleResult implements
     // Need to maintain our own elapsed timer to ensure more accurate aggregation
     private long elapsed;
 
+    private double elapsedSumOfSquares;
+
+    private long minTime = Long.MAX_VALUE;
+
+    private long maxTime = Long.MIN_VALUE;
+
+    private LongHistogram histogram; // null unless created with a number of significant digits
+
+    private Map<String, Long> errorCodes; // created by the first failure
+
     public StatisticalSampleResult(){// May be called by XStream
     }
 
@@ -52,12 +73,40 @@ public class StatisticalSampleResult extends SampleResult implements
         this.elapsed = elapsed;
     }
 
+    /**
+     * Create a result from the totals read from a result file, without the times of the individual samples.
+     *
+     * @param stamp the time stamp
+     * @param elapsed the total elapsed time of the samples
+     * @param sampleCount the number of samples
+     * @param errorCount the number of failed samples
+     */
+    public StatisticalSampleResult(long stamp, long elapsed, int sampleCount, int errorCount) {
+        super(stamp, elapsed);
+        this.elapsed = elapsed;
+        setSampleCount(sampleCount);
+        this.errorCount = errorCount;
+    }
+
     /**
      * Create a statistical sample result from an ordinary sample result.
      * 
      * @param res the sample result 
      */
     public StatisticalSampleResult(SampleResult res) {
+        this(res, 0);
+    }
+
+    /**
+     * Create a statistical sample result from an ordinary sample result.
+     *
+     * @param res the sample result
+     * @param significantDigits the precision of the histogram of elapsed times, from 1 to 5; 0 for none
+     */
+    public StatisticalSampleResult(SampleResult res, int significantDigits) {
+        if (significantDigits > 0) {
+            histogram = new LongHistogram(significantDigits);
+        }
         // Copy data that is shared between samples (i.e. the key items):
         setSampleLabel(res.getSampleLabel());
         
@@ -103,6 +152,103 @@ public class StatisticalSampleResult extends SampleResult implements
         setLatency(getLatency()+ res.getLatency());
 
         elapsed += res.getTime();
+
+        if (res instanceof StatisticalSampleResult) {
+            addTimes((StatisticalSampleResult) res);
+        } else {
+            addTime(res);
+        }
+    }
+
+    private void addTime(SampleResult res) {
+        // Same as StatCalculator: n samples aggregated in one result each take elapsed/n
+        long time = res.getTime();
+        int n = res.getSampleCount();
+        long value = time;
+        if (n > 1) {
+            value = time / n;
+            elapsedSumOfSquares += (double) time * time / n;
+        } else {
+            elapsedSumOfSquares += (double) time * time;
+        }
+        minTime = Math.min(minTime, value);
+        maxTime = Math.max(maxTime, value);
+        if (histogram != null) {
+            histogram.record(value, n);
+        }
+        if (!res.isSuccessful()) {
+            addErrorCode(res.getResponseCode(), 1);
+        }
+    }
+
+    private void addTimes(StatisticalSampleResult res) {
+        elapsedSumOfSquares += res.elapsedSumOfSquares;
+        minTime = Math.min(minTime, res.minTime);
+        maxTime = Math.max(maxTime, res.maxTime);
+        if (histogram != null) {
+            if (res.histogram != null && res.histogram.getSignificantDigits() == histogram.getSignificantDigits()) {
+                histogram.add(res.histogram);
+            } else {
+                histogram = null; // the percentiles can no longer be computed
+            }
+        }
+        for (Map.Entry<String, Long> entry : res.getErrorCodeCounts().entrySet()) {
+            addErrorCode(entry.getKey(), entry.getValue().longValue());
+        }
+    }
+
+    private void addErrorCode(String code, long count) {
+        if (errorCodes == null) {
+            errorCodes = new HashMap<String, Long>();
+        }
+        Long previous = errorCodes.get(code);
+        errorCodes.put(code, Long.valueOf(previous == null ? count : previous.longValue() + count));
+    }
+
+    /**
+     * @return the elapsed times of the samples, or null if they were not recorded
+     */
+    public LongHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * @return the sum of the squares of the elapsed times of the samples
+     */
+    public double getElapsedSumOfSquares() {
+        return elapsedSumOfSquares;
+    }
+
+    /**
+     * @return true if the minimum and maximum elapsed times are known,
+     * i.e. samples have been added rather than the totals read from a file
+     */
+    public boolean hasElapsedTimes() {
+        return minTime != Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the shortest elapsed time of the samples, or 0 if there are none
+     */
+    public long getMinTime() {
+        return minTime == Long.MAX_VALUE ? 0 : minTime;
+    }
+
+    /**
+     * @return the longest elapsed time of the samples, or 0 if there are none
+     */
+    public long getMaxTime() {
+        return maxTime == Long.MIN_VALUE ? 0 : maxTime;
+    }
+
+    /**
+     * @return the number of failed samples by response code, not to be modified
+     */
+    public Map<String, Long> getErrorCodeCounts() {
+        if (errorCodes == null) {
+            return Collections.emptyMap();
+        }
+        return errorCodes;
     }
 
     @Override
@@ -32,7 +32,10 @@ import java.util.Map;
 
 /**
  * Implements batch reporting for remote testing.
- *
+ * <p>
+ * Each batch holds one {@link StatisticalSampleResult} per key, with a histogram of the elapsed times
+ * so that the client can still compute percentiles. The histograms have the precision given by the
+ * property <code>statcalculator.significant_digits</code> (default 3); 0 sends no histograms.
  */
 public class StatisticalSampleSender extends AbstractSampleSender implements Serializable {
     private static final long serialVersionUID = 240L;
@@ -54,6 +57,9 @@ public class StatisticalSampleSender extends AbstractSampleSender implements Ser
     // should the samples be aggregated on thread name or thread group (default) ?
     private static boolean KEY_ON_THREADNAME = JMeterUtils.getPropDefault("key_on_threadname", false);
 
+    // precision of the histograms of elapsed times, the same as the client's SamplingStatCalculator
+    private static final int SIGNIFICANT_DIGITS = JMeterUtils.getPropDefault("statcalculator.significant_digits", 3);
+
     // Instance fields are constructed by the client when the instance is create in the test plan
     // and the field values are then transferred to the server copy by RMI serialisation/deserialisation
 
@@ -66,6 +72,9 @@ public class StatisticalSampleSender extends AbstractSampleSender implements Ser
     // should the samples be aggregated on thread name or thread group (default) ?
     private final boolean clientConfiguredKeyOnThreadName = JMeterUtils.getPropDefault("key_on_threadname", false);
 
+    private final int clientConfiguredSignificantDigits =
+            JMeterUtils.getPropDefault("statcalculator.significant_digits", 3);
+
     private final RemoteSampleListener listener;
 
     private final List<SampleEvent> sampleStore = new ArrayList<SampleEvent>();
@@ -81,6 +90,8 @@ public class StatisticalSampleSender extends AbstractSampleSender implements Ser
 
     private transient volatile boolean keyOnThreadName;
 
+    private transient volatile int significantDigits;
+
 
     // variables maintained by server code
     // @GuardedBy("sampleStore")
@@ -149,7 +160,7 @@ public class StatisticalSampleSender extends AbstractSampleSender implements Ser
             String key = StatisticalSampleResult.getKey(e, keyOnThreadName);
             StatisticalSampleResult statResult = sampleTable.get(key);
             if (statResult == null) {
-                statResult = new StatisticalSampleResult(e.getResult());
+                statResult = new StatisticalSampleResult(e.getResult(), significantDigits);
                 // store the new statistical result collector
                 sampleTable.put(key, statResult);
                 // add a new wrapper samplevent
@@ -210,16 +221,19 @@ public class StatisticalSampleSender extends AbstractSampleSender implements Ser
             numSamplesThreshold = clientConfiguredNumSamplesThreshold;
             timeThresholdMs = clientConfiguredTimeThresholdMs;
             keyOnThreadName = clientConfiguredKeyOnThreadName;
+            significantDigits = clientConfiguredSignificantDigits;
         } else {
             numSamplesThreshold = NUM_SAMPLES_THRESHOLD;
             timeThresholdMs = TIME_THRESHOLD_MS;
             keyOnThreadName = KEY_ON_THREADNAME;
+            significantDigits = SIGNIFICANT_DIGITS;
         }
         log.info("Using StatisticalSampleSender for this run."
                 + (isClientConfigured() ? " Client config: " : " Server config: ")
                 + " Thresholds: num=" + numSamplesThreshold
                 + ", time=" + timeThresholdMs
-                + ". Key uses ThreadName: " + keyOnThreadName);
+                + ". Key uses ThreadName: " + keyOnThreadName
+                + ". Histogram digits: " + significantDigits);
         return this;
     }
 }
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Converts JTL files between the CSV format and the binary format of {@link BinaryResultWriter}.
+ * The direction is chosen from the format of the input file.
+ * <p>
+ * Only the fields which the CSV format can restore are converted.
+ * <p>
+ * Usage: <code>input.jtl output.jtl [jmeter.properties]</code>; the properties file gives
+ * the CSV delimiter, timestamp format and file encoding.
+ */
+public class BinaryResultConverter {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private BinaryResultConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new RuntimeException("Usage: input.jtl output.jtl [jmeter.properties]");
+        }
+        JMeterUtils.loadJMeterProperties(args.length > 2 ? args[2] : "jmeter.properties"); // $NON-NLS-1$
+        long count;
+        if (BinaryResultReader.isBinary(new File(args[0]))) {
+            count = binaryToCsv(args[0], args[1]);
+        } else {
+            count = csvToBinary(args[0], args[1]);
+        }
+        System.out.println("Converted " + count + " samples from " + args[0] + " to " + args[1]);
+    }
+
+    /**
+     * Convert a CSV file to a binary file.
+     *
+     * @param csvFile the input file
+     * @param binaryFile the output file, which is overwritten
+     * @return the number of samples converted
+     * @throws IOException
+     */
+    public static long csvToBinary(String csvFile, String binaryFile) throws IOException {
+        BufferedReader in = null;
+        OutputStream out = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(csvFile), SaveService.getFileEncoding("UTF-8"))); // $NON-NLS-1$
+            out = new BufferedOutputStream(new FileOutputStream(binaryFile));
+            return csvToBinary(in, out, csvFile);
+        } finally {
+            JOrphanUtils.closeQuietly(in);
+            JOrphanUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Convert a binary file to a CSV file.
+     *
+     * @param binaryFile the input file
+     * @param csvFile the output file, which is overwritten
+     * @return the number of samples converted
+     * @throws IOException
+     */
+    public static long binaryToCsv(String binaryFile, String csvFile) throws IOException {
+        InputStream in = null;
+        Writer out = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(binaryFile));
+            out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(csvFile), SaveService.getFileEncoding("UTF-8"))); // $NON-NLS-1$
+            return binaryToCsv(in, out);
+        } finally {
+            JOrphanUtils.closeQuietly(in);
+            JOrphanUtils.closeQuietly(out);
+        }
+    }
+
+    // The same parsing as CSVSaveService.processSamples
+    static long csvToBinary(BufferedReader in, OutputStream out, String filename) throws IOException {
+        in.mark(400);// Enough to read the header column names
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException(filename + ": unable to read header line");
+        }
+        long lineNumber = 1;
+        SampleSaveConfiguration saveConfig = CSVSaveService.getSampleSaveConfiguration(line, filename);
+        if (saveConfig == null) {// not a valid header
+            log.info(filename + " does not appear to have a valid header. Using default configuration.");
+            saveConfig = new SampleSaveConfiguration();
+            in.reset(); // restart from beginning
+            lineNumber = 0;
+        }
+        BinaryResultWriter writer = new BinaryResultWriter(out, saveConfig, false);
+        final char delim = saveConfig.getDelimiter().charAt(0);
+        long count = 0;
+        String[] parts;
+        while ((parts = CSVSaveService.csvReadFile(in, delim)).length != 0) {
+            lineNumber++;
+            SampleEvent event = CSVSaveService.makeResultFromDelimitedString(parts, saveConfig, lineNumber);
+            if (event != null) {
+                writer.write(event);
+                count++;
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    static long binaryToCsv(InputStream in, Writer out) throws IOException {
+        BinaryResultReader reader = new BinaryResultReader(in);
+        SampleSaveConfiguration binaryConfig = null;
+        SampleSaveConfiguration csvConfig = null;
+        long count = 0;
+        SampleEvent event;
+        while ((event = reader.next()) != null) {
+            if (reader.getSaveConfig() != binaryConfig) { // new header
+                if (csvConfig == null) {
+                    csvConfig = (SampleSaveConfiguration) reader.getSaveConfig().clone();
+                    csvConfig.setAsBinary(false);
+                    out.write(CSVSaveService.printableFieldNamesToString(csvConfig));
+                    out.write('\n');
+                } else if (!reader.getSaveConfig().equals(binaryConfig)) {
+                    log.warn("Fields saved changed after " + count + " samples, using the first ones for the CSV file");
+                }
+                binaryConfig = reader.getSaveConfig();
+            }
+            event.getResult().setSaveConfig(csvConfig);
+            out.write(CSVSaveService.resultToDelimitedString(event));
+            out.write('\n');
+            count++;
+        }
+        out.flush();
+        return count;
+    }
+}
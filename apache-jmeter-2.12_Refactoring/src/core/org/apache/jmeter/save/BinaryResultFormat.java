@@ -0,0 +1,365 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+
+/**
+ * Constants and encoding helpers shared by {@link BinaryResultWriter} and {@link BinaryResultReader}.
+ * <p>
+ * A binary JTL file starts with the 4 bytes {@link #MAGIC} followed by a version byte,
+ * then holds a sequence of records, each introduced by a type byte:
+ * <ul>
+ * <li>{@link #HEADER}: the columns of the following blocks, as a bit mask of the column ids below,
+ * followed by the number and names of the sample variables. A file appended to by a later test
+ * has one header per test.</li>
+ * <li>{@link #BLOCK}: the number of rows, the uncompressed and compressed lengths, and the
+ * Deflate-compressed columns. Each column is stored as its length followed by its values
+ * for all the rows, so a reader can skip the columns it does not need.</li>
+ * </ul>
+ * Numbers are variable-length zig-zag encoded; timestamps are stored as the difference from the
+ * previous row. Strings are dictionary encoded within a block and column: 0 for null,
+ * 1 for a new string (UTF-8 length and bytes), which is then added to the dictionary,
+ * or 2 + the index of a string already in the dictionary.
+ * Blocks are independent of each other, so a truncated file can be read up to the last complete block.
+ */
+final class BinaryResultFormat {
+
+    static final byte[] MAGIC = { 'J', 'T', 'L', 'B' };
+
+    static final int VERSION = 1;
+
+    static final int HEADER = 'H';
+
+    static final int BLOCK = 'B';
+
+    static final Charset UTF8 = Charset.forName("UTF-8"); // $NON-NLS-1$
+
+    // Column ids, in the order they are stored
+    static final int TIMESTAMP = 0;
+    static final int ELAPSED = 1;
+    static final int LABEL = 2;
+    static final int CODE = 3;
+    static final int MESSAGE = 4;
+    static final int THREAD_NAME = 5;
+    static final int DATA_TYPE = 6;
+    static final int SUCCESS = 7;
+    static final int FAILURE_MESSAGE = 8;
+    static final int BYTES = 9;
+    static final int GRP_THREADS = 10;
+    static final int ALL_THREADS = 11;
+    static final int URL = 12;
+    static final int FILENAME = 13;
+    static final int LATENCY = 14;
+    static final int ENCODING = 15;
+    static final int SAMPLE_COUNT = 16;
+    static final int ERROR_COUNT = 17;
+    static final int HOSTNAME = 18;
+    static final int IDLE_TIME = 19;
+    static final int START_LAG = 20;
+
+    /** Number of fixed columns; the sample variables follow them */
+    static final int COLUMN_COUNT = 21;
+
+    private static final boolean[] STRING_COLUMN = new boolean[COLUMN_COUNT];
+
+    static {
+        int[] strings = { LABEL, CODE, MESSAGE, THREAD_NAME, DATA_TYPE, FAILURE_MESSAGE, URL, FILENAME, ENCODING,
+                HOSTNAME };
+        for (int i = 0; i < strings.length; i++) {
+            STRING_COLUMN[strings[i]] = true;
+        }
+    }
+
+    private BinaryResultFormat() {
+    }
+
+    /**
+     * @param column column id, variables included
+     * @return true if the column holds strings rather than numbers
+     */
+    static boolean isStringColumn(int column) {
+        return column >= COLUMN_COUNT || STRING_COLUMN[column];
+    }
+
+    /**
+     * @param config the save configuration
+     * @return the bit mask of the columns saved with this configuration
+     */
+    static int columnsOf(SampleSaveConfiguration config) {
+        int columns = 0;
+        columns |= bit(TIMESTAMP, config.saveTimestamp());
+        columns |= bit(ELAPSED, config.saveTime());
+        columns |= bit(LABEL, config.saveLabel());
+        columns |= bit(CODE, config.saveCode());
+        columns |= bit(MESSAGE, config.saveMessage());
+        columns |= bit(THREAD_NAME, config.saveThreadName());
+        columns |= bit(DATA_TYPE, config.saveDataType());
+        columns |= bit(SUCCESS, config.saveSuccess());
+        columns |= bit(FAILURE_MESSAGE, config.saveAssertionResultsFailureMessage());
+        columns |= bit(BYTES, config.saveBytes());
+        columns |= bit(GRP_THREADS, config.saveThreadCounts());
+        columns |= bit(ALL_THREADS, config.saveThreadCounts());
+        columns |= bit(URL, config.saveUrl());
+        columns |= bit(FILENAME, config.saveFileName());
+        columns |= bit(LATENCY, config.saveLatency());
+        columns |= bit(ENCODING, config.saveEncoding());
+        columns |= bit(SAMPLE_COUNT, config.saveSampleCount());
+        columns |= bit(ERROR_COUNT, config.saveSampleCount());
+        columns |= bit(HOSTNAME, config.saveHostname());
+        columns |= bit(IDLE_TIME, config.saveIdleTime());
+        columns |= bit(START_LAG, config.saveStartLag());
+        return columns;
+    }
+
+    /**
+     * @param columns bit mask of the columns
+     * @return a binary save configuration which saves the given columns
+     */
+    static SampleSaveConfiguration configOf(int columns) {
+        SampleSaveConfiguration config = new SampleSaveConfiguration(false);
+        config.setAsBinary(true);
+        config.setFieldNames(true);
+        config.setTimestamp(has(columns, TIMESTAMP));
+        config.setTime(has(columns, ELAPSED));
+        config.setLabel(has(columns, LABEL));
+        config.setCode(has(columns, CODE));
+        config.setMessage(has(columns, MESSAGE));
+        config.setThreadName(has(columns, THREAD_NAME));
+        config.setDataType(has(columns, DATA_TYPE));
+        config.setSuccess(has(columns, SUCCESS));
+        config.setAssertionResultsFailureMessage(has(columns, FAILURE_MESSAGE));
+        config.setBytes(has(columns, BYTES));
+        config.setThreadCounts(has(columns, GRP_THREADS));
+        config.setUrl(has(columns, URL));
+        config.setFileName(has(columns, FILENAME));
+        config.setLatency(has(columns, LATENCY));
+        config.setEncoding(has(columns, ENCODING));
+        config.setSampleCount(has(columns, SAMPLE_COUNT));
+        config.setHostname(has(columns, HOSTNAME));
+        config.setIdleTime(has(columns, IDLE_TIME));
+        config.setStartLag(has(columns, START_LAG));
+        return config;
+    }
+
+    static boolean has(int columns, int column) {
+        return (columns & (1 << column)) != 0;
+    }
+
+    private static int bit(int column, boolean save) {
+        return save ? 1 << column : 0;
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length number");
+    }
+
+    static void writeString(OutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(InputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Growable byte buffer for one column of a block, or for a whole block.
+     * Not thread-safe.
+     */
+    static final class Output extends OutputStream {
+        private byte[] buf = new byte[256];
+
+        private int length;
+
+        // Dictionary of the strings of the current block
+        private Map<String, Integer> dictionary;
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            buf[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, buf, length, len);
+            length += len;
+        }
+
+        void putVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void putZigZag(long value) {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void putString(String s) throws IOException {
+            if (s == null) {
+                write(0);
+                return;
+            }
+            if (dictionary == null) {
+                dictionary = new HashMap<String, Integer>();
+            }
+            Integer index = dictionary.get(s);
+            if (index != null) {
+                putVarLong(index.intValue() + 2L);
+            } else {
+                dictionary.put(s, Integer.valueOf(dictionary.size()));
+                write(1);
+                writeString(this, s);
+            }
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        int length() {
+            return length;
+        }
+
+        void reset() {
+            length = 0;
+            if (dictionary != null) {
+                dictionary.clear();
+            }
+        }
+
+        private void ensure(int n) {
+            if (length + n > buf.length) {
+                byte[] bigger = new byte[Math.max(buf.length * 2, length + n)];
+                System.arraycopy(buf, 0, bigger, 0, length);
+                buf = bigger;
+            }
+        }
+    }
+
+    /**
+     * Reads the values of one column of a block.
+     * Not thread-safe.
+     */
+    static final class Input {
+        private final byte[] buf;
+
+        private int pos;
+
+        private final int limit;
+
+        Input(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.limit = offset + length;
+        }
+
+        long getVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= limit) {
+                    throw new IOException("Column overrun");
+                }
+                int b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable-length number");
+        }
+
+        int position() {
+            return pos;
+        }
+
+        void skip(int length) throws IOException {
+            if (pos + length > limit) {
+                throw new IOException("Column overrun");
+            }
+            pos += length;
+        }
+
+        long getZigZag() throws IOException {
+            long value = getVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String getString(List<String> dictionary) throws IOException {
+            int code = (int) getVarLong();
+            if (code == 0) {
+                return null;
+            }
+            if (code >= 2) {
+                return dictionary.get(code - 2);
+            }
+            int length = (int) getVarLong();
+            if (pos + length > limit) {
+                throw new IOException("Column overrun");
+            }
+            String s = new String(buf, pos, length, UTF8);
+            pos += length;
+            dictionary.add(s);
+            return s;
+        }
+    }
+}
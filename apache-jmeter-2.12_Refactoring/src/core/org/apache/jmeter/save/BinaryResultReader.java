@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.reporters.ResultCollector;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.samplers.StatisticalSampleResult;
+import org.apache.jmeter.visualizers.Visualizer;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Reads sample results written by {@link BinaryResultWriter}, one block at a time,
+ * so files of any size can be streamed.
+ * <p>
+ * A file which ends with an incomplete block, e.g. because JMeter was killed while writing it,
+ * is read up to the last complete block.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class BinaryResultReader implements Closeable {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private final InputStream in;
+
+    private final Inflater inflater = new Inflater();
+
+    private byte[] compressed = new byte[0];
+
+    private byte[] raw = new byte[0];
+
+    // Current header
+    private int columns;
+
+    private String[] varNames = new String[0];
+
+    private SampleSaveConfiguration saveConfig;
+
+    // Current block, one array per column id, null if the column is not present
+    private long[][] numbers;
+
+    private String[][] strings;
+
+    private int rows;
+
+    private int row;
+
+    private boolean eof;
+
+    /**
+     * @param in the stream to read, which should be buffered
+     * @throws IOException if the stream does not start with a binary JTL header
+     */
+    public BinaryResultReader(InputStream in) throws IOException {
+        this.in = in;
+        for (int i = 0; i < BinaryResultFormat.MAGIC.length; i++) {
+            if (in.read() != BinaryResultFormat.MAGIC[i]) {
+                throw new IOException("Not a binary JTL file");
+            }
+        }
+        int version = in.read();
+        if (version != BinaryResultFormat.VERSION) {
+            throw new IOException("Unsupported binary JTL version: " + version);
+        }
+    }
+
+    /**
+     * @param file the file to check
+     * @return true if the file starts with the binary JTL magic number
+     */
+    public static boolean isBinary(File file) {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            for (int i = 0; i < BinaryResultFormat.MAGIC.length; i++) {
+                if (in.read() != BinaryResultFormat.MAGIC[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            JOrphanUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Read Samples from a binary file.
+     *
+     * @param filename
+     *            input file
+     * @param visualizer
+     *            where to send the results
+     * @param resultCollector
+     *            the parent collector
+     * @throws IOException
+     */
+    public static void processSamples(String filename, Visualizer visualizer,
+            ResultCollector resultCollector) throws IOException {
+        final boolean errorsOnly = resultCollector.isErrorLogging();
+        final boolean successOnly = resultCollector.isSuccessOnlyLogging();
+        BinaryResultReader reader = null;
+        try {
+            reader = new BinaryResultReader(new BufferedInputStream(new FileInputStream(filename)));
+            SampleEvent event;
+            while ((event = reader.next()) != null) {
+                final SampleResult result = event.getResult();
+                if (ResultCollector.isSampleWanted(result.isSuccessful(), errorsOnly, successOnly)) {
+                    visualizer.add(result);
+                }
+            }
+        } finally {
+            JOrphanUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * @return the next sample, or null at the end of the file
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    public SampleEvent next() throws IOException {
+        while (row >= rows) {
+            if (eof || !readRecord()) {
+                eof = true;
+                return null;
+            }
+        }
+        SampleEvent event = makeEvent(row);
+        row++;
+        return event;
+    }
+
+    /**
+     * @return the save configuration matching the columns of the samples last returned by {@link #next()},
+     * or null if none has been read yet
+     */
+    public SampleSaveConfiguration getSaveConfig() {
+        return saveConfig;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    private SampleEvent makeEvent(int i) {
+        long[][] n = numbers;
+        long timeStamp = n[BinaryResultFormat.TIMESTAMP] != null ? n[BinaryResultFormat.TIMESTAMP][i] : 0;
+        long elapsed = n[BinaryResultFormat.ELAPSED] != null ? n[BinaryResultFormat.ELAPSED][i] : 0;
+        SampleResult result;
+        if (n[BinaryResultFormat.SAMPLE_COUNT] != null) {
+            result = new StatisticalSampleResult(timeStamp, elapsed, (int) n[BinaryResultFormat.SAMPLE_COUNT][i],
+                    (int) n[BinaryResultFormat.ERROR_COUNT][i]);
+        } else {
+            result = new SampleResult(timeStamp, elapsed);
+        }
+        String[][] s = strings;
+        if (s[BinaryResultFormat.LABEL] != null) {
+            result.setSampleLabel(s[BinaryResultFormat.LABEL][i]);
+        }
+        if (s[BinaryResultFormat.CODE] != null) {
+            result.setResponseCode(s[BinaryResultFormat.CODE][i]);
+        }
+        if (s[BinaryResultFormat.MESSAGE] != null) {
+            result.setResponseMessage(s[BinaryResultFormat.MESSAGE][i]);
+        }
+        if (s[BinaryResultFormat.THREAD_NAME] != null) {
+            result.setThreadName(s[BinaryResultFormat.THREAD_NAME][i]);
+        }
+        if (s[BinaryResultFormat.DATA_TYPE] != null) {
+            result.setDataType(s[BinaryResultFormat.DATA_TYPE][i]);
+        }
+        if (n[BinaryResultFormat.SUCCESS] != null) {
+            result.setSuccessful(n[BinaryResultFormat.SUCCESS][i] != 0);
+        }
+        if (s[BinaryResultFormat.FAILURE_MESSAGE] != null && s[BinaryResultFormat.FAILURE_MESSAGE][i] != null) {
+            AssertionResult assertion = new AssertionResult(""); // $NON-NLS-1$
+            assertion.setFailure(true);
+            assertion.setFailureMessage(s[BinaryResultFormat.FAILURE_MESSAGE][i]);
+            result.addAssertionResult(assertion);
+        }
+        if (n[BinaryResultFormat.BYTES] != null) {
+            result.setBytes((int) n[BinaryResultFormat.BYTES][i]);
+        }
+        if (n[BinaryResultFormat.GRP_THREADS] != null) {
+            result.setGroupThreads((int) n[BinaryResultFormat.GRP_THREADS][i]);
+            result.setAllThreads((int) n[BinaryResultFormat.ALL_THREADS][i]);
+        }
+        if (s[BinaryResultFormat.URL] != null && s[BinaryResultFormat.URL][i] != null) {
+            try {
+                result.setURL(new URL(s[BinaryResultFormat.URL][i]));
+            } catch (MalformedURLException e) {
+                log.debug("Could not restore URL " + s[BinaryResultFormat.URL][i]);
+            }
+        }
+        if (s[BinaryResultFormat.FILENAME] != null) {
+            result.setResultFileName(s[BinaryResultFormat.FILENAME][i]);
+        }
+        if (n[BinaryResultFormat.LATENCY] != null) {
+            result.setLatency(n[BinaryResultFormat.LATENCY][i]);
+        }
+        if (s[BinaryResultFormat.ENCODING] != null) {
+            result.setDataEncoding(s[BinaryResultFormat.ENCODING][i]);
+        }
+        if (n[BinaryResultFormat.IDLE_TIME] != null) {
+            result.setIdleTime(n[BinaryResultFormat.IDLE_TIME][i]);
+        }
+        if (n[BinaryResultFormat.START_LAG] != null && n[BinaryResultFormat.START_LAG][i] > 0) {
+            result.setIntendedStartTime(result.getStartTime() - n[BinaryResultFormat.START_LAG][i]);
+        }
+        String hostname = s[BinaryResultFormat.HOSTNAME] != null ? s[BinaryResultFormat.HOSTNAME][i] : ""; // $NON-NLS-1$
+        // Match the saved variables with the ones currently defined
+        String[] values = new String[SampleEvent.getVarCount()];
+        for (int v = 0; v < values.length; v++) {
+            for (int k = 0; k < varNames.length; k++) {
+                if (varNames[k].equals(SampleEvent.getVarName(v))) {
+                    values[v] = s[BinaryResultFormat.COLUMN_COUNT + k][i];
+                    break;
+                }
+            }
+        }
+        result.setSaveConfig(saveConfig);
+        return new SampleEvent(result, "", hostname, values); // $NON-NLS-1$
+    }
+
+    // returns false at the end of the file
+    private boolean readRecord() throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            return false;
+        }
+        try {
+            if (type == BinaryResultFormat.HEADER) {
+                readHeader();
+                return true;
+            }
+            if (type == BinaryResultFormat.BLOCK) {
+                if (saveConfig == null) {
+                    throw new IOException("Binary JTL block found before header");
+                }
+                readBlock();
+                return true;
+            }
+        } catch (EOFException e) {
+            log.warn("Binary JTL file is truncated, ignoring the last block");
+            return false;
+        }
+        throw new IOException("Unexpected binary JTL record type: " + type);
+    }
+
+    private void readHeader() throws IOException {
+        columns = (int) BinaryResultFormat.readVarLong(in);
+        varNames = new String[(int) BinaryResultFormat.readVarLong(in)];
+        for (int i = 0; i < varNames.length; i++) {
+            varNames[i] = BinaryResultFormat.readString(in);
+        }
+        saveConfig = BinaryResultFormat.configOf(columns);
+        numbers = new long[BinaryResultFormat.COLUMN_COUNT + varNames.length][];
+        strings = new String[BinaryResultFormat.COLUMN_COUNT + varNames.length][];
+        rows = 0;
+        row = 0;
+    }
+
+    private void readBlock() throws IOException {
+        int blockRows = (int) BinaryResultFormat.readVarLong(in);
+        int rawLength = (int) BinaryResultFormat.readVarLong(in);
+        int compressedLength = (int) BinaryResultFormat.readVarLong(in);
+        if (compressed.length < compressedLength) {
+            compressed = new byte[compressedLength];
+        }
+        int read = 0;
+        while (read < compressedLength) {
+            int count = in.read(compressed, read, compressedLength - read);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            read += count;
+        }
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+        }
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            if (inflater.inflate(raw, 0, rawLength) != rawLength) {
+                throw new IOException("Corrupt binary JTL block");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt binary JTL block: " + e.getMessage());
+        }
+        decodeColumns(blockRows, rawLength);
+        rows = blockRows;
+        row = 0;
+    }
+
+    private void decodeColumns(int blockRows, int rawLength) throws IOException {
+        BinaryResultFormat.Input block = new BinaryResultFormat.Input(raw, 0, rawLength);
+        List<String> dictionary = new ArrayList<String>();
+        for (int c = 0; c < numbers.length; c++) {
+            if (c < BinaryResultFormat.COLUMN_COUNT && !BinaryResultFormat.has(columns, c)) {
+                continue;
+            }
+            int length = (int) block.getVarLong();
+            BinaryResultFormat.Input column = new BinaryResultFormat.Input(raw, block.position(), length);
+            block.skip(length);
+            if (BinaryResultFormat.isStringColumn(c)) {
+                String[] values = strings[c];
+                if (values == null || values.length < blockRows) {
+                    values = new String[blockRows];
+                    strings[c] = values;
+                }
+                dictionary.clear();
+                for (int i = 0; i < blockRows; i++) {
+                    values[i] = column.getString(dictionary);
+                }
+            } else {
+                long[] values = numbers[c];
+                if (values == null || values.length < blockRows) {
+                    values = new long[blockRows];
+                    numbers[c] = values;
+                }
+                long previous = 0;
+                for (int i = 0; i < blockRows; i++) {
+                    long value = column.getZigZag();
+                    if (c == BinaryResultFormat.TIMESTAMP) {
+                        value += previous;
+                        previous = value;
+                    }
+                    values[i] = value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Writes sample results in the binary columnar JTL format described in {@link BinaryResultFormat}.
+ * <p>
+ * Samples are encoded column by column into memory as they arrive, and written as a compressed block
+ * every <code>jmeter.save.saveservice.binary.block_rows</code> samples (default 4096),
+ * on {@link #flush()} and on {@link #close()}.
+ * The columns are the ones selected by the {@link SampleSaveConfiguration}, except that response
+ * data and other XML-only fields are never saved.
+ * <p>
+ * This class is thread-safe.
+ */
+public class BinaryResultWriter implements Closeable, Flushable {
+
+    private static final int BLOCK_ROWS =
+        JMeterUtils.getPropDefault("jmeter.save.saveservice.binary.block_rows", 4096); // $NON-NLS-1$
+
+    private final OutputStream out;
+
+    private final int columns;
+
+    // One buffer per column id, null if the column is not saved; the variables follow the fixed columns
+    private final BinaryResultFormat.Output[] buffers;
+
+    private final BinaryResultFormat.Output block = new BinaryResultFormat.Output();
+
+    private final BinaryResultFormat.Output compressed = new BinaryResultFormat.Output();
+
+    private final Deflater deflater;
+
+    private final byte[] deflated = new byte[8192];
+
+    private int rows;
+
+    private long lastTimeStamp;
+
+    /**
+     * Create a writer and write the file header, or only the column header when appending.
+     *
+     * @param out the stream to write to, which should be buffered
+     * @param config the fields to save
+     * @param append true if the stream is appended to an existing binary file
+     * @throws IOException if the header cannot be written
+     */
+    public BinaryResultWriter(OutputStream out, SampleSaveConfiguration config, boolean append) throws IOException {
+        this(out, config, append, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * Create a writer and write the file header, or only the column header when appending.
+     *
+     * @param out the stream to write to, which should be buffered
+     * @param config the fields to save
+     * @param append true if the stream is appended to an existing binary file
+     * @param level the {@link Deflater} compression level of the blocks;
+     *            {@link Deflater#NO_COMPRESSION} stores them, which costs less CPU but more bytes
+     * @throws IOException if the header cannot be written
+     */
+    public BinaryResultWriter(OutputStream out, SampleSaveConfiguration config, boolean append, int level)
+            throws IOException {
+        this.out = out;
+        this.deflater = new Deflater(level);
+        this.columns = BinaryResultFormat.columnsOf(config);
+        int varCount = SampleEvent.getVarCount();
+        buffers = new BinaryResultFormat.Output[BinaryResultFormat.COLUMN_COUNT + varCount];
+        for (int i = 0; i < buffers.length; i++) {
+            if (i >= BinaryResultFormat.COLUMN_COUNT || BinaryResultFormat.has(columns, i)) {
+                buffers[i] = new BinaryResultFormat.Output();
+            }
+        }
+        if (!append) {
+            out.write(BinaryResultFormat.MAGIC);
+            out.write(BinaryResultFormat.VERSION);
+        }
+        out.write(BinaryResultFormat.HEADER);
+        BinaryResultFormat.writeVarLong(out, columns);
+        BinaryResultFormat.writeVarLong(out, varCount);
+        for (int i = 0; i < varCount; i++) {
+            BinaryResultFormat.writeString(out, SampleEvent.getVarName(i));
+        }
+    }
+
+    /**
+     * Add a sample to the current block, writing the block if it is full.
+     *
+     * @param event the sample to save
+     * @throws IOException if a block cannot be written
+     */
+    public synchronized void write(SampleEvent event) throws IOException {
+        SampleResult sample = event.getResult();
+        BinaryResultFormat.Output[] b = buffers;
+        if (b[BinaryResultFormat.TIMESTAMP] != null) {
+            long timeStamp = sample.getTimeStamp();
+            b[BinaryResultFormat.TIMESTAMP].putZigZag(timeStamp - lastTimeStamp);
+            lastTimeStamp = timeStamp;
+        }
+        putNumber(BinaryResultFormat.ELAPSED, sample.getTime());
+        putString(BinaryResultFormat.LABEL, sample.getSampleLabel());
+        putString(BinaryResultFormat.CODE, sample.getResponseCode());
+        putString(BinaryResultFormat.MESSAGE, sample.getResponseMessage());
+        putString(BinaryResultFormat.THREAD_NAME, sample.getThreadName());
+        putString(BinaryResultFormat.DATA_TYPE, sample.getDataType());
+        putNumber(BinaryResultFormat.SUCCESS, sample.isSuccessful() ? 1 : 0);
+        putString(BinaryResultFormat.FAILURE_MESSAGE, sample.getFirstAssertionFailureMessage());
+        putNumber(BinaryResultFormat.BYTES, sample.getBytes());
+        putNumber(BinaryResultFormat.GRP_THREADS, sample.getGroupThreads());
+        putNumber(BinaryResultFormat.ALL_THREADS, sample.getAllThreads());
+        if (b[BinaryResultFormat.URL] != null) {
+            putString(BinaryResultFormat.URL, sample.getURL() == null ? null : sample.getURL().toExternalForm());
+        }
+        putString(BinaryResultFormat.FILENAME, sample.getResultFileName());
+        putNumber(BinaryResultFormat.LATENCY, sample.getLatency());
+        if (b[BinaryResultFormat.ENCODING] != null) {
+            putString(BinaryResultFormat.ENCODING, sample.getDataEncodingWithDefault());
+        }
+        putNumber(BinaryResultFormat.SAMPLE_COUNT, sample.getSampleCount());
+        putNumber(BinaryResultFormat.ERROR_COUNT, sample.getErrorCount());
+        putString(BinaryResultFormat.HOSTNAME, event.getHostname());
+        putNumber(BinaryResultFormat.IDLE_TIME, sample.getIdleTime());
+        putNumber(BinaryResultFormat.START_LAG, sample.getStartLag());
+        for (int i = BinaryResultFormat.COLUMN_COUNT; i < b.length; i++) {
+            b[i].putString(event.getVarValue(i - BinaryResultFormat.COLUMN_COUNT));
+        }
+        if (++rows >= BLOCK_ROWS) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Write the current block, even if not full, and flush the stream.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        writeBlock();
+        out.flush();
+    }
+
+    /**
+     * Write the current block and close the stream.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            writeBlock();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    /**
+     * @return the number of samples added since the last block was written
+     */
+    public synchronized int getBufferedRows() {
+        return rows;
+    }
+
+    private void putNumber(int column, long value) {
+        if (buffers[column] != null) {
+            buffers[column].putZigZag(value);
+        }
+    }
+
+    private void putString(int column, String value) throws IOException {
+        if (buffers[column] != null) {
+            buffers[column].putString(value);
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        block.reset();
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] != null) {
+                block.putVarLong(buffers[i].length());
+                block.write(buffers[i].buffer(), 0, buffers[i].length());
+                buffers[i].reset();
+            }
+        }
+        compressed.reset();
+        deflater.reset();
+        deflater.setInput(block.buffer(), 0, block.length());
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(deflated);
+            compressed.write(deflated, 0, n);
+        }
+        out.write(BinaryResultFormat.BLOCK);
+        BinaryResultFormat.writeVarLong(out, rows);
+        BinaryResultFormat.writeVarLong(out, block.length());
+        BinaryResultFormat.writeVarLong(out, compressed.length());
+        out.write(compressed.buffer(), 0, compressed.length());
+        rows = 0;
+        lastTimeStamp = 0;
+    }
+}
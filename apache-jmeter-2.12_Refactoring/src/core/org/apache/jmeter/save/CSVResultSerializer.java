@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+
+/**
+ * Writes sample results as CSV lines, producing the same text as
+ * {@link CSVSaveService#resultToDelimitedString(SampleEvent)} without creating objects for each sample.
+ * <p>
+ * The columns to write are worked out once from the {@link SampleSaveConfiguration}.
+ * Each thread formats its samples into its own reusable character buffer, which is then written
+ * to the {@link Writer} in one call; numbers are written digit by digit, values are only quoted
+ * when they contain a special character, and formatted timestamps are reused while they do not change.
+ * The URL column and timestamps which change still create Strings.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class CSVResultSerializer {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator"); // $NON-NLS-1$
+
+    private static final String TRUE = Boolean.TRUE.toString();
+
+    private static final String FALSE = Boolean.FALSE.toString();
+
+    private static final class Line {
+        char[] chars = new char[256];
+
+        int length;
+
+        // This thread's copy of the formatter, as DateFormat is not thread-safe
+        DateFormat formatter;
+
+        long stampKey = Long.MIN_VALUE;
+
+        String stamp;
+    }
+
+    private final SampleSaveConfiguration config;
+
+    // Column ids of BinaryResultFormat, in the order they are written
+    private final int[] columns;
+
+    private final char delimiter;
+
+    private final boolean printMilliseconds;
+
+    private final DateFormat formatter;
+
+    // Divisor of the timestamp giving the period for which the formatted value can be reused
+    private final long stampPeriod;
+
+    private final ThreadLocal<Line> lines = new ThreadLocal<Line>() {
+        @Override
+        protected Line initialValue() {
+            Line line = new Line();
+            if (formatter != null) {
+                line.formatter = (DateFormat) formatter.clone();
+            }
+            return line;
+        }
+    };
+
+    /**
+     * @param config the fields to write, and the delimiter and timestamp format to use
+     */
+    public CSVResultSerializer(SampleSaveConfiguration config) {
+        this.config = config;
+        this.delimiter = config.getDelimiter().charAt(0);
+        this.printMilliseconds = config.printMilliseconds();
+        this.formatter = config.formatter();
+        int mask = BinaryResultFormat.columnsOf(config);
+        if (!printMilliseconds && formatter == null) {
+            // resultToDelimitedString does not write the column at all
+            mask &= ~(1 << BinaryResultFormat.TIMESTAMP);
+        }
+        int count = Integer.bitCount(mask);
+        columns = new int[count];
+        int n = 0;
+        for (int i = 0; i < BinaryResultFormat.COLUMN_COUNT; i++) {
+            if (BinaryResultFormat.has(mask, i)) {
+                columns[n++] = i;
+            }
+        }
+        // Unless the pattern has milliseconds, the timestamp only changes once a second
+        if (formatter instanceof SimpleDateFormat && ((SimpleDateFormat) formatter).toPattern().indexOf('S') < 0) {
+            stampPeriod = 1000;
+        } else {
+            stampPeriod = 1;
+        }
+    }
+
+    /**
+     * @return the configuration the columns were taken from
+     */
+    public SampleSaveConfiguration getSaveConfig() {
+        return config;
+    }
+
+    /**
+     * Write a sample as a line, followed by the line separator.
+     *
+     * @param event the sample to write
+     * @param out where to write it
+     * @throws IOException if the line cannot be written
+     */
+    public void writeLine(SampleEvent event, Writer out) throws IOException {
+        Line line = format(event);
+        append(line, LINE_SEPARATOR);
+        out.write(line.chars, 0, line.length);
+    }
+
+    /**
+     * @param event the sample to convert
+     * @return the line, without line separator
+     */
+    public String toDelimitedString(SampleEvent event) {
+        Line line = format(event);
+        return new String(line.chars, 0, line.length);
+    }
+
+    private Line format(SampleEvent event) {
+        Line line = lines.get();
+        line.length = 0;
+        SampleResult sample = event.getResult();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                append(line, delimiter);
+            }
+            switch (columns[i]) {
+            case BinaryResultFormat.TIMESTAMP:
+                if (printMilliseconds) {
+                    append(line, sample.getTimeStamp());
+                } else {
+                    appendQuoted(line, formatStamp(line, sample.getTimeStamp()));
+                }
+                break;
+            case BinaryResultFormat.ELAPSED:
+                append(line, sample.getTime());
+                break;
+            case BinaryResultFormat.LABEL:
+                appendQuoted(line, sample.getSampleLabel());
+                break;
+            case BinaryResultFormat.CODE:
+                appendQuoted(line, sample.getResponseCode());
+                break;
+            case BinaryResultFormat.MESSAGE:
+                appendQuoted(line, sample.getResponseMessage());
+                break;
+            case BinaryResultFormat.THREAD_NAME:
+                appendQuoted(line, sample.getThreadName());
+                break;
+            case BinaryResultFormat.DATA_TYPE:
+                appendQuoted(line, sample.getDataType());
+                break;
+            case BinaryResultFormat.SUCCESS:
+                append(line, sample.isSuccessful() ? TRUE : FALSE);
+                break;
+            case BinaryResultFormat.FAILURE_MESSAGE:
+                String message = sample.getFirstAssertionFailureMessage();
+                if (message != null) {
+                    appendQuoted(line, message);
+                }
+                break;
+            case BinaryResultFormat.BYTES:
+                append(line, sample.getBytes());
+                break;
+            case BinaryResultFormat.GRP_THREADS:
+                append(line, sample.getGroupThreads());
+                break;
+            case BinaryResultFormat.ALL_THREADS:
+                append(line, sample.getAllThreads());
+                break;
+            case BinaryResultFormat.URL:
+                appendQuoted(line, String.valueOf(sample.getURL()));
+                break;
+            case BinaryResultFormat.FILENAME:
+                appendQuoted(line, sample.getResultFileName());
+                break;
+            case BinaryResultFormat.LATENCY:
+                append(line, sample.getLatency());
+                break;
+            case BinaryResultFormat.ENCODING:
+                appendQuoted(line, sample.getDataEncodingWithDefault());
+                break;
+            case BinaryResultFormat.SAMPLE_COUNT:
+                append(line, sample.getSampleCount());
+                break;
+            case BinaryResultFormat.ERROR_COUNT:
+                append(line, sample.getErrorCount());
+                break;
+            case BinaryResultFormat.HOSTNAME:
+                appendQuoted(line, event.getHostname());
+                break;
+            case BinaryResultFormat.IDLE_TIME:
+                append(line, sample.getIdleTime());
+                break;
+            case BinaryResultFormat.START_LAG:
+                append(line, sample.getStartLag());
+                break;
+            default:
+                throw new IllegalStateException("Unexpected column " + columns[i]);
+            }
+        }
+        int varCount = SampleEvent.getVarCount();
+        for (int i = 0; i < varCount; i++) {
+            if (columns.length > 0 || i > 0) {
+                append(line, delimiter);
+            }
+            appendQuoted(line, event.getVarValue(i));
+        }
+        return line;
+    }
+
+    private String formatStamp(Line line, long timeStamp) {
+        long key = timeStamp / stampPeriod;
+        if (key != line.stampKey || line.stamp == null) {
+            line.stamp = line.formatter.format(new Date(timeStamp));
+            line.stampKey = key;
+        }
+        return line.stamp;
+    }
+
+    private static void ensure(Line line, int n) {
+        if (line.length + n > line.chars.length) {
+            char[] bigger = new char[Math.max(line.chars.length * 2, line.length + n)];
+            System.arraycopy(line.chars, 0, bigger, 0, line.length);
+            line.chars = bigger;
+        }
+    }
+
+    private static void append(Line line, char c) {
+        ensure(line, 1);
+        line.chars[line.length++] = c;
+    }
+
+    // For strings which cannot contain special characters
+    private static void append(Line line, String s) {
+        int n = s.length();
+        ensure(line, n);
+        s.getChars(0, n, line.chars, line.length);
+        line.length += n;
+    }
+
+    private static void append(Line line, long value) {
+        if (value == Long.MIN_VALUE) {
+            append(line, Long.toString(value));
+            return;
+        }
+        ensure(line, 20);
+        char[] chars = line.chars;
+        if (value < 0) {
+            chars[line.length++] = '-';
+            value = -value;
+        }
+        // Write the digits backwards, then reverse them
+        int start = line.length;
+        do {
+            chars[line.length++] = (char) ('0' + (int) (value % 10));
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = line.length - 1; i < j; i++, j--) {
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+    }
+
+    // Same quoting as CSVSaveService.quoteDelimiters; null is written as "null"
+    private void appendQuoted(Line line, String s) {
+        if (s == null) {
+            s = "null"; // $NON-NLS-1$
+        }
+        int n = s.length();
+        boolean quote = false;
+        for (int i = 0; i < n && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == delimiter || c == CSVSaveService.QUOTING_CHAR || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            append(line, s);
+            return;
+        }
+        append(line, CSVSaveService.QUOTING_CHAR);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == CSVSaveService.QUOTING_CHAR) {
+                append(line, c); // double the quote char
+            }
+            append(line, c);
+        }
+        append(line, CSVSaveService.QUOTING_CHAR);
+    }
+}
@@ -36,7 +36,6 @@ import javax.swing.table.DefaultTableModel;
 import org.apache.commons.collections.map.LinkedMap;
 import org.apache.commons.lang3.CharUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.jmeter.assertions.AssertionResult;
 import org.apache.jmeter.reporters.ResultCollector;
 import org.apache.jmeter.samplers.SampleEvent;
 import org.apache.jmeter.samplers.SampleResult;
@@ -90,6 +89,7 @@ public final class CSVSaveService {
     private static final String CSV_ENCODING = "Encoding"; // $NON-NLS-1$
     private static final String CSV_HOSTNAME = "Hostname"; // $NON-NLS-1$
     private static final String CSV_IDLETIME = "IdleTime"; // $NON-NLS-1$
+    private static final String CSV_START_LAG = "StartLag"; // $NON-NLS-1$
 
     // Used to enclose variable name labels, to distinguish from any of the
     // above labels
@@ -187,7 +187,7 @@ public final class CSVSaveService {
      * 
      * @throws JMeterError
      */
-    private static SampleEvent makeResultFromDelimitedString(
+    static SampleEvent makeResultFromDelimitedString(
             final String[] parts, 
             final SampleSaveConfiguration saveConfig, // may be updated
             final long lineNumber) {
@@ -349,6 +349,15 @@ public final class CSVSaveService {
                 result.setIdleTime(Long.parseLong(text));
             }
 
+            if (saveConfig.saveStartLag()) {
+                field = CSV_START_LAG;
+                text = parts[i++];
+                long startLag = Long.parseLong(text);
+                if (startLag > 0) {
+                    result.setIntendedStartTime(result.getStartTime() - startLag);
+                }
+            }
+
             if (i + saveConfig.getVarCount() < parts.length) {
                 log.warn("Line: " + lineNumber + ". Found " + parts.length
                         + " fields, expected " + i
@@ -484,6 +493,11 @@ public final class CSVSaveService {
             text.append(delim);
         }
 
+        if (saveConfig.saveStartLag()) {
+            text.append(CSV_START_LAG);
+            text.append(delim);
+        }
+
         for (int i = 0; i < SampleEvent.getVarCount(); i++) {
             text.append(VARIABLE_NAME_QUOTE_CHAR);
             text.append(SampleEvent.getVarName(i));
@@ -537,6 +551,7 @@ public final class CSVSaveService {
         headerLabelMethods.put(CSV_ERROR_COUNT, new Functor("setSampleCount"));
         headerLabelMethods.put(CSV_HOSTNAME, new Functor("setHostname"));
         headerLabelMethods.put(CSV_IDLETIME, new Functor("setIdleTime"));
+        headerLabelMethods.put(CSV_START_LAG, new Functor("setStartLag"));
     }
 
     /**
@@ -884,18 +899,7 @@ public final class CSVSaveService {
         }
 
         if (saveConfig.saveAssertionResultsFailureMessage()) {
-            String message = null;
-            AssertionResult[] results = sample.getAssertionResults();
-
-            if (results != null) {
-                // Find the first non-null message
-                for (int i = 0; i < results.length; i++) {
-                    message = results[i].getFailureMessage();
-                    if (message != null) {
-                        break;
-                    }
-                }
-            }
+            String message = sample.getFirstAssertionFailureMessage();
 
             if (message != null) {
                 text.append(message);
@@ -943,6 +947,10 @@ public final class CSVSaveService {
             text.append(event.getResult().getIdleTime());
         }
 
+        if (saveConfig.saveStartLag()) {
+            text.append(event.getResult().getStartLag());
+        }
+
         for (int i = 0; i < SampleEvent.getVarCount(); i++) {
             text.append(event.getVarValue(i));
         }
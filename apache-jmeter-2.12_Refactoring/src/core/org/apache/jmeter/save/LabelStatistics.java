@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jorphan.math.LongHistogram;
+
+/**
+ * Aggregated statistics of the samples of one label, in a fixed amount of memory:
+ * counts, errors, elapsed time percentiles from a {@link LongHistogram} with 3 significant digits,
+ * and the number of samples and errors per interval of time (at most a million intervals;
+ * samples further away from the others are left out of the timeline only).
+ * <p>
+ * Statistics of the same label computed from different parts of a file can be merged with
+ * {@link #add(LabelStatistics)}; the result is the same as if all the samples had been added to one of them.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class LabelStatistics {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    // Limits the memory used when a few timestamps are far from the others, e.g. 0 in a corrupt line
+    private static final long MAX_TIMELINE_LENGTH = 1 << 20;
+
+    private final String label;
+
+    private final long interval;
+
+    private final LongHistogram elapsed = new LongHistogram(SIGNIFICANT_DIGITS);
+
+    private long count;
+
+    private long errors;
+
+    private long sum;
+
+    private double sumOfSquares;
+
+    private long bytes;
+
+    private long firstStart = Long.MAX_VALUE;
+
+    private long lastEnd = Long.MIN_VALUE;
+
+    // Timeline of samples and errors per interval, by timestamp; index 0 is the interval timelineStart
+    private long timelineStart;
+
+    private long[] timelineCounts = new long[0];
+
+    private long[] timelineErrors = new long[0];
+
+    // First and last intervals with samples, which the arrays may extend beyond
+    private long firstSlot = Long.MAX_VALUE;
+
+    private long lastSlot = Long.MIN_VALUE;
+
+    /**
+     * @param label the label of the samples
+     * @param interval length in milliseconds of the intervals of the timeline
+     */
+    public LabelStatistics(String label, long interval) {
+        this.label = label;
+        this.interval = interval;
+    }
+
+    /**
+     * Add a sample, which may be an aggregate of several samples.
+     *
+     * @param res the sample to add
+     */
+    public void add(SampleResult res) {
+        int n = res.getSampleCount();
+        int e = res.getErrorCount();
+        long time = res.getTime();
+        count += n;
+        errors += e;
+        sum += time;
+        if (n > 1) {
+            // As StatCalculator.addValue: n samples with the average elapsed time
+            sumOfSquares += (double) time * time / n;
+            elapsed.record(time / n, n);
+        } else {
+            sumOfSquares += (double) time * time;
+            elapsed.record(time);
+        }
+        bytes += res.getBytes();
+        firstStart = Math.min(firstStart, res.getStartTime());
+        lastEnd = Math.max(lastEnd, res.getEndTime());
+        long slot = floorDiv(res.getTimeStamp(), interval);
+        int index = ensureTimeline(slot, slot);
+        if (index >= 0) {
+            timelineCounts[index] += n;
+            timelineErrors[index] += e;
+            firstSlot = Math.min(firstSlot, slot);
+            lastSlot = Math.max(lastSlot, slot);
+        }
+    }
+
+    /**
+     * Add the statistics of another part of the samples of the same label.
+     *
+     * @param other statistics with the same interval
+     */
+    public void add(LabelStatistics other) {
+        if (other.interval != interval) {
+            throw new IllegalArgumentException("Cannot add statistics with an interval of " + other.interval
+                    + " ms to ones with " + interval + " ms");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        count += other.count;
+        errors += other.errors;
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+        bytes += other.bytes;
+        elapsed.add(other.elapsed);
+        firstStart = Math.min(firstStart, other.firstStart);
+        lastEnd = Math.max(lastEnd, other.lastEnd);
+        int offset = other.firstSlot > other.lastSlot ? -1 : ensureTimeline(other.firstSlot, other.lastSlot);
+        if (offset >= 0) {
+            int from = (int) (other.firstSlot - other.timelineStart);
+            for (int i = 0; i <= other.lastSlot - other.firstSlot; i++) {
+                timelineCounts[offset + i] += other.timelineCounts[from + i];
+                timelineErrors[offset + i] += other.timelineErrors[from + i];
+            }
+            firstSlot = Math.min(firstSlot, other.firstSlot);
+            lastSlot = Math.max(lastSlot, other.lastSlot);
+        }
+    }
+
+    // Makes the timeline cover the slots from first to last, and returns the index of first,
+    // or -1 if the timeline would become too long
+    private int ensureTimeline(long first, long last) {
+        int length = timelineCounts.length;
+        if (length == 0) {
+            if (last - first >= MAX_TIMELINE_LENGTH) {
+                return -1;
+            }
+            timelineStart = first;
+            timelineCounts = new long[(int) (last - first + 1)];
+            timelineErrors = new long[timelineCounts.length];
+            return 0;
+        }
+        if (first >= timelineStart && last < timelineStart + length) {
+            return (int) (first - timelineStart);
+        }
+        long start = Math.min(first, timelineStart);
+        long end = Math.max(last, timelineStart + length - 1);
+        if (end - start >= MAX_TIMELINE_LENGTH) {
+            return -1;
+        }
+        // Grow by at least half, as samples tend to arrive in time order
+        long size = Math.min(Math.max(end - start + 1, length + length / 2), MAX_TIMELINE_LENGTH);
+        if (first < timelineStart) {
+            start = Math.min(start, end - size + 1);
+        }
+        long[] counts = new long[(int) size];
+        long[] errs = new long[(int) size];
+        System.arraycopy(timelineCounts, 0, counts, (int) (timelineStart - start), length);
+        System.arraycopy(timelineErrors, 0, errs, (int) (timelineStart - start), length);
+        timelineStart = start;
+        timelineCounts = counts;
+        timelineErrors = errs;
+        return (int) (first - start);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrorCount() {
+        return errors;
+    }
+
+    /**
+     * @return the fraction of samples in error, from 0 to 1
+     */
+    public double getErrorPercentage() {
+        return count == 0 ? 0 : (double) errors / count;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public double getStandardDeviation() {
+        if (count == 0) {
+            return 0;
+        }
+        double mean = getMean();
+        return Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+    }
+
+    public long getMin() {
+        return count == 0 ? 0 : elapsed.getMin();
+    }
+
+    public long getMax() {
+        return count == 0 ? 0 : elapsed.getMax();
+    }
+
+    /**
+     * @param percent from 0 to 1
+     * @return the elapsed time which that fraction of the samples did not exceed
+     */
+    public long getPercentPoint(double percent) {
+        return elapsed.getPercentPoint(percent);
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the time in milliseconds from the start of the first sample to the end of the last one
+     */
+    public long getDuration() {
+        return count == 0 ? 0 : lastEnd - firstStart;
+    }
+
+    /**
+     * @return the number of samples per second over the duration
+     */
+    public double getThroughput() {
+        long duration = getDuration();
+        return duration <= 0 ? 0 : count * 1000.0 / duration;
+    }
+
+    /**
+     * @return the kilobytes received per second over the duration
+     */
+    public double getKBPerSecond() {
+        long duration = getDuration();
+        return duration <= 0 ? 0 : bytes / 1024.0 * 1000.0 / duration;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return the number of intervals in the timeline, from the first to the last one with samples
+     */
+    public int getTimelineLength() {
+        return firstSlot > lastSlot ? 0 : (int) (lastSlot - firstSlot + 1);
+    }
+
+    /**
+     * @param index from 0 to {@link #getTimelineLength()} - 1
+     * @return the start time in milliseconds of the interval
+     */
+    public long getTimelineTime(int index) {
+        return (firstSlot + index) * interval;
+    }
+
+    /**
+     * @param time time in milliseconds
+     * @return the number of samples with a timestamp in the interval containing the time
+     */
+    public long getTimelineCount(long time) {
+        long index = floorDiv(time, interval) - timelineStart;
+        return index < 0 || index >= timelineCounts.length ? 0 : timelineCounts[(int) index];
+    }
+
+    /**
+     * @param time time in milliseconds
+     * @return the number of errors with a timestamp in the interval containing the time
+     */
+    public long getTimelineErrors(long time) {
+        long index = floorDiv(time, interval) - timelineStart;
+        return index < 0 || index >= timelineErrors.length ? 0 : timelineErrors[(int) index];
+    }
+}
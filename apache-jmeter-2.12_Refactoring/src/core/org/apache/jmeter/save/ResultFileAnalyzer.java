@@ -0,0 +1,845 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.avalon.CLArgsParser;
+import org.apache.commons.cli.avalon.CLOption;
+import org.apache.commons.cli.avalon.CLOptionDescriptor;
+import org.apache.commons.cli.avalon.CLUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JMeterError;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.apache.log.Logger;
+
+/**
+ * Computes the statistics of each label of a CSV or binary JTL file which may be much larger
+ * than the memory, using all processors.
+ * <p>
+ * A CSV file is cut into chunks which are read through memory mapping. A first pass over each chunk,
+ * in parallel, counts the quote characters, so that the start of each chunk can then be moved to the
+ * first line which does not start inside a quoted value. A second pass, in parallel, parses the lines
+ * of each chunk with {@link CSVSaveService#csvReadFile(BufferedReader, char)} and
+ * {@link CSVSaveService#makeResultFromDelimitedString(String[], SampleSaveConfiguration, long)},
+ * as {@link CSVSaveService#processSamples} does. The encoding must write the quote character and
+ * line feed as single bytes, as UTF-8 and ISO-8859-1 do.
+ * A binary file is cut between its blocks, which are independent of each other.
+ * <p>
+ * Each chunk is added to a {@link LabelStatistics} per label, and these are merged as soon as the
+ * chunk has been read, so the memory used depends on the number of labels and threads, not on the
+ * number of samples nor of chunks.
+ * Lines which cannot be parsed are logged with their line number in the file, and counted.
+ * <p>
+ * The results can be printed, and saved as an aggregate CSV file, a timeline CSV file and an HTML report.
+ * See {@link #main(String[])} for the command line.
+ * <p>
+ * An instance analyzes one file at a time.
+ */
+public class ResultFileAnalyzer {
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    /** Label of the statistics of all the samples */
+    public static final String TOTAL_LABEL = "TOTAL"; // $NON-NLS-1$
+
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+
+    // Also the largest region mapped at once
+    private static final long MAX_CHUNK_SIZE = 256L << 20;
+
+    private static final byte QUOTE = (byte) CSVSaveService.QUOTING_CHAR;
+
+    private static final String[] AGGREGATE_HEADERS = { "Label", "# Samples", "Average", "Median", // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$ $NON-NLS-4$
+            "90% Line", "95% Line", "99% Line", "Min", "Max", "Error %", "Throughput", "KB/sec" }; // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$ $NON-NLS-4$ $NON-NLS-5$ $NON-NLS-6$ $NON-NLS-7$ $NON-NLS-8$
+
+    private final int threads;
+
+    private final long interval;
+
+    private final Charset charset;
+
+    // 0 to size the chunks from the file size and the number of threads
+    private final long chunkSize;
+
+    private Map<String, LabelStatistics> labels = new TreeMap<String, LabelStatistics>();
+
+    private LabelStatistics total;
+
+    private long malformed;
+
+    /**
+     * @param threads the number of threads reading the file
+     * @param interval length in milliseconds of the intervals of the timelines
+     * @param charset encoding of CSV files
+     */
+    public ResultFileAnalyzer(int threads, long interval, Charset charset) {
+        this(threads, interval, charset, 0);
+    }
+
+    // For tests, to read small files in several chunks
+    ResultFileAnalyzer(int threads, long interval, Charset charset, long chunkSize) {
+        this.threads = threads;
+        this.interval = interval;
+        this.charset = charset;
+        this.chunkSize = chunkSize;
+        this.total = new LabelStatistics(TOTAL_LABEL, interval);
+    }
+
+    /**
+     * Statistics of part of the file.
+     */
+    private final class Part {
+        final Map<String, LabelStatistics> labels = new HashMap<String, LabelStatistics>();
+
+        final LabelStatistics total = new LabelStatistics(TOTAL_LABEL, interval);
+
+        long malformed;
+
+        void add(SampleEvent event) {
+            String label = event.getResult().getSampleLabel();
+            LabelStatistics stats = labels.get(label);
+            if (stats == null) {
+                stats = new LabelStatistics(label, interval);
+                labels.put(label, stats);
+            }
+            stats.add(event.getResult());
+            total.add(event.getResult());
+        }
+    }
+
+    /**
+     * Analyze a file, replacing the statistics of the previous one.
+     *
+     * @param file a CSV or binary JTL file
+     * @throws IOException if the file cannot be read, or has a line which cannot be split into values
+     */
+    public void analyze(File file) throws IOException {
+        labels = new TreeMap<String, LabelStatistics>();
+        total = new LabelStatistics(TOTAL_LABEL, interval);
+        malformed = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        RandomAccessFile raf = new RandomAccessFile(file, "r"); // $NON-NLS-1$
+        try {
+            FileChannel channel = raf.getChannel();
+            List<Callable<Part>> tasks;
+            if (BinaryResultReader.isBinary(file)) {
+                tasks = binaryTasks(file, channel);
+            } else {
+                tasks = csvTasks(file, channel, executor);
+            }
+            CompletionService<Part> parts = new ExecutorCompletionService<Part>(executor);
+            for (Callable<Part> task : tasks) {
+                parts.submit(task);
+            }
+            // Merge each part as soon as it is done, so that it can be collected
+            for (int i = 0; i < tasks.size(); i++) {
+                Part part;
+                try {
+                    part = parts.take().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while analyzing");
+                } catch (ExecutionException e) {
+                    throw rethrow(e);
+                }
+                for (LabelStatistics stats : part.labels.values()) {
+                    LabelStatistics all = labels.get(stats.getLabel());
+                    if (all == null) {
+                        labels.put(stats.getLabel(), stats);
+                    } else {
+                        all.add(stats);
+                    }
+                }
+                total.add(part.total);
+                malformed += part.malformed;
+            }
+        } finally {
+            executor.shutdownNow();
+            JOrphanUtils.closeQuietly(raf);
+        }
+        if (malformed > 0) {
+            log.warn(file + ": ignored " + malformed + " lines which could not be parsed");
+        }
+    }
+
+    /**
+     * @return the statistics of each label, sorted by label
+     */
+    public Collection<LabelStatistics> getStatistics() {
+        return labels.values();
+    }
+
+    /**
+     * @return the statistics of all the samples
+     */
+    public LabelStatistics getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the number of lines which could not be converted to samples
+     */
+    public long getMalformedLines() {
+        return malformed;
+    }
+
+    private long chunkSizeFor(long length) {
+        if (chunkSize > 0) {
+            return chunkSize;
+        }
+        return Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, length / (threads * 4L) + 1));
+    }
+
+    private static <T> List<T> invokeAll(ExecutorService executor, List<? extends Callable<T>> tasks)
+            throws IOException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while analyzing");
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        }
+        return results;
+    }
+
+    // Returns the IOException to throw for the failure of a task, or throws its unchecked cause
+    private static IOException rethrow(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause.toString());
+    }
+
+    /**
+     * Result of the first pass over a chunk of a CSV file. Quote characters are counted from the start
+     * of the chunk, so for each of the two possible states at the start, inside or outside a quoted value,
+     * it records the first line feed outside quotes and how many line feeds there are up to it.
+     */
+    private static final class Scan {
+        boolean oddQuotes;
+
+        // Index in the chunk of the first line feed after an even/odd number of quotes, -1 if none
+        long firstEven = -1;
+
+        long firstOdd = -1;
+
+        // Number of line feeds up to and including firstEven/firstOdd
+        long firstEvenLine;
+
+        long firstOddLine;
+
+        // Number of line feeds in the chunk, quoted or not
+        long lineFeeds;
+    }
+
+    private List<Callable<Part>> csvTasks(final File file, final FileChannel channel, ExecutorService executor)
+            throws IOException {
+        final long length = channel.size();
+        // The header is assumed not to contain quoted line feeds
+        long headerEnd = 0;
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            int b;
+            while ((b = in.read()) >= 0 && b != '\n') {
+                headerBytes.write(b);
+            }
+            headerEnd = headerBytes.size() + (b < 0 ? 0 : 1);
+        } finally {
+            JOrphanUtils.closeQuietly(in);
+        }
+        String header = new String(headerBytes.toByteArray(), charset);
+        if (header.endsWith("\r")) { // $NON-NLS-1$
+            header = header.substring(0, header.length() - 1);
+        }
+        SampleSaveConfiguration config = CSVSaveService.getSampleSaveConfiguration(header, file.getPath());
+        final long dataStart;
+        final long headerLines;
+        if (config == null) {
+            log.info(file + " does not appear to have a valid header. Using default configuration.");
+            config = new SampleSaveConfiguration();
+            dataStart = 0;
+            headerLines = 0;
+        } else {
+            dataStart = headerEnd;
+            headerLines = 1;
+        }
+
+        final long size = chunkSizeFor(length - dataStart);
+        List<Callable<Scan>> scans = new ArrayList<Callable<Scan>>();
+        final List<Long> chunkStarts = new ArrayList<Long>();
+        for (long start = dataStart; start < length; start += size) {
+            final long chunkStart = start;
+            final long chunkLength = Math.min(size, length - start);
+            chunkStarts.add(Long.valueOf(start));
+            scans.add(new Callable<Scan>() {
+                @Override
+                public Scan call() throws IOException {
+                    return scan(channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkLength));
+                }
+            });
+        }
+        List<Scan> results = invokeAll(executor, scans);
+
+        // Move the start of each chunk after its first line feed outside quotes,
+        // merging chunks in which there is none into the previous one
+        List<Callable<Part>> tasks = new ArrayList<Callable<Part>>();
+        boolean inQuotes = false;
+        long lines = 0; // line feeds before the current chunk
+        long rangeStart = dataStart;
+        long rangeFirstLine = headerLines + 1;
+        for (int i = 0; i < results.size(); i++) {
+            Scan scan = results.get(i);
+            if (i > 0) {
+                long first = inQuotes ? scan.firstOdd : scan.firstEven;
+                if (first >= 0) {
+                    long start = chunkStarts.get(i).longValue() + first + 1;
+                    tasks.add(csvTask(channel, rangeStart, start, config, rangeFirstLine));
+                    rangeStart = start;
+                    rangeFirstLine = headerLines + lines + (inQuotes ? scan.firstOddLine : scan.firstEvenLine) + 1;
+                }
+            }
+            lines += scan.lineFeeds;
+            inQuotes ^= scan.oddQuotes;
+        }
+        if (rangeStart < length) {
+            tasks.add(csvTask(channel, rangeStart, length, config, rangeFirstLine));
+        }
+        return tasks;
+    }
+
+    private static Scan scan(MappedByteBuffer buffer) {
+        Scan scan = new Scan();
+        boolean odd = false;
+        long lineFeeds = 0;
+        int limit = buffer.limit();
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == QUOTE) {
+                odd = !odd;
+            } else if (b == '\n') {
+                lineFeeds++;
+                if (odd) {
+                    if (scan.firstOdd < 0) {
+                        scan.firstOdd = i;
+                        scan.firstOddLine = lineFeeds;
+                    }
+                } else {
+                    if (scan.firstEven < 0) {
+                        scan.firstEven = i;
+                        scan.firstEvenLine = lineFeeds;
+                    }
+                }
+            }
+        }
+        scan.oddQuotes = odd;
+        scan.lineFeeds = lineFeeds;
+        return scan;
+    }
+
+    private Callable<Part> csvTask(final FileChannel channel, final long start, final long end,
+            SampleSaveConfiguration config, final long firstLine) {
+        // Each task may change the timestamp format of its copy
+        final SampleSaveConfiguration saveConfig = (SampleSaveConfiguration) config.clone();
+        return new Callable<Part>() {
+            @Override
+            public Part call() throws IOException {
+                Part part = new Part();
+                LineCountingReader reader = new LineCountingReader(new InputStreamReader(
+                        new MappedInputStream(channel, start, end), charset), 65536);
+                char delim = saveConfig.getDelimiter().charAt(0);
+                String[] parts;
+                while (true) {
+                    // A record spans several lines if it has quoted line feeds
+                    long lineNumber = firstLine + reader.getLineFeeds();
+                    try {
+                        parts = CSVSaveService.csvReadFile(reader, delim);
+                    } catch (IOException e) {
+                        throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                    }
+                    if (parts.length == 0) {
+                        break;
+                    }
+                    if (parts.length == 1 && parts[0].length() == 0) {
+                        continue; // blank line
+                    }
+                    try {
+                        SampleEvent event = CSVSaveService.makeResultFromDelimitedString(parts, saveConfig,
+                                lineNumber);
+                        if (event != null) {
+                            part.add(event);
+                        }
+                    } catch (JMeterError e) {
+                        if (part.malformed == 0) {
+                            log.warn(e.getMessage());
+                        } else if (log.isDebugEnabled()) {
+                            log.debug(e.getMessage());
+                        }
+                        part.malformed++;
+                    }
+                }
+                return part;
+            }
+        };
+    }
+
+    private List<Callable<Part>> binaryTasks(File file, final FileChannel channel) throws IOException {
+        long size = chunkSizeFor(channel.size());
+        List<Callable<Part>> tasks = new ArrayList<Callable<Part>>();
+        CountingInputStream in = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            IOUtils.skipFully(in, BinaryResultFormat.MAGIC.length + 1);
+            byte[] header = null;
+            long blocksStart = -1;
+            long blocksEnd = -1;
+            while (true) {
+                long recordStart = in.getByteCount();
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                try {
+                    if (type == BinaryResultFormat.HEADER) {
+                        if (blocksStart >= 0) {
+                            tasks.add(binaryTask(channel, header, blocksStart, blocksEnd));
+                            blocksStart = -1;
+                        }
+                        long columns = BinaryResultFormat.readVarLong(in);
+                        int varCount = (int) BinaryResultFormat.readVarLong(in);
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        BinaryResultFormat.writeVarLong(out, columns);
+                        BinaryResultFormat.writeVarLong(out, varCount);
+                        for (int i = 0; i < varCount; i++) {
+                            BinaryResultFormat.writeString(out, BinaryResultFormat.readString(in));
+                        }
+                        header = out.toByteArray();
+                    } else if (type == BinaryResultFormat.BLOCK) {
+                        if (header == null) {
+                            throw new IOException("Binary JTL block found before header");
+                        }
+                        BinaryResultFormat.readVarLong(in); // rows
+                        BinaryResultFormat.readVarLong(in); // uncompressed length
+                        IOUtils.skipFully(in, BinaryResultFormat.readVarLong(in));
+                        if (blocksStart >= 0 && in.getByteCount() - blocksStart > size) {
+                            tasks.add(binaryTask(channel, header, blocksStart, blocksEnd));
+                            blocksStart = -1;
+                        }
+                        if (blocksStart < 0) {
+                            blocksStart = recordStart;
+                        }
+                        blocksEnd = in.getByteCount();
+                    } else {
+                        throw new IOException("Unexpected binary JTL record type: " + type);
+                    }
+                } catch (EOFException e) {
+                    log.warn(file + " is truncated, ignoring the last block");
+                    break;
+                }
+            }
+            if (blocksStart >= 0) {
+                tasks.add(binaryTask(channel, header, blocksStart, blocksEnd));
+            }
+        } finally {
+            JOrphanUtils.closeQuietly(in);
+        }
+        return tasks;
+    }
+
+    private Callable<Part> binaryTask(final FileChannel channel, byte[] header, final long start, final long end) {
+        // Blocks only depend on the header before them, so each task reads them after a copy of it
+        final byte[] prefix = new byte[BinaryResultFormat.MAGIC.length + 2 + header.length];
+        System.arraycopy(BinaryResultFormat.MAGIC, 0, prefix, 0, BinaryResultFormat.MAGIC.length);
+        prefix[BinaryResultFormat.MAGIC.length] = (byte) BinaryResultFormat.VERSION;
+        prefix[BinaryResultFormat.MAGIC.length + 1] = (byte) BinaryResultFormat.HEADER;
+        System.arraycopy(header, 0, prefix, BinaryResultFormat.MAGIC.length + 2, header.length);
+        return new Callable<Part>() {
+            @Override
+            public Part call() throws IOException {
+                Part part = new Part();
+                BinaryResultReader reader = new BinaryResultReader(new SequenceInputStream(
+                        new ByteArrayInputStream(prefix), new MappedInputStream(channel, start, end)));
+                try {
+                    SampleEvent event;
+                    while ((event = reader.next()) != null) {
+                        part.add(event);
+                    }
+                } finally {
+                    JOrphanUtils.closeQuietly(reader);
+                }
+                return part;
+            }
+        };
+    }
+
+    /**
+     * Counts the line feeds read by {@link #read()}, which is how
+     * {@link CSVSaveService#csvReadFile(BufferedReader, char)} reads. That method only resets the reader
+     * after a character which is not a line feed, so none is counted twice.
+     */
+    private static final class LineCountingReader extends BufferedReader {
+        private long lineFeeds;
+
+        LineCountingReader(Reader in, int size) {
+            super(in, size);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int ch = super.read();
+            if (ch == '\n') {
+                lineFeeds++;
+            }
+            return ch;
+        }
+
+        long getLineFeeds() {
+            return lineFeeds;
+        }
+    }
+
+    /**
+     * Reads a region of a file through memory mapping, at most {@link #MAX_CHUNK_SIZE} bytes at a time.
+     * Closing it does not close the channel.
+     */
+    private static final class MappedInputStream extends InputStream {
+        private final FileChannel channel;
+
+        private final long end;
+
+        private long position;
+
+        private MappedByteBuffer buffer;
+
+        MappedInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        // returns false at the end of the region
+        private boolean fill() throws IOException {
+            if (buffer != null && buffer.hasRemaining()) {
+                return true;
+            }
+            if (position >= end) {
+                return false;
+            }
+            long length = Math.min(MAX_CHUNK_SIZE, end - position);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer == null ? 0 : buffer.remaining();
+        }
+    }
+
+    /**
+     * Print a table of the statistics of each label and of all samples.
+     *
+     * @param out where to print it
+     */
+    public void printSummary(PrintStream out) {
+        String format = "%-40s %10s %8s %8s %8s %8s %8s %8s %8s %8s %10s %10s%n"; // $NON-NLS-1$
+        out.printf(format, (Object[]) AGGREGATE_HEADERS);
+        for (LabelStatistics stats : labels.values()) {
+            out.printf(format, aggregateRow(stats).toArray());
+        }
+        out.printf(format, aggregateRow(total).toArray());
+        if (malformed > 0) {
+            out.println("Lines which could not be parsed: " + malformed);
+        }
+    }
+
+    private static List<String> aggregateRow(LabelStatistics stats) {
+        return Arrays.asList(stats.getLabel(),
+                Long.toString(stats.getCount()),
+                Long.toString(Math.round(stats.getMean())),
+                Long.toString(stats.getPercentPoint(0.5)),
+                Long.toString(stats.getPercentPoint(0.9)),
+                Long.toString(stats.getPercentPoint(0.95)),
+                Long.toString(stats.getPercentPoint(0.99)),
+                Long.toString(stats.getMin()),
+                Long.toString(stats.getMax()),
+                String.format(Locale.ENGLISH, "%.2f%%", Double.valueOf(stats.getErrorPercentage() * 100)), // $NON-NLS-1$
+                String.format(Locale.ENGLISH, "%.2f", Double.valueOf(stats.getThroughput())), // $NON-NLS-1$
+                String.format(Locale.ENGLISH, "%.2f", Double.valueOf(stats.getKBPerSecond()))); // $NON-NLS-1$
+    }
+
+    /**
+     * Save the statistics of each label and of all samples, as the Aggregate Report does.
+     *
+     * @param file the CSV file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void saveAggregate(File file) throws IOException {
+        List<List<String>> rows = new ArrayList<List<String>>();
+        for (LabelStatistics stats : labels.values()) {
+            rows.add(aggregateRow(stats));
+        }
+        rows.add(aggregateRow(total));
+        FileWriter writer = new FileWriter(file);
+        try {
+            CSVSaveService.saveCSVStats(rows, writer, AGGREGATE_HEADERS);
+        } finally {
+            JOrphanUtils.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * Save the number of samples and errors of each label and of all samples for each interval,
+     * from the first to the last interval with samples of the label.
+     *
+     * @param file the CSV file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void saveTimeline(File file) throws IOException {
+        List<List<String>> rows = new ArrayList<List<String>>();
+        List<LabelStatistics> all = new ArrayList<LabelStatistics>(labels.values());
+        all.add(total);
+        for (LabelStatistics stats : all) {
+            for (int i = 0; i < stats.getTimelineLength(); i++) {
+                long time = stats.getTimelineTime(i);
+                rows.add(Arrays.asList(Long.toString(time), stats.getLabel(),
+                        Long.toString(stats.getTimelineCount(time)), Long.toString(stats.getTimelineErrors(time))));
+            }
+        }
+        FileWriter writer = new FileWriter(file);
+        try {
+            CSVSaveService.saveCSVStats(rows, writer,
+                    new String[] { "timeStamp", "label", "samples", "errors" }); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$ $NON-NLS-4$
+        } finally {
+            JOrphanUtils.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * Save an HTML page with the statistics of each label and the timeline of all samples.
+     *
+     * @param file the HTML file to write, in UTF-8
+     * @param title the title of the page
+     * @throws IOException if the file cannot be written
+     */
+    public void saveHtml(File file, String title) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8"); // $NON-NLS-1$
+        try {
+            String escapedTitle = StringEscapeUtils.escapeHtml4(title);
+            out.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>" + escapedTitle // $NON-NLS-1$
+                    + "</title>\n</head>\n<body>\n<h1>" + escapedTitle + "</h1>\n"); // $NON-NLS-1$ $NON-NLS-2$
+            out.write("<table border=\"1\">\n<tr>"); // $NON-NLS-1$
+            for (String header : AGGREGATE_HEADERS) {
+                out.write("<th>" + StringEscapeUtils.escapeHtml4(header) + "</th>"); // $NON-NLS-1$ $NON-NLS-2$
+            }
+            out.write("</tr>\n"); // $NON-NLS-1$
+            List<LabelStatistics> all = new ArrayList<LabelStatistics>(labels.values());
+            all.add(total);
+            for (LabelStatistics stats : all) {
+                out.write("<tr>"); // $NON-NLS-1$
+                for (String value : aggregateRow(stats)) {
+                    out.write("<td>" + StringEscapeUtils.escapeHtml4(value) + "</td>"); // $NON-NLS-1$ $NON-NLS-2$
+                }
+                out.write("</tr>\n"); // $NON-NLS-1$
+            }
+            out.write("</table>\n"); // $NON-NLS-1$
+            if (malformed > 0) {
+                out.write("<p>Lines which could not be parsed: " + malformed + "</p>\n"); // $NON-NLS-2$
+            }
+            out.write("<h2>Timeline</h2>\n<table border=\"1\">\n" // $NON-NLS-1$
+                    + "<tr><th>Time</th><th>Samples</th><th>Errors</th><th>Samples/s</th></tr>\n"); // $NON-NLS-1$
+            SimpleDateFormat format = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss"); // $NON-NLS-1$
+            for (int i = 0; i < total.getTimelineLength(); i++) {
+                long time = total.getTimelineTime(i);
+                long count = total.getTimelineCount(time);
+                out.write("<tr><td>" + format.format(new Date(time)) + "</td><td>" + count // $NON-NLS-1$ $NON-NLS-2$
+                        + "</td><td>" + total.getTimelineErrors(time) + "</td><td>" // $NON-NLS-1$ $NON-NLS-2$
+                        + String.format(Locale.ENGLISH, "%.2f", Double.valueOf(count * 1000.0 / interval)) // $NON-NLS-1$
+                        + "</td></tr>\n"); // $NON-NLS-1$
+            }
+            out.write("</table>\n</body>\n</html>\n"); // $NON-NLS-1$
+        } finally {
+            JOrphanUtils.closeQuietly(out);
+        }
+    }
+
+    private static final int HELP_OPT = 'h';
+
+    private static final int THREADS_OPT = 't';
+
+    private static final int INTERVAL_OPT = 'i';
+
+    private static final int ENCODING_OPT = 'e';
+
+    private static final int JMETER_HOME_OPT = 'd';
+
+    private static final int PROPFILE_OPT = 'p';
+
+    private static final int AGGREGATE_OPT = 'c';
+
+    private static final int TIMELINE_OPT = 'l';
+
+    private static final int HTML_OPT = 'o';
+
+    private static final CLOptionDescriptor[] options = new CLOptionDescriptor[] {
+            new CLOptionDescriptor("help", CLOptionDescriptor.ARGUMENT_DISALLOWED, HELP_OPT,
+                    "print usage information and exit"),
+            new CLOptionDescriptor("threads", CLOptionDescriptor.ARGUMENT_REQUIRED, THREADS_OPT,
+                    "number of threads reading the file, by default the number of processors"),
+            new CLOptionDescriptor("interval", CLOptionDescriptor.ARGUMENT_REQUIRED, INTERVAL_OPT,
+                    "length in seconds of the intervals of the timeline, 60 by default"),
+            new CLOptionDescriptor("encoding", CLOptionDescriptor.ARGUMENT_REQUIRED, ENCODING_OPT,
+                    "encoding of CSV files, by default that of the JTL files"),
+            new CLOptionDescriptor("homedir", CLOptionDescriptor.ARGUMENT_REQUIRED, JMETER_HOME_OPT,
+                    "the jmeter home directory to use, the current directory by default"),
+            new CLOptionDescriptor("propfile", CLOptionDescriptor.ARGUMENT_REQUIRED, PROPFILE_OPT,
+                    "the jmeter property file to use, bin/jmeter.properties by default"),
+            new CLOptionDescriptor("aggregate", CLOptionDescriptor.ARGUMENT_REQUIRED, AGGREGATE_OPT,
+                    "the aggregate CSV file to write"),
+            new CLOptionDescriptor("timeline", CLOptionDescriptor.ARGUMENT_REQUIRED, TIMELINE_OPT,
+                    "the timeline CSV file to write"),
+            new CLOptionDescriptor("html", CLOptionDescriptor.ARGUMENT_REQUIRED, HTML_OPT,
+                    "the HTML report to write"), };
+
+    /**
+     * Analyze a JTL file and print its statistics.
+     * <p>
+     * Usage: [options] file, e.g. <code>-c aggregate.csv -o report.html results.jtl</code>
+     *
+     * @param args the command line
+     * @throws Exception if the file cannot be analyzed
+     */
+    public static void main(String[] args) throws Exception {
+        CLArgsParser parser = new CLArgsParser(args, options);
+        CLOption input = parser.getArgumentById(CLOption.TEXT_ARGUMENT);
+        if (null != parser.getErrorString() || input == null || parser.getArgumentById(HELP_OPT) != null) {
+            if (null != parser.getErrorString()) {
+                System.err.println("Error: " + parser.getErrorString());
+            }
+            System.out.println("Usage: [options] file");
+            System.out.println(CLUtil.describeOptions(options).toString());
+            return;
+        }
+        String home = parser.getArgumentById(JMETER_HOME_OPT) != null
+                ? parser.getArgumentById(JMETER_HOME_OPT).getArgument() : "."; // $NON-NLS-1$
+        JMeterUtils.setJMeterHome(home);
+        JMeterUtils.loadJMeterProperties(parser.getArgumentById(PROPFILE_OPT) != null
+                ? parser.getArgumentById(PROPFILE_OPT).getArgument()
+                : new File(home, "bin/jmeter.properties").getPath()); // $NON-NLS-1$
+        int threads = parser.getArgumentById(THREADS_OPT) != null
+                ? Integer.parseInt(parser.getArgumentById(THREADS_OPT).getArgument())
+                : Runtime.getRuntime().availableProcessors();
+        long interval = parser.getArgumentById(INTERVAL_OPT) != null
+                ? Long.parseLong(parser.getArgumentById(INTERVAL_OPT).getArgument()) * 1000 : 60000;
+        Charset charset = Charset.forName(parser.getArgumentById(ENCODING_OPT) != null
+                ? parser.getArgumentById(ENCODING_OPT).getArgument()
+                : SaveService.getFileEncoding("UTF-8")); // $NON-NLS-1$
+
+        File file = new File(input.getArgument());
+        ResultFileAnalyzer analyzer = new ResultFileAnalyzer(threads, interval, charset);
+        long start = System.currentTimeMillis();
+        analyzer.analyze(file);
+        long elapsed = System.currentTimeMillis() - start;
+        analyzer.printSummary(System.out);
+        System.out.println("Analyzed " + file + " (" + file.length() + " bytes) in " + elapsed + " ms with "
+                + threads + " threads");
+        if (parser.getArgumentById(AGGREGATE_OPT) != null) {
+            analyzer.saveAggregate(new File(parser.getArgumentById(AGGREGATE_OPT).getArgument()));
+        }
+        if (parser.getArgumentById(TIMELINE_OPT) != null) {
+            analyzer.saveTimeline(new File(parser.getArgumentById(TIMELINE_OPT).getArgument()));
+        }
+        if (parser.getArgumentById(HTML_OPT) != null) {
+            analyzer.saveHtml(new File(parser.getArgumentById(HTML_OPT).getArgument()), file.getName());
+        }
+    }
+}
@@ -90,6 +90,7 @@ public class SampleResultConverter extends AbstractCollectionConverter {
 
     private static final String ATT_SUCCESS           = "s";  //$NON-NLS-1$
     private static final String ATT_SAMPLE_COUNT      = "sc"; //$NON-NLS-1$
+    private static final String ATT_START_LAG         = "sl"; //$NON-NLS-1$
     private static final String ATT_TIME              = "t";  //$NON-NLS-1$
     private static final String ATT_IDLETIME          = "it"; //$NON-NLS-1$
     private static final String ATT_THREADNAME        = "tn"; //$NON-NLS-1$
@@ -239,6 +240,9 @@ public class SampleResultConverter extends AbstractCollectionConverter {
         if (save.saveIdleTime()) {
             writer.addAttribute(ATT_IDLETIME, Long.toString(res.getIdleTime()));
         }
+        if (save.saveStartLag()) {
+            writer.addAttribute(ATT_START_LAG, Long.toString(res.getStartLag()));
+        }
         if (save.saveLatency()) {
             writer.addAttribute(ATT_LATENCY, Long.toString(res.getLatency()));
         }
@@ -317,7 +321,7 @@ public class SampleResultConverter extends AbstractCollectionConverter {
         // If we have a file, but no data, then read the file
         String resultFileName = res.getResultFileName();
         if (resultFileName.length()>0
-        &&  res.getResponseData().length == 0) {
+        &&  res.getResponseDataLength() == 0) {
             readFile(resultFileName,res);
         }
         return res;
@@ -383,6 +387,10 @@ public class SampleResultConverter extends AbstractCollectionConverter {
         res.setStampAndTime(Converter.getLong(reader.getAttribute(ATT_TIME_STAMP)),
                 Converter.getLong(reader.getAttribute(ATT_TIME)));
         res.setIdleTime(Converter.getLong(reader.getAttribute(ATT_IDLETIME)));
+        long startLag = Converter.getLong(reader.getAttribute(ATT_START_LAG));
+        if (startLag > 0) {
+            res.setIntendedStartTime(res.getStartTime() - startLag);
+        }
         res.setLatency(Converter.getLong(reader.getAttribute(ATT_LATENCY)));
         res.setBytes(Converter.getInt(reader.getAttribute(ATT_BYTES)));
         res.setSampleCount(Converter.getInt(reader.getAttribute(ATT_SAMPLE_COUNT),1)); // default is 1
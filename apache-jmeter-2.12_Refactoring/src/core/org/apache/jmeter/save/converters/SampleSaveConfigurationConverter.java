@@ -61,10 +61,14 @@ public class SampleSaveConfigurationConverter  extends ReflectionConverter {
     private static final String NODE_THREAD_COUNT = "threadCounts"; // $NON-NLS-1$
     private static final String NODE_SAMPLE_COUNT = "sampleCount"; // $NON-NLS-1$
     private static final String NODE_IDLE_TIME = "idleTime"; // $NON-NLS-1$
+    private static final String NODE_START_LAG = "startLag"; // $NON-NLS-1$
+    private static final String NODE_BINARY = "binary"; // $NON-NLS-1$
 
     // Additional member names which are currently not written out
     private static final String NODE_DELIMITER = "delimiter"; // $NON-NLS-1$
     private static final String NODE_PRINTMS = "printMilliseconds"; // $NON-NLS-1$
+    private static final String NODE_RETAIN_EVERY = "retainEvery"; // $NON-NLS-1$
+    private static final String NODE_RETAIN_SLOWEST = "retainSlowest"; // $NON-NLS-1$
 
 
     static class MyWrapper extends MapperWrapper{
@@ -88,10 +92,14 @@ public class SampleSaveConfigurationConverter  extends ReflectionConverter {
             if (fieldName.equals(NODE_THREAD_COUNT)) { return false; }
             if (fieldName.equals(NODE_SAMPLE_COUNT)) { return false; }
             if (fieldName.equals(NODE_IDLE_TIME)) { return false; }
+            if (fieldName.equals(NODE_START_LAG)) { return false; }
+            if (fieldName.equals(NODE_BINARY)) { return false; }
 
             // These fields are not currently saved or restored
             if (fieldName.equals(NODE_DELIMITER)) { return false; }
             if (fieldName.equals(NODE_PRINTMS)) { return false; }
+            if (fieldName.equals(NODE_RETAIN_EVERY)) { return false; }
+            if (fieldName.equals(NODE_RETAIN_SLOWEST)) { return false; }
             return true;
         }
     }
@@ -129,6 +137,8 @@ public class SampleSaveConfigurationConverter  extends ReflectionConverter {
         createNode(writer,prop.saveThreadCounts(),NODE_THREAD_COUNT);
         createNode(writer,prop.saveSampleCount(),NODE_SAMPLE_COUNT);
         createNode(writer,prop.saveIdleTime(),NODE_IDLE_TIME);
+        createNode(writer,prop.saveStartLag(),NODE_START_LAG);
+        createNode(writer,prop.saveAsBinary(),NODE_BINARY);
     }
 
     // Helper method to simplify marshall routine
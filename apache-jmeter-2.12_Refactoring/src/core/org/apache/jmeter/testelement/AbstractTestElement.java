@@ -21,6 +21,7 @@ package org.apache.jmeter.testelement;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -31,12 +32,15 @@ import java.util.Set;
 import org.apache.jmeter.gui.Searchable;
 import org.apache.jmeter.testelement.property.BooleanProperty;
 import org.apache.jmeter.testelement.property.CollectionProperty;
+import org.apache.jmeter.testelement.property.FunctionProperty;
 import org.apache.jmeter.testelement.property.IntegerProperty;
 import org.apache.jmeter.testelement.property.JMeterProperty;
 import org.apache.jmeter.testelement.property.LongProperty;
 import org.apache.jmeter.testelement.property.MapProperty;
 import org.apache.jmeter.testelement.property.MultiProperty;
 import org.apache.jmeter.testelement.property.NullProperty;
+import org.apache.jmeter.testelement.property.NumberProperty;
+import org.apache.jmeter.testelement.property.ObjectProperty;
 import org.apache.jmeter.testelement.property.PropertyIterator;
 import org.apache.jmeter.testelement.property.PropertyIteratorImpl;
 import org.apache.jmeter.testelement.property.StringProperty;
@@ -53,14 +57,43 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
 
     private static final Logger log = LoggingManager.getLoggerForClass();
 
-    private final Map<String, JMeterProperty> propMap =
+    /**
+     * Used by {@link #cloneShared()} to tell {@link #clone()} to share the properties
+     */
+    private static final ThreadLocal<Boolean> SHARE_ON_CLONE = new ThreadLocal<Boolean>();
+
+    private Map<String, JMeterProperty> propMap =
         Collections.synchronizedMap(new LinkedHashMap<String, JMeterProperty>());
 
+    /**
+     * True while propMap may be shared with other elements, in which case it must not be
+     * changed; a private copy is made first by {@link #ensureOwnProperties()}
+     */
+    private transient boolean sharedProperties = false;
+
     /**
      * Holds properties added when isRunningVersion is true
      */
     private transient Set<JMeterProperty> temporaryProperties;
 
+    /**
+     * Properties changed through this element in the running version since the last
+     * recovery; these may belong to another element (e.g. merged in from a config element)
+     */
+    private transient Set<JMeterProperty> modifiedProperties;
+
+    /**
+     * Set when a property which may have been changed without going through this element
+     * has been handed out, so that recovery must visit all the properties
+     */
+    private transient boolean dirty = false;
+
+    /**
+     * The element holding this one in a {@link TestElementProperty}, if any;
+     * it is marked dirty when this element needs recovering
+     */
+    private transient AbstractTestElement parent;
+
     private transient boolean runningVersion = false;
 
     // Thread-specific variables saved here to save recalculation
@@ -73,9 +106,18 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
         try {
             TestElement clonedElement = this.getClass().newInstance();
 
-            PropertyIterator iter = propertyIterator();
-            while (iter.hasNext()) {
-                clonedElement.setProperty(iter.next().clone());
+            if (SHARE_ON_CLONE.get() != null && clonedElement instanceof AbstractTestElement) {
+                AbstractTestElement sharedClone = (AbstractTestElement) clonedElement;
+                sharedProperties = true;
+                sharedClone.propMap = propMap;
+                sharedClone.sharedProperties = true;
+                sharedClone.runningVersion = runningVersion;
+                return clonedElement;
+            }
+            synchronized (propMap) {
+                for (JMeterProperty prop : propMap.values()) {
+                    clonedElement.setProperty(prop.clone());
+                }
             }
             clonedElement.setRunningVersion(runningVersion);
             return clonedElement;
@@ -86,11 +128,75 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
         }
     }
 
+    /**
+     * Create a clone which shares the properties of this element (and of any nested
+     * elements) until either of them is changed.
+     * <p>
+     * The shared properties are only used to read the values of {@link StringProperty},
+     * {@link NumberProperty} and {@link BooleanProperty} through the
+     * <code>getPropertyAsXxx()</code> methods. Any other access, including
+     * {@link #getProperty(String)} since the caller may change the property it is given,
+     * first gives the element its own deep copy, as {@link #clone()} would.
+     * This means that elements which are only read at run-time cost no more than an
+     * empty element per thread.
+     *
+     * @return the clone
+     */
+    public Object cloneShared() {
+        SHARE_ON_CLONE.set(Boolean.TRUE);
+        try {
+            return clone();
+        } finally {
+            SHARE_ON_CLONE.remove();
+        }
+    }
+
+    /**
+     * @return true if the properties are still shared with another element
+     * @see #cloneShared()
+     */
+    public boolean isSharingProperties() {
+        return sharedProperties;
+    }
+
+    /**
+     * Replace shared properties by a private copy, so they can be changed.
+     */
+    private void ensureOwnProperties() {
+        if (sharedProperties) {
+            Map<String, JMeterProperty> ownMap =
+                Collections.synchronizedMap(new LinkedHashMap<String, JMeterProperty>());
+            synchronized (propMap) {
+                for (Map.Entry<String, JMeterProperty> entry : propMap.entrySet()) {
+                    JMeterProperty prop = entry.getValue().clone();
+                    prop.setRunningVersion(runningVersion);
+                    adoptNestedElements(prop);
+                    ownMap.put(entry.getKey(), prop);
+                }
+            }
+            propMap = ownMap;
+            sharedProperties = false;
+        }
+    }
+
+    /**
+     * @return true if the value of the property can be read while shared
+     */
+    private static boolean isReadableShared(JMeterProperty prop) {
+        return prop instanceof StringProperty
+            || prop instanceof NumberProperty
+            || prop instanceof BooleanProperty;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void clear() {
+        ensureOwnProperties();
+        if (runningVersion) {
+            markDirty();
+        }
         propMap.clear();
     }
 
@@ -109,6 +215,10 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
      */
     @Override
     public void removeProperty(String key) {
+        ensureOwnProperties();
+        if (runningVersion) {
+            markDirty();
+        }
         propMap.remove(key);
     }
 
@@ -174,7 +284,7 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
 
     @Override
     public String getComment(){
-        return getProperty(TestElement.COMMENTS).getStringValue();
+        return getPropertyAsString(TestElement.COMMENTS);
     }
 
     /**
@@ -183,9 +293,37 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
      */
     @Override
     public JMeterProperty getProperty(String key) {
+        // The caller may change the property, e.g. with setObjectValue()
+        ensureOwnProperties();
+        JMeterProperty prop = readProperty(key);
+        if (runningVersion) {
+            // The caller may change the value directly
+            if (prop instanceof MultiProperty || prop instanceof ObjectProperty) {
+                markDirty();
+            } else if (!(prop instanceof NullProperty)) {
+                logModified(prop);
+            }
+        }
+        return prop;
+    }
+
+    /**
+     * Get the named property for reading its value.
+     *
+     * @param key the property name
+     * @return the property, or a new NullProperty if it doesn't exist
+     */
+    private JMeterProperty readProperty(String key) {
         JMeterProperty prop = propMap.get(key);
         if (prop == null) {
             prop = new NullProperty(key);
+        } else if (sharedProperties && !isReadableShared(prop)) {
+            ensureOwnProperties();
+            prop = propMap.get(key);
+        }
+        if (runningVersion && prop instanceof FunctionProperty) {
+            // The value is cached until the property is recovered
+            logModified(prop);
         }
         return prop;
     }
@@ -228,64 +366,78 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
 
     @Override
     public int getPropertyAsInt(String key) {
-        return getProperty(key).getIntValue();
+        return readProperty(key).getIntValue();
     }
 
     @Override
     public int getPropertyAsInt(String key, int defaultValue) {
-        JMeterProperty jmp = getProperty(key);
+        JMeterProperty jmp = readProperty(key);
         return jmp instanceof NullProperty ? defaultValue : jmp.getIntValue();
     }
 
     @Override
     public boolean getPropertyAsBoolean(String key) {
-        return getProperty(key).getBooleanValue();
+        return readProperty(key).getBooleanValue();
     }
 
     @Override
     public boolean getPropertyAsBoolean(String key, boolean defaultVal) {
-        JMeterProperty jmp = getProperty(key);
+        JMeterProperty jmp = readProperty(key);
         return jmp instanceof NullProperty ? defaultVal : jmp.getBooleanValue();
     }
 
     @Override
     public float getPropertyAsFloat(String key) {
-        return getProperty(key).getFloatValue();
+        return readProperty(key).getFloatValue();
     }
 
     @Override
     public long getPropertyAsLong(String key) {
-        return getProperty(key).getLongValue();
+        return readProperty(key).getLongValue();
     }
 
     @Override
     public long getPropertyAsLong(String key, long defaultValue) {
-        JMeterProperty jmp = getProperty(key);
+        JMeterProperty jmp = readProperty(key);
         return jmp instanceof NullProperty ? defaultValue : jmp.getLongValue();
     }
 
     @Override
     public double getPropertyAsDouble(String key) {
-        return getProperty(key).getDoubleValue();
+        return readProperty(key).getDoubleValue();
     }
 
     @Override
     public String getPropertyAsString(String key) {
-        return getProperty(key).getStringValue();
+        return readProperty(key).getStringValue();
     }
 
     @Override
     public String getPropertyAsString(String key, String defaultValue) {
-        JMeterProperty jmp = getProperty(key);
+        JMeterProperty jmp = readProperty(key);
         return jmp instanceof NullProperty ? defaultValue : jmp.getStringValue();
     }
 
+    /**
+     * Get the value of the named property for reading only, e.g. a nested element.
+     * Unlike {@link #getProperty(String)} this does not make the next recovery visit all
+     * the properties, so the caller must not change the property itself; a nested element
+     * tells this element when it needs recovering.
+     *
+     * @param key the property name
+     * @return the value of the property, or null if it doesn't exist
+     */
+    protected Object getPropertyAsObject(String key) {
+        return readProperty(key).getObjectValue();
+    }
+
     /**
      * Add property to test element
      * @param property {@link JMeterProperty} to add to current Test Element
      * @param clone clone property
      */
     protected void addProperty(JMeterProperty property, boolean clone) {
+        ensureOwnProperties();
         JMeterProperty propertyToPut = property;
         if(clone) {
             propertyToPut = property.clone();
@@ -295,11 +447,14 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
         } else {
             clearTemporary(property);
         }
-        JMeterProperty prop = getProperty(property.getName());
+        JMeterProperty prop = readProperty(property.getName());
 
         if (prop instanceof NullProperty || (prop instanceof StringProperty && prop.getStringValue().equals(""))) {
             propMap.put(property.getName(), propertyToPut);
         } else {
+            if (isRunningVersion()) {
+                logModified(prop);
+            }
             prop.mergeIn(propertyToPut);
         }
     }
@@ -340,11 +495,14 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
 
     @Override
     public void setProperty(JMeterProperty property) {
+        ensureOwnProperties();
         if (isRunningVersion()) {
-            if (getProperty(property.getName()) instanceof NullProperty) {
+            JMeterProperty prop = readProperty(property.getName());
+            if (prop instanceof NullProperty) {
                 addProperty(property);
             } else {
-                getProperty(property.getName()).setObjectValue(property.getObjectValue());
+                logModified(prop);
+                prop.setObjectValue(property.getObjectValue());
             }
         } else {
             propMap.put(property.getName(), property);
@@ -453,6 +611,7 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
 
     @Override
     public PropertyIterator propertyIterator() {
+        ensureOwnProperties();
         return new PropertyIteratorImpl(propMap.values());
     }
 
@@ -484,18 +643,89 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
      */
     @Override
     public void setRunningVersion(boolean runningVersion) {
+        if (sharedProperties && this.runningVersion == runningVersion) {
+            return; // the shared properties are already in this state
+        }
+        ensureOwnProperties();
         this.runningVersion = runningVersion;
         PropertyIterator iter = propertyIterator();
         while (iter.hasNext()) {
-            iter.next().setRunningVersion(runningVersion);
+            JMeterProperty prop = iter.next();
+            prop.setRunningVersion(runningVersion);
+            adoptNestedElements(prop);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Make this element the parent of the elements held in the property, so that they
+     * can tell it when they need recovering.
+     *
+     * @param prop the property
+     */
+    private void adoptNestedElements(JMeterProperty prop) {
+        if (prop instanceof TestElementProperty) {
+            Object value = prop.getObjectValue();
+            if (value instanceof AbstractTestElement) {
+                ((AbstractTestElement) value).parent = this;
+            }
+        } else if (prop instanceof MultiProperty) {
+            PropertyIterator iter = ((MultiProperty) prop).iterator();
+            while (iter.hasNext()) {
+                adoptNestedElements(iter.next());
+            }
+        }
+    }
+
+    /**
+     * Note that all the properties must be recovered, as some of them may have been changed
+     * without going through this element.
+     */
+    private void markDirty() {
+        for (AbstractTestElement element = this; element != null; element = element.parent) {
+            element.dirty = true;
+        }
+    }
+
+    /**
+     * Note that a property has been changed through this element in the running version.
+     *
+     * @param prop the property, which may belong to another element
+     */
+    private void logModified(JMeterProperty prop) {
+        if (modifiedProperties == null) {
+            modifiedProperties = Collections.newSetFromMap(new IdentityHashMap<JMeterProperty, Boolean>());
+        }
+        modifiedProperties.add(prop);
+        if (parent != null) {
+            parent.markDirty();
         }
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Only the properties which may have changed are recovered, i.e. those set or
+     * fetched with {@link #getProperty(String)} since the last recovery. All the
+     * properties are visited if temporary properties were added or a {@link MultiProperty}
+     * or {@link ObjectProperty} was fetched, as their contents may have changed.
      */
     @Override
     public void recoverRunningVersion() {
+        if (sharedProperties) {
+            return; // nothing can have changed
+        }
+        if (modifiedProperties != null && !modifiedProperties.isEmpty()) {
+            // Done first as they may hold temporary items, and may not be in propMap
+            for (JMeterProperty prop : modifiedProperties) {
+                prop.recoverRunningVersion(this);
+            }
+            modifiedProperties.clear();
+        }
+        if (runningVersion && !dirty && (temporaryProperties == null || temporaryProperties.isEmpty())) {
+            return;
+        }
+        dirty = false;
         Iterator<Map.Entry<String, JMeterProperty>>  iter = propMap.entrySet().iterator();
         while (iter.hasNext()) {
             Map.Entry<String, JMeterProperty> entry = iter.next();
@@ -536,6 +766,10 @@ public abstract class AbstractTestElement implements TestElement, Serializable,
      */
     @Override
     public void setTemporary(JMeterProperty property) {
+        ensureOwnProperties();
+        if (parent != null) {
+            parent.markDirty();
+        }
         if (temporaryProperties == null) {
             temporaryProperties = new LinkedHashSet<JMeterProperty>();
         }
@@ -33,6 +33,7 @@ import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.testelement.property.IntegerProperty;
 import org.apache.jmeter.testelement.property.JMeterProperty;
 import org.apache.jmeter.testelement.property.TestElementProperty;
+import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.collections.ListedHashTree;
 
 /**
@@ -51,6 +52,13 @@ public abstract class AbstractThreadGroup extends AbstractTestElement
 
     private static final Object DUMMY = new Object();
 
+    /**
+     * Whether the per-thread copies of the test tree share properties until they are changed,
+     * see {@link AbstractTestElement#cloneShared()}
+     */
+    protected static final boolean SHARE_TEST_TREE =
+            JMeterUtils.getPropDefault("jmeterthread.share_test_tree", false); // $NON-NLS-1$
+
     /** Action to be taken when a Sampler error occurs */
     public static final String ON_SAMPLE_ERROR = "ThreadGroup.on_sample_error"; // int
 
@@ -94,7 +102,7 @@ public abstract class AbstractThreadGroup extends AbstractTestElement
      * @return the sampler controller.
      */
     public Controller getSamplerController() {
-        return (Controller) getProperty(MAIN_CONTROLLER).getObjectValue();
+        return (Controller) getPropertyAsObject(MAIN_CONTROLLER);
     }
 
     /**
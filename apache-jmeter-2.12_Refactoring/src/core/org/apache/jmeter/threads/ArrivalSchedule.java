@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads;
+
+import java.util.Random;
+
+/**
+ * Computes the arrival times used by {@link ArrivalsThreadGroup}.
+ * <p>
+ * The arrival rate is described as a list of segments with a linearly changing rate
+ * (which may be constant), followed by a constant target rate which is held until the
+ * end of the schedule. The n-th arrival happens when the integral of the rate reaches n,
+ * so a ramp starting at 0 does not need any special treatment.
+ * <p>
+ * For the Poisson pattern the gaps between arrivals are exponentially distributed
+ * with a mean of 1/rate.
+ * <p>
+ * The class is not thread-safe; it is only used by the arrivals scheduler thread.
+ */
+class ArrivalSchedule {
+
+    private static final double EPSILON = 1e-9;
+
+    /** Segment durations in seconds */
+    private final double[] durations;
+
+    /** Rate at the start of each segment, per second */
+    private final double[] startRates;
+
+    /** Rate at the end of each segment, per second */
+    private final double[] endRates;
+
+    /** Rate after the last segment, per second */
+    private final double targetRate;
+
+    /** Length of the schedule in seconds, &lt;= 0 means no end */
+    private final double length;
+
+    /** Null unless the arrivals are random */
+    private final Random random;
+
+    // Cursor into the segments; only moves forward as arrivals are in time order
+    private int segment;
+
+    private double segmentStart;
+
+    private double arrivalsBeforeSegment;
+
+    private long arrivals;
+
+    private double poissonTime;
+
+    private ArrivalSchedule(double[] durations, double[] startRates, double[] endRates,
+            double targetRate, double length, Random random) {
+        this.durations = durations;
+        this.startRates = startRates;
+        this.endRates = endRates;
+        this.targetRate = targetRate;
+        this.length = length;
+        this.random = random;
+    }
+
+    /**
+     * Constant rate for the whole schedule.
+     *
+     * @param rate arrivals per second
+     * @param length length of the schedule in seconds, &lt;= 0 for no end
+     * @return the schedule
+     */
+    static ArrivalSchedule constant(double rate, double length) {
+        return new ArrivalSchedule(new double[0], new double[0], new double[0], rate, length, null);
+    }
+
+    /**
+     * Rate changing linearly from <code>startRate</code> to <code>rate</code>
+     * over <code>rampTime</code>, then held constant.
+     *
+     * @param startRate arrivals per second at the start
+     * @param rate arrivals per second at the end of the ramp
+     * @param rampTime seconds
+     * @param length length of the schedule in seconds, &lt;= 0 for no end
+     * @return the schedule
+     */
+    static ArrivalSchedule ramp(double startRate, double rate, double rampTime, double length) {
+        if (rampTime <= 0) {
+            return constant(rate, length);
+        }
+        return new ArrivalSchedule(new double[] { rampTime }, new double[] { startRate },
+                new double[] { rate }, rate, length, null);
+    }
+
+    /**
+     * Rate increasing in <code>steps</code> equal steps from <code>startRate</code>
+     * over <code>rampTime</code>, reaching <code>rate</code> at the end of the ramp.
+     *
+     * @param startRate arrivals per second during the first step
+     * @param rate arrivals per second at the end of the ramp
+     * @param steps number of steps
+     * @param rampTime seconds
+     * @param length length of the schedule in seconds, &lt;= 0 for no end
+     * @return the schedule
+     */
+    static ArrivalSchedule step(double startRate, double rate, int steps, double rampTime, double length) {
+        if (rampTime <= 0 || steps <= 0) {
+            return constant(rate, length);
+        }
+        double[] durations = new double[steps];
+        double[] rates = new double[steps];
+        for (int i = 0; i < steps; i++) {
+            durations[i] = rampTime / steps;
+            rates[i] = startRate + (rate - startRate) * i / steps;
+        }
+        return new ArrivalSchedule(durations, rates, rates, rate, length, null);
+    }
+
+    /**
+     * Random arrivals with exponentially distributed gaps.
+     *
+     * @param rate mean arrivals per second
+     * @param length length of the schedule in seconds, &lt;= 0 for no end
+     * @param random source of randomness
+     * @return the schedule
+     */
+    static ArrivalSchedule poisson(double rate, double length, Random random) {
+        return new ArrivalSchedule(new double[0], new double[0], new double[0], rate, length, random);
+    }
+
+    /**
+     * Compute the time of the next arrival.
+     *
+     * @return the offset in milliseconds of the next arrival from the start of the schedule,
+     * or -1 if there are no more arrivals
+     */
+    long nextArrival() {
+        double time;
+        if (random != null) {
+            if (targetRate <= 0) {
+                return -1;
+            }
+            time = poissonTime;
+            poissonTime += -Math.log(1.0 - random.nextDouble()) / targetRate;
+        } else {
+            time = timeOfArrival(arrivals);
+        }
+        if (time < 0 || (length > 0 && time >= length)) {
+            return -1;
+        }
+        arrivals++;
+        return (long) (time * 1000);
+    }
+
+    /**
+     * @return the number of arrivals returned so far
+     */
+    long getArrivals() {
+        return arrivals;
+    }
+
+    /**
+     * Find the time at which the integral of the rate reaches <code>n</code>.
+     *
+     * @param n the number of earlier arrivals
+     * @return the time in seconds, or -1 if it is never reached
+     */
+    private double timeOfArrival(double n) {
+        while (segment < durations.length) {
+            double duration = durations[segment];
+            double start = startRates[segment];
+            double end = endRates[segment];
+            double arrivalsAtEnd = arrivalsBeforeSegment + (start + end) / 2 * duration;
+            if (n < arrivalsAtEnd) {
+                double remaining = n - arrivalsBeforeSegment;
+                double slope = (end - start) / duration;
+                double offset;
+                if (Math.abs(slope) < EPSILON) {
+                    offset = remaining / start;
+                } else {
+                    // Solve slope/2*t^2 + start*t = remaining for the smallest t >= 0
+                    offset = (Math.sqrt(Math.max(0, start * start + 2 * slope * remaining)) - start) / slope;
+                }
+                return segmentStart + offset;
+            }
+            arrivalsBeforeSegment = arrivalsAtEnd;
+            segmentStart += duration;
+            segment++;
+        }
+        if (targetRate <= 0) {
+            return -1;
+        }
+        return segmentStart + (n - arrivalsBeforeSegment) / targetRate;
+    }
+}
@@ -0,0 +1,598 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jmeter.engine.StandardJMeterEngine;
+import org.apache.jmeter.engine.TreeCloner;
+import org.apache.jmeter.engine.event.LoopIterationEvent;
+import org.apache.jmeter.engine.event.LoopIterationListener;
+import org.apache.jmeter.testelement.property.IntegerProperty;
+import org.apache.jmeter.testelement.property.StringProperty;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.collections.ListedHashTree;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.jorphan.util.JMeterStopThreadException;
+import org.apache.log.Logger;
+
+/**
+ * Open model thread group: iterations are started at a target arrival rate
+ * rather than as soon as the previous iteration of a thread has finished, so that
+ * a slow server does not reduce the load it receives.
+ * <p>
+ * A scheduler thread computes the arrival times (constant, linear ramp, steps or
+ * Poisson) and hands them to a pool of JMeter threads. The pool starts with
+ * {@link #MIN_THREADS} threads and grows up to {@link #NUM_THREADS} threads when
+ * no thread is free to take an arrival; threads which stay idle are stopped again.
+ * When the pool is exhausted, arrivals queue up and the delay is recorded in the
+ * {@link org.apache.jmeter.samplers.SampleResult#getIntendedStartTime() intended start time}
+ * of the samples.
+ * <p>
+ * The main controller must loop forever; each arrival runs one iteration of it.
+ * <p>
+ * This class is intended to be ThreadSafe.
+ */
+public class ArrivalsThreadGroup extends AbstractThreadGroup {
+    private static final long serialVersionUID = 280L;
+
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final long WAIT_TO_DIE = JMeterUtils.getPropDefault("jmeterengine.threadstop.wait", 5 * 1000); // 5 seconds
+
+    /** Property: how long (ms) a thread above the initial pool size may stay idle before it is stopped */
+    static final String IDLE_TIMEOUT = "arrivals.idle.timeout"; // $NON-NLS-1$
+
+    /** Property: maximum number of arrivals waiting for a free thread; further arrivals are dropped and counted */
+    static final String MAX_BACKLOG = "arrivals.backlog.max"; // $NON-NLS-1$
+
+    /** How often to check for shutdown while waiting */
+    private static final long POLL_GRANULARITY = 1000;
+
+    //+ JMX entries - do not change the string values
+
+    /** Arrival pattern, one of the TYPE_ values */
+    public static final String ARRIVAL_TYPE = "ArrivalsThreadGroup.arrival_type"; // $NON-NLS-1$
+
+    /** Target arrival rate (per second) */
+    public static final String TARGET_RATE = "ArrivalsThreadGroup.target_rate"; // $NON-NLS-1$
+
+    /** Arrival rate (per second) at the start of the ramp */
+    public static final String START_RATE = "ArrivalsThreadGroup.start_rate"; // $NON-NLS-1$
+
+    /** Time (secs) to reach the target rate */
+    public static final String RAMP_TIME = "ArrivalsThreadGroup.ramp_time"; // $NON-NLS-1$
+
+    /** Number of steps for the step pattern */
+    public static final String STEPS = "ArrivalsThreadGroup.steps"; // $NON-NLS-1$
+
+    /** Length (secs) of the schedule, including the ramp; 0 means until the test is stopped */
+    public static final String DURATION = "ArrivalsThreadGroup.duration"; // $NON-NLS-1$
+
+    /** Number of threads started initially and kept while idle */
+    public static final String MIN_THREADS = "ArrivalsThreadGroup.min_threads"; // $NON-NLS-1$
+
+    //- JMX entries
+
+    public static final String TYPE_CONSTANT = "constant"; // $NON-NLS-1$
+
+    public static final String TYPE_RAMP = "ramp"; // $NON-NLS-1$
+
+    public static final String TYPE_STEP = "step"; // $NON-NLS-1$
+
+    public static final String TYPE_POISSON = "poisson"; // $NON-NLS-1$
+
+    private transient Thread arrivalsScheduler;
+
+    private transient ThreadFactory threadFactory;
+
+    /** Value of {@link #IDLE_TIMEOUT} for the current test */
+    private transient long idleTimeout;
+
+    /** Value of {@link #MAX_BACKLOG} for the current test */
+    private transient int maxBacklog;
+
+    // List of active threads
+    private final Map<JMeterThread, Thread> allThreads = new ConcurrentHashMap<JMeterThread, Thread>();
+
+    // Threads which stopped because they were idle, and have already been removed from poolSize
+    private final Set<JMeterThread> retiredThreads =
+            Collections.newSetFromMap(new ConcurrentHashMap<JMeterThread, Boolean>());
+
+    /** Intended start times of the arrivals which have not yet been taken by a thread */
+    private transient BlockingQueue<Long> arrivals;
+
+    /** Threads which are (or are about to be) waiting for an arrival */
+    private final AtomicInteger available = new AtomicInteger();
+
+    /** Threads which have been started and not yet stopped */
+    private final AtomicInteger poolSize = new AtomicInteger();
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final AtomicLong droppedArrivals = new AtomicLong();
+
+    /**
+     * Is test (still) running?
+     */
+    private volatile boolean running = false;
+
+    /**
+     * Have all arrivals been scheduled?
+     */
+    private volatile boolean scheduleFinished = false;
+
+    /**
+     * No-arg constructor.
+     */
+    public ArrivalsThreadGroup() {
+    }
+
+    public void setArrivalType(String type) {
+        setProperty(new StringProperty(ARRIVAL_TYPE, type));
+    }
+
+    public String getArrivalType() {
+        return getPropertyAsString(ARRIVAL_TYPE, TYPE_CONSTANT);
+    }
+
+    public void setTargetRate(String rate) {
+        setProperty(new StringProperty(TARGET_RATE, rate));
+    }
+
+    public double getTargetRate() {
+        return getPropertyAsDouble(TARGET_RATE);
+    }
+
+    public void setStartRate(String rate) {
+        setProperty(new StringProperty(START_RATE, rate));
+    }
+
+    public double getStartRate() {
+        return getPropertyAsDouble(START_RATE);
+    }
+
+    public void setRampTime(int rampTime) {
+        setProperty(new IntegerProperty(RAMP_TIME, rampTime));
+    }
+
+    public int getRampTime() {
+        return getPropertyAsInt(RAMP_TIME);
+    }
+
+    public void setSteps(int steps) {
+        setProperty(new IntegerProperty(STEPS, steps));
+    }
+
+    public int getSteps() {
+        return getPropertyAsInt(STEPS, 1);
+    }
+
+    public void setDuration(int duration) {
+        setProperty(new IntegerProperty(DURATION, duration));
+    }
+
+    public int getDuration() {
+        return getPropertyAsInt(DURATION);
+    }
+
+    public void setMinThreads(int minThreads) {
+        setProperty(new IntegerProperty(MIN_THREADS, minThreads));
+    }
+
+    public int getMinThreads() {
+        return getPropertyAsInt(MIN_THREADS);
+    }
+
+    /**
+     * @return the number of arrivals which were dropped because too many were waiting for a thread
+     */
+    public long getDroppedArrivals() {
+        return droppedArrivals.get();
+    }
+
+    /**
+     * Create the schedule from the properties of this element.
+     *
+     * @return the arrival schedule
+     */
+    ArrivalSchedule createSchedule() {
+        String type = getArrivalType();
+        double rate = getTargetRate();
+        double length = getDuration();
+        if (TYPE_RAMP.equals(type)) {
+            return ArrivalSchedule.ramp(getStartRate(), rate, getRampTime(), length);
+        } else if (TYPE_STEP.equals(type)) {
+            return ArrivalSchedule.step(getStartRate(), rate, getSteps(), getRampTime(), length);
+        } else if (TYPE_POISSON.equals(type)) {
+            return ArrivalSchedule.poisson(rate, length, new Random());
+        }
+        return ArrivalSchedule.constant(rate, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is called on the copy of the thread group owned by each JMeter thread, so it
+     * registers the listener which makes the thread wait for an arrival before each iteration.
+     */
+    @Override
+    public void initialize() {
+        super.initialize();
+        addIterationListener(new ArrivalListener());
+    }
+
+    @Override
+    public void start(int groupCount, ListenerNotifier notifier, ListedHashTree threadGroupTree, StandardJMeterEngine engine) {
+        running = true;
+        scheduleFinished = false;
+        idleTimeout = JMeterUtils.getPropDefault(IDLE_TIMEOUT, 30 * 1000L);
+        maxBacklog = JMeterUtils.getPropDefault(MAX_BACKLOG, 100000);
+        arrivals = new LinkedBlockingQueue<Long>(maxBacklog);
+        available.set(0);
+        poolSize.set(0);
+        threadNumber.set(0);
+        droppedArrivals.set(0);
+        threadFactory = JMeterThreadFactory.createThreadFactory();
+        log.info("Starting arrivals thread group number " + groupCount
+                + " type " + getArrivalType()
+                + " rate " + getTargetRate()
+                + " threads " + getMinThreads() + "-" + getNumThreads()
+                + " threadFactory=" + threadFactory.getClass().getName());
+        arrivalsScheduler = new Thread(new ArrivalsScheduler(groupCount, notifier, threadGroupTree, engine),
+                getName() + "-ArrivalsScheduler");
+        arrivalsScheduler.setDaemon(true);
+        arrivalsScheduler.start();
+        log.info("Started arrivals thread group number " + groupCount);
+    }
+
+    /**
+     * Called by a JMeter thread at the start of each iteration.
+     * Waits for the next arrival and records how late it is being started.
+     *
+     * @param context the context of the calling thread
+     * @param firstIteration true if the thread has not yet run an iteration
+     * @throws JMeterStopThreadException if the thread should stop
+     */
+    void awaitArrival(JMeterContext context, boolean firstIteration) {
+        if (!firstIteration) {
+            available.incrementAndGet(); // first iteration was counted when the thread was created
+        }
+        try {
+            long idleSince = System.currentTimeMillis();
+            long pollTime = Math.max(1, Math.min(POLL_GRANULARITY, idleTimeout));
+            while (running) {
+                Long intended = arrivals.poll(pollTime, TimeUnit.MILLISECONDS);
+                long now = System.currentTimeMillis();
+                if (intended != null) {
+                    context.setIterationStartLag(Math.max(0, now - intended.longValue()));
+                    return;
+                }
+                if (scheduleFinished && arrivals.isEmpty()) {
+                    break;
+                }
+                if (now - idleSince >= idleTimeout && retire(context.getThread())) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Test is being stopped
+        } finally {
+            available.decrementAndGet();
+        }
+        throw new JMeterStopThreadException("No more arrivals for " + context.getThread().getThreadName());
+    }
+
+    /**
+     * Remove an idle thread from the pool if there are more than the minimum.
+     *
+     * @param thread the idle thread
+     * @return true if the thread should stop
+     */
+    private boolean retire(JMeterThread thread) {
+        int size = poolSize.get();
+        if (size > getMinThreads() && poolSize.compareAndSet(size, size - 1)) {
+            retiredThreads.add(thread);
+            return true;
+        }
+        return false;
+    }
+
+    private JMeterThread makeThread(int groupCount,
+            ListenerNotifier notifier, ListedHashTree threadGroupTree,
+            StandardJMeterEngine engine, int i,
+            JMeterContext context) {
+        final JMeterThread jmeterThread = new JMeterThread(cloneTree(threadGroupTree), this, notifier);
+        jmeterThread.setThreadNum(i);
+        jmeterThread.setThreadGroup(this);
+        jmeterThread.setInitialContext(context);
+        jmeterThread.setThreadName(getName() + " " + groupCount + "-" + (i + 1));
+        jmeterThread.setEngine(engine);
+        jmeterThread.setOnErrorStopTest(getOnErrorStopTest());
+        jmeterThread.setOnErrorStopTestNow(getOnErrorStopTestNow());
+        jmeterThread.setOnErrorStopThread(getOnErrorStopThread());
+        jmeterThread.setOnErrorStartNextLoop(getOnErrorStartNextLoop());
+        return jmeterThread;
+    }
+
+    private ListedHashTree cloneTree(ListedHashTree tree) {
+        TreeCloner cloner = new TreeCloner(true, SHARE_TEST_TREE);
+        tree.traverse(cloner);
+        return cloner.getClonedTree();
+    }
+
+    /**
+     * Stop thread called threadName:
+     * <ol>
+     *  <li>stop JMeter thread</li>
+     *  <li>interrupt JMeter thread</li>
+     *  <li>interrupt underlying thread</li>
+     * <ol>
+     * @param threadName String thread name
+     * @param now boolean for stop
+     * @return true if thread stopped
+     */
+    @Override
+    public boolean stopThread(String threadName, boolean now) {
+        for (Entry<JMeterThread, Thread> entry : allThreads.entrySet()) {
+            JMeterThread thrd = entry.getKey();
+            if (thrd.getThreadName().equals(threadName)) {
+                thrd.stop();
+                thrd.interrupt();
+                if (now) {
+                    Thread t = entry.getValue();
+                    if (t != null) {
+                        t.interrupt();
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Called by JMeterThread when it finishes
+     */
+    @Override
+    public void threadFinished(JMeterThread thread) {
+        log.debug("Ending thread " + thread.getThreadName());
+        allThreads.remove(thread);
+        if (!retiredThreads.remove(thread)) {
+            poolSize.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stop the scheduler and, for each thread, invoke:
+     * <ul>
+     * <li>{@link JMeterThread#stop()} - set stop flag</li>
+     * <li>{@link JMeterThread#interrupt()} - interrupt sampler</li>
+     * <li>{@link Thread#interrupt()} - interrupt JVM thread</li>
+     * </ul>
+     */
+    @Override
+    public void tellThreadsToStop() {
+        running = false;
+        interruptScheduler();
+        for (Entry<JMeterThread, Thread> entry : allThreads.entrySet()) {
+            JMeterThread item = entry.getKey();
+            item.stop(); // set stop flag
+            item.interrupt(); // interrupt sampler if possible
+            Thread t = entry.getValue();
+            if (t != null) {
+                t.interrupt(); // also interrupt JVM thread
+            }
+        }
+    }
+
+    /**
+     * Stop the scheduler and, for each thread, invoke:
+     * <ul>
+     * <li>{@link JMeterThread#stop()} - set stop flag</li>
+     * </ul>
+     */
+    @Override
+    public void stop() {
+        running = false;
+        interruptScheduler();
+        for (JMeterThread item : allThreads.keySet()) {
+            item.stop();
+        }
+    }
+
+    private void interruptScheduler() {
+        Thread scheduler = arrivalsScheduler;
+        if (scheduler != null) {
+            scheduler.interrupt();
+        }
+    }
+
+    /**
+     * @return number of active threads
+     */
+    @Override
+    public int numberOfActiveThreads() {
+        return allThreads.size();
+    }
+
+    /**
+     * @return boolean true if all threads stopped
+     */
+    @Override
+    public boolean verifyThreadsStopped() {
+        boolean stoppedAll = verifyThreadStopped(arrivalsScheduler);
+        for (Thread t : allThreads.values()) {
+            stoppedAll = stoppedAll && verifyThreadStopped(t);
+        }
+        return stoppedAll;
+    }
+
+    private boolean verifyThreadStopped(Thread thread) {
+        boolean stopped = true;
+        if (thread != null && thread.isAlive()) {
+            try {
+                thread.join(WAIT_TO_DIE);
+            } catch (InterruptedException e) {
+            }
+            if (thread.isAlive()) {
+                stopped = false;
+                log.warn("Thread won't exit: " + thread.getName());
+            }
+        }
+        return stopped;
+    }
+
+    /**
+     * Wait for the scheduler and then for all Group Threads to stop.
+     * No threads are started once the scheduler has stopped.
+     */
+    @Override
+    public void waitThreadsStopped() {
+        waitThreadStopped(arrivalsScheduler);
+        for (Thread t : allThreads.values()) {
+            waitThreadStopped(t);
+        }
+        long dropped = droppedArrivals.get();
+        if (dropped > 0) {
+            log.warn(getName() + ": " + dropped + " arrivals were dropped because more than "
+                    + maxBacklog + " were waiting for a thread");
+        }
+    }
+
+    private void waitThreadStopped(Thread thread) {
+        if (thread != null) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join(WAIT_TO_DIE);
+                } catch (InterruptedException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes each JMeter thread wait for an arrival at the start of an iteration.
+     * One instance is created per JMeter thread.
+     */
+    private static class ArrivalListener implements LoopIterationListener {
+        private boolean firstIteration = true;
+
+        @Override
+        public void iterationStart(LoopIterationEvent iterEvent) {
+            JMeterContext context = JMeterContextService.getContext();
+            // The context holds the shared thread group, not this thread's copy
+            ArrivalsThreadGroup group = (ArrivalsThreadGroup) context.getThreadGroup();
+            boolean first = firstIteration;
+            firstIteration = false;
+            group.awaitArrival(context, first);
+        }
+    }
+
+    /**
+     * Computes the arrival times, queues the arrivals and grows the pool of threads.
+     */
+    private class ArrivalsScheduler implements Runnable {
+
+        private final int groupCount;
+        private final ListenerNotifier notifier;
+        private final ListedHashTree threadGroupTree;
+        private final StandardJMeterEngine engine;
+        private final JMeterContext context;
+
+        ArrivalsScheduler(int groupCount, ListenerNotifier notifier, ListedHashTree threadGroupTree, StandardJMeterEngine engine) {
+            this.groupCount = groupCount;
+            this.notifier = notifier;
+            this.threadGroupTree = threadGroupTree;
+            this.engine = engine;
+            // Store context from Root Thread to pass it to created threads
+            this.context = JMeterContextService.getContext();
+        }
+
+        @Override
+        public void run() {
+            JMeterContextService.getContext().setVariables(context.getVariables());
+            ArrivalSchedule schedule = createSchedule();
+            final int maxThreads = getNumThreads();
+            final int minThreads = Math.min(getMinThreads(), maxThreads);
+            for (int i = 0; running && i < minThreads; i++) {
+                startThread();
+            }
+            final long start = System.currentTimeMillis();
+            try {
+                while (running) {
+                    long offset = schedule.nextArrival();
+                    if (offset < 0) {
+                        break;
+                    }
+                    long intended = start + offset;
+                    if (!waitUntil(intended)) {
+                        break;
+                    }
+                    if (available.get() <= arrivals.size() && poolSize.get() < maxThreads) {
+                        startThread();
+                    }
+                    if (!arrivals.offer(Long.valueOf(intended))) {
+                        droppedArrivals.incrementAndGet();
+                    }
+                }
+            } finally {
+                scheduleFinished = true;
+                log.info("Arrivals scheduled for " + getName() + ": " + schedule.getArrivals()
+                        + " threads used: " + threadNumber.get());
+            }
+        }
+
+        /**
+         * @return false if the test was stopped while waiting
+         */
+        private boolean waitUntil(long time) {
+            long now;
+            while (running && (now = System.currentTimeMillis()) < time) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(Math.min(time - now, POLL_GRANULARITY));
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return running;
+        }
+
+        private void startThread() {
+            JMeterThread jmThread = makeThread(groupCount, notifier, threadGroupTree, engine,
+                    threadNumber.getAndIncrement(), context);
+            poolSize.incrementAndGet();
+            available.incrementAndGet();
+            Thread newThread = JMeterThreadFactory.newThread(threadFactory, jmThread);
+            allThreads.put(jmThread, newThread);
+            newThread.start();
+        }
+    }
+}
@@ -52,6 +52,12 @@ public class JMeterContext {
 
     private boolean restartNextLoop = false;
 
+    /** How late the current iteration started compared with its schedule (ms), -1 if not scheduled */
+    private long iterationStartLag = -1;
+
+    /** When the next sample should start according to a timer's schedule, 0 if not scheduled */
+    private long sampleIntendedStartTime = 0;
+
     private ConcurrentHashMap<String, Object> samplerContext = new ConcurrentHashMap<String, Object>(5);
 
     JMeterContext() {
@@ -70,6 +76,8 @@ public class JMeterContext {
         samplingStarted = false;
         threadNum = 0;
         thread = null;
+        iterationStartLag = -1;
+        sampleIntendedStartTime = 0;
         samplerContext.clear();
     }
 
@@ -179,6 +187,41 @@ public class JMeterContext {
         return restartNextLoop;
     }
 
+    /**
+     * Set how late the current iteration started compared with the time it was scheduled for,
+     * e.g. by {@link ArrivalsThreadGroup}.
+     *
+     * @param lag the delay in milliseconds, or -1 if the iteration is not scheduled
+     */
+    public void setIterationStartLag(long lag) {
+        this.iterationStartLag = lag;
+    }
+
+    /**
+     * @return how late the current iteration started in milliseconds, or -1 if it is not scheduled
+     */
+    public long getIterationStartLag() {
+        return iterationStartLag;
+    }
+
+    /**
+     * Set the time at which the next sample should start according to the schedule
+     * of a timer, e.g. a {@link org.apache.jmeter.timers.ConstantThroughputTimer}.
+     * The value only applies to the next sample.
+     *
+     * @param time the intended start time, or 0 if the sample is not scheduled
+     */
+    public void setSampleIntendedStartTime(long time) {
+        this.sampleIntendedStartTime = time;
+    }
+
+    /**
+     * @return the intended start time of the next sample, or 0 if it is not scheduled
+     */
+    public long getSampleIntendedStartTime() {
+        return sampleIntendedStartTime;
+    }
+
     /**
      * Clean cached data after sample
      */
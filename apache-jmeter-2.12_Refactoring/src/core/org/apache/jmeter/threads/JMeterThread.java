@@ -18,11 +18,9 @@
 
 package org.apache.jmeter.threads;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -48,6 +46,7 @@ import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.testelement.TestIterationListener;
 import org.apache.jmeter.testelement.ThreadListener;
 import org.apache.jmeter.timers.Timer;
+import org.apache.jmeter.timers.TimerService;
 import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.collections.HashTree;
 import org.apache.jorphan.collections.HashTreeTraverser;
@@ -431,17 +430,29 @@ public class JMeterThread implements Runnable, Interruptible {
                 SampleResult result = sampler.sample(null);
                 currentSampler = null;
                 // TODO: remove this useless Entry parameter
+                long scheduledStart = threadContext.getSampleIntendedStartTime();
+                threadContext.setSampleIntendedStartTime(0);
 
                 // If we got any results, then perform processing on the result
                 if (result != null) {
                     result.setGroupThreads(threadGroup.getNumberOfThreads());
                     result.setAllThreads(JMeterContextService.getNumberOfThreads());
                     result.setThreadName(threadName);
+                    long startLag = threadContext.getIterationStartLag();
+                    if (startLag >= 0) { // iteration was scheduled, e.g. by ArrivalsThreadGroup
+                        result.setIntendedStartTime(result.getStartTime() - startLag);
+                    }
+                    if (scheduledStart > 0) { // sample was paced by a timer, e.g. ConstantThroughputTimer
+                        long intended = result.getIntendedStartTime();
+                        if (intended <= 0 || scheduledStart < intended) {
+                            result.setIntendedStartTime(scheduledStart);
+                        }
+                    }
                     threadContext.setPreviousResult(result);
                     runPostProcessors(pack.getPostProcessors());
                     checkAssertions(pack.getAssertions(), result, threadContext);
                     // Do not send subsamples to listeners which receive the transaction sample
-                    List<SampleListener> sampleListeners = getSampleListeners(pack, transactionPack, transactionSampler);
+                    List<SampleListener> sampleListeners = pack.getSampleListeners(transactionPack);
                     notifyListeners(sampleListeners, result);
                     compiler.done(pack);
                     // Add the result as subsample of transaction if we are in a transaction
@@ -486,40 +497,6 @@ public class JMeterThread implements Runnable, Interruptible {
         return transactionResult;
     }
 
-    /**
-     * Get the SampleListeners for the sampler. Listeners who receive transaction sample
-     * will not be in this list.
-     *
-     * @param samplePack
-     * @param transactionPack
-     * @param transactionSampler
-     * @return the listeners who should receive the sample result
-     */
-    private List<SampleListener> getSampleListeners(SamplePackage samplePack, SamplePackage transactionPack, TransactionSampler transactionSampler) {
-        List<SampleListener> sampleListeners = samplePack.getSampleListeners();
-        // Do not send subsamples to listeners which receive the transaction sample
-        if(transactionSampler != null) {
-            ArrayList<SampleListener> onlySubSamplerListeners = new ArrayList<SampleListener>();
-            List<SampleListener> transListeners = transactionPack.getSampleListeners();
-            for(SampleListener listener : sampleListeners) {
-                // Check if this instance is present in transaction listener list
-                boolean found = false;
-                for(SampleListener trans : transListeners) {
-                    // Check for the same instance
-                    if(trans == listener) {
-                        found = true;
-                        break;
-                    }
-                }
-                if(!found) {
-                    onlySubSamplerListeners.add(listener);
-                }
-            }
-            sampleListeners = onlySubSamplerListeners;
-        }
-        return sampleListeners;
-    }
-
     /**
      * @param threadContext
      * @return the iteration listener 
@@ -670,7 +647,9 @@ public class JMeterThread implements Runnable, Interruptible {
 
     @SuppressWarnings("deprecation") // OK to call TestBeanHelper.prepare()
     private void checkAssertions(List<Assertion> assertions, SampleResult parent, JMeterContext threadContext) {
-        for (Assertion assertion : assertions) {
+        // The lists come from SamplePackage, so are random access
+        for (int a = 0; a < assertions.size(); a++) {
+            Assertion assertion = assertions.get(a);
             TestBeanHelper.prepare((TestElement) assertion);
             if (assertion instanceof AbstractScopedAssertion){
                 AbstractScopedAssertion scopedAssertion = (AbstractScopedAssertion) assertion;
@@ -725,16 +704,15 @@ public class JMeterThread implements Runnable, Interruptible {
 
     @SuppressWarnings("deprecation") // OK to call TestBeanHelper.prepare()
     private void runPostProcessors(List<PostProcessor> extractors) {
-        ListIterator<PostProcessor> iter;
         if (reversePostProcessors) {// Original (rather odd) behaviour
-            iter = extractors.listIterator(extractors.size());// start at the end
-            while (iter.hasPrevious()) {
-                PostProcessor ex = iter.previous();
+            for (int i = extractors.size() - 1; i >= 0; i--) {// start at the end
+                PostProcessor ex = extractors.get(i);
                 TestBeanHelper.prepare((TestElement) ex);
                 ex.process();
             }
         } else {
-            for (PostProcessor ex : extractors) {
+            for (int i = 0; i < extractors.size(); i++) {
+                PostProcessor ex = extractors.get(i);
                 TestBeanHelper.prepare((TestElement) ex);
                 ex.process();
             }
@@ -743,7 +721,8 @@ public class JMeterThread implements Runnable, Interruptible {
 
     @SuppressWarnings("deprecation") // OK to call TestBeanHelper.prepare()
     private void runPreProcessors(List<PreProcessor> preProcessors) {
-        for (PreProcessor ex : preProcessors) {
+        for (int i = 0; i < preProcessors.size(); i++) {
+            PreProcessor ex = preProcessors.get(i);
             if (log.isDebugEnabled()) {
                 log.debug("Running preprocessor: " + ((AbstractTestElement) ex).getName());
             }
@@ -755,13 +734,14 @@ public class JMeterThread implements Runnable, Interruptible {
     @SuppressWarnings("deprecation") // OK to call TestBeanHelper.prepare()
     private void delay(List<Timer> timers) {
         long sum = 0;
-        for (Timer timer : timers) {
+        for (int i = 0; i < timers.size(); i++) {
+            Timer timer = timers.get(i);
             TestBeanHelper.prepare((TestElement) timer);
             sum += timer.delay();
         }
         if (sum > 0) {
             try {
-                TimeUnit.MILLISECONDS.sleep(sum);
+                TimerService.getInstance().sleep(sum);
             } catch (InterruptedException e) {
                 log.warn("The delay timer was interrupted - probably did not wait as long as intended.");
             }
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Creates the JVM threads which run {@link JMeterThread}s.
+ * <p>
+ * The execution mode is selected by the property <code>jmeterengine.thread.mode</code>:
+ * <ul>
+ * <li><code>platform</code> - (default) one platform thread per JMeter thread; the stack size
+ * can be reduced with <code>jmeterthread.stacksize</code> (in bytes, 0 = JVM default)</li>
+ * <li><code>virtual</code> - one virtual thread per JMeter thread, so that blocked samplers and
+ * timers do not hold on to an OS thread. Requires a JVM which provides
+ * <code>Thread.ofVirtual()</code>, otherwise platform threads are used.</li>
+ * <li>any other value is the name of a class implementing {@link ThreadFactory} which has
+ * a public no-arg constructor, e.g. to run JMeter threads on a custom carrier executor</li>
+ * </ul>
+ */
+public final class JMeterThreadFactory {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    /** Property used to select the execution mode */
+    public static final String THREAD_MODE = "jmeterengine.thread.mode"; // $NON-NLS-1$
+
+    /** Property used to set the stack size of platform threads */
+    public static final String STACK_SIZE = "jmeterthread.stacksize"; // $NON-NLS-1$
+
+    public static final String MODE_PLATFORM = "platform"; // $NON-NLS-1$
+
+    public static final String MODE_VIRTUAL = "virtual"; // $NON-NLS-1$
+
+    private JMeterThreadFactory() {
+    }
+
+    /**
+     * Create the thread factory for the mode defined by the
+     * <code>jmeterengine.thread.mode</code> property.
+     *
+     * @return the factory to use for the JMeter threads of a thread group
+     */
+    public static ThreadFactory createThreadFactory() {
+        return createThreadFactory(JMeterUtils.getPropDefault(THREAD_MODE, MODE_PLATFORM));
+    }
+
+    /**
+     * Create the thread factory for the given mode.
+     *
+     * @param mode
+     *            <code>platform</code>, <code>virtual</code> or the class name of a {@link ThreadFactory}
+     * @return the factory; falls back to platform threads if the mode cannot be used
+     */
+    public static ThreadFactory createThreadFactory(String mode) {
+        String threadMode = mode == null ? MODE_PLATFORM : mode.trim();
+        if (threadMode.length() == 0 || MODE_PLATFORM.equalsIgnoreCase(threadMode)) {
+            return new PlatformThreadFactory(JMeterUtils.getPropDefault(STACK_SIZE, 0L));
+        }
+        if (MODE_VIRTUAL.equalsIgnoreCase(threadMode)) {
+            ThreadFactory factory = VirtualThreadFactory.create();
+            if (factory != null) {
+                return factory;
+            }
+            log.warn("Virtual threads are not supported by this JVM (" + System.getProperty("java.version")
+                    + "), using platform threads");
+        } else {
+            try {
+                return (ThreadFactory) Class.forName(threadMode).newInstance();
+            } catch (Exception e) {
+                log.error("Could not create ThreadFactory " + threadMode + ", using platform threads", e);
+            }
+        }
+        return new PlatformThreadFactory(JMeterUtils.getPropDefault(STACK_SIZE, 0L));
+    }
+
+    /**
+     * Create the (unstarted) JVM thread which will run the JMeter thread.
+     *
+     * @param factory
+     *            the factory to use
+     * @param jmeterThread
+     *            the JMeter thread to run
+     * @return the new thread, named after the JMeter thread
+     */
+    public static Thread newThread(ThreadFactory factory, JMeterThread jmeterThread) {
+        Thread thread = factory.newThread(jmeterThread);
+        thread.setName(jmeterThread.getThreadName());
+        return thread;
+    }
+
+    /**
+     * Creates non-daemon platform threads with an optional stack size.
+     */
+    static final class PlatformThreadFactory implements ThreadFactory {
+        private final long stackSize;
+
+        PlatformThreadFactory(long stackSize) {
+            this.stackSize = stackSize;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(null, runnable, "", stackSize);
+            thread.setDaemon(false); // the creating thread may be a daemon (e.g. ThreadStarter)
+            return thread;
+        }
+    }
+
+    /**
+     * Creates virtual threads. Uses reflection so that JMeter can still be built and run
+     * on JVMs which do not provide them.
+     */
+    static final class VirtualThreadFactory implements ThreadFactory {
+        private final Object builder;
+
+        private final Method unstarted;
+
+        private VirtualThreadFactory(Object builder, Method unstarted) {
+            this.builder = builder;
+            this.unstarted = unstarted;
+        }
+
+        /**
+         * @return the factory, or null if virtual threads are not available
+         */
+        static VirtualThreadFactory create() {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null); // $NON-NLS-1$
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder"); // $NON-NLS-1$
+                Method unstarted = builderClass.getMethod("unstarted", Runnable.class); // $NON-NLS-1$
+                return new VirtualThreadFactory(builder, unstarted);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            try {
+                return (Thread) unstarted.invoke(builder, runnable);
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not create virtual thread", e);
+            }
+        }
+    }
+}
@@ -24,14 +24,49 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.jmeter.util.JMeterUtils;
 
 /**
  * Class which defines JMeter variables.
  * These are similar to properties, but they are local to a single thread.
+ * <p>
+ * Elements that know the variable names they use before the test starts (such as
+ * <code>${name}</code> references and the <code>sample_variables</code>) can resolve
+ * them once with {@link #slotOf(String)} and then use the slot methods, which avoid
+ * hashing the name. The values of these variables are stored in an array indexed by slot;
+ * all other variables, such as those created by extractors, are kept in a map.
+ * Slots are shared by all threads, and are given out again from 0 by {@link #resetSlots()}
+ * at the start of each test; {@link #getSlotGeneration()} tells callers holding on to
+ * slots when they need to resolve them again, and {@link #getObject(String, int, int)}
+ * only uses a slot if it is of the current generation. At most {@value #MAX_SLOTS_PROPERTY}
+ * names are given a slot in each test.
+ * <p>
+ * Variables looked up by name are first looked for in the map, so variables without a slot
+ * only cost one lookup once they are defined.
  */
 public class JMeterVariables {
+    /** Property giving the maximum number of variable names that are given a slot */
+    public static final String MAX_SLOTS_PROPERTY = "variables.max_slots"; // $NON-NLS-1$
+
+    private static final int MAX_SLOTS = JMeterUtils.getPropDefault(MAX_SLOTS_PROPERTY, 1000);
+
+    // Slots given to variable names, shared by all threads; replaced by resetSlots()
+    private static volatile SlotTable slotTable = new SlotTable(0);
+
+    // Stored in a slot for a variable whose value is null, as null marks an empty slot
+    private static final Object NULL_VALUE = new Object();
+
+    private static final Object[] NO_VALUES = new Object[0];
+
+    // Values of the variables that have a slot in valuesTable, indexed by slot
+    private Object[] values = NO_VALUES;
+
+    // The slot table that values is indexed by
+    private SlotTable valuesTable = slotTable;
+
+    // Variables without a slot
     private final Map<String, Object> variables = new HashMap<String, Object>();
 
     private int iteration = 0;
@@ -48,12 +83,50 @@ public class JMeterVariables {
         preloadVariables();
     }
 
+    /**
+     * Get the slot of a variable, giving it one if it does not have one yet.
+     * Only to be used for names known before the test starts, as slots are not freed
+     * until the next test.
+     *
+     * @param name the variable name
+     * @return the slot of the variable, or -1 if no more slots are available
+     */
+    public static int slotOf(String name) {
+        return slotTable.slotOf(name);
+    }
+
+    /**
+     * @param name the variable name
+     * @return true if the variable has a slot
+     */
+    static boolean hasSlot(String name) {
+        return slotTable.slots.containsKey(name);
+    }
+
+    /**
+     * @return the generation of the slots, which changes when {@link #resetSlots()} is called
+     */
+    public static int getSlotGeneration() {
+        return slotTable.generation;
+    }
+
+    /**
+     * Forget all the slots given out so far. Called at the start of each test, before
+     * the test elements are compiled; variables created before then move their values
+     * into the map of named variables when they are next used.
+     */
+    public static void resetSlots() {
+        synchronized (JMeterVariables.class) {
+            slotTable = new SlotTable(slotTable.generation + 1);
+        }
+    }
+
     private void preloadVariables(){
         for (int i = 0; i < PRE_LOAD.length; i++){
             String property=PRE_LOAD[i];
             String value=JMeterUtils.getProperty(property);
             if (value != null){
-                variables.put(property,value);
+                put(property,value);
             }
         }
     }
@@ -72,6 +145,8 @@ public class JMeterVariables {
 
     // Does not appear to be used
     public void initialize() {
+        values = NO_VALUES;
+        valuesTable = slotTable;
         variables.clear();
         preloadVariables();
     }
@@ -84,7 +159,13 @@ public class JMeterVariables {
      * @return the variable value, or {@code null} if there was no such variable
      */
     public Object remove(String key) {
-        return variables.remove(key);
+        Object previous = variables.isEmpty() ? null : variables.remove(key);
+        Integer slot = currentTable().slots.get(key);
+        if (slot != null && slot.intValue() < values.length && values[slot.intValue()] != null) {
+            previous = decode(values[slot.intValue()]);
+            values[slot.intValue()] = null;
+        }
+        return previous;
     }
 
     /**
@@ -94,7 +175,7 @@ public class JMeterVariables {
      * @param value the variable value
      */
     public void put(String key, String value) {
-        variables.put(key, value);
+        putObject(key, value);
     }
 
     /**
@@ -104,15 +185,46 @@ public class JMeterVariables {
      * @param value the variable value
      */
     public void putObject(String key, Object value) {
-        variables.put(key, value);
+        SlotTable table = currentTable();
+        if (variables.put(key, value) != null) {
+            return; // already defined without a slot
+        }
+        Integer slot = table.slots.get(key);
+        if (slot != null) {
+            putObject(slot.intValue(), value); // also removes it from the map
+        }
+    }
+
+    /**
+     * Creates or updates the variable with the given slot.
+     *
+     * @param slot the slot of the variable, as returned by {@link #slotOf(String)}
+     * @param value the variable value
+     */
+    public void putObject(int slot, Object value) {
+        SlotTable table = currentTable();
+        if (slot >= values.length) {
+            Object[] newValues = new Object[Math.max(slot + 1, values.length * 2)];
+            System.arraycopy(values, 0, newValues, 0, values.length);
+            values = newValues;
+        }
+        values[slot] = value == null ? NULL_VALUE : value;
+        if (!variables.isEmpty()) {
+            // The name may have been used before it was given a slot
+            variables.remove(table.getName(slot));
+        }
     }
 
     public void putAll(Map<String, ?> vars) {
-        variables.putAll(vars);
+        for (Map.Entry<String, ?> entry : vars.entrySet()) {
+            putObject(entry.getKey(), entry.getValue());
+        }
     }
 
     public void putAll(JMeterVariables vars) {
-        putAll(vars.variables);
+        for (Map.Entry<String, Object> entry : vars.entrySet()) {
+            putObject(entry.getKey(), entry.getValue());
+        }
     }
 
     /**
@@ -122,7 +234,17 @@ public class JMeterVariables {
      * @return the value of the variable, or {@code null} if it does not exist
      */
     public String get(String key) {
-        return (String) variables.get(key);
+        return (String) getObject(key);
+    }
+
+    /**
+     * Gets the value of the variable with the given slot, coerced to a String.
+     *
+     * @param slot the slot of the variable, as returned by {@link #slotOf(String)}
+     * @return the value of the variable, or {@code null} if it does not exist
+     */
+    public String get(int slot) {
+        return (String) getObject(slot);
     }
 
     /**
@@ -132,7 +254,63 @@ public class JMeterVariables {
      * @return the value of the variable, or {@code null} if it does not exist
      */
     public Object getObject(String key) {
-        return variables.get(key);
+        SlotTable table = currentTable();
+        Object value = variables.get(key);
+        if (value != null) {
+            return value;
+        }
+        Integer slot = table.slots.get(key);
+        if (slot == null || slot.intValue() >= values.length) {
+            return null;
+        }
+        return decode(values[slot.intValue()]);
+    }
+
+    /**
+     * Gets the value of a variable using the slot it was given, unless the slots have been
+     * reset since then.
+     *
+     * @param key the name of the variable
+     * @param slot the slot of the variable, as returned by {@link #slotOf(String)}
+     * @param generation the generation the slot was given in, from {@link #getSlotGeneration()}
+     *                   read before calling {@link #slotOf(String)}
+     * @return the value of the variable, or {@code null} if it does not exist
+     */
+    public Object getObject(String key, int slot, int generation) {
+        if (currentTable().generation != generation) {
+            return getObject(key);
+        }
+        return getObject(slot);
+    }
+
+    /**
+     * Gets the value of a variable using the slot it was given, unless the slots have been
+     * reset since then, coerced to a String.
+     *
+     * @param key the name of the variable
+     * @param slot the slot of the variable, as returned by {@link #slotOf(String)}
+     * @param generation the generation the slot was given in
+     * @return the value of the variable, or {@code null} if it does not exist
+     * @see #getObject(String, int, int)
+     */
+    public String get(String key, int slot, int generation) {
+        return (String) getObject(key, slot, generation);
+    }
+
+    /**
+     * Gets the value of the variable with the given slot (not converted to String).
+     *
+     * @param slot the slot of the variable, as returned by {@link #slotOf(String)}
+     * @return the value of the variable, or {@code null} if it does not exist
+     */
+    public Object getObject(int slot) {
+        SlotTable table = currentTable();
+        Object value = slot < values.length ? values[slot] : null;
+        if (value == null) {
+            // The name may have been used before it was given a slot
+            return variables.isEmpty() ? null : variables.get(table.getName(slot));
+        }
+        return decode(value);
     }
 
     /**
@@ -141,11 +319,87 @@ public class JMeterVariables {
      * @return the iterator
      */
     public Iterator<Entry<String, Object>> getIterator(){
-        return Collections.unmodifiableMap(variables).entrySet().iterator() ;
+        return entrySet().iterator() ;
     }
 
     // Used by DebugSampler
     public Set<Entry<String, Object>> entrySet(){
-        return Collections.unmodifiableMap(variables).entrySet();
+        SlotTable table = currentTable();
+        Map<String, Object> all = new HashMap<String, Object>(variables);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                all.put(table.getName(i), decode(values[i]));
+            }
+        }
+        return Collections.unmodifiableMap(all).entrySet();
+    }
+
+    /**
+     * Get the current slot table, first moving the values into the map if they
+     * are indexed by the slots of a previous test.
+     *
+     * @return the current slot table
+     */
+    private SlotTable currentTable() {
+        SlotTable table = slotTable;
+        if (table != valuesTable) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    variables.put(valuesTable.getName(i), decode(values[i]));
+                }
+            }
+            values = NO_VALUES;
+            valuesTable = table;
+        }
+        return table;
+    }
+
+    private static Object decode(Object value) {
+        return value == NULL_VALUE ? null : value;
+    }
+
+    /**
+     * The slots given to variable names since the start of a test.
+     */
+    private static final class SlotTable {
+        private final int generation;
+
+        private final Map<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+
+        // The name of each slot; replaced when a slot is added
+        private volatile String[] names = new String[0];
+
+        SlotTable(int generation) {
+            this.generation = generation;
+        }
+
+        int slotOf(String name) {
+            Integer slot = slots.get(name);
+            if (slot != null) {
+                return slot.intValue();
+            }
+            synchronized (this) {
+                slot = slots.get(name);
+                if (slot != null) {
+                    return slot.intValue();
+                }
+                String[] oldNames = names;
+                if (oldNames.length >= MAX_SLOTS) {
+                    return -1;
+                }
+                String[] newNames = new String[oldNames.length + 1];
+                System.arraycopy(oldNames, 0, newNames, 0, oldNames.length);
+                newNames[oldNames.length] = name;
+                names = newNames; // publish the name before the slot
+                slots.put(name, Integer.valueOf(oldNames.length));
+                return oldNames.length;
+            }
+        }
+
+        // null for a slot of a later table, which a caller may hold if the slots were reset meanwhile
+        String getName(int slot) {
+            String[] current = names;
+            return slot < current.length ? current[slot] : null;
+        }
     }
 }
@@ -16,55 +16,96 @@
  *
  */
 
-/////////////////////////////////////////
-////////
-//////// This code is mostly unused at present
-//////// it seems that only notifyListeners()
-//////// is used.
-////////
-//////// However, it does look useful.
-//////// And it may one day be used...
-////////
-/////////////////////////////////////////
-
 package org.apache.jmeter.threads;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
-//import org.apache.commons.collections.Buffer;
-//import org.apache.commons.collections.BufferUtils;
-//import org.apache.commons.collections.buffer.UnboundedFifoBuffer;
+import org.apache.jmeter.engine.util.NoThreadClone;
 import org.apache.jmeter.samplers.SampleEvent;
 import org.apache.jmeter.samplers.SampleListener;
 import org.apache.jmeter.testbeans.TestBeanHelper;
 import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.collections.RingBuffer;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
-///**
-// * The <code>ListenerNotifier</code> thread is responsible for performing
-// * asynchronous notifications that a sample has occurred. Each time a sample
-// * occurs, the <code>addLast</code> method should be called to add the sample
-// * and its list of listeners to the notification queue. This thread will then
-// * notify those listeners asynchronously at some future time.
-// * <p>
-// * In the current implementation, the notifications will be made in batches,
-// * with 2 seconds between the beginning of successive batches. If the notifier
-// * thread starts to get behind, the priority of the thread will be increased in
-// * an attempt to help it to keep up.
-// *
-// * @see org.apache.jmeter.samplers.SampleListener
-// *
-// */
 /**
  * Processes sample events.
- * The current implementation processes events in the calling thread
- * using {@link #notifyListeners(SampleEvent, List)}
- * The other code is not used currently, so is commented out.
+ * <p>
+ * By default events are processed in the calling thread using
+ * {@link #notifyListeners(SampleEvent, List)}.
+ * <p>
+ * If the property <code>jmeterengine.listener.mode</code> is <code>async</code>, each
+ * listener shared by all threads (i.e. implementing {@link NoThreadClone}, such as
+ * ResultCollector and Summariser) gets a bounded queue and its own thread, which processes
+ * the events in batches of up to <code>jmeterengine.listener.batch_size</code> events
+ * (default 100). The queues hold <code>jmeterengine.listener.queue_size</code> events
+ * (default 16384). When a queue is full, the sampling thread waits if
+ * <code>jmeterengine.listener.overflow</code> is <code>block</code> (default), or the
+ * event is dropped and counted if it is <code>drop</code>.
+ * <p>
+ * Listeners cloned for each thread are still called in the sampling thread, as they
+ * may use the thread's JMeterContext and JMeterVariables. Events only carry the values of
+ * the <code>sample_variables</code> copied when they were created, and the results
+ * must not be changed once the listeners have been notified.
+ * Call {@link #waitForAsyncListeners()} when the sampling threads have stopped, so that
+ * the listeners see all the events before they are told that the test has ended.
  */
 public class ListenerNotifier {
     private static final Logger log = LoggingManager.getLoggerForClass();
 
+    /** Property used to select how listeners are notified */
+    public static final String LISTENER_MODE = "jmeterengine.listener.mode"; // $NON-NLS-1$
+
+    public static final String MODE_SYNC = "sync"; // $NON-NLS-1$
+
+    public static final String MODE_ASYNC = "async"; // $NON-NLS-1$
+
+    private static final boolean ASYNC =
+        MODE_ASYNC.equals(JMeterUtils.getPropDefault(LISTENER_MODE, MODE_SYNC));
+
+    private static final int QUEUE_SIZE =
+        JMeterUtils.getPropDefault("jmeterengine.listener.queue_size", 16384); // $NON-NLS-1$
+
+    private static final int BATCH_SIZE =
+        JMeterUtils.getPropDefault("jmeterengine.listener.batch_size", 100); // $NON-NLS-1$
+
+    private static final boolean DROP_ON_OVERFLOW =
+        "drop".equals(JMeterUtils.getPropDefault("jmeterengine.listener.overflow", "block")); // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+
+    // How long a consumer waits for events before checking again, in nanoseconds
+    private static final long CONSUMER_WAIT = 10000000L;
+
+    // How long a producer waits for room in a full queue before trying again, in nanoseconds
+    private static final long PRODUCER_WAIT = 100000L;
+
+    private static final Object QUEUES_LOCK = new Object();
+
+    // Replaced rather than modified, so that it can be read without locking
+    private static volatile Map<SampleListener, ListenerQueue> queues =
+        new IdentityHashMap<SampleListener, ListenerQueue>();
+
+    private final boolean async;
+
+    public ListenerNotifier() {
+        this(ASYNC);
+    }
+
+    /**
+     * @param async true to notify shared listeners asynchronously, whatever the
+     * <code>jmeterengine.listener.mode</code> property says
+     */
+    public ListenerNotifier(boolean async) {
+        this.async = async;
+    }
 
     /**
      * Notify a list of listeners that a sample has occurred.
@@ -76,196 +117,224 @@ public class ListenerNotifier {
      *            must not be null and must contain only SampleListener
      *            elements.
      */
-    @SuppressWarnings("deprecation") // TestBeanHelper.prepare() is OK
     public void notifyListeners(SampleEvent res, List<SampleListener> listeners) {
-        for (SampleListener sampleListener : listeners) {
-            try {
-                TestBeanHelper.prepare((TestElement) sampleListener);
-                sampleListener.sampleOccurred(res);
-            } catch (RuntimeException e) {
-                log.error("Detected problem in Listener: ", e);
-                log.info("Continuing to process further listeners");
+        for (int i = 0; i < listeners.size(); i++) {
+            SampleListener sampleListener = listeners.get(i);
+            if (async && sampleListener instanceof NoThreadClone) {
+                getQueue(sampleListener).add(res);
+            } else {
+                notifyListener(res, sampleListener);
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation") // TestBeanHelper.prepare() is OK
+    private static void notifyListener(SampleEvent res, SampleListener sampleListener) {
+        try {
+            TestBeanHelper.prepare((TestElement) sampleListener);
+            sampleListener.sampleOccurred(res);
+        } catch (RuntimeException e) {
+            log.error("Detected problem in Listener: ", e);
+            log.info("Continuing to process further listeners");
+        }
+    }
+
+    private static ListenerQueue getQueue(SampleListener listener) {
+        ListenerQueue queue = queues.get(listener);
+        if (queue == null) {
+            synchronized (QUEUES_LOCK) {
+                queue = queues.get(listener);
+                if (queue == null) {
+                    queue = new ListenerQueue(listener, new RingBuffer<SampleEvent>(QUEUE_SIZE));
+                    Map<SampleListener, ListenerQueue> newQueues =
+                        new IdentityHashMap<SampleListener, ListenerQueue>(queues);
+                    newQueues.put(listener, queue);
+                    queues = newQueues;
+                    queue.start();
+                }
             }
         }
+        return queue;
     }
 
-//    /**
-//     * The number of milliseconds between batches of notifications.
-//     */
-//    private static final int SLEEP_TIME = 2000;
-//
-//    /**
-//     * Indicates whether or not this thread should remain running. The thread
-//     * will continue running after this field is set to false until the next
-//     * batch of notifications has been completed and the notification queue is
-//     * empty.
-//     */
-//    private boolean running = true;
-//
-//    /**
-//     * Indicates whether or not this thread has stopped. No further
-//     * notifications will be performed.
-//     */
-//    private boolean isStopped = true;
-//
-//    /**
-//     * The queue containing the notifications to be performed. Each notification
-//     * consists of a pair of entries in this queue. The first is the
-//     * {@link org.apache.jmeter.samplers.SampleEvent SampleEvent} representing
-//     * the sample. The second is a List of
-//     * {@link org.apache.jmeter.samplers.SampleListener SampleListener}s which
-//     * should be notified.
-//     */
-//    private Buffer listenerEvents = BufferUtils.synchronizedBuffer(new UnboundedFifoBuffer());
-//
-//    /**
-//     * Stops the ListenerNotifier thread. The thread will continue processing
-//     * any events remaining in the notification queue before it actually stops,
-//     * but this method will return immediately.
-//     */
-//    public void stop() {
-//        running = false;
-//    }
-//
-//    /**
-//     * Indicates whether or not the thread has stopped. This will not return
-//     * true until the <code>stop</code> method has been called and any
-//     * remaining notifications in the queue have been completed.
-//     *
-//     * @return true if the ListenerNotifier has completely stopped, false
-//     *         otherwise
-//     */
-//    public boolean isStopped() {
-//        return isStopped;
-//    }
-//
-//    /**
-//     * Process the events in the notification queue until the thread has been
-//     * told to stop and the notification queue is empty.
-//     * <p>
-//     * In the current implementation, this method will iterate continually until
-//     * the thread is told to stop. In each iteration it will process any
-//     * notifications that are in the queue at the beginning of the iteration,
-//     * and then will sleep until it is time to start the next batch. As long as
-//     * the thread is keeping up, each batch should start 2 seconds after the
-//     * beginning of the last batch. This exact behavior is subject to change.
-//     */
-//    public void run() {
-//        boolean isMaximumPriority = false;
-//        int normalCount = 0;
-//
-//        while (running) {
-//            long startTime = System.currentTimeMillis();
-//            processNotifications();
-//            long sleep = SLEEP_TIME - (System.currentTimeMillis() - startTime);
-//
-//            // If the thread has been told to stop then we shouldn't sleep
-//            if (!running) {
-//                break;
-//            }
-//
-//            if (sleep < 0) {
-//                isMaximumPriority = true;
-//                normalCount = 0;
-//                if (log.isInfoEnabled()) {
-//                    log.info("ListenerNotifier exceeded maximum " + "notification time by " + (-sleep) + "ms");
-//                }
-//                boostPriority();
-//            } else {
-//                normalCount++;
-//
-//                // If there have been three consecutive iterations since the
-//                // last iteration which took too long to execute, return the
-//                // thread to normal priority.
-//                if (isMaximumPriority && normalCount >= 3) {
-//                    isMaximumPriority = false;
-//                    unboostPriority();
-//                }
-//
-//                if (log.isDebugEnabled()) {
-//                    log.debug("ListenerNotifier sleeping for " + sleep + "ms");
-//                }
-//
-//                try {
-//                    Thread.sleep(sleep);
-//                } catch (InterruptedException e) {
-//                }
-//            }
-//        }
-//
-//        // Make sure that all pending notifications are processed before
-//        // actually ending the thread.
-//        processNotifications();
-//        isStopped = true;
-//    }
-//
-//    /**
-//     * Process all of the pending notifications. Only the samples which are in
-//     * the queue when this method is called will be processed. Any samples added
-//     * between the time when this method is called and when it exits are saved
-//     * for the next batch.
-//     */
-//    private void processNotifications() {
-//        int listenerEventsSize = listenerEvents.size();
-//        if (log.isDebugEnabled()) {
-//            log.debug("ListenerNotifier: processing " + listenerEventsSize + " events");
-//        }
-//
-//        while (listenerEventsSize > 0) {
-//            // Since this is a FIFO and this is the only place we remove
-//            // from it (only from a single thread) we don't have to remove
-//            // these two items in one atomic operation. Each individual
-//            // remove is atomic (because we use a synchronized buffer),
-//            // which is necessary since the buffer can be accessed from
-//            // other threads (to add things to the buffer).
-//            SampleEvent res = (SampleEvent) listenerEvents.remove();
-//            List listeners = (List) listenerEvents.remove();
-//
-//            notifyListeners(res, listeners);
-//
-//            listenerEventsSize -= 2;
-//        }
-//    }
-//
-//    /**
-//     * Boost the priority of the current thread to maximum priority. If the
-//     * thread is already at maximum priority then this will have no effect.
-//     */
-//    private void boostPriority() {
-//        if (Thread.currentThread().getPriority() != Thread.MAX_PRIORITY) {
-//            log.info("ListenerNotifier: Boosting thread priority to maximum.");
-//            Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
-//        }
-//    }
-//
-//    /**
-//     * Return the priority of the current thread to normal. If the thread is
-//     * already at normal priority then this will have no effect.
-//     */
-//    private void unboostPriority() {
-//        if (Thread.currentThread().getPriority() != Thread.NORM_PRIORITY) {
-//            log.info("ListenerNotifier: Returning thread priority to normal.");
-//            Thread.currentThread().setPriority(Thread.NORM_PRIORITY);
-//        }
-//    }
-//
-//    /**
-//     * Add a new sample event to the notification queue. The notification will
-//     * be performed asynchronously and this method will return immediately.
-//     *
-//     * @param item
-//     *            the sample event that has occurred. Must be non-null.
-//     * @param listeners
-//     *            a list of the listeners which should be notified. This list
-//     *            must not be null and must contain only SampleListener
-//     *            elements.
-//     */
-//    public void addLast(SampleEvent item, List listeners) {
-//        // Must use explicit synchronization here so that the item and
-//        // listeners are added together atomically
-//        synchronized (listenerEvents) {
-//            listenerEvents.add(item);
-//            listenerEvents.add(listeners);
-//        }
-//    }
+    /**
+     * Wait until the asynchronous listeners have processed all the queued events,
+     * then stop their threads. Events notified afterwards are processed in the
+     * calling thread until the next test uses new queues.
+     */
+    public static void waitForAsyncListeners() {
+        Collection<ListenerQueue> ended;
+        synchronized (QUEUES_LOCK) {
+            ended = queues.values();
+            queues = new IdentityHashMap<SampleListener, ListenerQueue>();
+        }
+        for (ListenerQueue queue : ended) {
+            queue.stop();
+        }
+        for (ListenerQueue queue : ended) {
+            queue.join();
+            log.info("Listener queue " + queue);
+        }
+    }
+
+    /**
+     * @return the queues of the asynchronous listeners of the current test
+     */
+    public static Collection<ListenerQueue> getAsyncQueues() {
+        return Collections.unmodifiableCollection(queues.values());
+    }
+
+    /**
+     * Queue of events for one asynchronous listener, and the thread which processes them.
+     */
+    public static final class ListenerQueue implements Runnable {
+        private final SampleListener listener;
+
+        private final String name;
+
+        private final RingBuffer<SampleEvent> events;
+
+        private final Thread thread;
+
+        private final AtomicLong dropped = new AtomicLong();
+
+        private volatile long processed;
+
+        private volatile int maxDepth;
+
+        // Set by the consumer thread before it waits for events
+        private volatile boolean waiting;
+
+        private volatile boolean stopping;
+
+        private volatile boolean stopped;
+
+        ListenerQueue(SampleListener listener, RingBuffer<SampleEvent> events) {
+            this.listener = listener;
+            this.name = listener instanceof TestElement ? ((TestElement) listener).getName() : listener.toString();
+            this.events = events;
+            this.thread = new Thread(this, "Listener " + name); // $NON-NLS-1$
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void add(SampleEvent event) {
+            if (stopped) {
+                notifyListener(event, listener);
+                return;
+            }
+            if (!events.offer(event)) {
+                if (DROP_ON_OVERFLOW) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                do {
+                    if (stopped) {
+                        notifyListener(event, listener);
+                        return;
+                    }
+                    LockSupport.parkNanos(this, PRODUCER_WAIT);
+                } while (!events.offer(event));
+            }
+            int depth = events.size();
+            if (depth > maxDepth) {
+                maxDepth = depth; // not atomic, but close enough for a statistic
+            }
+            if (waiting) {
+                LockSupport.unpark(thread);
+            } else if (stopped) { // the queue was stopped before the event was added
+                SampleEvent late;
+                while ((late = events.poll()) != null) {
+                    notifyListener(late, listener);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            List<SampleEvent> batch = new ArrayList<SampleEvent>(BATCH_SIZE);
+            while (true) {
+                int count = events.drainTo(batch, BATCH_SIZE);
+                if (count == 0) {
+                    if (stopping && events.isEmpty()) {
+                        break;
+                    }
+                    waiting = true;
+                    if (events.isEmpty()) { // re-check, an event may have been added before the flag was set
+                        LockSupport.parkNanos(this, CONSUMER_WAIT);
+                    }
+                    waiting = false;
+                    continue;
+                }
+                for (int i = 0; i < count; i++) {
+                    notifyListener(batch.get(i), listener);
+                }
+                batch.clear();
+                processed += count;
+            }
+        }
+
+        void stop() {
+            stopping = true;
+            LockSupport.unpark(thread);
+        }
+
+        void join() {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for listener " + name);
+            }
+            stopped = true;
+            // Process anything added by a late producer while the thread was stopping
+            SampleEvent event;
+            while ((event = events.poll()) != null) {
+                notifyListener(event, listener);
+            }
+        }
+
+        /**
+         * @return the name of the listener
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of events waiting to be processed
+         */
+        public int getDepth() {
+            return events.size();
+        }
+
+        /**
+         * @return the largest number of events seen waiting
+         */
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        /**
+         * @return the number of events processed
+         */
+        public long getProcessed() {
+            return processed;
+        }
+
+        /**
+         * @return the number of events dropped because the queue was full
+         */
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        @Override
+        public String toString() {
+            return name + ": processed=" + processed + " dropped=" + dropped.get() // $NON-NLS-1$ $NON-NLS-2$
+                    + " max depth=" + maxDepth + "/" + events.capacity(); // $NON-NLS-1$ $NON-NLS-2$
+        }
+    }
 }
@@ -18,6 +18,9 @@
 
 package org.apache.jmeter.threads;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.jmeter.assertions.Assertion;
@@ -42,25 +45,41 @@ import org.apache.jmeter.timers.Timer;
  *  <li>ConfigTestElement(s)</li>
  *  <li>Controller(s)</li>
  * </ul>
+ * The package is built once per sampler by the {@link TestCompiler}. The elements are held
+ * in arrays; the lists returned by the getters are read-only views of them, so fetching them
+ * does not allocate anything. The add methods replace the affected list by a new one,
+ * so a list fetched earlier is not changed.
  */
 public class SamplePackage {
 
-    private final List<SampleListener> sampleListeners;
+    private List<SampleListener> sampleListeners;
 
-    private final List<Timer> timers;
+    private List<Timer> timers;
 
-    private final List<Assertion> assertions;
+    private List<Assertion> assertions;
 
-    private final List<PostProcessor> postProcessors;
+    private List<PostProcessor> postProcessors;
 
-    private final List<PreProcessor> preProcessors;
+    private List<PreProcessor> preProcessors;
 
     private final List<ConfigTestElement> configs;
 
     private final List<Controller> controllers;
 
+    /** All the above, in the order they are made running versions and recovered */
+    private TestElement[] elements;
+
     private Sampler sampler;
 
+    /** Whether the sampler was made the running version by this package */
+    private boolean samplerRunning;
+
+    // Cache for getSampleListeners(SamplePackage), valid while the transaction listeners
+    // are the same list; only used by the owning thread
+    private List<SampleListener> transactionListeners;
+
+    private List<SampleListener> subSamplerListeners;
+
     public SamplePackage(
             List<ConfigTestElement> configs,
             List<SampleListener> listeners,
@@ -69,13 +88,40 @@ public class SamplePackage {
             List<PostProcessor> postProcessors, 
             List<PreProcessor> preProcessors,
             List<Controller> controllers) {
-        this.configs = configs;
-        this.sampleListeners = listeners;
-        this.timers = timers;
-        this.assertions = assertions;
-        this.postProcessors = postProcessors;
-        this.preProcessors = preProcessors;
-        this.controllers = controllers;
+        this.configs = fixedList(configs.toArray(new ConfigTestElement[configs.size()]));
+        this.sampleListeners = fixedList(listeners.toArray(new SampleListener[listeners.size()]));
+        this.timers = fixedList(timers.toArray(new Timer[timers.size()]));
+        this.assertions = fixedList(assertions.toArray(new Assertion[assertions.size()]));
+        this.postProcessors = fixedList(postProcessors.toArray(new PostProcessor[postProcessors.size()]));
+        this.preProcessors = fixedList(preProcessors.toArray(new PreProcessor[preProcessors.size()]));
+        this.controllers = fixedList(controllers.toArray(new Controller[controllers.size()]));
+        collectElements();
+    }
+
+    private void collectElements() {
+        List<Object> all = new ArrayList<Object>();
+        all.addAll(configs);
+        all.addAll(sampleListeners);
+        all.addAll(assertions);
+        all.addAll(timers);
+        all.addAll(postProcessors);
+        all.addAll(preProcessors);
+        all.addAll(controllers);
+        elements = all.toArray(new TestElement[all.size()]);
+    }
+
+    private static <T> List<T> fixedList(T[] array) {
+        return Collections.unmodifiableList(Arrays.asList(array));
+    }
+
+    /**
+     * @return a new read-only list holding the items of the list followed by the item
+     */
+    private static <T> List<T> append(List<T> list, T item) {
+        List<T> copy = new ArrayList<T>(list.size() + 1);
+        copy.addAll(list);
+        copy.add(item);
+        return Collections.unmodifiableList(copy);
     }
 
     /**
@@ -86,30 +132,11 @@ public class SamplePackage {
      * @see TestElement#setRunningVersion(boolean)
      */
     public void setRunningVersion(boolean running) {
-        setRunningVersion(configs, running);
-        setRunningVersion(sampleListeners, running);
-        setRunningVersion(assertions, running);
-        setRunningVersion(timers, running);
-        setRunningVersion(postProcessors, running);
-        setRunningVersion(preProcessors, running);
-        setRunningVersion(controllers, running);
-        sampler.setRunningVersion(running);
-    }
-
-    private void setRunningVersion(List<?> list, boolean running) {
-        @SuppressWarnings("unchecked") // all implementations extend TestElement
-        List<TestElement> telist = (List<TestElement>)list;
-        for (TestElement te : telist) {
-            te.setRunningVersion(running);
-        }
-    }
-
-    private void recoverRunningVersion(List<?> list) {
-        @SuppressWarnings("unchecked") // All implementations extend TestElement
-        List<TestElement> telist = (List<TestElement>)list;
-        for (TestElement te : telist) {
-            te.recoverRunningVersion();
+        for (int i = 0; i < elements.length; i++) {
+            elements[i].setRunningVersion(running);
         }
+        sampler.setRunningVersion(running);
+        samplerRunning = running;
     }
 
     /**
@@ -117,14 +144,13 @@ public class SamplePackage {
      * @see TestElement#recoverRunningVersion()
      */
     public void recoverRunningVersion() {
-        recoverRunningVersion(configs);
-        recoverRunningVersion(sampleListeners);
-        recoverRunningVersion(assertions);
-        recoverRunningVersion(timers);
-        recoverRunningVersion(postProcessors);
-        recoverRunningVersion(preProcessors);
-        recoverRunningVersion(controllers);
-        sampler.recoverRunningVersion();
+        for (int i = 0; i < elements.length; i++) {
+            elements[i].recoverRunningVersion();
+        }
+        // A sampler set since, e.g. a new TransactionSampler, has nothing to recover
+        if (samplerRunning) {
+            sampler.recoverRunningVersion();
+        }
     }
 
     /**
@@ -139,7 +165,46 @@ public class SamplePackage {
      * @param listener {@link SampleListener}
      */
     public void addSampleListener(SampleListener listener) {
-        sampleListeners.add(listener);
+        sampleListeners = append(sampleListeners, listener);
+        transactionListeners = null;
+        collectElements();
+    }
+
+    /**
+     * Get the SampleListeners which are not also listeners of an enclosing transaction,
+     * i.e. those which should receive the samples of the transaction's sub-samplers.
+     * <p>
+     * The result is cached until either package gets a new listener.
+     *
+     * @param transactionPack the package of the transaction, may be null
+     * @return List<SampleListener>
+     */
+    public List<SampleListener> getSampleListeners(SamplePackage transactionPack) {
+        if (transactionPack == null) {
+            return sampleListeners;
+        }
+        List<SampleListener> transListeners = transactionPack.getSampleListeners();
+        if (transListeners != transactionListeners) {
+            List<SampleListener> onlySubSamplerListeners = new ArrayList<SampleListener>();
+            for (SampleListener listener : sampleListeners) {
+                // Check if this instance is present in transaction listener list
+                boolean found = false;
+                for (SampleListener trans : transListeners) {
+                    // Check for the same instance
+                    if (trans == listener) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    onlySubSamplerListeners.add(listener);
+                }
+            }
+            this.subSamplerListeners =
+                fixedList(onlySubSamplerListeners.toArray(new SampleListener[onlySubSamplerListeners.size()]));
+            this.transactionListeners = transListeners;
+        }
+        return subSamplerListeners;
     }
 
     /**
@@ -149,13 +214,13 @@ public class SamplePackage {
         return timers;
     }
 
-    
     /**
      * Add Post processor
      * @param ex {@link PostProcessor}
      */
     public void addPostProcessor(PostProcessor ex) {
-        postProcessors.add(ex);
+        postProcessors = append(postProcessors, ex);
+        collectElements();
     }
 
     /**
@@ -163,7 +228,8 @@ public class SamplePackage {
      * @param pre {@link PreProcessor}
      */
     public void addPreProcessor(PreProcessor pre) {
-        preProcessors.add(pre);
+        preProcessors = append(preProcessors, pre);
+        collectElements();
     }
 
     /**
@@ -171,7 +237,8 @@ public class SamplePackage {
      * @param timer {@link Timer}
      */
     public void addTimer(Timer timer) {
-        timers.add(timer);
+        timers = append(timers, timer);
+        collectElements();
     }
 
     /**
@@ -179,7 +246,8 @@ public class SamplePackage {
      * @param asser {@link Assertion}
      */
     public void addAssertion(Assertion asser) {
-        assertions.add(asser);
+        assertions = append(assertions, asser);
+        collectElements();
     }
 
     /**
@@ -207,6 +275,7 @@ public class SamplePackage {
      * @param s {@link Sampler}
      */
     public void setSampler(Sampler s) {
+        samplerRunning = samplerRunning && s == sampler;
         sampler = s;
     }
 
@@ -312,7 +312,8 @@ public class TestCompiler implements HashTreeTraverser {
 
     private void configureWithConfigElements(Sampler sam, List<ConfigTestElement> configs) {
         sam.clearTestElementChildren();
-        for (ConfigTestElement config  : configs) {
+        for (int i = 0; i < configs.size(); i++) {
+            ConfigTestElement config = configs.get(i);
             if (!(config instanceof NoConfigMerge)) 
             {
                 if(sam instanceof ConfigMergabilityIndicator) {
@@ -21,6 +21,7 @@ package org.apache.jmeter.threads;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.jmeter.engine.StandardJMeterEngine;
@@ -76,6 +77,9 @@ public class ThreadGroup extends AbstractThreadGroup {
 
     private transient Thread threadStarter;
 
+    /** Creates the JVM threads for the JMeter threads, see {@link JMeterThreadFactory} */
+    private transient ThreadFactory threadFactory;
+
     // List of active threads
     private final Map<JMeterThread, Thread> allThreads = new ConcurrentHashMap<JMeterThread, Thread>();
 
@@ -272,11 +276,13 @@ public class ThreadGroup extends AbstractThreadGroup {
         float perThreadDelay = ((float) (rampUp * 1000) / (float) getNumThreads());
 
         delayedStartup = isDelayedStartup(); // Fetch once; needs to stay constant
+        threadFactory = JMeterThreadFactory.createThreadFactory();
         log.info("Starting thread group number " + groupCount
                 + " threads " + numThreads
                 + " ramp-up " + rampUp
                 + " perThread " + perThreadDelay
-                + " delayedStart=" + delayedStartup);
+                + " delayedStart=" + delayedStartup
+                + " threadFactory=" + threadFactory.getClass().getName());
         if (delayedStartup) {
             threadStarter = new Thread(new ThreadStarter(groupCount, notifier, threadGroupTree, engine), getName()+"-ThreadStarter");
             threadStarter.setDaemon(true);
@@ -289,7 +295,7 @@ public class ThreadGroup extends AbstractThreadGroup {
                 JMeterThread jmThread = makeThread(groupCount, notifier, threadGroupTree, engine, i, context);
                 scheduleThread(jmThread, now); // set start and end time
                 jmThread.setInitialDelay((int)(i * perThreadDelay));
-                Thread newThread = new Thread(jmThread, jmThread.getThreadName());
+                Thread newThread = JMeterThreadFactory.newThread(threadFactory, jmThread);
                 registerStartedThread(jmThread, newThread);
                 newThread.start();
             }
@@ -493,7 +499,7 @@ public class ThreadGroup extends AbstractThreadGroup {
     }
 
     private ListedHashTree cloneTree(ListedHashTree tree) {
-        TreeCloner cloner = new TreeCloner(true);
+        TreeCloner cloner = new TreeCloner(true, SHARE_TEST_TREE);
         tree.traverse(cloner);
         return cloner.getClonedTree();
     }
@@ -569,8 +575,8 @@ public class ThreadGroup extends AbstractThreadGroup {
                     jmThread.setScheduled(true);
                     jmThread.setEndTime(endtime);
                 }
-                Thread newThread = new Thread(jmThread, jmThread.getThreadName());
-                newThread.setDaemon(false); // ThreadStarter is daemon, but we don't want sampler threads to be so too
+                // ThreadStarter is daemon, but the factory ensures that platform sampler threads are not
+                Thread newThread = JMeterThreadFactory.newThread(threadFactory, jmThread);
                 registerStartedThread(jmThread, newThread);
                 newThread.start();
             }
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads.gui;
+
+import java.awt.BorderLayout;
+
+import javax.swing.BorderFactory;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import org.apache.jmeter.control.LoopController;
+import org.apache.jmeter.gui.util.VerticalPanel;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.threads.AbstractThreadGroup;
+import org.apache.jmeter.threads.ArrivalsThreadGroup;
+import org.apache.jmeter.util.JMeterUtils;
+
+public class ArrivalsThreadGroupGui extends AbstractThreadGroupGui {
+    private static final long serialVersionUID = 240L;
+
+    private static final String[] TYPES = {
+        ArrivalsThreadGroup.TYPE_CONSTANT,
+        ArrivalsThreadGroup.TYPE_RAMP,
+        ArrivalsThreadGroup.TYPE_STEP,
+        ArrivalsThreadGroup.TYPE_POISSON,
+    };
+
+    private JComboBox arrivalType;
+
+    private JTextField targetRate;
+
+    private JTextField startRate;
+
+    private JTextField rampTime;
+
+    private JTextField steps;
+
+    private JTextField duration;
+
+    private JTextField minThreads;
+
+    private JTextField maxThreads;
+
+    public ArrivalsThreadGroupGui() {
+        super();
+        init();
+        initGui();
+    }
+
+    @Override
+    public TestElement createTestElement() {
+        ArrivalsThreadGroup tg = new ArrivalsThreadGroup();
+        modifyTestElement(tg);
+        return tg;
+    }
+
+    /**
+     * Modifies a given TestElement to mirror the data in the gui components.
+     *
+     * @see org.apache.jmeter.gui.JMeterGUIComponent#modifyTestElement(TestElement)
+     */
+    @Override
+    public void modifyTestElement(TestElement tg) {
+        super.configureTestElement(tg);
+        if (tg instanceof AbstractThreadGroup) {
+            // Each arrival runs one iteration, so the main controller must loop until stopped
+            LoopController looper = new LoopController();
+            looper.setLoops(LoopController.INFINITE_LOOP_COUNT);
+            ((AbstractThreadGroup) tg).setSamplerController(looper);
+        }
+        tg.setProperty(ArrivalsThreadGroup.ARRIVAL_TYPE, TYPES[arrivalType.getSelectedIndex()]);
+        tg.setProperty(ArrivalsThreadGroup.TARGET_RATE, targetRate.getText());
+        tg.setProperty(ArrivalsThreadGroup.START_RATE, startRate.getText());
+        tg.setProperty(ArrivalsThreadGroup.RAMP_TIME, rampTime.getText());
+        tg.setProperty(ArrivalsThreadGroup.STEPS, steps.getText());
+        tg.setProperty(ArrivalsThreadGroup.DURATION, duration.getText());
+        tg.setProperty(ArrivalsThreadGroup.MIN_THREADS, minThreads.getText());
+        tg.setProperty(AbstractThreadGroup.NUM_THREADS, maxThreads.getText());
+    }
+
+    @Override
+    public void configure(TestElement tg) {
+        super.configure(tg);
+        String type = tg.getPropertyAsString(ArrivalsThreadGroup.ARRIVAL_TYPE);
+        arrivalType.setSelectedIndex(0);
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) {
+                arrivalType.setSelectedIndex(i);
+            }
+        }
+        targetRate.setText(tg.getPropertyAsString(ArrivalsThreadGroup.TARGET_RATE));
+        startRate.setText(tg.getPropertyAsString(ArrivalsThreadGroup.START_RATE));
+        rampTime.setText(tg.getPropertyAsString(ArrivalsThreadGroup.RAMP_TIME));
+        steps.setText(tg.getPropertyAsString(ArrivalsThreadGroup.STEPS));
+        duration.setText(tg.getPropertyAsString(ArrivalsThreadGroup.DURATION));
+        minThreads.setText(tg.getPropertyAsString(ArrivalsThreadGroup.MIN_THREADS));
+        maxThreads.setText(tg.getPropertyAsString(AbstractThreadGroup.NUM_THREADS));
+    }
+
+    @Override
+    public String getLabelResource() {
+        return "arrivals_thread_group_title"; // $NON-NLS-1$
+    }
+
+    @Override
+    public void clearGui(){
+        super.clearGui();
+        initGui();
+    }
+
+    // Initialise the gui field values
+    private void initGui(){
+        if (arrivalType == null) {
+            return; // called from the superclass constructor
+        }
+        arrivalType.setSelectedIndex(0);
+        targetRate.setText("1"); // $NON-NLS-1$
+        startRate.setText("0"); // $NON-NLS-1$
+        rampTime.setText("0"); // $NON-NLS-1$
+        steps.setText("1"); // $NON-NLS-1$
+        duration.setText("60"); // $NON-NLS-1$
+        minThreads.setText("1"); // $NON-NLS-1$
+        maxThreads.setText("100"); // $NON-NLS-1$
+    }
+
+    private void init() {
+        VerticalPanel schedulePanel = new VerticalPanel();
+        schedulePanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),
+                JMeterUtils.getResString("arrivals_schedule"))); // $NON-NLS-1$
+
+        String[] labels = new String[TYPES.length];
+        for (int i = 0; i < TYPES.length; i++) {
+            labels[i] = JMeterUtils.getResString("arrivals_type_" + TYPES[i]); // $NON-NLS-1$
+        }
+        arrivalType = new JComboBox(labels);
+        schedulePanel.add(createLabelledPanel("arrivals_type", arrivalType)); // $NON-NLS-1$
+
+        targetRate = new JTextField(5);
+        schedulePanel.add(createLabelledPanel("arrivals_target_rate", targetRate)); // $NON-NLS-1$
+        startRate = new JTextField(5);
+        schedulePanel.add(createLabelledPanel("arrivals_start_rate", startRate)); // $NON-NLS-1$
+        rampTime = new JTextField(5);
+        schedulePanel.add(createLabelledPanel("arrivals_ramp_time", rampTime)); // $NON-NLS-1$
+        steps = new JTextField(5);
+        schedulePanel.add(createLabelledPanel("arrivals_steps", steps)); // $NON-NLS-1$
+        duration = new JTextField(5);
+        schedulePanel.add(createLabelledPanel("duration", duration)); // $NON-NLS-1$
+
+        VerticalPanel threadPropsPanel = new VerticalPanel();
+        threadPropsPanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createEtchedBorder(),
+                JMeterUtils.getResString("thread_properties"))); // $NON-NLS-1$
+        minThreads = new JTextField(5);
+        threadPropsPanel.add(createLabelledPanel("arrivals_min_threads", minThreads)); // $NON-NLS-1$
+        maxThreads = new JTextField(5);
+        threadPropsPanel.add(createLabelledPanel("arrivals_max_threads", maxThreads)); // $NON-NLS-1$
+
+        VerticalPanel intgrationPanel = new VerticalPanel();
+        intgrationPanel.add(schedulePanel);
+        intgrationPanel.add(threadPropsPanel);
+        add(intgrationPanel, BorderLayout.CENTER);
+    }
+
+    private JPanel createLabelledPanel(String labelResource, java.awt.Component field) {
+        JPanel panel = new JPanel(new BorderLayout(5, 0));
+        JLabel label = new JLabel(JMeterUtils.getResString(labelResource));
+        label.setLabelFor(field);
+        panel.add(label, BorderLayout.WEST);
+        panel.add(field, BorderLayout.CENTER);
+        return panel;
+    }
+}
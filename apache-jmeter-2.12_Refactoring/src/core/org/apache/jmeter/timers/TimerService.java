@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.timers;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Waits for the delays computed by {@link Timer}s, and measures how late the waiting
+ * threads are woken up.
+ * <p>
+ * The way of waiting is selected by the property <code>jmeterengine.timer.mode</code>:
+ * <ul>
+ * <li><code>sleep</code> - (default) each thread sleeps for the delay</li>
+ * <li><code>wheel</code> - each thread parks and is woken by a single thread, which keeps
+ * the waiting threads in a hashed timer wheel with a tick of <code>jmeterengine.timer.tick</code>
+ * milliseconds (default 1). When the tick holding a deadline starts, the waiting thread is moved
+ * to a queue ordered by deadline, and the wheel thread wakes it at its exact deadline.
+ * Parked virtual threads release their carrier thread.</li>
+ * </ul>
+ * In both modes the lateness (actual wake-up time minus the requested one) is recorded,
+ * see {@link #getLateness()}; it is reported by the {@link org.apache.jmeter.reporters.Summariser}.
+ */
+public final class TimerService {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    /** Property used to select how threads wait */
+    public static final String TIMER_MODE = "jmeterengine.timer.mode"; // $NON-NLS-1$
+
+    /** Property used to set the tick of the timer wheel, in milliseconds */
+    public static final String TIMER_TICK = "jmeterengine.timer.tick"; // $NON-NLS-1$
+
+    public static final String MODE_SLEEP = "sleep"; // $NON-NLS-1$
+
+    public static final String MODE_WHEEL = "wheel"; // $NON-NLS-1$
+
+    // Number of buckets in the wheel; must be a power of 2
+    private static final int WHEEL_SIZE = 512;
+
+    // Waiters due within this many nanoseconds are woken together, as parking for less is not precise
+    private static final long DISPATCH_SLACK_NANOS = 50000;
+
+    private static final Comparator<Waiter> DEADLINE_ORDER = new Comparator<Waiter>() {
+        @Override
+        public int compare(Waiter w1, Waiter w2) {
+            long diff = w1.deadline - w2.deadline;
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+    };
+
+    private static final TimerService INSTANCE = new TimerService(
+            MODE_WHEEL.equals(JMeterUtils.getPropDefault(TIMER_MODE, MODE_SLEEP)),
+            JMeterUtils.getPropDefault(TIMER_TICK, 1));
+
+    private final boolean useWheel;
+
+    private final long tickNanos;
+
+    private final Lateness lateness = new Lateness();
+
+    // Waiters added since the last tick; only the wheel thread takes them
+    private final ConcurrentLinkedQueue<Waiter> pending = new ConcurrentLinkedQueue<Waiter>();
+
+    // Only accessed by the wheel thread
+    private final Waiter[] buckets = new Waiter[WHEEL_SIZE];
+
+    private final Object wheelLock = new Object();
+
+    private volatile Thread wheelThread;
+
+    // Set by the wheel thread before it parks without a deadline
+    private volatile boolean wheelIdle;
+
+    // When the wheel thread will next wake up, if it is not idle
+    private volatile long wheelWakeUp;
+
+    /**
+     * @return the service configured by the JMeter properties
+     */
+    public static TimerService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param useWheel true to wait on the timer wheel, false to sleep
+     * @param tickMillis the tick of the timer wheel
+     */
+    public TimerService(boolean useWheel, long tickMillis) {
+        this.useWheel = useWheel;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        if (useWheel) {
+            log.info("Timers use a timer wheel with a tick of " + Math.max(1, tickMillis) + " ms");
+        }
+    }
+
+    /**
+     * Wait for the given delay.
+     *
+     * @param millis the delay in milliseconds
+     * @return how late the thread was woken up, in nanoseconds
+     * @throws InterruptedException if the thread was interrupted while waiting;
+     * the interrupted status is cleared, as for {@link Thread#sleep(long)}
+     */
+    public long sleep(long millis) throws InterruptedException {
+        if (millis <= 0) {
+            return 0;
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (useWheel && millis * 1000000L > tickNanos) {
+            waitOnWheel(deadline);
+        }
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (useWheel) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            } else {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            }
+        }
+        long late = System.nanoTime() - deadline;
+        lateness.add(late);
+        return late;
+    }
+
+    private void waitOnWheel(long deadline) throws InterruptedException {
+        Waiter waiter = new Waiter(Thread.currentThread(), deadline);
+        pending.add(waiter);
+        startOrWakeWheel(deadline);
+        while (!waiter.fired) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                waiter.cancelled = true;
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private void startOrWakeWheel(long deadline) {
+        Thread thread = wheelThread;
+        if (thread == null) {
+            synchronized (wheelLock) {
+                if (wheelThread == null) {
+                    thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            runWheel();
+                        }
+                    }, "JMeter timer wheel"); // $NON-NLS-1$
+                    thread.setDaemon(true);
+                    wheelThread = thread;
+                    thread.start();
+                }
+            }
+        } else if (wheelIdle || deadline - wheelWakeUp < 0) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void runWheel() {
+        final long start = System.nanoTime();
+        // Waiters whose tick has started, to be woken at their deadline
+        final PriorityQueue<Waiter> due = new PriorityQueue<Waiter>(64, DEADLINE_ORDER);
+        long tick = 0; // the last tick whose waiters were moved to due
+        int waiting = 0; // the number of waiters in the buckets
+        while (true) {
+            long now = System.nanoTime();
+            long currentTick = (now - start) / tickNanos;
+            Waiter waiter;
+            while ((waiter = pending.poll()) != null) {
+                long deadlineTick = (waiter.deadline - start) / tickNanos;
+                if (deadlineTick <= currentTick) {
+                    due.add(waiter);
+                } else {
+                    waiter.deadlineTick = deadlineTick;
+                    int bucket = (int) (deadlineTick & (WHEEL_SIZE - 1));
+                    waiter.next = buckets[bucket];
+                    buckets[bucket] = waiter;
+                    waiting++;
+                }
+            }
+            // Process every tick which has started, but at most one turn of the wheel
+            long last = Math.min(currentTick, tick + WHEEL_SIZE);
+            while (tick < last && waiting > 0) {
+                tick++;
+                int bucket = (int) (tick & (WHEEL_SIZE - 1));
+                Waiter previous = null;
+                waiter = buckets[bucket];
+                while (waiter != null) {
+                    Waiter next = waiter.next;
+                    if (waiter.deadlineTick <= currentTick) {
+                        if (previous == null) {
+                            buckets[bucket] = next;
+                        } else {
+                            previous.next = next;
+                        }
+                        waiter.next = null;
+                        waiting--;
+                        due.add(waiter);
+                    } else {
+                        previous = waiter;
+                    }
+                    waiter = next;
+                }
+            }
+            tick = currentTick;
+            now = System.nanoTime();
+            while ((waiter = due.peek()) != null && waiter.deadline - now <= DISPATCH_SLACK_NANOS) {
+                due.poll();
+                fire(waiter);
+            }
+            if (waiter == null && waiting == 0) {
+                wheelIdle = true;
+                if (pending.isEmpty()) { // re-check, a waiter may have been added before the flag was set
+                    LockSupport.park(this);
+                }
+                wheelIdle = false;
+            } else {
+                // Wake up for the next deadline, or the next tick if that is sooner
+                long wakeUp = start + (currentTick + 1) * tickNanos;
+                if (waiter != null && waiter.deadline - wakeUp < 0) {
+                    wakeUp = waiter.deadline;
+                }
+                wheelWakeUp = wakeUp;
+                if (pending.isEmpty()) { // re-check, a waiter may have been added before wheelWakeUp was set
+                    LockSupport.parkNanos(this, wakeUp - System.nanoTime());
+                }
+            }
+        }
+    }
+
+    private static void fire(Waiter waiter) {
+        waiter.fired = true;
+        if (!waiter.cancelled) {
+            LockSupport.unpark(waiter.thread);
+        }
+    }
+
+    /**
+     * @return the lateness recorded since the last {@link Lateness#reset()}
+     */
+    public Lateness getLateness() {
+        return lateness;
+    }
+
+    private static final class Waiter {
+        private final Thread thread;
+
+        private final long deadline;
+
+        private long deadlineTick;
+
+        private Waiter next;
+
+        private volatile boolean fired;
+
+        private volatile boolean cancelled;
+
+        Waiter(Thread thread, long deadline) {
+            this.thread = thread;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Lateness of timer wake-ups.
+     * Values are kept in buckets whose bounds are powers of 2 microseconds,
+     * so percentiles are accurate to a factor of 2.
+     */
+    public static final class Lateness {
+        private static final int BUCKETS = 32;
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong total = new AtomicLong();
+
+        private final AtomicLong max = new AtomicLong();
+
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void add(long lateNanos) {
+            long micros = Math.max(0, lateNanos / 1000);
+            count.incrementAndGet();
+            total.addAndGet(micros);
+            long current;
+            while (micros > (current = max.get())) {
+                if (max.compareAndSet(current, micros)) {
+                    break;
+                }
+            }
+            histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        }
+
+        /**
+         * @return the number of delays
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return the mean lateness in microseconds
+         */
+        public double getMean() {
+            long n = count.get();
+            return n == 0 ? 0 : (double) total.get() / n;
+        }
+
+        /**
+         * @return the maximum lateness in microseconds
+         */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @param percent the percentile, e.g. 99.0
+         * @return an upper bound of the percentile of the lateness in microseconds
+         */
+        public long getPercentile(double percent) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(n * percent / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram.get(i);
+                if (seen >= target) {
+                    return Math.min(max.get(), i == 0 ? 0 : (1L << i) - 1);
+                }
+            }
+            return max.get();
+        }
+
+        public void reset() {
+            count.set(0);
+            total.set(0);
+            max.set(0);
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram.set(i, 0);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + getCount() // $NON-NLS-1$
+                    + " mean=" + Math.round(getMean()) + "us" // $NON-NLS-1$ $NON-NLS-2$
+                    + " 99%<=" + getPercentile(99.0) + "us" // $NON-NLS-1$ $NON-NLS-2$
+                    + " max=" + getMax() + "us"; // $NON-NLS-1$ $NON-NLS-2$
+        }
+    }
+}
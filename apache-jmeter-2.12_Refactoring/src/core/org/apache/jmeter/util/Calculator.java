@@ -26,6 +26,7 @@ import org.apache.jmeter.samplers.SampleResult;
  * - standard deviation
  * - minimum
  * - maximum
+ * - mean and maximum of the response times corrected for coordinated omission
  */
 public class Calculator {
 
@@ -45,6 +46,10 @@ public class Calculator {
 
     private long minimum = Long.MAX_VALUE;
 
+    private double correctedSum = 0;
+
+    private long correctedMaximum = Long.MIN_VALUE;
+
     private int errors = 0;
 
     private final String label;
@@ -61,6 +66,8 @@ public class Calculator {
         maximum = Long.MIN_VALUE;
         minimum = Long.MAX_VALUE;
         sum = 0;
+        correctedSum = 0;
+        correctedMaximum = Long.MIN_VALUE;
         sumOfSquares = 0;
         mean = 0;
         deviation = 0;
@@ -124,6 +131,9 @@ public class Calculator {
     public void addSample(SampleResult res) {
         addBytes(res.getBytes());
         addValue(res.getTime(),res.getSampleCount());
+        long startLag = res.getStartLag();
+        correctedSum += res.getTime() + startLag;
+        correctedMaximum = Math.max(res.getTime() / Math.max(1, res.getSampleCount()) + startLag, correctedMaximum);
         errors+=res.getErrorCount(); // account for multiple samples
         if (startTime == 0){ // not yet intialised
             startTime=res.getStartTime();
@@ -147,6 +157,26 @@ public class Calculator {
         return Long.valueOf((long) mean);
     }
 
+    /**
+     * @return the mean of the response times corrected for coordinated omission,
+     * see {@link SampleResult#getCorrectedTime()}
+     */
+    public double getCorrectedMean() {
+        return count == 0 ? 0 : correctedSum / count;
+    }
+
+    public Number getCorrectedMeanAsNumber() {
+        return Long.valueOf((long) getCorrectedMean());
+    }
+
+    /**
+     * @return the maximum of the response times corrected for coordinated omission,
+     * see {@link SampleResult#getCorrectedTime()}
+     */
+    public long getCorrectedMax() {
+        return correctedMaximum;
+    }
+
     public double getStandardDeviation() {
         return deviation;
     }
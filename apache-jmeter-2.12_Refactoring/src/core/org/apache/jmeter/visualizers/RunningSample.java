@@ -19,8 +19,12 @@
 package org.apache.jmeter.visualizers;
 
 import java.text.DecimalFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.StatisticalSampleResult;
 
 /**
  * <p>
@@ -48,8 +52,18 @@ public class RunningSample {
 
     private long max, min;
 
+    // Response times corrected for coordinated omission, see SampleResult#getCorrectedTime()
+    private long correctedSum;
+
+    private long correctedMax;
+
+    private long lateCount;
+
     private long errorCount;
 
+    // Number of failed samples by response code
+    private final Map<String, Long> errorCodes = new HashMap<String, Long>();
+
     private long firstTime;
 
     private long lastTime;
@@ -83,6 +97,10 @@ public class RunningSample {
         this.max = src.max;
         this.min = src.min;
         this.runningSum = src.runningSum;
+        this.correctedSum = src.correctedSum;
+        this.correctedMax = src.correctedMax;
+        this.lateCount = src.lateCount;
+        this.errorCodes.putAll(src.errorCodes);
     }
 
     private void init() {
@@ -90,7 +108,11 @@ public class RunningSample {
         runningSum = 0L;
         max = Long.MIN_VALUE;
         min = Long.MAX_VALUE;
+        correctedSum = 0L;
+        correctedMax = Long.MIN_VALUE;
+        lateCount = 0L;
         errorCount = 0L;
+        errorCodes.clear();
         firstTime = Long.MAX_VALUE;
         lastTime = 0L;
     }
@@ -219,14 +241,36 @@ public class RunningSample {
         }
         runningSum += aTimeInMillis;
 
-        if (aTimeInMillis > max) {
-            max = aTimeInMillis;
+        long minTime = aTimeInMillis;
+        long maxTime = aTimeInMillis;
+        if (res instanceof StatisticalSampleResult) {
+            StatisticalSampleResult stats = (StatisticalSampleResult) res;
+            if (stats.hasElapsedTimes()) {
+                // The elapsed time is the total for all the samples
+                minTime = stats.getMinTime();
+                maxTime = stats.getMaxTime();
+            }
+            addErrorCodes(stats.getErrorCodeCounts());
+        } else if (!res.isSuccessful()) {
+            addErrorCode(res.getResponseCode(), 1);
+        }
+
+        if (maxTime > max) {
+            max = maxTime;
         }
 
-        if (aTimeInMillis < min) {
-            min = aTimeInMillis;
+        if (minTime < min) {
+            min = minTime;
         }
 
+        long startLag = res.getStartLag();
+        if (startLag > 0) {
+            lateCount += res.getSampleCount();
+        }
+        correctedSum += aTimeInMillis + startLag;
+        if (maxTime + startLag > correctedMax) {
+            correctedMax = maxTime + startLag;
+        }
     }
 
     /**
@@ -249,6 +293,23 @@ public class RunningSample {
         if (this.min > rs.min) {
             this.min = rs.min;
         }
+        this.correctedSum += rs.correctedSum;
+        if (this.correctedMax < rs.correctedMax) {
+            this.correctedMax = rs.correctedMax;
+        }
+        this.lateCount += rs.lateCount;
+        addErrorCodes(rs.errorCodes);
+    }
+
+    private void addErrorCodes(Map<String, Long> counts) {
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            addErrorCode(entry.getKey(), entry.getValue().longValue());
+        }
+    }
+
+    private void addErrorCode(String code, long count) {
+        Long previous = errorCodes.get(code);
+        errorCodes.put(code, Long.valueOf(previous == null ? count : previous.longValue() + count));
     }
 
     /**
@@ -291,6 +352,41 @@ public class RunningSample {
         return runningSum / counter;
     }
 
+    /**
+     * @return true if some samples started later than their intended start time,
+     * so that the corrected response times differ from the raw ones
+     */
+    public boolean hasCorrectedTimes() {
+        return lateCount > 0;
+    }
+
+    /**
+     * Returns the average response time corrected for coordinated omission,
+     * see {@link SampleResult#getCorrectedTime()}.
+     *
+     * @return the corrected average time in milliseconds
+     */
+    public long getCorrectedAverage() {
+        if (counter == 0) {
+            return 0;
+        }
+        return correctedSum / counter;
+    }
+
+    /**
+     * Returns the maximum response time corrected for coordinated omission,
+     * see {@link SampleResult#getCorrectedTime()}.
+     *
+     * @return the corrected maximum time in milliseconds
+     */
+    public long getCorrectedMax() {
+        long rval = 0;
+        if (correctedMax != Long.MIN_VALUE) {
+            rval = correctedMax;
+        }
+        return rval;
+    }
+
     /**
      * Returns the number of samples that have been recorded by this instance of
      * the RunningSample class.
@@ -356,4 +452,14 @@ public class RunningSample {
         return errorCount;
     }
 
+    /**
+     * Returns the number of failed samples by response code. Failures counted by
+     * a remote engine are included if it sent them in Statistical mode.
+     *
+     * @return the counts by response code, not to be modified
+     */
+    public Map<String, Long> getErrorCodeCounts() {
+        return Collections.unmodifiableMap(errorCodes);
+    }
+
 }
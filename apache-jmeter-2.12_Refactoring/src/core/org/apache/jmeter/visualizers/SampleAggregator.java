@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.visualizers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.gui.ObjectTableModel;
+
+/**
+ * Aggregates samples into the rows of a table, one row per label followed by a total row,
+ * for visualizers such as the Summary Report and the Aggregate Report.
+ * <p>
+ * Sampling threads do not wait for each other nor for the GUI: {@link #add(String, SampleResult)}
+ * only appends the sample to one of several lock-free queues, chosen by thread so that threads
+ * rarely share a queue. The queued samples are folded into the rows in batches on the Swing event
+ * thread, which is also the thread that reads the rows, so the rows need no locking and the table
+ * is refreshed once per batch rather than once per sample.
+ * <p>
+ * Each queue holds at most <code>aggregator.max_queued</code> samples: if the event thread falls
+ * behind, the sampling thread which fills a queue waits for the event thread to fold it, so memory
+ * stays bounded and no sample is lost. A fold only takes the samples that were queued when it
+ * started, so a steady stream of samples cannot keep the event thread busy.
+ *
+ * @param <R> the class of the rows of the table model
+ */
+public abstract class SampleAggregator<R> {
+
+    private static final int STRIPES;
+
+    static {
+        int stripes = 1;
+        while (stripes < 2 * Runtime.getRuntime().availableProcessors() && stripes < 64) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private static final int MAX_QUEUED =
+        JMeterUtils.getPropDefault("aggregator.max_queued", 10000); // $NON-NLS-1$
+
+    // How long a sampling thread waits for a fold before scheduling another one
+    private static final long FOLD_WAIT_MS = 100;
+
+    private static final class Entry {
+        private final String label;
+        private final SampleResult result;
+
+        private Entry(String label, SampleResult result) {
+            this.label = label;
+            this.result = result;
+        }
+    }
+
+    private final ObjectTableModel model;
+
+    private final String totalLabel;
+
+    private static final class Stripe {
+        private final ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<Entry>();
+
+        // Number of samples in the queue; may briefly lag behind the queue itself
+        private final AtomicInteger queued = new AtomicInteger();
+    }
+
+    private final Stripe[] stripes;
+
+    private final int maxQueued;
+
+    private final AtomicBoolean foldScheduled = new AtomicBoolean();
+
+    /**
+     * Notified when the queues have been folded, for the sampling threads waiting on a full queue
+     */
+    private final Object folded = new Object();
+
+    private final Runnable foldTask = new Runnable() {
+        @Override
+        public void run() {
+            fold();
+        }
+    };
+
+    /**
+     * Protects the rows against a concurrent clear or {@link #getRow(String)}
+     */
+    private final Object lock = new Object();
+
+    // Only accessed with the lock held
+    private final Map<String, R> rows = new HashMap<String, R>();
+
+    private R total;
+
+    /**
+     * @param model the table model the rows are added to
+     * @param totalLabel the label of the total row
+     */
+    public SampleAggregator(ObjectTableModel model, String totalLabel) {
+        this(model, totalLabel, MAX_QUEUED);
+    }
+
+    /**
+     * @param model the table model the rows are added to
+     * @param totalLabel the label of the total row
+     * @param maxQueued the number of samples a queue holds before the sampling thread waits for a fold
+     */
+    protected SampleAggregator(ObjectTableModel model, String totalLabel, int maxQueued) {
+        this.model = model;
+        this.totalLabel = totalLabel;
+        this.maxQueued = Math.max(1, maxQueued);
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Create the row for a label.
+     *
+     * @param label the label of the row
+     * @return the new row
+     */
+    protected abstract R createRow(String label);
+
+    /**
+     * Add a sample to a row. Only called by one thread at a time.
+     *
+     * @param row the row
+     * @param res the sample
+     */
+    protected abstract void addSample(R row, SampleResult res);
+
+    /**
+     * Queue a sample for its row and the total row. May be called by any thread.
+     * If the queue of the calling thread is full, waits until the event thread has folded it.
+     *
+     * @param label the label of the row
+     * @param res the sample
+     */
+    public void add(String label, SampleResult res) {
+        Stripe stripe = stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+        stripe.entries.add(new Entry(label, res));
+        boolean full = stripe.queued.incrementAndGet() > maxQueued;
+        scheduleFold();
+        if (full) {
+            // The event thread is not keeping up
+            awaitFold(stripe);
+        }
+    }
+
+    private void scheduleFold() {
+        if (!foldScheduled.get() && foldScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(foldTask);
+        }
+    }
+
+    /**
+     * Wait until a queue has room again.
+     *
+     * @param stripe the full queue
+     */
+    private void awaitFold(Stripe stripe) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            fold(); // nobody else would
+            return;
+        }
+        synchronized (folded) {
+            while (stripe.queued.get() > maxQueued) {
+                try {
+                    folded.wait(FOLD_WAIT_MS);
+                } catch (InterruptedException e) {
+                    // The sample stays queued for the next fold
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                scheduleFold(); // in case the queue was cleared or refilled meanwhile
+            }
+        }
+    }
+
+    /**
+     * Add the queued samples to the rows and refresh the table.
+     * Must be called on the Swing event thread, which reads the rows.
+     */
+    public void fold() {
+        foldScheduled.set(false); // samples queued from now on schedule another fold
+        boolean changed = false;
+        for (int i = 0; i < stripes.length; i++) {
+            // Samples queued after this point are left for the next fold
+            if (foldStripe(stripes[i], stripes[i].queued.get())) {
+                changed = true;
+            }
+        }
+        synchronized (folded) {
+            folded.notifyAll();
+        }
+        if (changed) {
+            model.fireTableDataChanged();
+        }
+    }
+
+    /**
+     * Add at most max samples of a queue to the rows.
+     *
+     * @param stripe the queue
+     * @param max the maximum number of samples to add
+     * @return true if a sample was added
+     */
+    private boolean foldStripe(Stripe stripe, int max) {
+        boolean changed = false;
+        synchronized (lock) {
+            Entry entry;
+            for (int n = 0; n < max && (entry = stripe.entries.poll()) != null; n++) {
+                stripe.queued.decrementAndGet();
+                R row = rows.get(entry.label);
+                if (row == null) {
+                    row = createRow(entry.label);
+                    rows.put(entry.label, row);
+                    model.insertRow(row, model.getRowCount() - 1);
+                }
+                addSample(row, entry.result);
+                addSample(total, entry.result);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Discard the rows and the queued samples, and reset the table to an empty total row.
+     */
+    public void clear() {
+        synchronized (lock) {
+            for (int i = 0; i < stripes.length; i++) {
+                while (stripes[i].entries.poll() != null) {
+                    stripes[i].queued.decrementAndGet();
+                }
+            }
+            model.clearData();
+            rows.clear();
+            total = createRow(totalLabel);
+            model.addRow(total);
+        }
+        synchronized (folded) {
+            folded.notifyAll();
+        }
+    }
+
+    /**
+     * @param label the label of the row
+     * @return the row, or null if no sample with that label has been folded yet
+     */
+    public R getRow(String label) {
+        synchronized (lock) {
+            return totalLabel.equals(label) ? total : rows.get(label);
+        }
+    }
+}
@@ -21,16 +21,36 @@ package org.apache.jmeter.visualizers;
 import java.util.Map;
 
 import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.StatisticalSampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.math.LongHistogram;
 import org.apache.jorphan.math.StatCalculatorLong;
 
 /**
  * Aggegate sample data container. Just instantiate a new instance of this
  * class, and then call {@link #addSample(SampleResult)} a few times, and pull
  * the stats out with whatever methods you prefer.
+ * <p>
+ * Every distinct response time is kept by default, so percentiles are exact. If the
+ * <code>statcalculator.significant_digits</code> property is set, from 1 to 5, the response times are
+ * counted in a histogram with that number of significant digits instead, which uses bounded memory:
+ * with 3 digits, percentiles are exact up to 2 seconds and within 0.1% above.
+ * <p>
+ * The histogram of a {@link StatisticalSampleResult} sent by a remote engine in Statistical mode
+ * is merged, so the percentiles are the same as if each of its samples had been added.
  *
  */
 public class SamplingStatCalculator {
-    private final StatCalculatorLong calculator = new StatCalculatorLong();
+    private static final int SIGNIFICANT_DIGITS =
+        JMeterUtils.getPropDefault("statcalculator.significant_digits", 0); // $NON-NLS-1$
+
+    private final StatCalculatorLong calculator = new StatCalculatorLong(SIGNIFICANT_DIGITS);
+
+    /**
+     * Response times corrected for coordinated omission, see {@link SampleResult#getCorrectedTime()}.
+     * Only created once a sample has started late; until then the corrected times are the raw times.
+     */
+    private volatile StatCalculatorLong correctedCalculator;
 
     private double maxThroughput;
 
@@ -52,6 +72,7 @@ public class SamplingStatCalculator {
     private void init() {
         firstTime = Long.MAX_VALUE;
         calculator.clear();
+        correctedCalculator = null;
         maxThroughput = Double.MIN_VALUE;
         currentSample = new Sample();
     }
@@ -147,7 +168,29 @@ public class SamplingStatCalculator {
         double throughput;
         boolean rbool;
         synchronized (calculator) {
-            calculator.addValue(res.getTime(), res.getSampleCount());
+            long startLag = res.getStartLag();
+            if (startLag > 0 && correctedCalculator == null) {
+                StatCalculatorLong corrected = new StatCalculatorLong(SIGNIFICANT_DIGITS);
+                corrected.addAll(calculator); // the previous samples were on time
+                correctedCalculator = corrected;
+            }
+            LongHistogram times = null;
+            if (res instanceof StatisticalSampleResult) {
+                StatisticalSampleResult stats = (StatisticalSampleResult) res;
+                times = stats.getHistogram();
+                if (times != null) {
+                    calculator.addHistogram(times, stats.getTime(), stats.getElapsedSumOfSquares());
+                    if (correctedCalculator != null) { // not late, as the start lag is not aggregated
+                        correctedCalculator.addHistogram(times, stats.getTime(), stats.getElapsedSumOfSquares());
+                    }
+                }
+            }
+            if (times == null) {
+                if (correctedCalculator != null) {
+                    correctedCalculator.addValue(res.getTime() + startLag, res.getSampleCount());
+                }
+                calculator.addValue(res.getTime(), res.getSampleCount());
+            }
             calculator.addBytes(res.getBytes());
             setStartTime(res);
             eCount = getCurrentSample().getErrorCount();
@@ -284,4 +327,64 @@ public class SamplingStatCalculator {
     public double getStandardDeviation() {
         return calculator.getStandardDeviation();
     }
+
+    /**
+     * @return true if some samples started later than their intended start time,
+     * so that the corrected response times differ from the raw ones
+     */
+    public boolean hasCorrectedTimes() {
+        return correctedCalculator != null;
+    }
+
+    /**
+     * Get a percentile of the response times corrected for coordinated omission.
+     *
+     * @param percent the percentile, between 0 and 1
+     * @return the corrected percentile, the same as {@link #getPercentPoint(double)}
+     * if no sample started late
+     */
+    public Number getCorrectedPercentPoint(double percent) {
+        StatCalculatorLong corrected = correctedCalculator;
+        if (corrected == null) {
+            return calculator.getPercentPoint(percent);
+        }
+        return corrected.getPercentPoint(percent);
+    }
+
+    /**
+     * Get a percentile of the response times corrected for coordinated omission.
+     *
+     * @param percent the percentile, between 0 and 1
+     * @return the corrected percentile, the same as {@link #getPercentPoint(float)}
+     * if no sample started late
+     */
+    public Number getCorrectedPercentPoint(float percent) {
+        return getCorrectedPercentPoint((double) percent);
+    }
+
+    /**
+     * @return the mean of the response times corrected for coordinated omission
+     */
+    public double getCorrectedMean() {
+        StatCalculatorLong corrected = correctedCalculator;
+        if (corrected == null) {
+            return calculator.getMean();
+        }
+        return corrected.getMean();
+    }
+
+    public Number getCorrectedMeanAsNumber() {
+        return Long.valueOf((long) getCorrectedMean());
+    }
+
+    /**
+     * @return the maximum of the response times corrected for coordinated omission
+     */
+    public Number getCorrectedMax() {
+        StatCalculatorLong corrected = correctedCalculator;
+        if (corrected == null) {
+            return calculator.getMax();
+        }
+        return corrected.getMax();
+    }
 }
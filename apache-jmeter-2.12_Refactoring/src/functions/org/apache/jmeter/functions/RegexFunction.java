@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Random;
 
 import org.apache.jmeter.engine.util.CompoundVariable;
+import org.apache.jmeter.samplers.ResponseDataChars;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.samplers.Sampler;
 import org.apache.jmeter.threads.JMeterVariables;
@@ -143,12 +144,12 @@ public class RegexFunction extends AbstractFunction {
             vars.put(name, defaultValue);
         }
 
-        String textToMatch=null;
+        CharSequence textToMatch=null;
 
         if (inputVariable.length() > 0){
             textToMatch=vars.get(inputVariable);
         } else if (previousResult != null){
-            textToMatch = previousResult.getResponseDataAsString();
+            textToMatch = previousResult.getResponseDataAsChars();
         }
 
         if (textToMatch == null || textToMatch.length() == 0) {
@@ -158,7 +159,7 @@ public class RegexFunction extends AbstractFunction {
         List<MatchResult> collectAllMatches = new ArrayList<MatchResult>();
         try {
             PatternMatcher matcher = JMeterUtils.getMatcher();
-            PatternMatcherInput input = new PatternMatcherInput(textToMatch);
+            PatternMatcherInput input = new PatternMatcherInput(ResponseDataChars.getChars(textToMatch));
             while (matcher.contains(input, searchPattern)) {
                 MatchResult match = matcher.getMatch();
                 collectAllMatches.add(match);
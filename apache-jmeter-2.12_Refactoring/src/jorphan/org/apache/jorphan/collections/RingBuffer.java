@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jorphan.collections;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for any number of producers and consumers.
+ * <p>
+ * Each slot of the ring has a sequence number which tells producers and consumers
+ * whether the slot may be written or read for the current turn of the ring,
+ * so neither side needs a lock; they only compete on a single counter.
+ * <p>
+ * The queue does not block: {@link #offer(Object)} fails when the queue is full
+ * and {@link #poll()} returns null when it is empty. Callers decide how to wait.
+ *
+ * @param <E> the type of the elements
+ */
+public class RingBuffer<E> {
+
+    private final int mask;
+
+    private final AtomicReferenceArray<E> elements;
+
+    private final AtomicLongArray sequences;
+
+    // Next position to write
+    private final AtomicLong tail = new AtomicLong();
+
+    // Next position to read
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity the minimum capacity; rounded up to a power of 2
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        elements = new AtomicReferenceArray<E>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add an element, if there is room for it.
+     *
+     * @param e the element, must not be null
+     * @return true if the element was added, false if the queue is full
+     */
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements.lazySet(index, e);
+                    sequences.set(index, pos + 1); // publishes the element
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false; // the slot has not been read yet for the previous turn
+            }
+            // else another producer took the slot, try again
+        }
+    }
+
+    /**
+     * Remove the oldest element.
+     *
+     * @return the element, or null if the queue is empty
+     */
+    public E poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, pos + mask + 1); // frees the slot for the next turn
+                    return e;
+                }
+            } else if (diff < 0) {
+                return null; // the slot has not been written yet
+            }
+            // else another consumer took the element, try again
+        }
+    }
+
+    /**
+     * Remove up to the given number of elements.
+     *
+     * @param sink the collection the elements are added to
+     * @param max the maximum number of elements to remove
+     * @return the number of elements removed
+     */
+    public int drainTo(Collection<? super E> sink, int max) {
+        int count = 0;
+        E e;
+        while (count < max && (e = poll()) != null) {
+            sink.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of elements in the queue; only an estimate while
+     * other threads are adding or removing elements
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    /**
+     * @return the number of elements the queue can hold
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jorphan.math;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values with a fixed relative precision,
+ * in the style of HdrHistogram.
+ * <p>
+ * Values are counted in log-linear buckets: each power of 2 is split into the same
+ * number of linear sub-buckets, chosen so that values are kept to the given number
+ * of significant decimal digits. Small values (below 2 * 10^digits) are kept exactly;
+ * larger values are reported with a relative error of at most 10^-digits.
+ * For example with 3 digits, response times are exact up to 2 seconds and within
+ * 0.1% above that.
+ * <p>
+ * Recording a value is O(1) and does not allocate unless the value is larger than all
+ * the previous ones, in which case the count array grows to cover it. The memory used
+ * therefore depends on the precision and on the largest value, not on the number of
+ * values or of distinct values.
+ * <p>
+ * Histograms with the same precision can be merged with {@link #add(LongHistogram)}.
+ * Only the non-empty buckets are serialized, so a histogram can be sent cheaply to be merged elsewhere,
+ * for example from a remote engine to the client.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class LongHistogram implements Serializable {
+
+    private static final long serialVersionUID = 240L;
+
+    private final int significantDigits;
+
+    // log2 of the number of sub-buckets in the upper half of each bucket
+    private final int subBucketHalfCountMagnitude;
+
+    private final int subBucketHalfCount;
+
+    private final long subBucketMask;
+
+    private transient long[] counts; // written sparsely by writeObject
+
+    private long totalCount;
+
+    private long minValue = Long.MAX_VALUE;
+
+    private long maxValue = 0;
+
+    /**
+     * @param significantDigits the number of significant decimal digits to keep, from 1 to 5
+     */
+    public LongHistogram(int significantDigits) {
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("significantDigits must be between 1 and 5: " + significantDigits);
+        }
+        this.significantDigits = significantDigits;
+        long largestSingleUnitValue = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestSingleUnitValue - 1);
+        subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        subBucketHalfCount = 1 << subBucketHalfCountMagnitude;
+        subBucketMask = (1L << subBucketCountMagnitude) - 1;
+        // Enough for the exact values; grows for larger values
+        counts = new long[2 * subBucketHalfCount];
+    }
+
+    /**
+     * @return the number of significant decimal digits kept
+     */
+    public int getSignificantDigits() {
+        return significantDigits;
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value the value, negative values are counted as 0
+     */
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * Record a value several times.
+     *
+     * @param value the value, negative values are counted as 0
+     * @param count the number of times to record the value
+     */
+    public void record(long value, long count) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = countsIndex(value);
+        if (index >= counts.length) {
+            grow(index);
+        }
+        counts[index] += count;
+        totalCount += count;
+        if (value < minValue) {
+            minValue = value;
+        }
+        if (value > maxValue) {
+            maxValue = value;
+        }
+    }
+
+    /**
+     * Add the counts of another histogram to this one.
+     *
+     * @param other histogram with the same number of significant digits
+     */
+    public void add(LongHistogram other) {
+        if (other.significantDigits != significantDigits) {
+            throw new IllegalArgumentException("Cannot add a histogram with " + other.significantDigits
+                    + " significant digits to one with " + significantDigits);
+        }
+        if (other.totalCount == 0) {
+            return;
+        }
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        minValue = Math.min(minValue, other.minValue);
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the exact smallest value recorded, or 0 if there are none
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+    /**
+     * @return the exact largest value recorded, or 0 if there are none
+     */
+    public long getMax() {
+        return maxValue;
+    }
+
+    /**
+     * Get the value which the given fraction of the values are less than or equal to.
+     * The result is the highest value of the bucket holding the percentile, limited to the
+     * largest value recorded, so it is never below the exact percentile and at most
+     * 10^-digits above it.
+     *
+     * @param percent the fraction of values, between 0 and 1
+     * @return the percentile, or 0 if there are no values
+     */
+    public long getPercentPoint(double percent) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        if (percent >= 1.0) {
+            return maxValue;
+        }
+        // same rounding as StatCalculator
+        long target = Math.max(1, Math.round(totalCount * percent));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * @return the number of bucket indexes, for use with {@link #getCountAt(int)}
+     */
+    public int getIndexCount() {
+        return counts.length;
+    }
+
+    /**
+     * @param index bucket index, from 0 to {@link #getIndexCount()} - 1
+     * @return the number of values recorded in the bucket
+     */
+    public long getCountAt(int index) {
+        return counts[index];
+    }
+
+    /**
+     * @param index bucket index, from 0 to {@link #getIndexCount()} - 1
+     * @return the lowest value counted in the bucket
+     */
+    public long lowestValueAt(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        long subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return subBucketIndex << bucketIndex;
+    }
+
+    /**
+     * @param index bucket index, from 0 to {@link #getIndexCount()} - 1
+     * @return the highest value counted in the bucket
+     */
+    public long highestValueAt(int index) {
+        int bucketIndex = Math.max(0, (index >> subBucketHalfCountMagnitude) - 1);
+        return lowestValueAt(index) + (1L << bucketIndex) - 1;
+    }
+
+    /**
+     * @return the approximate number of bytes used by the counts
+     */
+    public long getFootprint() {
+        return 8L * counts.length;
+    }
+
+    private int countsIndex(long value) {
+        // Bucket 0 holds the values below 2 * subBucketHalfCount at unit resolution;
+        // each further bucket covers the next power of 2 at half the resolution of the previous one
+        int bucketIndex = 63 - Long.numberOfLeadingZeros(value | subBucketMask) - subBucketHalfCountMagnitude;
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        return (bucketIndex << subBucketHalfCountMagnitude) + subBucketIndex;
+    }
+
+    private void grow(int index) {
+        counts = Arrays.copyOf(counts, lengthFor(index));
+    }
+
+    // Round up to the end of the bucket, so that growing happens once per power of 2
+    private int lengthFor(int index) {
+        return ((index >> subBucketHalfCountMagnitude) + 1) << subBucketHalfCountMagnitude;
+    }
+
+    // The length of the counts once they cover the largest value
+    private int getMaxLength() {
+        return lengthFor(countsIndex(Long.MAX_VALUE));
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        int used = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                used++;
+            }
+        }
+        out.writeInt(counts.length);
+        out.writeInt(used);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                out.writeInt(i);
+                out.writeLong(counts[i]);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new InvalidObjectException("Invalid histogram precision: " + significantDigits);
+        }
+        LongHistogram expected = new LongHistogram(significantDigits);
+        if (subBucketHalfCountMagnitude != expected.subBucketHalfCountMagnitude
+                || subBucketHalfCount != expected.subBucketHalfCount || subBucketMask != expected.subBucketMask) {
+            throw new InvalidObjectException("Invalid histogram buckets for " + significantDigits + " digits");
+        }
+        int length = in.readInt();
+        int used = in.readInt();
+        // No larger than needed for the largest value, in whole buckets as grow makes them
+        if (length < 2 * subBucketHalfCount || length > getMaxLength() || length % subBucketHalfCount != 0
+                || used < 0 || used > length) {
+            throw new InvalidObjectException("Invalid histogram size: " + length + ", used: " + used);
+        }
+        counts = new long[length];
+        for (int i = 0; i < used; i++) {
+            int index = in.readInt();
+            if (index < 0 || index >= length) {
+                throw new InvalidObjectException("Invalid histogram index: " + index);
+            }
+            counts[index] = in.readLong();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LongHistogram[count=" + totalCount + ", min=" + getMin() + ", max=" + maxValue
+                + ", digits=" + significantDigits + ", buckets=" + counts.length + "]";
+    }
+}
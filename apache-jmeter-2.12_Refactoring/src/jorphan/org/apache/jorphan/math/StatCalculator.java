@@ -29,6 +29,13 @@ import org.apache.commons.lang3.mutable.MutableLong;
 /**
  * This class serves as a way to calculate the median, max, min etc. of a list of values.
  * It is not threadsafe.
+ * <p>
+ * By default every distinct value is kept, so percentiles are exact but the memory used
+ * grows with the number of distinct values. Calculators created with a number of
+ * significant digits count the values in a {@link LongHistogram} instead, which uses
+ * bounded memory and records values in constant time; percentiles are then accurate to
+ * the given number of digits. The count, sum, mean, deviation, min and max are exact
+ * in both cases.
  *
  */
 public abstract class StatCalculator<T extends Number & Comparable<? super T>> {
@@ -37,6 +44,9 @@ public abstract class StatCalculator<T extends Number & Comparable<? super T>> {
     private final Map<T, MutableLong> valuesMap = new TreeMap<T, MutableLong>();
     // We use a TreeMap because we need the entries to be sorted
 
+    // Used instead of valuesMap if not null
+    private final LongHistogram histogram;
+
     // Running values, updated for each sample
     private double sum = 0;
 
@@ -68,7 +78,21 @@ public abstract class StatCalculator<T extends Number & Comparable<? super T>> {
      * @param max - value to return for maximum if there are no values
      */
     public StatCalculator(final T zero, final T min, final T max) {
+        this(zero, min, max, 0);
+    }
+
+    /**
+     * This constructor is used to set up particular values for the generic class instance.
+     *
+     * @param zero - value to return for Median and PercentPoint if there are no values
+     * @param min - value to return for minimum if there are no values
+     * @param max - value to return for maximum if there are no values
+     * @param significantDigits - precision of the percentiles, from 1 to 5; 0 to keep every distinct value.
+     * The histogram only holds non-negative values; negative values are counted as 0 in the percentiles.
+     */
+    protected StatCalculator(final T zero, final T min, final T max, int significantDigits) {
         super();
+        histogram = significantDigits > 0 ? new LongHistogram(significantDigits) : null;
         ZERO = zero;
         MAX_VALUE = max;
         MIN_VALUE = min;
@@ -78,6 +102,9 @@ public abstract class StatCalculator<T extends Number & Comparable<? super T>> {
 
     public void clear() {
         valuesMap.clear();
+        if (histogram != null) {
+            histogram.clear();
+        }
         sum = 0;
         sumOfSquares = 0;
         mean = 0;
@@ -93,12 +120,71 @@ public abstract class StatCalculator<T extends Number & Comparable<? super T>> {
         bytes += newValue;
     }
 
+    /**
+     * Update the calculator with all the values of another calculator.
+     * The count, sum, mean, deviation, min and max stay exact. If the other calculator
+     * uses a histogram, the percentiles keep its precision: the histogram is merged
+     * without loss into a histogram with the same precision, otherwise each value is
+     * taken as the highest value of its bucket.
+     *
+     * @param calc the calculator to add
+     */
     public void addAll(StatCalculator<T> calc) {
+        if (calc.histogram != null) {
+            if (calc.count > 0) {
+                mergeHistogram(calc.histogram, calc.count, calc.sum, calc.sumOfSquares, calc.min, calc.max);
+            }
+            return;
+        }
         for(Entry<T, MutableLong> ent : calc.valuesMap.entrySet()) {
             addEachValue(ent.getKey(), ent.getValue().longValue());
         }
     }
 
+    /**
+     * Update the calculator with the values counted in a histogram, for example by a remote engine.
+     * The histogram is merged without loss if this calculator uses a histogram with the same precision;
+     * otherwise each value is taken as the highest value of its bucket.
+     * The histogram only holds the values to its precision, so the exact sums are passed separately.
+     *
+     * @param values the values
+     * @param valueSum the sum of the values
+     * @param valueSumOfSquares the sum of the squares of the values
+     */
+    public void addHistogram(LongHistogram values, double valueSum, double valueSumOfSquares) {
+        if (values.getCount() == 0) {
+            return;
+        }
+        mergeHistogram(values, values.getCount(), valueSum, valueSumOfSquares,
+                valueOf(values.getMin()), valueOf(values.getMax()));
+    }
+
+    private void mergeHistogram(LongHistogram values, long valueCount, double valueSum, double valueSumOfSquares,
+            T valueMin, T valueMax) {
+        if (histogram != null && histogram.getSignificantDigits() == values.getSignificantDigits()) {
+            histogram.add(values);
+        } else {
+            for (int i = 0; i < values.getIndexCount(); i++) {
+                long n = values.getCountAt(i);
+                if (n > 0) {
+                    updateValueCount(valueOf(Math.min(values.highestValueAt(i), values.getMax())), n);
+                }
+            }
+        }
+        count += valueCount;
+        sum += valueSum;
+        sumOfSquares += valueSumOfSquares;
+        calculateDerivedValues(valueMin);
+        calculateDerivedValues(valueMax);
+    }
+
+    /**
+     * @return the number of significant digits of the percentiles, or 0 if they are exact
+     */
+    public int getSignificantDigits() {
+        return histogram == null ? 0 : histogram.getSignificantDigits();
+    }
+
     public T getMedian() {
         return getPercentPoint(0.5);
     }
@@ -136,6 +222,9 @@ public abstract class StatCalculator<T extends Number & Comparable<? super T>> {
         if (percent >= 1.0) {
             return getMax();
         }
+        if (histogram != null) {
+            return valueOf(histogram.getPercentPoint(percent));
+        }
 
         // use Math.round () instead of simple (long) to provide correct value rounding
         long target = Math.round (count * percent);
@@ -161,6 +250,18 @@ public abstract class StatCalculator<T extends Number & Comparable<? super T>> {
     public Map<Number, Number[]> getDistribution() {
         Map<Number, Number[]> items = new HashMap<Number, Number[]>();
 
+        if (histogram != null) {
+            for (int i = 0; i < histogram.getIndexCount(); i++) {
+                long n = histogram.getCountAt(i);
+                if (n > 0) {
+                    Number[] dis = new Number[2];
+                    dis[0] = valueOf(Math.min(histogram.highestValueAt(i), histogram.getMax()));
+                    dis[1] = new MutableLong(n);
+                    items.put(dis[0], dis);
+                }
+            }
+            return items;
+        }
         for (Entry<T, MutableLong> entry : valuesMap.entrySet()) {
             Number[] dis = new Number[2];
             dis[0] = entry.getKey();
@@ -198,6 +299,30 @@ public abstract class StatCalculator<T extends Number & Comparable<? super T>> {
 
     protected abstract T divide(T val, long n);
 
+    /**
+     * Convert a value read from a histogram, see {@link #addHistogram(LongHistogram, double, double)}.
+     * Supports the values of type Long, Integer and Double, judged from the zero value;
+     * subclasses for other types must override it to use histograms.
+     *
+     * @param val the value
+     * @return the value as T
+     */
+    @SuppressWarnings("unchecked") // the type of ZERO is T
+    protected T valueOf(long val) {
+        Number value;
+        if (ZERO instanceof Long) {
+            value = Long.valueOf(val);
+        } else if (ZERO instanceof Integer) {
+            value = Integer.valueOf((int) val);
+        } else if (ZERO instanceof Double) {
+            value = Double.valueOf(val);
+        } else {
+            throw new UnsupportedOperationException(getClass().getName()
+                    + " must override valueOf(long) to read histograms");
+        }
+        return (T) value;
+    }
+
     /**
      * Update the calculator with the values for a set of samples.
      * 
@@ -259,6 +384,10 @@ public abstract class StatCalculator<T extends Number & Comparable<? super T>> {
     }
 
     private void updateValueCount(T actualValue, long sampleCount) {
+        if (histogram != null) {
+            histogram.record(actualValue.longValue(), sampleCount);
+            return;
+        }
         MutableLong count = valuesMap.get(actualValue);
         if (count != null) {
             count.add(sampleCount);
@@ -27,6 +27,15 @@ public class StatCalculatorInteger extends StatCalculator<Integer> {
         super(Integer.valueOf(0), Integer.valueOf(Integer.MIN_VALUE), Integer.valueOf(Integer.MAX_VALUE));
     }
 
+    /**
+     * @param significantDigits precision of the percentiles, from 1 to 5; 0 to keep every distinct value
+     * @see LongHistogram
+     */
+    public StatCalculatorInteger(int significantDigits) {
+        super(Integer.valueOf(0), Integer.valueOf(Integer.MIN_VALUE), Integer.valueOf(Integer.MAX_VALUE),
+                significantDigits);
+    }
+
     public void addValue(int val){
         super.addValue(Integer.valueOf(val));
     }
@@ -50,4 +59,9 @@ public class StatCalculatorInteger extends StatCalculator<Integer> {
     protected Integer divide(Integer val, long n) {
         return Integer.valueOf((int) (val.intValue() / n));
     }
+
+    @Override
+    protected Integer valueOf(long val) {
+        return Integer.valueOf((int) val);
+    }
 }
@@ -27,6 +27,14 @@ public class StatCalculatorLong extends StatCalculator<Long> {
         super(Long.valueOf(0L), Long.valueOf(Long.MIN_VALUE), Long.valueOf(Long.MAX_VALUE));
     }
 
+    /**
+     * @param significantDigits precision of the percentiles, from 1 to 5; 0 to keep every distinct value
+     * @see LongHistogram
+     */
+    public StatCalculatorLong(int significantDigits) {
+        super(Long.valueOf(0L), Long.valueOf(Long.MIN_VALUE), Long.valueOf(Long.MAX_VALUE), significantDigits);
+    }
+
     /**
      * Add a single value (normally elapsed time)
      * 
@@ -55,4 +63,9 @@ public class StatCalculatorLong extends StatCalculator<Long> {
     protected Long divide(Long val, long n) {
         return Long.valueOf(val.longValue() / n);
     }
+
+    @Override
+    protected Long valueOf(long val) {
+        return Long.valueOf(val);
+    }
 }
@@ -23,6 +23,7 @@ import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.Socket;
@@ -41,6 +42,7 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.jmeter.protocol.http.control.HeaderManager;
 import org.apache.jmeter.protocol.http.parser.HTMLParseException;
 import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
@@ -475,7 +477,16 @@ public class Proxy extends Thread {
             String responseHeaders = messageResponseHeaders(res);
             out.write(responseHeaders.getBytes(SampleResult.DEFAULT_HTTP_ENCODING));
             out.write(CRLF_BYTES);
-            out.write(res.getResponseData());
+            if (res.getSpilledResponseData() != null) { // copy without reading it all into the heap
+                InputStream in = res.getResponseDataAsStream();
+                try {
+                    IOUtils.copyLarge(in, out);
+                } finally {
+                    JOrphanUtils.closeQuietly(in);
+                }
+            } else {
+                out.write(res.getResponseData());
+            }
             out.flush();
             if (log.isDebugEnabled()) {
                 log.debug(port + "Done writing to client");
@@ -530,7 +541,7 @@ public class Proxy extends Thread {
             }
         }
         if (fixContentLength && contentLengthIndex>=0){// Fix the content length
-            headerLines[contentLengthIndex]=HTTPConstants.HEADER_CONTENT_LENGTH+": "+res.getResponseData().length;
+            headerLines[contentLengthIndex]=HTTPConstants.HEADER_CONTENT_LENGTH+": "+res.getResponseDataLength();
         }
         StringBuilder sb = new StringBuilder(headers.length());
         for (int i=0;i<headerLines.length;i++){
@@ -330,6 +330,14 @@ public abstract class HTTPAbstractImpl implements Interruptible, HTTPConstantsIn
         return testElement.readResponse(res, in, contentLength);
     }
 
+    /**
+     * Invokes {@link HTTPSamplerBase#readResponseData(SampleResult, InputStream, long)}
+     */
+    protected void readResponseData(SampleResult res, InputStream instream,
+            long responseContentLength) throws IOException {
+        testElement.readResponseData(res, instream, responseContentLength);
+    }
+
     /**
      * Invokes {@link HTTPSamplerBase#resultProcessing(boolean, int, HTTPSampleResult)}
      */
@@ -281,9 +281,9 @@ public class HTTPHC3Impl extends HTTPHCAbstractImpl {
                     Header responseHeader = httpMethod.getResponseHeader(HTTPConstants.HEADER_CONTENT_ENCODING);
                     if (responseHeader!= null && HTTPConstants.ENCODING_GZIP.equals(responseHeader.getValue())) {
                         InputStream tmpInput = new GZIPInputStream(instream); // tmp inputstream needs to have a good counting
-                        res.setResponseData(readResponse(res, tmpInput, (int) httpMethod.getResponseContentLength()));                        
+                        readResponseData(res, tmpInput, httpMethod.getResponseContentLength());
                     } else {
-                        res.setResponseData(readResponse(res, instream, (int) httpMethod.getResponseContentLength()));
+                        readResponseData(res, instream, httpMethod.getResponseContentLength());
                     }
                 } finally {
                     JOrphanUtils.closeQuietly(instream);
@@ -346,7 +346,7 @@ public class HTTPHC4Impl extends HTTPHCAbstractImpl {
             HttpEntity entity = httpResponse.getEntity();
             if (entity != null) {
                 InputStream instream = entity.getContent();
-                res.setResponseData(readResponse(res, instream, (int) entity.getContentLength()));
+                readResponseData(res, instream, entity.getContentLength());
             }
             
             res.sampleEnd(); // Done with the sampling proper.
@@ -217,8 +217,26 @@ public class HTTPJavaImpl extends HTTPAbstractImpl {
      * @return response content
      * @exception IOException
      *                if an I/O exception occurs
+     * @deprecated use {@link #readResponseData(HttpURLConnection, SampleResult)},
+     *             which does not need to hold a large response on the heap
      */
+    @Deprecated
     protected byte[] readResponse(HttpURLConnection conn, SampleResult res) throws IOException {
+        readResponseData(conn, res);
+        return res.getResponseData();
+    }
+
+    /**
+     * Reads the response from the URL connection into the response data of the sample result.
+     *
+     * @param conn
+     *            URL from which to read response
+     * @param res
+     *            sample result to store the response content
+     * @exception IOException
+     *                if an I/O exception occurs
+     */
+    protected void readResponseData(HttpURLConnection conn, SampleResult res) throws IOException {
         BufferedInputStream in;
 
         final int contentLength = conn.getContentLength();
@@ -227,7 +245,8 @@ public class HTTPJavaImpl extends HTTPAbstractImpl {
             log.info("Content-Length: 0, not reading http-body");
             res.setResponseHeaders(getResponseHeaders(conn));
             res.latencyEnd();
-            return NULL_BA;
+            res.setResponseData(NULL_BA);
+            return;
         }
 
         // works OK even if ContentEncoding is null
@@ -258,7 +277,8 @@ public class HTTPJavaImpl extends HTTPAbstractImpl {
                 log.info("Error Response Code: "+conn.getResponseCode()+", Server sent no Errorpage");
                 res.setResponseHeaders(getResponseHeaders(conn));
                 res.latencyEnd();
-                return NULL_BA;
+                res.setResponseData(NULL_BA);
+                return;
             }
 
             log.info("Error Response Code: "+conn.getResponseCode());
@@ -280,12 +300,11 @@ public class HTTPJavaImpl extends HTTPAbstractImpl {
             in = new BufferedInputStream(conn.getErrorStream());
         }
         // N.B. this closes 'in'
-        byte[] responseData = readResponse(res, in, contentLength);
+        readResponseData(res, in, contentLength);
         if (instream != null) {
             res.setBodySize(((CountingInputStream) instream).getCount());
             instream.close();
         }
-        return responseData;
     }
 
     /**
@@ -511,15 +530,13 @@ public class HTTPJavaImpl extends HTTPAbstractImpl {
                 res.setQueryString(putBody);
             }
             // Request sent. Now get the response:
-            byte[] responseData = readResponse(conn, res);
+            readResponseData(conn, res);
 
             res.sampleEnd();
             // Done with the sampling proper.
 
             // Now collect the results into the HTTPSampleResult:
 
-            res.setResponseData(responseData);
-
             @SuppressWarnings("null") // Cannot be null here
             int errorLevel = conn.getResponseCode();
             String respMsg = conn.getResponseMessage();
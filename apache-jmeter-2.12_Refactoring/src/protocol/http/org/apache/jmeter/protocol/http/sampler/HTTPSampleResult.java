@@ -229,7 +229,8 @@ public class HTTPSampleResult extends SampleResult {
     @Override
     public String getDataEncodingNoDefault() {
         if (super.getDataEncodingNoDefault() == null && getContentType().startsWith("text/html")){ // $NON-NLS-1$
-            byte[] bytes=getResponseData();
+            // Only the start is needed, so don't read all of a response kept in a file
+            byte[] bytes = getSpilledResponseData() != null ? getSpilledResponseData().getBytes(2000) : getResponseData();
             // get the start of the file
             String prefix = new String(bytes, 0, Math.min(bytes.length, 2000), Charset.forName(DEFAULT_HTTP_ENCODING));
             // Preserve original case
@@ -19,6 +19,7 @@ package org.apache.jmeter.protocol.http.sampler;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
@@ -67,6 +68,7 @@ import org.apache.jmeter.protocol.http.util.HTTPFileArg;
 import org.apache.jmeter.protocol.http.util.HTTPFileArgs;
 import org.apache.jmeter.samplers.AbstractSampler;
 import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.ResponseDataBuffer;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.testelement.TestIterationListener;
@@ -1183,7 +1185,7 @@ public abstract class HTTPSamplerBase extends AbstractSampler
     protected HTTPSampleResult downloadPageResources(HTTPSampleResult res, HTTPSampleResult container, int frameDepth) {
         Iterator<URL> urls = null;
         try {
-            final byte[] responseData = res.getResponseData();
+            final byte[] responseData = res.getBoundedResponseData();
             if (responseData.length > 0){  // Bug 39205
                 String parserName = getParserClass(res);
                 if(parserName != null)
@@ -1527,7 +1529,11 @@ public abstract class HTTPSamplerBase extends AbstractSampler
         totalRes.setQueryString(lastRes.getQueryString());
         totalRes.setRequestHeaders(lastRes.getRequestHeaders());
 
-        totalRes.setResponseData(lastRes.getResponseData());
+        if (lastRes.getSpilledResponseData() != null) {
+            totalRes.setResponseData(lastRes.getSpilledResponseData());
+        } else {
+            totalRes.setResponseData(lastRes.getResponseData());
+        }
         totalRes.setResponseCode(lastRes.getResponseCode());
         totalRes.setSuccessful(lastRes.isSuccessful());
         totalRes.setResponseMessage(lastRes.getResponseMessage());
@@ -1707,9 +1713,50 @@ public abstract class HTTPSamplerBase extends AbstractSampler
      * @throws IOException
      */
     public byte[] readResponse(SampleResult sampleResult, InputStream in, int length) throws IOException {
+        int bufferSize=32;// Enough for MD5
+        if (!useMD5()) {
+            if (length <= 0) {// may also happen if long value > int.max
+                bufferSize = 4 * 1024;
+            } else {
+                bufferSize = length;
+            }
+        }
+        ByteArrayOutputStream w = new ByteArrayOutputStream(bufferSize);
+        readResponse(sampleResult, in, w);
+        return w.toByteArray();
+    }
+
+    /**
+     * Read response from the input stream into the response data of the sample result,
+     * converting to MD5 digest if the useMD5 property is set.
+     * Unlike {@link #readResponse(SampleResult, InputStream, int)}, a large response is
+     * written to a file rather than kept on the heap, see {@link ResponseDataBuffer}.
+     *
+     * Closes the inputStream
+     *
+     * @param sampleResult
+     * @param in input stream
+     * @param length expected input length or zero or less if unknown
+     * @throws IOException
+     */
+    public void readResponseData(SampleResult sampleResult, InputStream in, long length) throws IOException {
+        ResponseDataBuffer w = new ResponseDataBuffer(useMD5() ? 32 : length);
+        boolean stored = false;
+        try {
+            readResponse(sampleResult, in, w);
+            w.store(sampleResult);
+            stored = true;
+        } finally {
+            if (!stored) {
+                w.discard();
+            }
+        }
+    }
+
+    // Reads the response into w and closes the input stream
+    private void readResponse(SampleResult sampleResult, InputStream in, OutputStream w) throws IOException {
         try {
             byte[] readBuffer = new byte[8192]; // 8kB is the (max) size to have the latency ('the first packet')
-            int bufferSize=32;// Enough for MD5
     
             MessageDigest md=null;
             boolean asMD5 = useMD5();
@@ -1720,14 +1767,7 @@ public abstract class HTTPSamplerBase extends AbstractSampler
                     log.error("Should not happen - could not find MD5 digest", e);
                     asMD5=false;
                 }
-            } else {
-                if (length <= 0) {// may also happen if long value > int.max
-                    bufferSize = 4 * 1024;
-                } else {
-                    bufferSize = length;
-                }
             }
-            ByteArrayOutputStream w = new ByteArrayOutputStream(bufferSize);
             int bytesRead = 0;
             int totalBytes = 0;
             boolean first = true;
@@ -1754,7 +1794,6 @@ public abstract class HTTPSamplerBase extends AbstractSampler
                 sampleResult.setBytes(totalBytes);
             }
             w.close();
-            return w.toByteArray();
         } finally {
             IOUtils.closeQuietly(in);
         }
@@ -105,7 +105,7 @@ public class HTTPResultConverter extends SampleResultConverter {
         // If we have a file, but no data, then read the file
         String resultFileName = res.getResultFileName();
         if (resultFileName.length()>0
-        &&  res.getResponseData().length == 0) {
+        &&  res.getResponseDataLength() == 0) {
             readFile(resultFileName,res);
         }
         return res;
@@ -0,0 +1,409 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.jmeter.config.ConfigTestElement;
+import org.apache.jmeter.control.GenericController;
+import org.apache.jmeter.testelement.property.CollectionProperty;
+import org.apache.jmeter.testelement.property.ObjectProperty;
+import org.apache.jmeter.testelement.property.StringProperty;
+import org.apache.jorphan.collections.HashTree;
+import org.apache.jorphan.collections.ListedHashTree;
+
+import junit.framework.TestCase;
+
+public class TestContentDistributor extends TestCase {
+
+    private File dir;
+
+    public TestContentDistributor(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("TestContentDistributor", ""); // $NON-NLS-1$ $NON-NLS-2$
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(dir);
+    }
+
+    public void testPlanIsStableAndDecodes() throws Exception {
+        HashTree tree = createPlan("data.csv");
+        ContentDistributor.Plan plan = ContentDistributor.encodePlan(tree);
+        ContentDistributor.Plan again = ContentDistributor.encodePlan(createPlan("data.csv"));
+        assertEquals(plan.getDigest(), again.getDigest());
+        assertFalse(plan.getDigest().equals(ContentDistributor.encodePlan(createPlan("other.csv")).getDigest()));
+        assertEquals(ContentStore.digest(plan.getBytes()), plan.getDigest());
+
+        HashTree decoded = ContentDistributor.decodePlan(new ByteArrayInputStream(plan.getBytes()), new Remote[0]);
+        assertEquals(names(tree), names(decoded));
+        GenericController first = (GenericController) decoded.getArray()[0];
+        assertEquals(Arrays.asList("config", "inner"), names(decoded.getTree(first)));
+    }
+
+    public void testRemoteObjectsAreSentSeparately() throws Exception {
+        Listener listener = new Listener();
+        Listener other = new Listener();
+        try {
+            HashTree tree = createPlan("data.csv");
+            ConfigTestElement element = (ConfigTestElement) tree.getArray()[1];
+            element.setProperty(new ObjectProperty("listener", listener)); // $NON-NLS-1$
+            ContentDistributor.Plan plan = ContentDistributor.encodePlan(tree);
+            assertEquals(1, plan.getRemotes().length);
+            element.setProperty(new ObjectProperty("listener", other)); // $NON-NLS-1$
+            // A new listener for each run does not change the content
+            assertEquals(plan.getDigest(), ContentDistributor.encodePlan(tree).getDigest());
+
+            Remote replacement = new Remote() {};
+            HashTree decoded = ContentDistributor.decodePlan(new ByteArrayInputStream(plan.getBytes()),
+                    new Remote[] { replacement });
+            assertSame(replacement,
+                    ((ConfigTestElement) decoded.getArray()[1]).getProperty("listener").getObjectValue()); // $NON-NLS-1$
+        } finally {
+            UnicastRemoteObject.unexportObject(listener, true);
+            UnicastRemoteObject.unexportObject(other, true);
+        }
+    }
+
+    public void testFindFiles() throws Exception {
+        write(new File(dir, "data.csv"), "a,b"); // $NON-NLS-1$ $NON-NLS-2$
+        write(new File(dir, "sub/nested.csv"), "c,d"); // $NON-NLS-1$ $NON-NLS-2$
+        write(new File(dir, "extra.txt"), "e"); // $NON-NLS-1$ $NON-NLS-2$
+        HashTree tree = createPlan("data.csv");
+        ConfigTestElement element = (ConfigTestElement) tree.getArray()[1];
+        element.setProperty(new CollectionProperty("files", new ArrayList<StringProperty>(Arrays.asList( // $NON-NLS-1$
+                new StringProperty("File.path", "sub/nested.csv"), // $NON-NLS-1$ $NON-NLS-2$
+                new StringProperty("File.path", "${file}"), // $NON-NLS-1$ $NON-NLS-2$
+                new StringProperty("File.path", "../data.csv"), // $NON-NLS-1$ $NON-NLS-2$
+                new StringProperty("File.path", new File(dir, "data.csv").getAbsolutePath()), // $NON-NLS-1$ $NON-NLS-2$
+                new StringProperty("File.path", "missing.csv"))))); // $NON-NLS-1$ $NON-NLS-2$
+        ContentDistributor distributor = new ContentDistributor(2, 4, Arrays.asList("filename", "File.path"), // $NON-NLS-1$ $NON-NLS-2$
+                Collections.singletonList("extra.txt")); // $NON-NLS-1$
+        Map<String, File> files = distributor.findFiles(tree, dir);
+        assertEquals(Arrays.asList("data.csv", "sub/nested.csv", "extra.txt"), // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+                new ArrayList<String>(files.keySet()));
+        assertEquals(new File(dir, "sub/nested.csv"), files.get("sub/nested.csv")); // $NON-NLS-1$ $NON-NLS-2$
+    }
+
+    public void testStore() throws Exception {
+        ContentStore store = new ContentStore(new File(dir, "store")); // $NON-NLS-1$
+        byte[] data = "0123456789".getBytes("US-ASCII"); // $NON-NLS-1$ $NON-NLS-2$
+        String digest = ContentStore.digest(data);
+        assertEquals(Collections.singleton(digest), store.getMissing(Collections.singleton(digest)));
+        store.write(digest, 0, Arrays.copyOfRange(data, 0, 4), false);
+        assertEquals(Collections.singleton(digest), store.getMissing(Collections.singleton(digest)));
+        store.write(digest, 4, Arrays.copyOfRange(data, 4, 10), true);
+        assertTrue(store.getMissing(Collections.singleton(digest)).isEmpty());
+
+        File base = store.getDataDirectory(new File(".")); // $NON-NLS-1$
+        assertEquals(new File(new File(dir, "store"), "files"), base); // $NON-NLS-1$ $NON-NLS-2$
+        File target = new File(base, "copy/data.txt"); // $NON-NLS-1$
+        assertTrue(store.update(digest, base, "copy/data.txt")); // $NON-NLS-1$
+        assertEquals(digest, ContentStore.digest(target));
+        assertFalse(store.update(digest, base, "copy/data.txt")); // $NON-NLS-1$
+
+        // A file put there by hand is kept, one written from the store is replaced
+        byte[] other = "abc".getBytes("US-ASCII"); // $NON-NLS-1$ $NON-NLS-2$
+        String otherDigest = ContentStore.digest(other);
+        store.write(otherDigest, 0, other, true);
+        File local = new File(base, "local.txt"); // $NON-NLS-1$
+        write(local, "local"); // $NON-NLS-1$
+        assertFalse(store.update(otherDigest, base, "local.txt")); // $NON-NLS-1$
+        assertFalse(otherDigest.equals(ContentStore.digest(local)));
+        assertTrue(store.update(otherDigest, base, "copy/data.txt")); // $NON-NLS-1$
+        assertEquals(otherDigest, ContentStore.digest(target));
+
+        String wrong = ContentStore.digest(new byte[] { 1 });
+        try {
+            store.write(wrong, 0, data, true);
+            fail("Expected digest mismatch");
+        } catch (IOException expected) {
+        }
+        assertEquals(Collections.singleton(wrong), store.getMissing(Collections.singleton(wrong)));
+        try {
+            store.write("../escape", 0, data, true); // $NON-NLS-1$
+            fail("Expected invalid digest");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testUnsafeNamesRejected() throws Exception {
+        ContentStore store = new ContentStore(new File(dir, "store")); // $NON-NLS-1$
+        byte[] data = "data".getBytes("US-ASCII"); // $NON-NLS-1$ $NON-NLS-2$
+        String digest = ContentStore.digest(data);
+        store.write(digest, 0, data, true);
+        File base = store.getDataDirectory(new File("base")); // $NON-NLS-1$
+        assertTrue(base.mkdirs());
+        String[] names = { "", "../escape.csv", "sub/../../escape.csv", "sub\\..\\..\\escape.csv", // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$ $NON-NLS-4$
+                new File(dir, "escape.csv").getAbsolutePath(), "/escape.csv", "\\escape.csv" }; // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+        for (String name : names) {
+            try {
+                store.update(digest, base, name);
+                fail("Expected '" + name + "' to be rejected");
+            } catch (IOException expected) {
+            }
+        }
+        assertFalse(new File(dir, "escape.csv").exists()); // $NON-NLS-1$
+        // The base directory comes from the client too
+        String[] bases = { "../escape", "sub/../../escape", new File(dir, "escape").getAbsolutePath() }; // $NON-NLS-1$ $NON-NLS-2$ $NON-NLS-3$
+        for (String name : bases) {
+            try {
+                store.getDataDirectory(new File(name));
+                fail("Expected base '" + name + "' to be rejected");
+            } catch (IOException expected) {
+            }
+        }
+        try {
+            store.update(digest, dir, "escape.csv"); // $NON-NLS-1$
+            fail("Expected a base outside the store to be rejected");
+        } catch (IOException expected) {
+        }
+        assertFalse(new File(dir, "escape.csv").exists()); // $NON-NLS-1$
+        assertEquals(new File(base, "sub/data.csv"), ContentStore.resolve(base, "sub/data.csv")); // $NON-NLS-1$ $NON-NLS-2$
+        assertEquals(new File(base, "a..b.csv"), ContentStore.resolve(base, "a..b.csv")); // $NON-NLS-1$ $NON-NLS-2$
+    }
+
+    public void testPartsRemoved() throws Exception {
+        File directory = new File(dir, "store"); // $NON-NLS-1$
+        ContentStore store = new ContentStore(directory);
+        byte[] data = "0123456789".getBytes("US-ASCII"); // $NON-NLS-1$ $NON-NLS-2$
+        String digest = ContentStore.digest(data);
+        store.write(digest, 0, Arrays.copyOfRange(data, 0, 4), false);
+        File part = new File(directory, digest + ".part"); // $NON-NLS-1$
+        assertTrue(part.isFile());
+        // Still being written
+        store.getMissing(Collections.singleton(digest));
+        assertTrue(part.isFile());
+        // Abandoned
+        assertTrue(part.setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000L));
+        store.getMissing(Collections.singleton(digest));
+        assertFalse(part.exists());
+
+        // Left by a previous server
+        store.write(digest, 0, Arrays.copyOfRange(data, 0, 4), false);
+        assertTrue(part.isFile());
+        new ContentStore(directory);
+        assertFalse(part.exists());
+    }
+
+    public void testParallelWrites() throws Exception {
+        final ContentStore store = new ContentStore(new File(dir, "store")); // $NON-NLS-1$
+        final byte[][] contents = new byte[8][];
+        final String[] digests = new String[contents.length];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = new byte[100000];
+            Arrays.fill(contents[i], (byte) i);
+            digests[i] = ContentStore.digest(contents[i]);
+        }
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[contents.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        byte[] content = contents[index];
+                        for (int offset = 0; offset < content.length; offset += 1000) {
+                            store.write(digests[index], offset, Arrays.copyOfRange(content, offset, offset + 1000),
+                                    offset + 1000 == content.length);
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+        assertTrue(store.getMissing(Arrays.asList(digests)).isEmpty());
+    }
+
+    public void testConfigureSendsOnlyMissingContent() throws Exception {
+        write(new File(dir, "data.csv"), "0123456789"); // $NON-NLS-1$ $NON-NLS-2$
+        HashTree tree = createPlan("data.csv");
+        ContentDistributor distributor = new ContentDistributor(2, 4, Collections.singletonList("filename"), // $NON-NLS-1$
+                Collections.<String>emptyList());
+        Engine engine = new Engine(new ContentStore(new File(dir, "store"))); // $NON-NLS-1$
+        Map<String, File> files = distributor.findFiles(tree, dir);
+        assertTrue(distributor.configure(engine, "host", ContentDistributor.encodePlan(tree), files, // $NON-NLS-1$
+                new File("."), "test.jmx")); // $NON-NLS-1$ $NON-NLS-2$
+        // Plan in one or more chunks plus 3 chunks of 4 bytes for the file
+        assertTrue(engine.chunks > 3);
+        assertEquals(Collections.singleton("data.csv"), engine.configuredFiles.keySet()); // $NON-NLS-1$
+
+        engine.chunks = 0;
+        assertTrue(distributor.configure(engine, "host", ContentDistributor.encodePlan(createPlan("data.csv")), // $NON-NLS-1$ $NON-NLS-2$
+                files, new File("."), "test.jmx")); // $NON-NLS-1$ $NON-NLS-2$
+        assertEquals(0, engine.chunks);
+
+        engine.supported = false;
+        assertFalse(distributor.configure(engine, "host", ContentDistributor.encodePlan(tree), files, // $NON-NLS-1$
+                new File("."), "test.jmx")); // $NON-NLS-1$ $NON-NLS-2$
+    }
+
+    private static HashTree createPlan(String fileName) {
+        ListedHashTree tree = new ListedHashTree();
+        GenericController controller = new GenericController();
+        controller.setName("controller"); // $NON-NLS-1$
+        ConfigTestElement config = new ConfigTestElement();
+        config.setName("config"); // $NON-NLS-1$
+        config.setProperty("filename", fileName); // $NON-NLS-1$
+        GenericController inner = new GenericController();
+        inner.setName("inner"); // $NON-NLS-1$
+        tree.add(controller, config);
+        tree.add(controller, inner);
+        tree.add(config);
+        return tree;
+    }
+
+    private static List<String> names(HashTree tree) {
+        List<String> names = new ArrayList<String>();
+        for (Object node : tree.list()) {
+            names.add(((org.apache.jmeter.testelement.TestElement) node).getName());
+        }
+        return names;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("US-ASCII")); // $NON-NLS-1$
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static class Listener extends UnicastRemoteObject implements Remote {
+        private static final long serialVersionUID = 1L;
+
+        Listener() throws RemoteException {
+            super();
+        }
+    }
+
+    /**
+     * Engine which only stores content, as the server engine does.
+     */
+    private static class Engine implements RemoteJMeterEngine {
+        private final ContentStore store;
+        private volatile boolean supported = true;
+        private int chunks;
+        private Map<String, String> configuredFiles;
+
+        Engine(ContentStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public Set<String> rgetMissingContent(Set<String> digests) throws RemoteException {
+            if (!supported) {
+                throw new RemoteException("unrecognized method hash"); // $NON-NLS-1$
+            }
+            try {
+                return store.getMissing(digests);
+            } catch (IOException e) {
+                throw new RemoteException("", e); // $NON-NLS-1$
+            }
+        }
+
+        @Override
+        public void rputContent(String digest, long offset, byte[] data, boolean last) throws RemoteException {
+            synchronized (this) {
+                chunks++;
+            }
+            try {
+                store.write(digest, offset, data, last);
+            } catch (IOException e) {
+                throw new RemoteException("", e); // $NON-NLS-1$
+            }
+        }
+
+        @Override
+        public void rconfigure(String planDigest, Remote[] remotes, Map<String, String> files, String host,
+                File jmxBase, String scriptName) throws RemoteException {
+            try {
+                assertTrue(store.getMissing(Collections.singleton(planDigest)).isEmpty());
+                assertTrue(store.getMissing(files.values()).isEmpty());
+            } catch (IOException e) {
+                throw new RemoteException("", e); // $NON-NLS-1$
+            }
+            configuredFiles = files;
+        }
+
+        @Override
+        public void rconfigure(HashTree testTree, String host, File jmxBase, String scriptName) {
+        }
+
+        @Override
+        public void rrunTest() {
+        }
+
+        @Override
+        public void rstopTest(boolean now) {
+        }
+
+        @Override
+        public void rreset() {
+        }
+
+        @Override
+        public void rsetProperties(Properties p) {
+        }
+
+        @Override
+        public void rexit() {
+        }
+    }
+}
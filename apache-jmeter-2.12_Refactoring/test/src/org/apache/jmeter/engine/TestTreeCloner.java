@@ -22,6 +22,7 @@ import org.apache.jmeter.config.Argument;
 import org.apache.jmeter.config.Arguments;
 import org.apache.jmeter.control.GenericController;
 import org.apache.jmeter.reporters.ResultCollector;
+import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.testelement.TestPlan;
 import org.apache.jmeter.testelement.property.CollectionProperty;
 import org.apache.jmeter.testelement.property.JMeterProperty;
@@ -78,4 +79,62 @@ public class TestTreeCloner extends junit.framework.TestCase {
                 assertTrue(iter.next().isRunningVersion());
             }
         }
+
+        public void testSharedCloning() throws Exception {
+            ListedHashTree original = new ListedHashTree();
+            GenericController controller = new GenericController();
+            controller.setName("controller");
+            TestPlan plan = new TestPlan();
+            plan.addParameter("server", "jakarta");
+            original.add(controller);
+            original.add(plan);
+            controller.setRunningVersion(true);
+            plan.setRunningVersion(true);
+
+            ListedHashTree first = cloneShared(original);
+            ListedHashTree second = cloneShared(original);
+            GenericController firstController = (GenericController) first.getArray()[0];
+            GenericController secondController = (GenericController) second.getArray()[0];
+            assertNotSame(controller, firstController);
+            assertTrue(firstController.isSharingProperties());
+            assertTrue(firstController.isRunningVersion());
+            assertEquals("controller", firstController.getName());
+
+            // Nothing has changed, so nothing to recover
+            firstController.recoverRunningVersion();
+            assertTrue(firstController.isSharingProperties());
+
+            firstController.setName("changed");
+            assertFalse(firstController.isSharingProperties());
+            assertEquals("changed", firstController.getName());
+            assertEquals("controller", secondController.getName());
+            assertEquals("controller", controller.getName());
+            firstController.recoverRunningVersion();
+            assertEquals("controller", firstController.getName());
+
+            // A property fetched with getProperty() may be changed in place
+            secondController.getProperty(TestElement.NAME).setObjectValue("in place");
+            assertFalse(secondController.isSharingProperties());
+            assertEquals("in place", secondController.getName());
+            assertEquals("controller", controller.getName());
+            assertEquals("controller", firstController.getName());
+
+            // Fetching a nested element gives the clone its own copy
+            TestPlan firstPlan = (TestPlan) first.getArray()[1];
+            TestPlan secondPlan = (TestPlan) second.getArray()[1];
+            Arguments vars = (Arguments) firstPlan.getUserDefinedVariablesAsProperty().getObjectValue();
+            assertFalse(firstPlan.isSharingProperties());
+            assertTrue(secondPlan.isSharingProperties());
+            vars.getArgument(0).setValue("yahoo");
+            assertEquals("yahoo", firstPlan.getUserDefinedVariables().get("server"));
+            assertEquals("jakarta", secondPlan.getUserDefinedVariables().get("server"));
+            assertEquals("jakarta", plan.getUserDefinedVariables().get("server"));
+            assertTrue(secondPlan.getUserDefinedVariablesAsProperty().isRunningVersion());
+        }
+
+        private static ListedHashTree cloneShared(ListedHashTree tree) {
+            TreeCloner cloner = new TreeCloner(true, true);
+            tree.traverse(cloner);
+            return cloner.getClonedTree();
+        }
 }
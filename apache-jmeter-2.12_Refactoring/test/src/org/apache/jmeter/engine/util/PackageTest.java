@@ -211,4 +211,34 @@ public class PackageTest extends JMeterTestCase {
         assertEquals("hello world", newProp.getStringValue());
     }
 
+    public void testVariablesFollowContext() throws Exception {
+        CompoundVariable var = new CompoundVariable("http://${server}/${path}?q=${server}");
+        CompoundVariable copy = var.getFunction();
+        assertEquals("http://jakarta.apache.org/${path}?q=jakarta.apache.org", var.execute());
+        jmctx.getVariables().put("path", "index.html");
+        jmctx.getVariables().put("server", "jmeter.apache.org");
+        assertEquals("http://jmeter.apache.org/index.html?q=jmeter.apache.org", copy.execute());
+        assertEquals("http://jmeter.apache.org/index.html?q=jmeter.apache.org", var.execute());
+    }
+
+    public void testStaticText() throws Exception {
+        CompoundVariable var = new CompoundVariable("\\${server\\}");
+        assertFalse(var.hasFunction());
+        assertEquals("${server\\}", var.execute());
+        // Unterminated references are still treated as functions
+        var = new CompoundVariable("a${b");
+        assertTrue(var.hasFunction());
+        assertEquals("ab", var.execute());
+        var = new CompoundVariable("a${b");
+        assertTrue(var.hasFunction());
+    }
+
+    public void testFunctionsAreNotShared() throws Exception {
+        CompoundVariable first = new CompoundVariable("${__counter(TRUE,)}-${server}");
+        CompoundVariable second = new CompoundVariable("${__counter(TRUE,)}-${server}");
+        assertEquals("1-jakarta.apache.org", first.execute());
+        assertEquals("2-jakarta.apache.org", first.execute());
+        assertEquals("1-jakarta.apache.org", second.execute());
+    }
+
 }
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.engine.util.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.apache.jmeter.engine.util.CompoundVariable;
+import org.apache.jmeter.functions.ThreadNumber;
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+
+/**
+ * Measures the cost of evaluating and compiling typical HTTP request templates
+ * with CompoundVariable.
+ * <p>
+ * Evaluation is what each FunctionProperty does once per iteration; compilation is
+ * what __eval and __evalVar do on each call.
+ * <p>
+ * Usage: iterations, e.g. <code>2000000</code>
+ */
+public class CompoundVariableBenchmark {
+
+    private static final String[] TEMPLATES = {
+        "/api/${version}/users/${userId}/orders", // $NON-NLS-1$
+        "Bearer ${token}", // $NON-NLS-1$
+        "${userId}", // $NON-NLS-1$
+        "application/json; charset=UTF-8", // $NON-NLS-1$
+        "q=${__urlencode(${query})}&thread=${__threadNum}", // $NON-NLS-1$
+        "{\"user\":\"${userId}\",\"session\":\"${session}\",\"items\":[${items}],\"source\":\"jmeter\"}", // $NON-NLS-1$
+    };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.out.println("missing parameters:");
+            System.out.println("iterations");
+            System.out.println("example: 2000000");
+            return;
+        }
+        int iterations = Integer.parseInt(args[0]);
+
+        // Functions are found by scanning the search paths
+        File props = File.createTempFile("jmeter", ".properties"); // $NON-NLS-1$ $NON-NLS-2$
+        props.deleteOnExit();
+        Properties p = new Properties();
+        p.setProperty("search_paths", // $NON-NLS-1$
+                new File(ThreadNumber.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+        OutputStream out = new FileOutputStream(props);
+        try {
+            p.store(out, null);
+        } finally {
+            out.close();
+        }
+        JMeterUtils.loadJMeterProperties(props.getAbsolutePath());
+        JMeterUtils.setLocale(Locale.ENGLISH); // some functions need the resources
+        LoggingManager.setPriority("WARN"); // $NON-NLS-1$
+
+        JMeterContext context = JMeterContextService.getContext();
+        JMeterVariables vars = new JMeterVariables();
+        vars.put("version", "v2"); // $NON-NLS-1$ $NON-NLS-2$
+        vars.put("userId", "42"); // $NON-NLS-1$ $NON-NLS-2$
+        vars.put("token", "eyJhbGciOiJIUzI1NiJ9.eyJzdWIiOiI0MiJ9.dGVzdA"); // $NON-NLS-1$ $NON-NLS-2$
+        vars.put("query", "jmeter performance"); // $NON-NLS-1$ $NON-NLS-2$
+        vars.put("session", "0f8fad5b-d9cb-469f-a165-70867728950e"); // $NON-NLS-1$ $NON-NLS-2$
+        vars.put("items", "1,2,3,5,8,13"); // $NON-NLS-1$ $NON-NLS-2$
+        context.setVariables(vars);
+
+        CompoundVariable[] compiled = new CompoundVariable[TEMPLATES.length];
+        for (int i = 0; i < TEMPLATES.length; i++) {
+            compiled[i] = new CompoundVariable(TEMPLATES[i]).getFunction();
+        }
+
+        ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        // Warm up, then measure
+        execute(compiled, iterations / 10);
+        compile(iterations / 100);
+        long allocatedBefore = allocatedBytes(mxBean);
+        long start = System.nanoTime();
+        long chars = execute(compiled, iterations);
+        long executeElapsed = System.nanoTime() - start;
+        long executeAllocated = allocatedBytes(mxBean) - allocatedBefore;
+        allocatedBefore = allocatedBytes(mxBean);
+        start = System.nanoTime();
+        chars += compile(iterations / 10);
+        long compileElapsed = System.nanoTime() - start;
+        long compileAllocated = allocatedBytes(mxBean) - allocatedBefore;
+
+        System.out.println("templates:            " + TEMPLATES.length + " (" + chars + " chars generated)");
+        System.out.println("execute ns/template:  " + (executeElapsed / iterations / TEMPLATES.length));
+        System.out.println("execute bytes/tmpl:   " + perTemplate(executeAllocated, iterations));
+        System.out.println("compile ns/template:  " + (compileElapsed / (iterations / 10) / TEMPLATES.length));
+        System.out.println("compile bytes/tmpl:   " + perTemplate(compileAllocated, iterations / 10));
+    }
+
+    private static long execute(CompoundVariable[] compiled, int iterations) {
+        long chars = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (int j = 0; j < compiled.length; j++) {
+                chars += compiled[j].execute().length();
+            }
+        }
+        return chars;
+    }
+
+    private static long compile(int iterations) {
+        long chars = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (int j = 0; j < TEMPLATES.length; j++) {
+                chars += new CompoundVariable(TEMPLATES[j]).execute().length();
+            }
+        }
+        return chars;
+    }
+
+    private static long perTemplate(long allocated, int iterations) {
+        return allocated >= 0 ? allocated / iterations / TEMPLATES.length : -1;
+    }
+
+    private static long allocatedBytes(ThreadMXBean mxBean) {
+        if (mxBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) mxBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class TestGroupCommitWriter extends TestCase {
+
+    public TestGroupCommitWriter(String name) {
+        super(name);
+    }
+
+    public void testThreadsKeepTheirOrder() throws Exception {
+        StringWriter file = new StringWriter();
+        final GroupCommitWriter writer = new GroupCommitWriter(new PrintWriter(file), "test", 5, 1000, 100000, false);
+        final int threads = 8;
+        final int lines = 5000;
+        Thread[] t = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            t[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < lines; j++) {
+                        writer.write(id + "," + j + "\n");
+                    }
+                }
+            };
+            t[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            t[i].join();
+        }
+        writer.flush();
+        int[] next = new int[threads];
+        int count = readLines(file.toString(), next);
+        assertEquals(threads * lines, count);
+        assertEquals(0, writer.getPending());
+        assertEquals(0, writer.getDropped());
+        writer.close();
+        assertEquals(count, readLines(file.toString(), new int[threads]));
+    }
+
+    public void testEndedThreadsAreForgotten() throws Exception {
+        StringWriter file = new StringWriter();
+        final GroupCommitWriter writer = new GroupCommitWriter(new PrintWriter(file), "test", 60000, 1000000,
+                10000000, false);
+        final StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            big.append('x');
+        }
+        big.append('\n');
+        for (int i = 0; i < 20; i++) {
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    writer.write("line\n");
+                    writer.write(big.toString());
+                }
+            };
+            t.start();
+            t.join();
+        }
+        assertEquals(20, writer.getStagingCount());
+        writer.flush();
+        assertEquals(0, writer.getStagingCount());
+        assertEquals(20 * (5 + big.length()), file.toString().length());
+        // The buffer of a live thread is kept
+        writer.write("main\n");
+        writer.flush();
+        assertEquals(1, writer.getStagingCount());
+        writer.close();
+    }
+
+    public void testDropOnOverflow() throws Exception {
+        StringWriter file = new StringWriter();
+        // The flusher does not run during the test, so only 10 lines of 10 characters fit
+        GroupCommitWriter writer = new GroupCommitWriter(new PrintWriter(file), "test", 60000, 1000, 100, true);
+        String line = "123456789\n";
+        for (int i = 0; i < 15; i++) {
+            writer.write(line);
+        }
+        assertEquals(5, writer.getDropped());
+        assertEquals(100, writer.getPending());
+        assertEquals("", file.toString());
+        // Closing writes what is pending
+        writer.close();
+        assertEquals(100, file.toString().length());
+        assertEquals(0, writer.getPending());
+    }
+
+    public void testBlockOnOverflow() throws Exception {
+        StringWriter file = new StringWriter();
+        GroupCommitWriter writer = new GroupCommitWriter(new PrintWriter(file), "test", 60000, 1000, 100, false);
+        String line = "123456789\n";
+        for (int i = 0; i < 15; i++) {
+            writer.write(line);
+        }
+        assertEquals(0, writer.getDropped());
+        assertTrue(writer.getWaits() > 0);
+        writer.close();
+        assertEquals(150, file.toString().length());
+    }
+
+    // Checks each thread's lines are in order, and returns the number of lines
+    private static int readLines(String text, int[] next) throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader(text));
+        int count = 0;
+        String s;
+        while ((s = reader.readLine()) != null) {
+            String[] parts = s.split(",");
+            int id = Integer.parseInt(parts[0]);
+            assertEquals("thread " + id, next[id], Integer.parseInt(parts[1]));
+            next[id]++;
+            count++;
+        }
+        return count;
+    }
+}
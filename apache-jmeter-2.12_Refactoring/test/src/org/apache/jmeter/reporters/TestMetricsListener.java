@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+
+public class TestMetricsListener extends TestCase {
+
+    public TestMetricsListener(String name) {
+        super(name);
+    }
+
+    private static void sample(MetricsListener listener, String label, long elapsed, boolean ok) {
+        SampleResult result = SampleResult.createTestSample(elapsed);
+        result.setSampleLabel(label);
+        result.setSuccessful(ok);
+        result.setBytes(100);
+        listener.sampleOccurred(new SampleEvent(result, "tg"));
+    }
+
+    // Adds the values of the lines, ignoring the timestamps
+    private static void addLine(Map<String, Long> metrics, String line) {
+        String[] parts = line.split(" ");
+        assertEquals(line, 3, parts.length);
+        Long previous = metrics.get(parts[0]);
+        long value = Long.parseLong(parts[1]);
+        metrics.put(parts[0], Long.valueOf(previous == null ? value : previous.longValue() + value));
+    }
+
+    private static void runTest(MetricsListener listener) {
+        listener.testStarted();
+        for (int i = 0; i < 100; i++) {
+            sample(listener, "Home page", 10 + i, true);
+            sample(listener, "login", 500, i % 10 != 0);
+        }
+        listener.testEnded();
+    }
+
+    public void testTcp() throws Exception {
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("localhost"));
+        final Map<String, Long> metrics = new HashMap<String, Long>();
+        Thread stub = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = server.accept();
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        synchronized (metrics) {
+                            addLine(metrics, line);
+                        }
+                    }
+                    socket.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        stub.start();
+        MetricsListener listener = new MetricsListener();
+        listener.setName("metrics");
+        listener.setDestination("tcp://localhost:" + server.getLocalPort());
+        listener.setPrefix("test");
+        listener.setInterval("60");
+        runTest(listener);
+        stub.join(10000);
+        server.close();
+        assertTrue(listener.getBatches() >= 1);
+        assertEquals(0, listener.getFailedBatches());
+        synchronized (metrics) {
+            assertEquals(Long.valueOf(100), metrics.get("test.Home_page.count"));
+            assertEquals(Long.valueOf(0), metrics.get("test.Home_page.errors"));
+            assertEquals(Long.valueOf(10000), metrics.get("test.Home_page.bytes"));
+            assertEquals(Long.valueOf(100), metrics.get("test.login.count"));
+            assertEquals(Long.valueOf(10), metrics.get("test.login.errors"));
+            assertEquals(Long.valueOf(200), metrics.get("test.all.count"));
+            assertEquals(Long.valueOf(10), metrics.get("test.all.errors"));
+            if (listener.getBatches() == 1) {
+                assertEquals(Long.valueOf(10), metrics.get("test.Home_page.min"));
+                assertEquals(Long.valueOf(109), metrics.get("test.Home_page.max"));
+                assertEquals(Long.valueOf(500), metrics.get("test.login.pct99"));
+            }
+        }
+    }
+
+    public void testUdp() throws Exception {
+        DatagramSocket server = new DatagramSocket(0, InetAddress.getByName("localhost"));
+        server.setSoTimeout(10000);
+        MetricsListener listener = new MetricsListener();
+        listener.setDestination("udp://localhost:" + server.getLocalPort());
+        listener.setPrefix("jmeter.load-generator-with-a-long-name");
+        listener.setInterval("60");
+        runTest(listener);
+        Map<String, Long> metrics = new HashMap<String, Long>();
+        byte[] buf = new byte[UdpMetricsSink.MAX_DATAGRAM];
+        String all = "jmeter.load-generator-with-a-long-name.all.count";
+        int datagrams = 0;
+        // The lines for all the samples come after those of the labels
+        while (!Long.valueOf(200).equals(metrics.get(all))) {
+            DatagramPacket packet = new DatagramPacket(buf, buf.length);
+            server.receive(packet);
+            String text = new String(packet.getData(), 0, packet.getLength(), "UTF-8");
+            assertTrue("ends with a whole line", text.endsWith("\n"));
+            for (String line : text.split("\n")) {
+                addLine(metrics, line);
+            }
+            datagrams++;
+        }
+        server.close();
+        // 3 labels with 11 lines each do not fit in one datagram
+        assertTrue(datagrams >= 2);
+        assertEquals(Long.valueOf(100), metrics.get("jmeter.load-generator-with-a-long-name.login.count"));
+    }
+
+    public void testUnreachable() throws Exception {
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("localhost"));
+        int port = server.getLocalPort();
+        server.close();
+        MetricsListener listener = new MetricsListener();
+        listener.setDestination("tcp://localhost:" + port);
+        listener.setInterval("60");
+        runTest(listener);
+        assertEquals(0, listener.getBatches());
+        assertTrue(listener.getFailedBatches() >= 1);
+    }
+
+    public void testStalledReceiver() throws Exception {
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("localhost"));
+        TcpMetricsSink sink = new TcpMetricsSink();
+        sink.open("tcp://localhost:" + server.getLocalPort());
+        StringBuilder batch = new StringBuilder();
+        while (batch.length() < 1 << 20) {
+            batch.append("test.all.count 1 1400000000\n");
+        }
+        // The connection is accepted by the backlog, but nothing is read
+        long start = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                sink.send(batch);
+            }
+            fail("Expected SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            // expected once the socket buffers are full
+        } finally {
+            sink.close();
+            server.close();
+        }
+        assertTrue(System.currentTimeMillis() - start < 10 * TcpMetricsSink.WRITE_TIMEOUT);
+    }
+
+    public void testSanitize() throws Exception {
+        assertEquals("HTTP_Request-1_a_b_", MetricsListener.sanitize("HTTP Request-1/a.b?"));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.save.BinaryResultReader;
+
+public class TestResultCollector extends JMeterTestCase {
+
+    private File file;
+
+    public TestResultCollector(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        file = File.createTempFile("collector", ".jtl");
+    }
+
+    @Override
+    public void tearDown() {
+        file.delete();
+    }
+
+    // Runs a test which saves one sample
+    private void save(boolean binary) {
+        ResultCollector collector = new ResultCollector();
+        collector.setFilename(file.getAbsolutePath());
+        SampleSaveConfiguration config = new SampleSaveConfiguration();
+        config.setAsXml(false);
+        config.setAsBinary(binary);
+        collector.setSaveConfig(config);
+        collector.testStarted();
+        collector.sampleOccurred(new SampleEvent(SampleResult.createTestSample(1000, 1010), "tg"));
+        collector.testEnded();
+    }
+
+    private int countBinarySamples() throws Exception {
+        BinaryResultReader reader = new BinaryResultReader(new ByteArrayInputStream(
+                FileUtils.readFileToByteArray(file)));
+        int count = 0;
+        try {
+            while (reader.next() != null) {
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    public void testBinaryAppended() throws Exception {
+        file.delete();
+        save(true);
+        save(true);
+        assertTrue(BinaryResultReader.isBinary(file));
+        assertEquals(2, countBinarySamples());
+    }
+
+    public void testBinaryNotAppendedToCsv() throws Exception {
+        FileUtils.writeStringToFile(file, "timeStamp,elapsed\n1400000000000,10\n", "UTF-8");
+        save(true);
+        assertEquals("timeStamp,elapsed\n1400000000000,10\n", FileUtils.readFileToString(file, "UTF-8"));
+    }
+
+    public void testCsvNotAppendedToBinary() throws Exception {
+        file.delete();
+        save(true);
+        byte[] binary = FileUtils.readFileToByteArray(file);
+        save(false);
+        assertEquals(binary.length, file.length());
+        assertEquals(1, countBinarySamples());
+    }
+}
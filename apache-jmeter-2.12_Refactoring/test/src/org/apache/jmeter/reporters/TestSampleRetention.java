@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.reporters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.visualizers.Visualizer;
+
+public class TestSampleRetention extends JMeterTestCase {
+
+    public TestSampleRetention(String name) {
+        super(name);
+    }
+
+    private static SampleSaveConfiguration createConfig(int every, int slowest) {
+        SampleSaveConfiguration config = new SampleSaveConfiguration();
+        config.setRetainEvery(every);
+        config.setRetainSlowest(slowest);
+        return config;
+    }
+
+    private static SampleResult createSample(String label, long elapsed, boolean ok) {
+        SampleResult result = SampleResult.createTestSample(elapsed);
+        result.setSampleLabel(label);
+        result.setSuccessful(ok);
+        result.setResponseData("body", null);
+        result.setResponseHeaders("headers");
+        result.addSubResult(SampleResult.createTestSample(1));
+        return result;
+    }
+
+    public void testDisabled() throws Exception {
+        SampleRetention retention = new SampleRetention(createConfig(1, 5));
+        assertFalse(retention.isEnabled());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(retention.retain(createSample("a", 10, true)));
+        }
+        assertSame(retention.getSaveConfig(), retention.getSummaryConfig());
+    }
+
+    public void testEveryNthAndErrors() throws Exception {
+        SampleRetention retention = new SampleRetention(createConfig(10, 0));
+        int kept = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (retention.retain(createSample("a", 10, true))) {
+                kept++;
+            }
+            if (i % 100 == 0 && retention.retain(createSample("a", 10, false))) {
+                kept++;
+            }
+        }
+        assertEquals(100 + 10, kept);
+        assertEquals(kept, retention.getRetained());
+        assertEquals(900, retention.getSummarised());
+        SampleSaveConfiguration summary = retention.getSummaryConfig();
+        assertFalse(summary.saveResponseData());
+        assertFalse(summary.saveSubresults());
+        assertEquals(retention.getSaveConfig().saveTime(), summary.saveTime());
+    }
+
+    public void testSlowestPerLabel() throws Exception {
+        SampleRetention retention = new SampleRetention(createConfig(1000000, 3));
+        // Decreasing times: only the first three of each label are the slowest so far
+        for (int i = 0; i < 100; i++) {
+            boolean expected = i < 3;
+            assertEquals(expected, retention.retain(createSample("a", 1000 - i, true)));
+            assertEquals(expected, retention.retain(createSample("b", 1000 - i, true)));
+        }
+        assertFalse(retention.retain(createSample("a", 998, true)));
+        assertTrue(retention.retain(createSample("a", 999, true)));
+        // The heap now holds 1000, 999 and 999
+        assertFalse(retention.retain(createSample("a", 999, true)));
+        assertTrue(retention.retain(createSample("a", 5000, true)));
+        assertTrue(retention.retain(createSample("b", 1001, true)));
+    }
+
+    public void testSummaryKeepsSizes() throws Exception {
+        // As from a JDBC or Java sampler: the size is that of the response data
+        SampleResult plain = SampleResult.createTestSample(10);
+        plain.setResponseData("3 rows\n1\n2\n3\n", "UTF-8");
+        SampleResult summary = SampleRetention.summarise(plain);
+        assertEquals(0, summary.getResponseData().length);
+        assertEquals(plain.getBytes(), summary.getBytes());
+        assertEquals(plain.getBodySize(), summary.getBodySize());
+        assertTrue(summary.getBytes() > 0);
+
+        // As from an HTTP sampler: headers and body sizes set
+        SampleResult http = createSample("a", 10, true);
+        http.setHeadersSize(120);
+        http.setBodySize(4000);
+        summary = SampleRetention.summarise(http);
+        assertEquals(http.getBytes(), summary.getBytes());
+        assertEquals(http.getHeadersSize(), summary.getHeadersSize());
+        assertEquals(4000, summary.getBodySize());
+    }
+
+    public void testResultCollector() throws Exception {
+        final List<SampleResult> shown = new ArrayList<SampleResult>();
+        ResultCollector collector = new ResultCollector();
+        collector.setSaveConfig(createConfig(4, 0));
+        collector.setListener(new Visualizer() {
+            @Override
+            public void add(SampleResult sample) {
+                shown.add(sample);
+            }
+
+            @Override
+            public boolean isStats() {
+                return false;
+            }
+        });
+        List<SampleResult> sent = new ArrayList<SampleResult>();
+        for (int i = 0; i < 20; i++) {
+            SampleResult result = createSample("a", i, i != 5);
+            sent.add(result);
+            collector.sampleOccurred(new SampleEvent(result, "tg"));
+        }
+        assertEquals(20, shown.size());
+        int full = 0;
+        for (int i = 0; i < 20; i++) {
+            SampleResult original = sent.get(i);
+            SampleResult result = shown.get(i);
+            assertEquals(original.getTime(), result.getTime());
+            assertEquals(original.isSuccessful(), result.isSuccessful());
+            assertEquals("body", original.getResponseDataAsString());
+            assertEquals(1, original.getSubResults().length);
+            if (result == original) {
+                full++;
+            } else {
+                assertEquals(0, result.getResponseData().length);
+                assertEquals("", result.getResponseHeaders());
+                assertEquals(0, result.getSubResults().length);
+            }
+        }
+        // The 4th, 8th, 12th and 16th of the 19 successful samples, and the failed one
+        assertEquals(5, full);
+        assertSame(sent.get(5), shown.get(5));
+    }
+}
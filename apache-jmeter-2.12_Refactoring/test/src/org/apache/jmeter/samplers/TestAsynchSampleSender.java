@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.rmi.Remote;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jmeter.util.JMeterUtils;
+
+public class TestAsynchSampleSender extends JMeterTestCase {
+
+    private static final int QUEUE_SIZE = 4;
+
+    public TestAsynchSampleSender(String name) {
+        super(name);
+    }
+
+    /**
+     * Collects the samples, and the number received when the test ended.
+     * The first sample is held until the gate is opened, so that the queue fills up.
+     */
+    private static class Collector implements SampleListener, TestStateListener {
+        final List<SampleResult> results = new ArrayList<SampleResult>();
+
+        final CountDownLatch firstSample = new CountDownLatch(1);
+
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        int countAtEnd = -1;
+
+        @Override
+        public void sampleOccurred(SampleEvent e) {
+            firstSample.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+            synchronized (this) {
+                results.add(e.getResult());
+            }
+        }
+
+        @Override
+        public void sampleStarted(SampleEvent e) {
+        }
+
+        @Override
+        public void sampleStopped(SampleEvent e) {
+        }
+
+        @Override
+        public void testStarted() {
+        }
+
+        @Override
+        public void testStarted(String host) {
+        }
+
+        @Override
+        public void testEnded() {
+        }
+
+        @Override
+        public synchronized void testEnded(String host) {
+            countAtEnd = results.size();
+        }
+
+        synchronized long getSampleCount() {
+            long count = 0;
+            for (SampleResult res : results) {
+                count += res.getSampleCount();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Replaces exported objects by their stubs, as RMI does.
+     */
+    private static class RmiOutputStream extends ObjectOutputStream {
+        RmiOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            return obj instanceof Remote ? RemoteObject.toStub((Remote) obj) : obj;
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        JMeterUtils.getJMeterProperties().remove("asynch.batch.queue.size"); // $NON-NLS-1$
+        JMeterUtils.getJMeterProperties().remove("asynch.batch.overflow"); // $NON-NLS-1$
+        super.tearDown();
+    }
+
+    // Sends the samples from a copy of the sender, as a server does.
+    // The first sample is held by the collector until all the others have been queued.
+    @SuppressWarnings("deprecation") // only the test constructor is deprecated
+    private static AsynchSampleSender send(String overflow, Collector collector, SampleResult[] samples)
+            throws Exception {
+        JMeterUtils.setProperty("asynch.batch.queue.size", Integer.toString(QUEUE_SIZE)); // $NON-NLS-1$
+        JMeterUtils.setProperty("asynch.batch.overflow", overflow); // $NON-NLS-1$
+        RemoteSampleListenerImpl listener = new RemoteSampleListenerImpl(collector);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new RmiOutputStream(bytes);
+            out.writeObject(new AsynchSampleSender(listener));
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            final AsynchSampleSender sender = (AsynchSampleSender) in.readObject();
+            in.close();
+            sender.sampleOccurred(new SampleEvent(samples[0], "Thread Group", "server")); // $NON-NLS-1$ $NON-NLS-2$
+            assertTrue(collector.firstSample.await(10, TimeUnit.SECONDS));
+            for (int i = 1; i < samples.length; i++) {
+                if (i == QUEUE_SIZE + 1 && AsynchSampleSender.OVERFLOW_BLOCK.equals(overflow)) {
+                    collector.gate.countDown(); // otherwise the sampling thread would wait forever
+                }
+                sender.sampleOccurred(new SampleEvent(samples[i], "Thread Group", "server")); // $NON-NLS-1$ $NON-NLS-2$
+            }
+            assertNotNull(AsynchSampleSender.getQueueStatistics());
+            collector.gate.countDown();
+            sender.testEnded("server"); // $NON-NLS-1$
+            return sender;
+        } finally {
+            UnicastRemoteObject.unexportObject(listener, true);
+        }
+    }
+
+    private static SampleResult[] createSamples(int count) {
+        SampleResult[] samples = new SampleResult[count];
+        for (int i = 0; i < samples.length; i++) {
+            SampleResult res = SampleResult.createTestSample(1400000000000L + i * 10L, 1400000000000L + i * 11L);
+            res.setSampleLabel("Label " + i % 2);
+            res.setSuccessful(true);
+            samples[i] = res;
+        }
+        return samples;
+    }
+
+    public void testBlock() throws Exception {
+        Collector collector = new Collector();
+        SampleResult[] samples = createSamples(1000);
+        AsynchSampleSender sender = send(AsynchSampleSender.OVERFLOW_BLOCK, collector, samples);
+        assertEquals(samples.length, collector.results.size());
+        // The queued samples are sent before the end of the test
+        assertEquals(samples.length, collector.countAtEnd);
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(samples[i].getTimeStamp(), collector.results.get(i).getTimeStamp());
+        }
+        assertEquals(0, sender.getDropped());
+        assertEquals(0, sender.getSummarized());
+        assertNull(AsynchSampleSender.getQueueStatistics());
+    }
+
+    public void testDropOldest() throws Exception {
+        Collector collector = new Collector();
+        SampleResult[] samples = createSamples(21);
+        AsynchSampleSender sender = send(AsynchSampleSender.OVERFLOW_DROP_OLDEST, collector, samples);
+        // The first sample was being sent, and the queue kept the newest samples
+        assertEquals(1 + QUEUE_SIZE, collector.countAtEnd);
+        assertEquals(samples.length - 1 - QUEUE_SIZE, sender.getDropped());
+        assertEquals(0, sender.getQueueWaits());
+        assertEquals(samples[0].getTimeStamp(), collector.results.get(0).getTimeStamp());
+        for (int i = 1; i <= QUEUE_SIZE; i++) {
+            assertEquals(samples[samples.length - 1 - QUEUE_SIZE + i].getTimeStamp(),
+                    collector.results.get(i).getTimeStamp());
+        }
+    }
+
+    public void testSummarize() throws Exception {
+        Collector collector = new Collector();
+        SampleResult[] samples = createSamples(21);
+        AsynchSampleSender sender = send(AsynchSampleSender.OVERFLOW_SUMMARIZE, collector, samples);
+        assertEquals(samples.length - 1 - QUEUE_SIZE, sender.getSummarized());
+        assertEquals(0, sender.getDropped());
+        // One summary per label
+        assertEquals(1 + QUEUE_SIZE + 2, collector.countAtEnd);
+        assertEquals(samples.length, collector.getSampleCount());
+        StatisticalSampleResult summary = (StatisticalSampleResult) collector.results.get(1 + QUEUE_SIZE);
+        assertNotNull(summary.getHistogram());
+        assertEquals(summary.getSampleCount(), summary.getHistogram().getCount());
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.rmi.Remote;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jmeter.util.JMeterUtils;
+
+public class TestBinarySampleSender extends JMeterTestCase {
+
+    public TestBinarySampleSender(String name) {
+        super(name);
+    }
+
+    /**
+     * Collects the samples, and the number received when the test ended.
+     */
+    private static class Collector implements SampleListener, TestStateListener {
+        final List<SampleResult> results = new ArrayList<SampleResult>();
+
+        int countAtEnd = -1;
+
+        @Override
+        public synchronized void sampleOccurred(SampleEvent e) {
+            results.add(e.getResult());
+        }
+
+        @Override
+        public void sampleStarted(SampleEvent e) {
+        }
+
+        @Override
+        public void sampleStopped(SampleEvent e) {
+        }
+
+        @Override
+        public void testStarted() {
+        }
+
+        @Override
+        public void testStarted(String host) {
+        }
+
+        @Override
+        public void testEnded() {
+        }
+
+        @Override
+        public synchronized void testEnded(String host) {
+            countAtEnd = results.size();
+        }
+    }
+
+    /**
+     * Replaces exported objects by their stubs, as RMI does.
+     */
+    private static class RmiOutputStream extends ObjectOutputStream {
+        RmiOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            return obj instanceof Remote ? RemoteObject.toStub((Remote) obj) : obj;
+        }
+    }
+
+    /**
+     * A sender whose connection fails on the second flush, after the first block has been sent.
+     */
+    private static class FailingSender extends BinarySampleSender {
+        private static final long serialVersionUID = 1L;
+
+        FailingSender(RemoteSampleListener listener, SampleSaveConfiguration config) {
+            super(listener, config);
+        }
+
+        @Override
+        OutputStream connect() {
+            return new OutputStream() {
+                private int flushes;
+
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (++flushes > 1) {
+                        throw new IOException("Connection reset"); // $NON-NLS-1$
+                    }
+                }
+            };
+        }
+    }
+
+    private static Collector send(SampleSaveConfiguration config, SampleResult[] samples) throws Exception {
+        return send(config, samples, false);
+    }
+
+    // Sends the samples from a copy of the sender, as a server does
+    private static Collector send(SampleSaveConfiguration config, SampleResult[] samples, boolean failing)
+            throws Exception {
+        Collector collector = new Collector();
+        RemoteSampleListenerImpl listener = new RemoteSampleListenerImpl(collector);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new RmiOutputStream(bytes);
+            out.writeObject(failing ? new FailingSender(listener, config) : new BinarySampleSender(listener, config));
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            SampleSender sender = (SampleSender) in.readObject();
+            in.close();
+            for (int i = 0; i < samples.length; i++) {
+                sender.sampleOccurred(new SampleEvent(samples[i], "Thread Group", "server")); // $NON-NLS-1$ $NON-NLS-2$
+            }
+            sender.testEnded("server"); // $NON-NLS-1$
+        } finally {
+            UnicastRemoteObject.unexportObject(listener, true);
+        }
+        return collector;
+    }
+
+    // An HTTP request: the response data is not a CSV field, so it is not streamed
+    private static SampleResult httpSample(int i) throws Exception {
+        SampleResult res = SampleResult.createTestSample(1400000000000L + i * 10L, 1400000000000L + i * 11L);
+        res.setSampleLabel("GET /page" + i % 3);
+        res.setURL(new URL("http://example.com/page" + i % 3 + "?id=" + i));
+        res.setResponseCode(i % 5 == 0 ? "500" : "200");
+        res.setSuccessful(i % 5 != 0);
+        res.setThreadName("Thread Group 1-" + i % 4);
+        res.setResponseData("response " + i, "UTF-8");
+        return res;
+    }
+
+    // A sample failed by an assertion: the failure message is a CSV field, the assertion is not
+    private static SampleResult failedAssertion(int i) throws Exception {
+        SampleResult res = httpSample(i);
+        res.setSampleLabel("POST /login");
+        AssertionResult assertion = new AssertionResult("Response Assertion");
+        assertion.setFailure(true);
+        assertion.setFailureMessage("Test failed: expected /Welcome/, " + i);
+        res.addAssertionResult(assertion);
+        res.setSuccessful(false);
+        return res;
+    }
+
+    // A transaction: only the parent is a CSV record
+    private static SampleResult transaction(int i) throws Exception {
+        SampleResult res = SampleResult.createTestSample(1400000000000L + i * 10L, 1400000000000L + i * 10L);
+        res.setSampleLabel("Transaction");
+        res.setThreadName("Thread Group 1-" + i % 4);
+        res.addSubResult(httpSample(i));
+        res.addSubResult(httpSample(i + 1));
+        res.setResponseCodeOK();
+        res.setSuccessful(true);
+        return res;
+    }
+
+    private static SampleResult mixedSample(int i) throws Exception {
+        switch (i % 3) {
+        case 0:
+            return httpSample(i);
+        case 1:
+            return failedAssertion(i);
+        default:
+            return transaction(i);
+        }
+    }
+
+    private static SampleResult find(List<SampleResult> results, String label) {
+        for (SampleResult res : results) {
+            if (res.getSampleLabel().equals(label)) {
+                return res;
+            }
+        }
+        fail("No sample " + label);
+        return null;
+    }
+
+    public void testStreamedSamples() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration();
+        config.setAsXml(false);
+        config.setAssertionResultsFailureMessage(true);
+        SampleResult[] samples = new SampleResult[1000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = mixedSample(i);
+        }
+        Collector collector = send(config, samples);
+        assertEquals(samples.length, collector.results.size());
+        assertEquals(samples.length, collector.countAtEnd);
+        for (int i = 0; i < samples.length; i++) {
+            SampleResult expected = samples[i];
+            SampleResult actual = collector.results.get(i);
+            assertEquals(expected.getTimeStamp(), actual.getTimeStamp());
+            assertEquals(expected.getTime(), actual.getTime());
+            assertEquals(expected.getSampleLabel(), actual.getSampleLabel());
+            assertEquals(expected.getResponseCode(), actual.getResponseCode());
+            assertEquals(expected.isSuccessful(), actual.isSuccessful());
+            assertEquals(expected.getThreadName(), actual.getThreadName());
+            assertEquals(expected.getBytes(), actual.getBytes());
+            assertEquals(expected.getFirstAssertionFailureMessage(), actual.getFirstAssertionFailureMessage());
+            // Not CSV fields
+            assertEquals(0, actual.getResponseDataLength());
+            assertEquals(0, actual.getSubResults().length);
+        }
+    }
+
+    public void testUnsentSamplesSentWithRmiOnFailure() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration();
+        config.setAsXml(false);
+        SampleResult[] samples = new SampleResult[1000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = mixedSample(i);
+        }
+        Collector collector = send(config, samples, true);
+        // The first block of num_sample_threshold samples went to the failed connection,
+        // the samples encoded since then and the remaining ones are sent with RMI
+        int sent = JMeterUtils.getPropDefault("num_sample_threshold", 100); // $NON-NLS-1$
+        assertEquals(samples.length - sent, collector.countAtEnd);
+        Set<Long> expected = new HashSet<Long>();
+        for (int i = sent; i < samples.length; i++) {
+            expected.add(Long.valueOf(samples[i].getTimeStamp()));
+        }
+        Set<Long> actual = new HashSet<Long>();
+        for (SampleResult res : collector.results) {
+            actual.add(Long.valueOf(res.getTimeStamp()));
+        }
+        assertEquals(expected, actual);
+    }
+
+    public void testUnsavedFieldsNotSent() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration();
+        config.setAsXml(false);
+        config.setLabel(false);
+        Collector collector = send(config, new SampleResult[] { httpSample(1) });
+        assertEquals(1, collector.results.size());
+        assertEquals("", collector.results.get(0).getSampleLabel());
+    }
+
+    public void testXmlDataSentWithRmi() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration();
+        config.setAsXml(true);
+        config.setResponseData(true);
+        Collector collector = send(config, new SampleResult[] { httpSample(1), httpSample(2) });
+        assertEquals(2, collector.countAtEnd);
+        assertEquals("response 1", collector.results.get(0).getResponseDataAsString());
+        assertEquals("response 2", collector.results.get(1).getResponseDataAsString());
+    }
+
+    public void testXmlOnlySamplesSentWithRmi() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration();
+        config.setAsXml(true);
+        config.setResponseData(false);
+        config.setAssertions(true);
+        config.setSubresults(true);
+        Collector collector = send(config, new SampleResult[] { httpSample(0), failedAssertion(1), transaction(2) });
+        assertEquals(3, collector.countAtEnd);
+        // Streamed, as it has no data only saved in XML
+        assertEquals(0, find(collector.results, "GET /page0").getResponseDataLength());
+        // Sent with RMI, so the assertion and the sub-results are kept
+        assertEquals("Response Assertion", find(collector.results, "POST /login").getAssertionResults()[0].getName());
+        assertEquals(2, find(collector.results, "Transaction").getSubResults().length);
+    }
+
+    public void testUnknownTokenRejected() throws Exception {
+        Collector collector = new Collector();
+        RemoteSampleListenerImpl listener = new RemoteSampleListenerImpl(collector);
+        try {
+            BinarySampleReceiver receiver = BinarySampleReceiver.getInstance();
+            byte[] token = receiver.register(listener);
+            assertEquals(BinarySampleReceiver.TOKEN_LENGTH, token.length);
+            assertFalse(Arrays.equals(token, receiver.register(listener)));
+            // Only the address given to the servers is listened on
+            assertEquals(InetAddress.getByName(receiver.getHost()), receiver.getLocalAddress());
+            Socket socket = new Socket(receiver.getHost(), receiver.getPort());
+            try {
+                byte[] wrong = token.clone();
+                wrong[0]++;
+                socket.getOutputStream().write(wrong);
+                socket.getOutputStream().flush();
+                socket.setSoTimeout(10000);
+                // The receiver closes the connection without reading any samples
+                assertEquals(-1, socket.getInputStream().read());
+            } finally {
+                socket.close();
+            }
+            assertEquals(0, collector.results.size());
+        } finally {
+            UnicastRemoteObject.unexportObject(listener, true);
+        }
+    }
+}
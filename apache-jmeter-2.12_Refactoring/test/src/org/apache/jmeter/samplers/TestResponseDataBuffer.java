@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jmeter.junit.JMeterTestCase;
+
+public class TestResponseDataBuffer extends JMeterTestCase {
+
+    private static final int THRESHOLD = 1000;
+
+    public TestResponseDataBuffer(String name) {
+        super(name);
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        return data;
+    }
+
+    // Writes single bytes and blocks of various sizes
+    private static SampleResult store(byte[] data, int threshold) throws Exception {
+        ResponseDataBuffer buffer = new ResponseDataBuffer(0, threshold);
+        int i = 0;
+        int block = 1;
+        while (i < data.length) {
+            int n = Math.min(block, data.length - i);
+            if (n == 1) {
+                buffer.write(data[i]);
+            } else {
+                buffer.write(data, i, n);
+            }
+            i += n;
+            block = block * 3 % 701;
+        }
+        assertEquals(data.length, buffer.size());
+        assertEquals(threshold > 0 && data.length > threshold, buffer.isSpilled());
+        SampleResult res = new SampleResult();
+        buffer.store(res);
+        return res;
+    }
+
+    private static void assertData(byte[] expected, SampleResult res) throws Exception {
+        assertEquals(expected.length, res.getResponseDataLength());
+        assertEquals(expected.length, res.getBodySize());
+        assertTrue(Arrays.equals(expected, res.getResponseData()));
+        InputStream in = res.getResponseDataAsStream();
+        try {
+            assertTrue(Arrays.equals(expected, IOUtils.toByteArray(in)));
+        } finally {
+            in.close();
+        }
+        assertEquals(new String(expected, "US-ASCII"), res.getResponseDataAsString());
+    }
+
+    public void testBelowThreshold() throws Exception {
+        byte[] data = createData(THRESHOLD);
+        SampleResult res = store(data, THRESHOLD);
+        assertNull(res.getSpilledResponseData());
+        assertData(data, res);
+    }
+
+    public void testNoThreshold() throws Exception {
+        byte[] data = createData(100000);
+        SampleResult res = store(data, 0);
+        assertNull(res.getSpilledResponseData());
+        assertData(data, res);
+    }
+
+    public void testSpilled() throws Exception {
+        byte[] data = createData(100000);
+        SampleResult res = store(data, THRESHOLD);
+        assertNotNull(res.getSpilledResponseData());
+        assertData(data, res);
+        // Copies share the file
+        SampleResult copy = new SampleResult(res);
+        assertSame(res.getSpilledResponseData(), copy.getSpilledResponseData());
+        assertData(data, copy);
+        // Replacing the data drops the file
+        res.setResponseData(new byte[] { 1, 2 });
+        assertNull(res.getSpilledResponseData());
+        assertEquals(2, res.getResponseDataLength());
+    }
+
+    public void testSpilledText() throws Exception {
+        byte[] data = createData(100000);
+        SampleResult res = store(data, THRESHOLD);
+        // Below the text limit, all of the data is used
+        assertTrue(Arrays.equals(data, res.getBoundedResponseData()));
+        assertTrue(Arrays.equals(Arrays.copyOf(data, 10), res.getSpilledResponseData().getBytes(10)));
+        assertTrue(Arrays.equals(data, res.getSpilledResponseData().getBytes(data.length + 1)));
+        // The characters are decoded once for all the elements which test the sample
+        ResponseDataChars chars = res.getResponseDataAsChars();
+        assertSame(chars, res.getResponseDataAsChars());
+        assertEquals(chars.toString(), res.getResponseDataAsString());
+        res.cleanAfterSample();
+        assertNotSame(chars, res.getResponseDataAsChars());
+    }
+
+    public void testToByteArray() throws Exception {
+        byte[] data = createData(THRESHOLD + 1);
+        ResponseDataBuffer buffer = new ResponseDataBuffer(data.length, THRESHOLD);
+        buffer.write(data, 0, data.length);
+        assertTrue(buffer.isSpilled());
+        assertTrue(Arrays.equals(data, buffer.toByteArray()));
+    }
+
+    public void testSerialization() throws Exception {
+        byte[] data = createData(50000);
+        SampleResult res = store(data, THRESHOLD);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(res);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        SampleResult copy = (SampleResult) in.readObject();
+        in.close();
+        assertNotNull(copy.getSpilledResponseData());
+        assertNotSame(res.getSpilledResponseData(), copy.getSpilledResponseData());
+        assertFalse(res.getSpilledResponseData().toString().equals(copy.getSpilledResponseData().toString()));
+        assertData(data, copy);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.nio.charset.Charset;
+
+import org.apache.jmeter.junit.JMeterTestCase;
+
+public class TestResponseDataChars extends JMeterTestCase {
+
+    public TestResponseDataChars(String name) {
+        super(name);
+    }
+
+    private static void assertChars(String expected, String encoding) throws Exception {
+        ResponseDataChars chars = new ResponseDataChars(expected.getBytes(encoding), Charset.forName(encoding));
+        assertEquals(expected.length(), chars.length());
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.charAt(i), chars.charAt(i));
+        }
+        assertEquals(expected, chars.toString());
+        assertSame(chars.toString(), chars.toString());
+        assertEquals(expected, new String(chars.getChars()));
+        assertSame(chars.getChars(), chars.getChars());
+        assertSame(chars.getChars(), ResponseDataChars.getChars(chars));
+        assertEquals(expected.substring(2, 5), chars.subSequence(2, 5).toString());
+        assertEquals("", chars.subSequence(3, 3).toString());
+    }
+
+    public void testAscii() throws Exception {
+        String text = "{\"id\":42,\"name\":\"abc\"}";
+        assertChars(text, "UTF-8");
+        assertChars(text, "ISO-8859-1");
+        assertChars(text, "US-ASCII");
+        // Not ASCII-compatible, so always decoded
+        assertChars(text, "UTF-16");
+    }
+
+    public void testNonAscii() throws Exception {
+        String text = "caf\u00e9 \u20ac \u65e5\u672c";
+        assertChars(text, "UTF-8");
+        assertChars(text, "UTF-16LE");
+        assertChars("caf\u00e9 na\u00efve", "ISO-8859-1");
+        assertChars("caf\u00e9 \u20ac", "windows-1252");
+    }
+
+    public void testOtherSequence() throws Exception {
+        StringBuilder sb = new StringBuilder("abc");
+        assertEquals("abc", new String(ResponseDataChars.getChars(sb)));
+    }
+
+    public void testBadRange() throws Exception {
+        ResponseDataChars chars = new ResponseDataChars("abc".getBytes("UTF-8"), Charset.forName("UTF-8"));
+        try {
+            chars.subSequence(2, 4);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    public void testSampleResult() throws Exception {
+        SampleResult res = new SampleResult();
+        res.setResponseData("r\u00e9ponse", "UTF-8");
+        ResponseDataChars chars = res.getResponseDataAsChars();
+        assertEquals("r\u00e9ponse", chars.toString());
+        // Shared by all callers, and reused for the String
+        assertSame(chars, res.getResponseDataAsChars());
+        assertSame(chars.toString(), res.getResponseDataAsString());
+        res.setResponseData("other", "UTF-8");
+        assertEquals("other", res.getResponseDataAsChars().toString());
+        chars = res.getResponseDataAsChars();
+        res.cleanAfterSample();
+        assertNotSame(chars, res.getResponseDataAsChars());
+    }
+}
@@ -291,6 +291,19 @@ public class TestSampleResult extends TestCase {
             assertFalse(1d / (parentElapsed / 1000d) <= calculator.getRate());
         }
 
+        public void testStartLag() throws Exception {
+            SampleResult res = SampleResult.createTestSample(1000, 1050);
+            assertEquals(0, res.getStartLag());
+            assertEquals(50, res.getCorrectedTime());
+            res.setIntendedStartTime(800);
+            assertEquals(200, res.getStartLag());
+            assertEquals(250, res.getCorrectedTime());
+            // Starting early is not a lag
+            res.setIntendedStartTime(1010);
+            assertEquals(0, res.getStartLag());
+            assertEquals(50, res.getCorrectedTime());
+        }
+
         // TODO some more invalid sequence tests needed
         
         public void testEncodingAndType() throws Exception {
@@ -0,0 +1,368 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.threads.JMeterVariables;
+
+public class TestSampleSpool extends JMeterTestCase {
+
+    private SampleSpool spool;
+
+    public TestSampleSpool(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (spool != null) {
+            spool.close();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Collects the replayed events.
+     */
+    private static class Collector implements SampleSpool.Handler {
+        final List<SampleEvent> events = Collections.synchronizedList(new ArrayList<SampleEvent>());
+
+        int batches;
+
+        @Override
+        public synchronized void handle(List<SampleEvent> batch) {
+            events.addAll(batch);
+            batches++;
+        }
+    }
+
+    /**
+     * Stands for HTTPSampleResult, which core cannot use: a subclass with fields of its own,
+     * which adds to the sampler data.
+     */
+    private static class HttpResult extends SampleResult {
+        private static final long serialVersionUID = 1L;
+
+        private String method;
+
+        private String cookies = "";
+
+        private boolean redirect;
+
+        @Override
+        public String getSamplerData() {
+            return method + " " + getURL() + "\nCookie Data:\n" + cookies + "\n" + super.getSamplerData();
+        }
+    }
+
+    // Sets every field of SampleResult, so that all are checked
+    private static SampleResult plainSample(int i) throws Exception {
+        SampleResult res = SampleResult.createTestSample(1400000000000L + i * 10L, 1400000000000L + i * 11L);
+        res.setSampleLabel("Label \u00e9 " + i % 3);
+        res.setResponseCode(i % 5 == 0 ? "500" : "200");
+        res.setResponseMessage("Message " + i);
+        res.setSuccessful(i % 5 != 0);
+        res.setThreadName("Thread Group 1-" + i % 4);
+        res.setDataType(SampleResult.TEXT);
+        res.setResponseData("response " + i, "UTF-8");
+        res.setLatency(i % 7);
+        res.setIdleTime(i % 3);
+        res.setBytes(100 + i);
+        res.setURL(new URL("http://jmeter.apache.org/" + i));
+        res.setRequestHeaders("Header: " + i);
+        res.setSampleCount(1 + i % 2);
+        res.setErrorCount(i % 5 == 0 ? 1 : 0);
+        res.setGroupThreads(i);
+        res.setAllThreads(i * 2);
+        return res;
+    }
+
+    // An HTTP request checked by a response assertion and a duration assertion
+    private static HttpResult httpSample(int i) throws Exception {
+        HttpResult res = new HttpResult();
+        res.setStampAndTime(1400000000000L + i * 10L, i % 50);
+        res.setSampleLabel("GET /page" + i % 3);
+        res.setURL(new URL("http://example.com/page" + i % 3 + "?id=" + i));
+        res.method = i % 2 == 0 ? "GET" : "POST";
+        res.cookies = "JSESSIONID=" + i;
+        res.redirect = i % 7 == 0;
+        res.setSamplerData("body " + i);
+        res.setDataEncoding("UTF-8");
+        res.setResponseData("<html>" + i + "</html>", "UTF-8");
+        res.setResponseCode(i % 5 == 0 ? "500" : "200");
+        res.setSuccessful(i % 5 != 0);
+        AssertionResult response = new AssertionResult("Response Assertion");
+        if (i % 5 == 0) {
+            response.setFailure(true);
+            response.setFailureMessage("Test failed: code expected to match /200/");
+        }
+        res.addAssertionResult(response);
+        AssertionResult duration = new AssertionResult("Duration Assertion");
+        duration.setError(i % 11 == 0);
+        res.addAssertionResult(duration);
+        return res;
+    }
+
+    // A transaction of two HTTP requests
+    private static SampleResult transaction(int i) throws Exception {
+        SampleResult res = SampleResult.createTestSample(1400000000000L + i * 10L, 1400000000000L + i * 10L);
+        res.setSampleLabel("Transaction");
+        res.setSuccessful(true);
+        res.addSubResult(httpSample(i));
+        res.addSubResult(httpSample(i + 1));
+        return res;
+    }
+
+    private static void assertHttpSample(HttpResult expected, SampleResult actual) {
+        assertEquals(HttpResult.class, actual.getClass());
+        HttpResult http = (HttpResult) actual;
+        assertEquals(expected.method, http.method);
+        assertEquals(expected.cookies, http.cookies);
+        assertEquals(expected.redirect, http.redirect);
+        // Not added to twice
+        assertEquals(expected.getSamplerData(), http.getSamplerData());
+        assertEquals(expected.getSampleLabel(), http.getSampleLabel());
+        assertEquals(expected.getTimeStamp(), http.getTimeStamp());
+        assertEquals(expected.getTime(), http.getTime());
+        assertEquals(expected.getURL(), http.getURL());
+        assertEquals(expected.getResponseDataAsString(), http.getResponseDataAsString());
+        assertEquals(expected.isSuccessful(), http.isSuccessful());
+        AssertionResult[] expectedAssertions = expected.getAssertionResults();
+        AssertionResult[] assertions = http.getAssertionResults();
+        assertEquals(expectedAssertions.length, assertions.length);
+        for (int i = 0; i < assertions.length; i++) {
+            assertEquals(expectedAssertions[i].getName(), assertions[i].getName());
+            assertEquals(expectedAssertions[i].isFailure(), assertions[i].isFailure());
+            assertEquals(expectedAssertions[i].isError(), assertions[i].isError());
+            assertEquals(expectedAssertions[i].getFailureMessage(), assertions[i].getFailureMessage());
+        }
+    }
+
+    private static int serializedSize(SampleEvent event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(event);
+        out.close();
+        return bytes.size();
+    }
+
+    public void testPlainSamples() throws Exception {
+        spool = new SampleSpool(null, 4096);
+        for (int i = 0; i < 100; i++) {
+            spool.append(new SampleEvent(plainSample(i), "Thread Group", "server")); // $NON-NLS-1$ $NON-NLS-2$
+        }
+        assertEquals(100, spool.getCount());
+        assertTrue(spool.getSegmentCount() > 1);
+        Collector collector = new Collector();
+        // Only one thread, so the events are in order
+        assertEquals(100, spool.replay(1, 30, collector));
+        assertEquals(100, collector.events.size());
+        for (int i = 0; i < 100; i++) {
+            SampleResult expected = plainSample(i);
+            SampleEvent event = collector.events.get(i);
+            SampleResult actual = event.getResult();
+            assertEquals(SampleResult.class, actual.getClass());
+            assertEquals("Thread Group", event.getThreadGroup());
+            assertEquals("server", event.getHostname());
+            assertEquals(expected.getTimeStamp(), actual.getTimeStamp());
+            assertEquals(expected.getTime(), actual.getTime());
+            assertEquals(expected.getIdleTime(), actual.getIdleTime());
+            assertEquals(expected.getLatency(), actual.getLatency());
+            assertEquals(expected.getSampleLabel(), actual.getSampleLabel());
+            assertEquals(expected.getResponseCode(), actual.getResponseCode());
+            assertEquals(expected.getResponseMessage(), actual.getResponseMessage());
+            assertEquals(expected.isSuccessful(), actual.isSuccessful());
+            assertEquals(expected.getThreadName(), actual.getThreadName());
+            assertEquals(expected.getDataType(), actual.getDataType());
+            assertEquals(expected.getDataEncodingNoDefault(), actual.getDataEncodingNoDefault());
+            assertEquals(expected.getResponseDataAsString(), actual.getResponseDataAsString());
+            assertEquals(expected.getBytes(), actual.getBytes());
+            assertEquals(expected.getURL(), actual.getURL());
+            assertEquals(expected.getRequestHeaders(), actual.getRequestHeaders());
+            assertEquals(expected.getSampleCount(), actual.getSampleCount());
+            assertEquals(expected.getErrorCount(), actual.getErrorCount());
+            assertEquals(expected.getGroupThreads(), actual.getGroupThreads());
+            assertEquals(expected.getAllThreads(), actual.getAllThreads());
+        }
+    }
+
+    public void testHttpSamplesWithAssertions() throws Exception {
+        spool = new SampleSpool(null, 64 * 1024);
+        for (int i = 0; i < 100; i++) {
+            spool.append(new SampleEvent(httpSample(i), "Thread Group")); // $NON-NLS-1$
+        }
+        Collector collector = new Collector();
+        assertEquals(100, spool.replay(1, 30, collector));
+        for (int i = 0; i < 100; i++) {
+            assertHttpSample(httpSample(i), collector.events.get(i).getResult());
+        }
+        // Written field by field, not serialized
+        assertTrue(spool.getSize() < 100 * serializedSize(new SampleEvent(httpSample(1), "Thread Group")) / 4);
+    }
+
+    public void testTransactionSamples() throws Exception {
+        spool = new SampleSpool(null, 4096);
+        SampleResult parent = transaction(1);
+        spool.append(new SampleEvent(parent, "Thread Group", new JMeterVariables(), true)); // $NON-NLS-1$
+        Collector collector = new Collector();
+        assertEquals(1, spool.replay(2, 10, collector));
+        SampleEvent event = collector.events.get(0);
+        assertTrue(event.isTransactionSampleEvent());
+        SampleResult actual = event.getResult();
+        assertEquals("Transaction", actual.getSampleLabel());
+        // The totals are as they were, not added to again
+        assertEquals(parent.getTime(), actual.getTime());
+        assertEquals(parent.getBytes(), actual.getBytes());
+        SampleResult[] subResults = actual.getSubResults();
+        assertEquals(2, subResults.length);
+        for (int i = 0; i < subResults.length; i++) {
+            assertHttpSample((HttpResult) parent.getSubResults()[i], subResults[i]);
+            assertSame(actual, subResults[i].getParent());
+        }
+    }
+
+    public void testOtherResultsSerialized() throws Exception {
+        spool = new SampleSpool(null, 4096);
+        // Has fields which are not strings or primitives
+        StatisticalSampleResult res = new StatisticalSampleResult(plainSample(1), 2);
+        res.add(plainSample(1));
+        res.add(plainSample(6));
+        spool.append(new SampleEvent(res, "Thread Group")); // $NON-NLS-1$
+        Collector collector = new Collector();
+        assertEquals(1, spool.replay(1, 10, collector));
+        SampleResult actual = collector.events.get(0).getResult();
+        assertEquals(StatisticalSampleResult.class, actual.getClass());
+        assertEquals(res.getSampleCount(), actual.getSampleCount());
+        assertEquals(res.getTime(), actual.getTime());
+        assertEquals(res.getErrorCount(), actual.getErrorCount());
+        assertNotNull(((StatisticalSampleResult) actual).getHistogram());
+    }
+
+    public void testLargeRecord() throws Exception {
+        spool = new SampleSpool(null, 4096);
+        SampleResult res = plainSample(1);
+        res.setResponseData(new byte[10000]);
+        spool.append(new SampleEvent(plainSample(0), "Thread Group")); // $NON-NLS-1$
+        spool.append(new SampleEvent(res, "Thread Group")); // $NON-NLS-1$
+        spool.append(new SampleEvent(plainSample(2), "Thread Group")); // $NON-NLS-1$
+        Collector collector = new Collector();
+        assertEquals(3, spool.replay(1, 10, collector));
+        assertEquals(10000, collector.events.get(1).getResult().getResponseData().length);
+    }
+
+    public void testConcurrentAppends() throws Exception {
+        spool = new SampleSpool(null, 64 * 1024);
+        final SampleResult[] samples = new SampleResult[10];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = plainSample(i);
+        }
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 5000; i++) {
+                            spool.append(new SampleEvent(samples[i % samples.length], "Thread Group")); // $NON-NLS-1$
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        Collector collector = new Collector();
+        assertEquals(20000, spool.replay(3, 1000, collector));
+        assertEquals(20000, collector.events.size());
+        int[] labels = new int[3];
+        for (SampleEvent event : collector.events) {
+            labels[event.getResult().getSampleLabel().charAt(event.getResult().getSampleLabel().length() - 1) - '0']++;
+        }
+        assertEquals(8000, labels[0]);
+        assertEquals(6000, labels[1]);
+        assertEquals(6000, labels[2]);
+    }
+
+    public void testHandlerFailureStopsReplay() throws Exception {
+        spool = new SampleSpool(null, 4096);
+        for (int i = 0; i < 100; i++) {
+            spool.append(new SampleEvent(plainSample(i), "Thread Group")); // $NON-NLS-1$
+        }
+        try {
+            spool.replay(2, 10, new SampleSpool.Handler() {
+                @Override
+                public void handle(List<SampleEvent> events) throws IOException {
+                    throw new IOException("Failed"); // $NON-NLS-1$
+                }
+            });
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("Failed", e.getMessage());
+        }
+    }
+
+    public void testFailedCopySkipped() throws Exception {
+        spool = new SampleSpool(null, 64 * 1024) {
+            private int copies;
+
+            @Override
+            void copy(ByteBuffer slot, byte[] record, int length) {
+                if (++copies % 10 == 5) {
+                    slot.put(record, 4, 3); // part of the record
+                    throw new IllegalStateException("Failed"); // $NON-NLS-1$
+                }
+                super.copy(slot, record, length);
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            try {
+                spool.append(new SampleEvent(plainSample(i), "Thread Group")); // $NON-NLS-1$
+                assertTrue(i % 10 != 4);
+            } catch (IllegalStateException e) {
+                assertEquals(4, i % 10);
+            }
+        }
+        assertEquals(90, spool.getCount());
+        assertEquals(1, spool.getSegmentCount());
+        Collector collector = new Collector();
+        assertEquals(90, spool.replay(1, 30, collector));
+        int i = 0;
+        for (SampleEvent event : collector.events) {
+            if (i % 10 == 4) {
+                i++;
+            }
+            assertEquals(plainSample(i).getResponseMessage(), event.getResult().getResponseMessage());
+            i++;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.rmi.Remote;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jmeter.samplers.RemoteListenerWrapper;
+import org.apache.jmeter.samplers.RemoteSampleListenerImpl;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleListener;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Compares the throughput of the Standard, Batch and Binary sample sender modes over the loopback interface.
+ * <p>
+ * The sender is created as the client does, copied as RMI copies it to a server, then used by several
+ * threads to send samples to a listener in the same JVM, which only counts them.
+ * The time includes the end of the test, which waits for all the samples to have been received.
+ * The CPU time is that of the whole JVM, so covers both the server and the client side.
+ * <p>
+ * Usage: samples jmeter.properties [threads [modes]], e.g. <code>200000 bin/jmeter.properties 8 Standard,Batch,Binary</code>
+ */
+public class SampleSenderBenchmark {
+
+    /**
+     * Counts the samples received.
+     */
+    private static class Counter implements SampleListener, TestStateListener {
+        final AtomicLong samples = new AtomicLong();
+
+        @Override
+        public void sampleOccurred(SampleEvent e) {
+            samples.incrementAndGet();
+        }
+
+        @Override
+        public void sampleStarted(SampleEvent e) {
+        }
+
+        @Override
+        public void sampleStopped(SampleEvent e) {
+        }
+
+        @Override
+        public void testStarted() {
+        }
+
+        @Override
+        public void testStarted(String host) {
+        }
+
+        @Override
+        public void testEnded() {
+        }
+
+        @Override
+        public void testEnded(String host) {
+        }
+    }
+
+    /**
+     * Replaces exported objects by their stubs, as RMI does.
+     */
+    private static class RmiOutputStream extends ObjectOutputStream {
+        RmiOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            return obj instanceof Remote ? RemoteObject.toStub((Remote) obj) : obj;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("missing parameters:");
+            System.out.println("samples jmeter.properties [threads [modes]]");
+            System.out.println("example: 200000 bin/jmeter.properties 8 Standard,Batch,Binary");
+            return;
+        }
+        int samples = Integer.parseInt(args[0]);
+        JMeterUtils.loadJMeterProperties(args[1]);
+        JMeterUtils.setProperty("jmeter.save.saveservice.output_format", "csv"); // $NON-NLS-1$ $NON-NLS-2$
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        String[] modes = (args.length > 3 ? args[3] : "Standard,Batch,Binary").split(","); // $NON-NLS-1$ $NON-NLS-2$
+        final SampleResult[] results = new SampleResult[1024];
+        for (int i = 0; i < results.length; i++) {
+            SampleResult result = SampleResult.createTestSample(1400000000000L + i * 7L, 1400000000000L + i * 9L);
+            result.setSampleLabel("HTTP Request " + i % 10);
+            result.setThreadName("Thread Group 1-" + i % 100);
+            result.setResponseCode(i % 50 == 0 ? "500" : "200");
+            result.setResponseMessage(i % 50 == 0 ? "Internal Server Error" : "OK");
+            result.setSuccessful(i % 50 != 0);
+            result.setDataType(SampleResult.TEXT);
+            result.setBytes(1000 + i);
+            result.setLatency(i % 9);
+            result.setAllThreads(100);
+            result.setGroupThreads(100);
+            results[i] = result;
+        }
+        System.out.println("mode\tsamples/s\tCPU us/sample");
+        // The first rounds warm up the JIT
+        for (int round = 0; round < 3; round++) {
+            for (String mode : modes) {
+                run(mode, results, samples, threads, round == 2);
+            }
+        }
+    }
+
+    private static void run(String mode, final SampleResult[] results, int samples, int threads, boolean print)
+            throws Exception {
+        JMeterUtils.setProperty("mode", mode); // $NON-NLS-1$
+        Counter counter = new Counter();
+        RemoteSampleListenerImpl listener = new RemoteSampleListenerImpl(counter);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new RmiOutputStream(bytes);
+            out.writeObject(new RemoteListenerWrapper(listener));
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            final RemoteListenerWrapper wrapper = (RemoteListenerWrapper) in.readObject();
+            in.close();
+
+            com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            final int perThread = samples / threads;
+            Thread[] senders = new Thread[threads];
+            long cpu = os.getProcessCpuTime();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                senders[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < perThread; i++) {
+                            wrapper.sampleOccurred(new SampleEvent(results[i % results.length], "Thread Group")); // $NON-NLS-1$
+                        }
+                    }
+                };
+                senders[t].start();
+            }
+            for (int t = 0; t < threads; t++) {
+                senders[t].join();
+            }
+            wrapper.testEnded("localhost"); // $NON-NLS-1$
+            long elapsed = System.nanoTime() - start;
+            cpu = os.getProcessCpuTime() - cpu;
+            long sent = (long) perThread * threads;
+            if (counter.samples.get() != sent) {
+                throw new IllegalStateException(mode + ": sent " + sent + " samples, received " + counter.samples);
+            }
+            if (print) {
+                System.out.println(mode + "\t" + (sent * 1000000000L / elapsed) + "\t"
+                        + String.format("%.2f", cpu / 1000.0 / sent)); // $NON-NLS-1$
+            }
+        } finally {
+            UnicastRemoteObject.unexportObject(listener, true);
+        }
+    }
+}
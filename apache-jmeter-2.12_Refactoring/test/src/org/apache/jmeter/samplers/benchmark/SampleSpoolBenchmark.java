@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.samplers.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSpool;
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Measures how fast samples are written to and replayed from the DiskStore mode spool.
+ * <p>
+ * Several threads append copies of a set of samples to a {@link SampleSpool}, which is then replayed
+ * in parallel to a handler which only counts the samples, so the replay rate excludes RMI.
+ * The <code>Serialized</code> mode does the same as the previous DiskStoreSampleSender: one executor
+ * thread writing each event to an ObjectOutputStream, and one thread reading them back.
+ * It keeps a reference to every event written, so needs a large heap for many samples.
+ * <p>
+ * The <code>Plain</code> samples are SampleResults without assertions; the <code>Http</code> samples
+ * stand for HTTP requests checked by two assertions, using a subclass with fields of its own
+ * like HTTPSampleResult, which core cannot use.
+ * <p>
+ * Usage: samples jmeter.properties [threads [replay threads [modes [sample types]]]],
+ * e.g. <code>50000000 bin/jmeter.properties 8 4 Spool Plain,Http</code>
+ */
+public class SampleSpoolBenchmark {
+
+    /**
+     * Stands for HTTPSampleResult.
+     */
+    public static class HttpResult extends SampleResult {
+        private static final long serialVersionUID = 1L;
+
+        private String method;
+
+        private String cookies;
+
+        private String queryString;
+
+        private String redirectLocation;
+
+        public HttpResult() {
+        }
+
+        public HttpResult(HttpResult res) {
+            super(res);
+            method = res.method;
+            cookies = res.cookies;
+            queryString = res.queryString;
+            redirectLocation = res.redirectLocation;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("missing parameters:");
+            System.out.println("samples jmeter.properties [threads [replay threads [modes [sample types]]]]");
+            System.out.println("example: 50000000 bin/jmeter.properties 8 4 Spool,Serialized Plain,Http");
+            return;
+        }
+        long samples = Long.parseLong(args[0]);
+        JMeterUtils.loadJMeterProperties(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int replayThreads = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        String[] modes = (args.length > 4 ? args[4] : "Spool").split(","); // $NON-NLS-1$ $NON-NLS-2$
+        String[] types = (args.length > 5 ? args[5] : "Plain,Http").split(","); // $NON-NLS-1$ $NON-NLS-2$
+        System.out.println("mode\ttype\tsamples\twrite samples/s\treplay samples/s\tbytes/sample");
+        for (String type : types) {
+            boolean http = "Http".equals(type); // $NON-NLS-1$
+            final SampleResult[] results = new SampleResult[1024];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = http ? createHttpSample(i) : createSample(i);
+            }
+            for (String mode : modes) {
+                if ("Serialized".equals(mode)) { // $NON-NLS-1$
+                    runSerialized(results, samples, threads, type);
+                } else {
+                    runSpool(results, samples, threads, replayThreads, type);
+                }
+            }
+        }
+    }
+
+    private static SampleResult createSample(int i) {
+        SampleResult result = SampleResult.createTestSample(1400000000000L + i * 7L, 1400000000000L + i * 9L);
+        result.setSampleLabel("HTTP Request " + i % 10);
+        result.setThreadName("Thread Group 1-" + i % 100);
+        result.setResponseCode(i % 50 == 0 ? "500" : "200");
+        result.setResponseMessage(i % 50 == 0 ? "Internal Server Error" : "OK");
+        result.setSuccessful(i % 50 != 0);
+        result.setDataType(SampleResult.TEXT);
+        result.setBytes(1000 + i);
+        result.setLatency(i % 9);
+        result.setAllThreads(100);
+        result.setGroupThreads(100);
+        return result;
+    }
+
+    private static SampleResult createHttpSample(int i) throws MalformedURLException {
+        HttpResult result = new HttpResult();
+        result.setStampAndTime(1400000000000L + i * 7L, i % 100);
+        result.setSampleLabel("HTTP Request " + i % 10);
+        result.setThreadName("Thread Group 1-" + i % 100);
+        result.setURL(new URL("http://example.com/page" + i % 10 + "?id=" + i));
+        result.method = i % 4 == 0 ? "POST" : "GET";
+        result.cookies = "JSESSIONID=" + Integer.toHexString(i % 100);
+        result.queryString = i % 4 == 0 ? "user=u" + i : "";
+        result.setResponseCode(i % 50 == 0 ? "500" : "200");
+        result.setResponseMessage(i % 50 == 0 ? "Internal Server Error" : "OK");
+        result.setSuccessful(i % 50 != 0);
+        result.setDataType(SampleResult.TEXT);
+        result.setDataEncoding("UTF-8");
+        result.setContentType("text/html; charset=UTF-8");
+        result.setResponseHeaders("HTTP/1.1 200 OK\nContent-Type: text/html; charset=UTF-8\n");
+        result.setBytes(1000 + i);
+        result.setLatency(i % 9);
+        result.setAllThreads(100);
+        result.setGroupThreads(100);
+        AssertionResult response = new AssertionResult("Response Assertion");
+        if (i % 50 == 0) {
+            response.setFailure(true);
+            response.setFailureMessage("Test failed: code expected to match /200/");
+        }
+        result.addAssertionResult(response);
+        result.addAssertionResult(new AssertionResult("Duration Assertion"));
+        return result;
+    }
+
+    private static SampleResult copy(SampleResult result) {
+        return result instanceof HttpResult ? new HttpResult((HttpResult) result) : new SampleResult(result);
+    }
+
+    private static void runSpool(final SampleResult[] results, long samples, int threads, int replayThreads,
+            String type) throws Exception {
+        final SampleSpool spool = new SampleSpool(null, 64 * 1024 * 1024);
+        try {
+            final long perThread = samples / threads;
+            Thread[] writers = new Thread[threads];
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                writers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (long i = 0; i < perThread; i++) {
+                                SampleResult result = copy(results[(int) (i % results.length)]);
+                                spool.append(new SampleEvent(result, "Thread Group")); // $NON-NLS-1$
+                            }
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                };
+                writers[t].start();
+            }
+            for (int t = 0; t < threads; t++) {
+                writers[t].join();
+            }
+            long written = System.nanoTime() - start;
+            final AtomicLong count = new AtomicLong();
+            start = System.nanoTime();
+            long replayed = spool.replay(replayThreads, 1000, new SampleSpool.Handler() {
+                @Override
+                public void handle(List<SampleEvent> events) {
+                    count.addAndGet(events.size());
+                }
+            });
+            long read = System.nanoTime() - start;
+            long sent = perThread * threads;
+            if (replayed != sent || count.get() != sent) {
+                throw new IllegalStateException("Spool: wrote " + sent + " samples, replayed " + count);
+            }
+            print("Spool", type, sent, written, read, spool.getSize());
+        } finally {
+            spool.close();
+        }
+    }
+
+    private static void runSerialized(final SampleResult[] results, long samples, int threads, String type)
+            throws Exception {
+        File file = File.createTempFile("SerialisedSampleSender", ".ser"); // $NON-NLS-1$ $NON-NLS-2$
+        try {
+            final ObjectOutputStream oos =
+                new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            final ExecutorService executor = Executors.newSingleThreadExecutor();
+            final long perThread = samples / threads;
+            Thread[] writers = new Thread[threads];
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                writers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (long i = 0; i < perThread; i++) {
+                            final SampleEvent e =
+                                new SampleEvent(copy(results[(int) (i % results.length)]), "Thread Group"); // $NON-NLS-1$
+                            executor.submit(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        oos.writeObject(e);
+                                    } catch (IOException err) {
+                                        throw new IllegalStateException(err);
+                                    }
+                                }
+                            });
+                        }
+                    }
+                };
+                writers[t].start();
+            }
+            for (int t = 0; t < threads; t++) {
+                writers[t].join();
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+            oos.close();
+            long written = System.nanoTime() - start;
+            long count = 0;
+            start = System.nanoTime();
+            ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                while (ois.readObject() != null) {
+                    count++;
+                }
+            } catch (EOFException expected) {
+            } finally {
+                ois.close();
+            }
+            long read = System.nanoTime() - start;
+            long sent = perThread * threads;
+            if (count != sent) {
+                throw new IllegalStateException("Serialized: wrote " + sent + " samples, read " + count);
+            }
+            print("Serialized", type, sent, written, read, file.length());
+        } finally {
+            if (!file.delete()) {
+                System.out.println("Could not delete " + file);
+            }
+        }
+    }
+
+    private static void print(String mode, String type, long samples, long written, long read, long size) {
+        System.out.println(mode + "\t" + type + "\t" + samples + "\t" + (samples * 1000000000L / written) + "\t"
+                + (samples * 1000000000L / read) + "\t" + (size / samples));
+    }
+}
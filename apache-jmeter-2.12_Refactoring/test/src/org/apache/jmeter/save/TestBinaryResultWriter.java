@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.Arrays;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+
+public class TestBinaryResultWriter extends JMeterTestCase {
+
+    public TestBinaryResultWriter(String name) {
+        super(name);
+    }
+
+    private static SampleResult createSample(int i, String label) {
+        SampleResult result = SampleResult.createTestSample(1000000L + i * 10L, 1000000L + i * 10L + i % 7);
+        result.setSampleLabel(label);
+        result.setThreadName("Thread Group 1-" + i % 5);
+        result.setAllThreads(5);
+        result.setGroupThreads(i % 5);
+        return result;
+    }
+
+    // An HTTP request: the URL, the encoding and the timings are written
+    private static SampleResult httpSample(int i) throws Exception {
+        SampleResult result = createSample(i, "GET /page" + i % 2);
+        result.setURL(new URL("http://example.com/page" + i % 2 + "?id=" + i));
+        result.setDataEncoding("UTF-8");
+        result.setDataType(SampleResult.TEXT);
+        result.setResponseCode(i % 5 == 0 ? "404" : "200");
+        result.setResponseMessage(i % 5 == 0 ? "Not Found" : "OK");
+        result.setSuccessful(i % 5 != 0);
+        result.setBytes(i * 100);
+        result.setLatency(i % 3);
+        if (i % 4 == 0) {
+            result.setIntendedStartTime(result.getStartTime() - 25);
+        }
+        return result;
+    }
+
+    // A sample failed by its second assertion: only the first failure message is written
+    private static SampleResult failedAssertion(int i) throws Exception {
+        SampleResult result = httpSample(i);
+        result.addAssertionResult(new AssertionResult("Duration"));
+        AssertionResult assertion = new AssertionResult("Response");
+        assertion.setFailure(true);
+        assertion.setFailureMessage("expected 'ok', got 'error, retry'");
+        result.addAssertionResult(assertion);
+        AssertionResult size = new AssertionResult("Size");
+        size.setFailure(true);
+        size.setFailureMessage("too large");
+        result.addAssertionResult(size);
+        result.setSuccessful(false);
+        return result;
+    }
+
+    // A transaction: the parent is written, its sub-results are not
+    private static SampleResult transaction(int i) throws Exception {
+        SampleResult result = createSample(i, "Transaction");
+        result.setResponseCodeOK();
+        result.setSuccessful(true);
+        result.addSubResult(httpSample(i));
+        result.addSubResult(httpSample(i + 1));
+        return result;
+    }
+
+    private static SampleEvent createEvent(int i) throws Exception {
+        SampleResult result;
+        switch (i % 3) {
+        case 0:
+            result = httpSample(i);
+            break;
+        case 1:
+            result = failedAssertion(i);
+            break;
+        default:
+            result = transaction(i);
+            break;
+        }
+        return new SampleEvent(result, "tg", "host" + i % 2);
+    }
+
+    private static byte[] write(SampleSaveConfiguration config, int from, int to, boolean append) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryResultWriter writer = new BinaryResultWriter(out, config, append);
+        for (int i = from; i < to; i++) {
+            writer.write(createEvent(i));
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static void check(SampleEvent expected, SampleEvent actual) {
+        SampleResult e = expected.getResult();
+        SampleResult a = actual.getResult();
+        assertEquals(e.getTimeStamp(), a.getTimeStamp());
+        assertEquals(e.getTime(), a.getTime());
+        assertEquals(e.getSampleLabel(), a.getSampleLabel());
+        assertEquals(e.getThreadName(), a.getThreadName());
+        assertEquals(e.getResponseCode(), a.getResponseCode());
+        assertEquals(e.getResponseMessage(), a.getResponseMessage());
+        assertEquals(e.isSuccessful(), a.isSuccessful());
+        assertEquals(e.getBytes(), a.getBytes());
+        assertEquals(e.getLatency(), a.getLatency());
+        assertEquals(e.getDataType(), a.getDataType());
+        assertEquals(e.getAllThreads(), a.getAllThreads());
+        assertEquals(e.getGroupThreads(), a.getGroupThreads());
+        assertEquals(String.valueOf(e.getURL()), String.valueOf(a.getURL()));
+        assertEquals(e.getDataEncodingWithDefault(), a.getDataEncodingWithDefault());
+        assertEquals(e.getStartLag(), a.getStartLag());
+        assertEquals(e.getFirstAssertionFailureMessage(), a.getFirstAssertionFailureMessage());
+        assertEquals(e.getFirstAssertionFailureMessage() == null ? 0 : 1, a.getAssertionResults().length);
+        assertEquals(0, a.getSubResults().length);
+        assertEquals(expected.getHostname(), actual.getHostname());
+    }
+
+    public void testRoundTrip() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration(true);
+        config.setAsBinary(true);
+        config.setUrl(true);
+        config.setEncoding(true);
+        config.setStartLag(true);
+        // several blocks, the last one not full
+        int count = 10000;
+        byte[] bytes = write(config, 0, count, false);
+        BinaryResultReader reader = new BinaryResultReader(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < count; i++) {
+            SampleEvent event = reader.next();
+            assertNotNull("sample " + i, event);
+            check(createEvent(i), event);
+        }
+        assertNull(reader.next());
+        assertTrue(reader.getSaveConfig().saveAsBinary());
+        assertTrue(reader.getSaveConfig().saveThreadCounts());
+        assertFalse(reader.getSaveConfig().saveIdleTime());
+        reader.close();
+        // well below the size of the CSV file
+        assertTrue("size " + bytes.length, bytes.length < count * 10);
+    }
+
+    public void testAppendAndTruncated() throws Exception {
+        SampleSaveConfiguration all = new SampleSaveConfiguration(true);
+        SampleSaveConfiguration some = new SampleSaveConfiguration(false);
+        some.setTimestamp(true);
+        some.setLabel(true);
+        byte[] first = write(all, 0, 10, false);
+        byte[] second = write(some, 10, 20, true);
+        byte[] bytes = new byte[first.length + second.length];
+        System.arraycopy(first, 0, bytes, 0, first.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+
+        BinaryResultReader reader = new BinaryResultReader(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < 20; i++) {
+            SampleEvent event = reader.next();
+            assertEquals(createEvent(i).getResult().getSampleLabel(), event.getResult().getSampleLabel());
+            // the response code is only saved in the first part
+            assertEquals(i < 10 ? createEvent(i).getResult().getResponseCode() : "",
+                    event.getResult().getResponseCode());
+        }
+        assertNull(reader.next());
+        assertFalse(reader.getSaveConfig().saveThreadCounts());
+        reader.close();
+
+        // the incomplete last block is ignored
+        reader = new BinaryResultReader(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 3)));
+        int read = 0;
+        while (reader.next() != null) {
+            read++;
+        }
+        assertEquals(10, read);
+        reader.close();
+    }
+
+    public void testCsvConversion() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration(false);
+        config.setTimestamp(true);
+        config.setTime(true);
+        config.setLabel(true);
+        config.setCode(true);
+        config.setSuccess(true);
+        config.setBytes(true);
+        config.setFieldNames(true);
+        StringBuilder csv = new StringBuilder();
+        csv.append(CSVSaveService.printableFieldNamesToString(config)).append('\n');
+        for (int i = 0; i < 100; i++) {
+            SampleEvent event = createEvent(i);
+            event.getResult().setSaveConfig(config);
+            csv.append(CSVSaveService.resultToDelimitedString(event)).append('\n');
+        }
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        assertEquals(100, BinaryResultConverter.csvToBinary(
+                new BufferedReader(new StringReader(csv.toString())), binary, "test.csv"));
+        StringWriter back = new StringWriter();
+        assertEquals(100, BinaryResultConverter.binaryToCsv(new ByteArrayInputStream(binary.toByteArray()), back));
+        assertEquals(csv.toString(), back.toString());
+    }
+}
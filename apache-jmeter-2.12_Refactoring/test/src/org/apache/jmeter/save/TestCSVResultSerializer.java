@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save;
+
+import java.io.StringWriter;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+
+public class TestCSVResultSerializer extends JMeterTestCase {
+
+    public TestCSVResultSerializer(String name) {
+        super(name);
+    }
+
+    private static SampleEvent createEvent(int i, SampleSaveConfiguration config) throws Exception {
+        SampleResult result = SampleResult.createTestSample(1400000000000L + i * 333L, 1400000000000L + i * 334L);
+        result.setSampleLabel(i % 2 == 0 ? "label, with \"quotes\"" : "label" + i);
+        result.setThreadName("Thread Group 1-" + i);
+        result.setResponseCode(i % 3 == 0 ? null : "200");
+        result.setResponseMessage("line\nbreak");
+        result.setSuccessful(i % 2 == 0);
+        result.setBytes(i * 1000);
+        result.setLatency(-i);
+        result.setDataType(SampleResult.TEXT);
+        result.setURL(new URL("http://localhost/path?a=1,2"));
+        result.setAllThreads(i);
+        result.setGroupThreads(i);
+        if (i % 4 == 0) {
+            AssertionResult assertion = new AssertionResult("assertion");
+            assertion.setFailure(true);
+            assertion.setFailureMessage("failed");
+            result.addAssertionResult(assertion);
+        }
+        result.setSaveConfig(config);
+        return new SampleEvent(result, "tg", "host");
+    }
+
+    private static void checkSame(SampleSaveConfiguration config) throws Exception {
+        CSVResultSerializer serializer = new CSVResultSerializer(config);
+        for (int i = 0; i < 20; i++) {
+            SampleEvent event = createEvent(i, config);
+            String expected = CSVSaveService.resultToDelimitedString(event);
+            assertEquals(expected, serializer.toDelimitedString(event));
+            StringWriter out = new StringWriter();
+            serializer.writeLine(event, out);
+            assertEquals(expected + System.getProperty("line.separator"), out.toString());
+        }
+    }
+
+    public void testAllFields() throws Exception {
+        checkSame(new SampleSaveConfiguration(true));
+    }
+
+    public void testDefaultFields() throws Exception {
+        checkSame(new SampleSaveConfiguration());
+    }
+
+    public void testFewFields() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration(false);
+        config.setLabel(true);
+        config.setLatency(true);
+        checkSame(config);
+        config = new SampleSaveConfiguration(false);
+        checkSame(config);
+    }
+
+    public void testDelimiter() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration(true);
+        config.setDelimiter("\t");
+        checkSame(config);
+    }
+
+    public void testFormattedTimestamp() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration(true);
+        config.setFormatter(new SimpleDateFormat("yyyy/MM/dd HH:mm:ss"));
+        checkSame(config);
+        config.setFormatter(new SimpleDateFormat("HH:mm:ss.SSS, yyyy"));
+        checkSame(config);
+    }
+}
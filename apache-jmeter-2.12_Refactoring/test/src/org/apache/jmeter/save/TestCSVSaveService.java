@@ -23,6 +23,9 @@ import java.io.IOException;
 import java.io.StringReader;
 
 import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
 
 public class TestCSVSaveService extends JMeterTestCase {
 
@@ -138,4 +141,22 @@ public class TestCSVSaveService extends JMeterTestCase {
         checkStrings(new String[]{"a"}, out);
         assertEquals("Expected to be at EOF",-1,br.read());
     }
+
+    public void testStartLag() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration(false);
+        config.setTimestamp(true);
+        config.setTime(true);
+        config.setLabel(true);
+        config.setStartLag(true);
+        String header = CSVSaveService.printableFieldNamesToString(config);
+        assertEquals("timeStamp,elapsed,label,StartLag", header);
+        assertTrue(CSVSaveService.getSampleSaveConfiguration(header, "test").saveStartLag());
+
+        SampleResult res = SampleResult.createTestSample(10000, 10050);
+        res.setSampleLabel("late");
+        res.setIntendedStartTime(9800);
+        res.setSaveConfig(config);
+        String line = CSVSaveService.resultToDelimitedString(new SampleEvent(res, "tg"), ",");
+        assertTrue(line, line.endsWith(",late,200"));
+    }
 }
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+
+public class TestResultFileAnalyzer extends JMeterTestCase {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int SAMPLES = 500;
+
+    private File file;
+
+    public TestResultFileAnalyzer(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        file = File.createTempFile("analyzer", ".jtl");
+    }
+
+    @Override
+    public void tearDown() {
+        file.delete();
+    }
+
+    // One label per kind of sample, see createEvent, in the order of the statistics
+    private static final String[] LABELS = { "GET /search", "POST /login", "Transaction, \"checkout\"" };
+
+    private static SampleResult createSample(int i, long elapsed) {
+        SampleResult result = SampleResult.createTestSample(1400000000000L + i * 100L,
+                1400000000000L + i * 100L + elapsed);
+        result.setSampleLabel(LABELS[i % 3]);
+        result.setThreadName("Thread Group 1-" + i % 5);
+        result.setDataType(SampleResult.TEXT);
+        return result;
+    }
+
+    // An HTTP request: the URL has a comma, so it is quoted when saved
+    private static SampleResult httpSample(int i) throws Exception {
+        SampleResult result = createSample(i, i % 50);
+        result.setURL(new URL("http://example.com/search?q=a,b&page=" + i));
+        result.setResponseCode(i % 4 == 0 ? "500" : "200");
+        result.setResponseMessage(i % 4 == 0 ? "Internal Server Error" : "OK");
+        result.setSuccessful(i % 4 != 0);
+        result.setBytes(i * 10);
+        return result;
+    }
+
+    // A response assertion failure: line feeds and quotes in a quoted value,
+    // some of which will be at the start of chunks
+    private static SampleResult failedAssertion(int i) throws Exception {
+        SampleResult result = httpSample(i);
+        result.setURL(new URL("http://example.com/login"));
+        result.setResponseCodeOK();
+        result.setResponseMessage("OK");
+        if (i % 2 == 0) {
+            AssertionResult assertion = new AssertionResult("Response Assertion");
+            assertion.setFailure(true);
+            assertion.setFailureMessage("Test failed: text expected to contain /Welcome/\n"
+                    + "received: \"Login failed, retry\"\n");
+            result.addAssertionResult(assertion);
+            result.setSuccessful(false);
+        } else {
+            result.setSuccessful(true);
+        }
+        return result;
+    }
+
+    // A transaction: only the parent is saved, and its message contains a comma
+    private static SampleResult transaction(int i) throws Exception {
+        SampleResult first = httpSample(i);
+        SampleResult second = httpSample(i + 1);
+        // Times set here, as addSubResult depends on the clock offset of each sample
+        SampleResult result = createSample(i, second.getEndTime() - first.getStartTime());
+        result.storeSubResult(first);
+        result.storeSubResult(second);
+        result.setBytes(first.getBytes() + second.getBytes());
+        int failures = (first.isSuccessful() ? 0 : 1) + (second.isSuccessful() ? 0 : 1);
+        result.setResponseCode(failures == 0 ? "200" : "500");
+        result.setResponseMessage("Number of samples in transaction : 2, number of failing samples : " + failures);
+        result.setSuccessful(failures == 0);
+        return result;
+    }
+
+    private static SampleEvent createEvent(int i, SampleSaveConfiguration config) throws Exception {
+        SampleResult result;
+        switch (i % 3) {
+        case 0:
+            result = httpSample(i);
+            break;
+        case 1:
+            result = failedAssertion(i);
+            break;
+        default:
+            result = transaction(i);
+            break;
+        }
+        result.setSaveConfig(config);
+        return new SampleEvent(result, "tg");
+    }
+
+    private void writeCsv(SampleSaveConfiguration config, boolean header, String badLine) throws Exception {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+        try {
+            if (header) {
+                out.write(CSVSaveService.printableFieldNamesToString(config) + "\n");
+            }
+            for (int i = 0; i < SAMPLES; i++) {
+                out.write(CSVSaveService.resultToDelimitedString(createEvent(i, config)) + "\n");
+                if (badLine != null && i == SAMPLES / 2) {
+                    out.write(badLine + "\n");
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBinary(SampleSaveConfiguration config) throws Exception {
+        BinaryResultWriter writer = new BinaryResultWriter(
+                new BufferedOutputStream(new FileOutputStream(file)), config, false);
+        try {
+            for (int i = 0; i < SAMPLES; i++) {
+                writer.write(createEvent(i, config));
+                if (i % 20 == 19) {
+                    writer.flush(); // ends the block
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private ResultFileAnalyzer analyze(int threads, long chunkSize) throws Exception {
+        ResultFileAnalyzer analyzer = new ResultFileAnalyzer(threads, 1000, UTF8, chunkSize);
+        analyzer.analyze(file);
+        return analyzer;
+    }
+
+    private static void checkSame(LabelStatistics expected, LabelStatistics actual) {
+        assertEquals(expected.getLabel(), actual.getLabel());
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getErrorCount(), actual.getErrorCount());
+        assertEquals(expected.getMean(), actual.getMean(), 1e-9);
+        assertEquals(expected.getStandardDeviation(), actual.getStandardDeviation(), 1e-9);
+        assertEquals(expected.getMin(), actual.getMin());
+        assertEquals(expected.getMax(), actual.getMax());
+        assertEquals(expected.getPercentPoint(0.5), actual.getPercentPoint(0.5));
+        assertEquals(expected.getPercentPoint(0.9), actual.getPercentPoint(0.9));
+        assertEquals(expected.getBytes(), actual.getBytes());
+        assertEquals(expected.getDuration(), actual.getDuration());
+        assertEquals(expected.getTimelineLength(), actual.getTimelineLength());
+        for (int i = 0; i < expected.getTimelineLength(); i++) {
+            long time = expected.getTimelineTime(i);
+            assertEquals(time, actual.getTimelineTime(i));
+            assertEquals(expected.getTimelineCount(time), actual.getTimelineCount(time));
+            assertEquals(expected.getTimelineErrors(time), actual.getTimelineErrors(time));
+        }
+    }
+
+    // Compares the statistics of the file read in small chunks with statistics of the samples
+    private void checkChunks(SampleSaveConfiguration config) throws Exception {
+        List<LabelStatistics> expected = new ArrayList<LabelStatistics>();
+        LabelStatistics total = new LabelStatistics(ResultFileAnalyzer.TOTAL_LABEL, 1000);
+        // in the order of the labels
+        for (int i = 0; i < 3; i++) {
+            expected.add(new LabelStatistics(LABELS[i], 1000));
+        }
+        for (int i = 0; i < SAMPLES; i++) {
+            SampleResult result = createEvent(i, config).getResult();
+            expected.get(i % 3).add(result);
+            total.add(result);
+        }
+        for (long chunkSize = 7; chunkSize < file.length() * 2; chunkSize *= 5) {
+            ResultFileAnalyzer analyzer = analyze(3, chunkSize);
+            assertEquals(0, analyzer.getMalformedLines());
+            checkSame(total, analyzer.getTotal());
+            assertEquals(3, analyzer.getStatistics().size());
+            Iterator<LabelStatistics> it = analyzer.getStatistics().iterator();
+            for (LabelStatistics stats : expected) {
+                checkSame(stats, it.next());
+            }
+        }
+    }
+
+    // The fields which can hold commas, quotes and line feeds
+    private static SampleSaveConfiguration quotedFields() {
+        SampleSaveConfiguration config = new SampleSaveConfiguration();
+        config.setMessage(true);
+        config.setUrl(true);
+        config.setAssertionResultsFailureMessage(true);
+        return config;
+    }
+
+    public void testCsvWithHeader() throws Exception {
+        SampleSaveConfiguration config = quotedFields();
+        writeCsv(config, true, null);
+        checkChunks(config);
+    }
+
+    public void testCsvAllFields() throws Exception {
+        SampleSaveConfiguration config = new SampleSaveConfiguration(true);
+        writeCsv(config, true, null);
+        checkChunks(config);
+    }
+
+    public void testBinary() throws Exception {
+        writeBinary(quotedFields());
+        checkChunks(quotedFields());
+    }
+
+    public void testMalformedLine() throws Exception {
+        SampleSaveConfiguration config = quotedFields();
+        writeCsv(config, true, "not,a,sample");
+        for (long chunkSize = 50; chunkSize < file.length() * 2; chunkSize *= 10) {
+            ResultFileAnalyzer analyzer = analyze(2, chunkSize);
+            assertEquals(1, analyzer.getMalformedLines());
+            assertEquals(SAMPLES, analyzer.getTotal().getCount());
+        }
+    }
+
+    public void testLineNumberOfBadRecord() throws Exception {
+        SampleSaveConfiguration config = quotedFields();
+        String badLine = "not \"a\" sample";
+        writeCsv(config, true, badLine);
+        // Lines of the file, not records: the assertion failure messages have quoted line feeds
+        String content = FileUtils.readFileToString(file, "UTF-8");
+        int line = StringUtils.countMatches(content.substring(0, content.indexOf(badLine)), "\n") + 1;
+        for (long chunkSize = 50; chunkSize < file.length() * 2; chunkSize *= 10) {
+            try {
+                analyze(2, chunkSize);
+                fail("Expected IOException");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Line " + line + ":"));
+            }
+        }
+    }
+}
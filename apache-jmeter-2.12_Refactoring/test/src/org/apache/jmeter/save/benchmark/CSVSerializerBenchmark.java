@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.save.benchmark;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+import org.apache.jmeter.save.CSVResultSerializer;
+import org.apache.jmeter.save.CSVSaveService;
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Compares the time taken and the bytes allocated per sample to write CSV result lines
+ * with {@link CSVSaveService#resultToDelimitedString(SampleEvent)} and {@link PrintWriter#println(String)},
+ * as ResultCollector used to, and with {@link CSVResultSerializer}.
+ * The lines are written to a Writer which discards them, so that only the serialization is measured.
+ * <p>
+ * The allocated bytes are those reported by the HotSpot ThreadMXBean for the current thread.
+ * <p>
+ * Usage: samples jmeter.properties [timestampFormat], e.g. <code>1000000 bin/jmeter.properties</code>
+ */
+public class CSVSerializerBenchmark {
+
+    private static final Writer NULL_WRITER = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("missing parameters:");
+            System.out.println("samples jmeter.properties [timestampFormat]");
+            System.out.println("example: 1000000 bin/jmeter.properties");
+            return;
+        }
+        int samples = Integer.parseInt(args[0]);
+        JMeterUtils.loadJMeterProperties(args[1]);
+        SampleSaveConfiguration config = new SampleSaveConfiguration();
+        if (args.length > 2) {
+            config.setFormatter(new SimpleDateFormat(args[2]));
+        }
+        SampleEvent[] events = new SampleEvent[1024];
+        for (int i = 0; i < events.length; i++) {
+            SampleResult result = SampleResult.createTestSample(1400000000000L + i * 7L, 1400000000000L + i * 9L);
+            result.setSampleLabel("HTTP Request " + i % 10);
+            result.setThreadName("Thread Group 1-" + i % 100);
+            result.setResponseCode("200");
+            result.setResponseMessage("OK");
+            result.setSuccessful(true);
+            result.setDataType(SampleResult.TEXT);
+            result.setBytes(1000 + i);
+            result.setLatency(i % 50);
+            result.setAllThreads(100);
+            result.setGroupThreads(100);
+            result.setSaveConfig(config);
+            events[i] = new SampleEvent(result, "tg");
+        }
+        // warm up
+        run(false, events, samples / 10, config, false);
+        run(true, events, samples / 10, config, false);
+        run(false, events, samples, config, true);
+        run(true, events, samples, config, true);
+    }
+
+    private static void run(boolean serializer, SampleEvent[] events, int samples, SampleSaveConfiguration config,
+            boolean print) throws Exception {
+        PrintWriter out = new PrintWriter(NULL_WRITER);
+        CSVResultSerializer csv = new CSVResultSerializer(config);
+        long allocated = allocatedBytes();
+        long begin = System.nanoTime();
+        for (int i = 0; i < samples; i++) {
+            SampleEvent event = events[i & (events.length - 1)];
+            if (serializer) {
+                csv.writeLine(event, out);
+            } else {
+                out.println(CSVSaveService.resultToDelimitedString(event));
+            }
+        }
+        long end = System.nanoTime();
+        allocated = allocatedBytes() - allocated;
+        if (print) {
+            String name = serializer ? "serializer" : "resultToDelimitedString";
+            System.out.println(String.format("%-36s", name + " time:") + (end - begin) / samples + " ns/sample");
+            System.out.println(String.format("%-36s", name + " allocated:") + allocated / samples + " bytes/sample");
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -108,4 +108,59 @@ public class PackageTest extends TestCase {
         assertEquals("config1=configValue", args.getArgument(1).toString());
 
     }
+
+    public void testRecoveryOfMergedProperty() throws Exception {
+        ConfigTestElement config = new ConfigTestElement();
+        config.setProperty("server", "jakarta");
+        config.setRunningVersion(true);
+        ConfigTestElement sampler = new ConfigTestElement();
+        sampler.setRunningVersion(true);
+        sampler.addTestElement(config);
+        // Changes the property held by config, as it was merged in by reference
+        sampler.setProperty("server", "apache");
+        assertEquals("apache", config.getPropertyAsString("server"));
+        config.recoverRunningVersion();
+        sampler.recoverRunningVersion();
+        assertEquals("jakarta", config.getPropertyAsString("server"));
+        assertTrue(sampler.getProperty("server") instanceof NullProperty);
+    }
+
+    public void testRecoveryOfPropertyChangedInPlace() throws Exception {
+        ConfigTestElement config = new ConfigTestElement();
+        config.setProperty("server", "jakarta");
+        config.setRunningVersion(true);
+        config.getProperty("server").setObjectValue("apache");
+        assertEquals("apache", config.getPropertyAsString("server"));
+        config.recoverRunningVersion();
+        assertEquals("jakarta", config.getPropertyAsString("server"));
+    }
+
+    public void testRecoveryOfUnchangedElement() throws Exception {
+        ConfigTestElement config = new ConfigTestElement();
+        config.setProperty("server", "jakarta");
+        config.setRunningVersion(true);
+        assertEquals("jakarta", config.getPropertyAsString("server"));
+        config.recoverRunningVersion();
+        assertEquals("jakarta", config.getPropertyAsString("server"));
+        config.setProperty("server", "apache");
+        config.recoverRunningVersion();
+        assertEquals("jakarta", config.getPropertyAsString("server"));
+    }
+
+    public void testRecoveryOfNestedElement() throws Exception {
+        Arguments args = new Arguments();
+        args.addArgument("arg1", "val1", "=");
+        ConfigTestElement te = new ConfigTestElement();
+        te.setProperty(new TestElementProperty("args", args));
+        te.setRunningVersion(true);
+        Arguments running = (Arguments) te.getProperty("args").getObjectValue();
+        te.recoverRunningVersion();
+        // Change the nested element without fetching it from te again
+        running.addArgument("arg2", "val2");
+        running.getArgument(0).setValue("changed");
+        assertEquals(2, args.getArgumentCount());
+        te.recoverRunningVersion();
+        assertEquals(1, args.getArgumentCount());
+        assertEquals("val1", args.getArgument(0).getValue());
+    }
 }
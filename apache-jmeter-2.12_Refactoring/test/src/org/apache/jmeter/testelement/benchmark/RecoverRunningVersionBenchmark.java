@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.testelement.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.config.ConfigTestElement;
+import org.apache.jmeter.samplers.AbstractSampler;
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.property.TestElementProperty;
+
+/**
+ * Measures the per-sample cost of configuring a sampler and recovering the running version
+ * of the elements in scope, as done by TestCompiler for each sample.
+ * <p>
+ * Each config element has the given number of string properties and an Arguments
+ * element holding the same number of arguments.
+ * <p>
+ * Usage: configs propertiesPerConfig samples, e.g. <code>40 10 200000</code>
+ */
+public class RecoverRunningVersionBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.out.println("missing parameters:");
+            System.out.println("configs propertiesPerConfig samples");
+            System.out.println("example: 40 10 200000");
+            return;
+        }
+        int configCount = Integer.parseInt(args[0]);
+        int propCount = Integer.parseInt(args[1]);
+        int samples = Integer.parseInt(args[2]);
+
+        List<ConfigTestElement> configs = new ArrayList<ConfigTestElement>(configCount);
+        for (int i = 0; i < configCount; i++) {
+            ConfigTestElement config = new ConfigTestElement();
+            config.setName("config" + i);
+            Arguments arguments = new Arguments();
+            for (int j = 0; j < propCount; j++) {
+                config.setProperty("config" + i + ".prop" + j, "value" + j);
+                arguments.addArgument("arg" + j, "value" + j);
+            }
+            config.setProperty(new TestElementProperty("config" + i + ".args", arguments));
+            config.setRunningVersion(true);
+            configs.add(config);
+        }
+        BenchmarkSampler sampler = new BenchmarkSampler();
+        sampler.setName("sampler");
+        sampler.setRunningVersion(true);
+
+        // Warm up, then measure
+        runSamples(sampler, configs, samples / 10);
+        long[] elapsed = runSamples(sampler, configs, samples);
+
+        System.out.println("configs:             " + configCount + " with " + propCount + " properties each");
+        System.out.println("samples:             " + samples);
+        System.out.println("configure ns/sample: " + (elapsed[0] / samples));
+        System.out.println("recover ns/sample:   " + (elapsed[1] / samples));
+        System.out.println("  of which configs:  " + (elapsed[2] / samples));
+    }
+
+    /**
+     * @return the time spent configuring the sampler, recovering all the elements
+     * and recovering the config elements, in nanoseconds
+     */
+    private static long[] runSamples(BenchmarkSampler sampler, List<ConfigTestElement> configs, int samples) {
+        long[] elapsed = new long[3];
+        for (int i = 0; i < samples; i++) {
+            long start = System.nanoTime();
+            // TestCompiler.configureSampler() merges the configs into the sampler
+            for (ConfigTestElement config : configs) {
+                sampler.addTestElement(config);
+            }
+            long configured = System.nanoTime();
+            // TestCompiler.done() recovers all the elements in the package
+            for (ConfigTestElement config : configs) {
+                config.recoverRunningVersion();
+            }
+            long configsRecovered = System.nanoTime();
+            sampler.recoverRunningVersion();
+            long end = System.nanoTime();
+            elapsed[0] += configured - start;
+            elapsed[1] += end - configured;
+            elapsed[2] += configsRecovered - configured;
+        }
+        return elapsed;
+    }
+
+    private static class BenchmarkSampler extends AbstractSampler {
+        private static final long serialVersionUID = 240L;
+
+        @Override
+        public SampleResult sample(Entry e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestArrivalSchedule extends TestCase {
+
+    public TestArrivalSchedule(String name) {
+        super(name);
+    }
+
+    public void testConstant() throws Exception {
+        ArrivalSchedule schedule = ArrivalSchedule.constant(4, 2);
+        long[] expected = { 0, 250, 500, 750, 1000, 1250, 1500, 1750 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], schedule.nextArrival());
+        }
+        assertEquals(-1, schedule.nextArrival());
+        assertEquals(8, schedule.getArrivals());
+    }
+
+    public void testNoRate() throws Exception {
+        assertEquals(-1, ArrivalSchedule.constant(0, 10).nextArrival());
+    }
+
+    public void testRampFromZero() throws Exception {
+        // Rate goes from 0 to 10/s over 10 seconds, so 50 arrivals during the ramp
+        ArrivalSchedule schedule = ArrivalSchedule.ramp(0, 10, 10, 10);
+        long previousGap = Long.MAX_VALUE;
+        long previous = schedule.nextArrival();
+        assertEquals(0, previous);
+        long next;
+        while ((next = schedule.nextArrival()) >= 0) {
+            long gap = next - previous;
+            assertTrue("gaps should shrink as the rate increases", gap <= previousGap);
+            previousGap = gap;
+            previous = next;
+        }
+        assertEquals(50, schedule.getArrivals());
+    }
+
+    public void testRampThenHold() throws Exception {
+        // 10 arrivals during the ramp, then 10/s for the remaining 2 seconds
+        ArrivalSchedule schedule = ArrivalSchedule.ramp(0, 10, 2, 4);
+        while (schedule.nextArrival() >= 0) {
+            // drain
+        }
+        assertEquals(30, schedule.getArrivals());
+    }
+
+    public void testStep() throws Exception {
+        // 2 steps of 1 second at 2/s then 4/s, then 6/s for the last second
+        ArrivalSchedule schedule = ArrivalSchedule.step(2, 6, 2, 2, 3);
+        long[] expected = { 0, 500, 1000, 1250, 1500, 1750 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], schedule.nextArrival());
+        }
+        int remaining = 0;
+        while (schedule.nextArrival() >= 0) {
+            remaining++;
+        }
+        assertEquals(6, remaining);
+    }
+
+    public void testUnlimited() throws Exception {
+        ArrivalSchedule schedule = ArrivalSchedule.constant(1000, 0);
+        long last = 0;
+        for (int i = 0; i < 100000; i++) {
+            last = schedule.nextArrival();
+        }
+        assertEquals(99999, last);
+    }
+
+    public void testPoissonMean() throws Exception {
+        ArrivalSchedule schedule = ArrivalSchedule.poisson(100, 100, new Random(1234));
+        long previous = -1;
+        long next;
+        while ((next = schedule.nextArrival()) >= 0) {
+            assertTrue(next >= previous);
+            previous = next;
+        }
+        // 10000 expected; the standard deviation is 100
+        long arrivals = schedule.getArrivals();
+        assertTrue("arrivals=" + arrivals, arrivals > 9500 && arrivals < 10500);
+    }
+}
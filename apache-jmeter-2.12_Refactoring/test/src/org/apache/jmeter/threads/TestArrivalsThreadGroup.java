@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jmeter.control.LoopController;
+import org.apache.jmeter.engine.JMeterEngineException;
+import org.apache.jmeter.engine.StandardJMeterEngine;
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.AbstractSampler;
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.TestPlan;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.collections.ListedHashTree;
+
+/**
+ * Runs an {@link ArrivalsThreadGroup} in the engine with a sampler that takes a fixed time,
+ * and checks how its thread pool follows the arrival rate.
+ */
+public class TestArrivalsThreadGroup extends JMeterTestCase {
+
+    private StandardJMeterEngine engine;
+
+    public TestArrivalsThreadGroup(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        TimedSampler.SAMPLES.set(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (engine != null) {
+            engine.stopTest(true);
+            while (engine.isActive()) {
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+        }
+        JMeterUtils.getJMeterProperties().remove(ArrivalsThreadGroup.IDLE_TIMEOUT);
+        JMeterUtils.getJMeterProperties().remove(ArrivalsThreadGroup.MAX_BACKLOG);
+    }
+
+    public void testPoolGrowsToMaximum() throws Exception {
+        // 50 arrivals/s taking 200 ms each need about 10 threads
+        ArrivalsThreadGroup group = createGroup(ArrivalsThreadGroup.TYPE_CONSTANT, 50, 50, 3, 1, 20);
+        run(group, 200);
+        int maxThreads = 0;
+        for (int i = 0; i < 100; i++) {
+            maxThreads = Math.max(maxThreads, group.numberOfActiveThreads());
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertTrue("pool did not grow: " + maxThreads, maxThreads > 1);
+        assertTrue("pool exceeded maximum: " + maxThreads, maxThreads <= 20);
+        assertTrue(TimedSampler.SAMPLES.get() > 20);
+        assertEquals(0, group.getDroppedArrivals());
+    }
+
+    public void testIdleThreadsAreRetired() throws Exception {
+        JMeterUtils.setProperty(ArrivalsThreadGroup.IDLE_TIMEOUT, "300"); // $NON-NLS-1$
+        // One second at 40 arrivals/s, then 1 arrival/s which one thread can handle
+        ArrivalsThreadGroup group = createGroup(ArrivalsThreadGroup.TYPE_STEP, 40, 1, 10, 1, 10);
+        group.setSteps(1);
+        group.setRampTime(1);
+        run(group, 200);
+        int maxThreads = 0;
+        long end = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < end) {
+            maxThreads = Math.max(maxThreads, group.numberOfActiveThreads());
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertTrue("pool did not grow: " + maxThreads, maxThreads > 2);
+        int threads = Integer.MAX_VALUE;
+        end = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < end && threads > 2) {
+            TimeUnit.MILLISECONDS.sleep(50);
+            threads = group.numberOfActiveThreads();
+        }
+        assertTrue("idle threads were not retired: " + threads, threads <= 2);
+    }
+
+    public void testBacklogIsDropped() throws Exception {
+        JMeterUtils.setProperty(ArrivalsThreadGroup.MAX_BACKLOG, "5"); // $NON-NLS-1$
+        // A single thread taking 500 ms per arrival cannot keep up with 100 arrivals/s
+        ArrivalsThreadGroup group = createGroup(ArrivalsThreadGroup.TYPE_CONSTANT, 100, 100, 1, 1, 1);
+        run(group, 500);
+        long end = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < end && group.getDroppedArrivals() < 50) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        assertTrue("arrivals were not dropped: " + group.getDroppedArrivals(), group.getDroppedArrivals() >= 50);
+        assertEquals(1, group.numberOfActiveThreads());
+    }
+
+    private static ArrivalsThreadGroup createGroup(String type, double startRate, double rate, int duration,
+            int minThreads, int maxThreads) {
+        ArrivalsThreadGroup group = new ArrivalsThreadGroup();
+        group.setName("Arrivals"); // $NON-NLS-1$
+        group.setArrivalType(type);
+        group.setStartRate(Double.toString(startRate));
+        group.setTargetRate(Double.toString(rate));
+        group.setDuration(duration);
+        group.setMinThreads(minThreads);
+        group.setNumThreads(maxThreads);
+        return group;
+    }
+
+    private void run(ArrivalsThreadGroup group, long sampleTime) throws JMeterEngineException {
+        LoopController loop = new LoopController();
+        loop.setLoops(-1);
+        loop.setContinueForever(true);
+        group.setSamplerController(loop);
+        TimedSampler sampler = new TimedSampler();
+        sampler.setName("Sampler"); // $NON-NLS-1$
+        sampler.setProperty(TimedSampler.SAMPLE_TIME, sampleTime);
+        ListedHashTree tree = new ListedHashTree();
+        TestPlan plan = new TestPlan("Plan"); // $NON-NLS-1$
+        tree.add(plan);
+        tree.add(plan, group);
+        tree.add(new Object[] { plan, group }, sampler);
+        engine = new StandardJMeterEngine();
+        engine.configure(tree);
+        engine.runTest();
+    }
+
+    /**
+     * Sampler which takes a fixed time.
+     */
+    public static class TimedSampler extends AbstractSampler {
+        private static final long serialVersionUID = 1L;
+
+        static final String SAMPLE_TIME = "TimedSampler.sampleTime"; // $NON-NLS-1$
+
+        static final AtomicInteger SAMPLES = new AtomicInteger();
+
+        @Override
+        public SampleResult sample(Entry e) {
+            SampleResult res = new SampleResult();
+            res.setSampleLabel(getName());
+            res.sampleStart();
+            try {
+                TimeUnit.MILLISECONDS.sleep(getPropertyAsLong(SAMPLE_TIME));
+                res.setSuccessful(true);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            res.sampleEnd();
+            SAMPLES.incrementAndGet();
+            return res;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+public class TestJMeterThreadFactory extends TestCase {
+
+    public TestJMeterThreadFactory(String name) {
+        super(name);
+    }
+
+    public void testPlatform() throws Exception {
+        ThreadFactory factory = JMeterThreadFactory.createThreadFactory(JMeterThreadFactory.MODE_PLATFORM);
+        assertTrue(factory instanceof JMeterThreadFactory.PlatformThreadFactory);
+        assertRuns(factory);
+    }
+
+    public void testPlatformIsNotDaemon() throws Exception {
+        final ThreadFactory factory = JMeterThreadFactory.createThreadFactory("");
+        final AtomicBoolean daemon = new AtomicBoolean(true);
+        Thread parent = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                daemon.set(factory.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                }).isDaemon());
+            }
+        });
+        parent.setDaemon(true);
+        parent.start();
+        parent.join();
+        assertFalse(daemon.get());
+    }
+
+    public void testVirtual() throws Exception {
+        // Falls back to platform threads on JVMs without virtual threads
+        assertRuns(JMeterThreadFactory.createThreadFactory(JMeterThreadFactory.MODE_VIRTUAL));
+    }
+
+    public void testCustomFactory() throws Exception {
+        ThreadFactory factory = JMeterThreadFactory.createThreadFactory(CountingThreadFactory.class.getName());
+        assertTrue(factory instanceof CountingThreadFactory);
+        assertRuns(factory);
+        assertEquals(1, ((CountingThreadFactory) factory).count);
+    }
+
+    public void testInvalidFactory() throws Exception {
+        ThreadFactory factory = JMeterThreadFactory.createThreadFactory("no.such.Factory");
+        assertTrue(factory instanceof JMeterThreadFactory.PlatformThreadFactory);
+    }
+
+    private static void assertRuns(ThreadFactory factory) throws InterruptedException {
+        final AtomicBoolean ran = new AtomicBoolean(false);
+        Thread t = factory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                ran.set(true);
+            }
+        });
+        t.start();
+        t.join();
+        assertTrue(ran.get());
+    }
+
+    public static class CountingThreadFactory implements ThreadFactory {
+        private int count;
+
+        @Override
+        public Thread newThread(Runnable r) {
+            count++;
+            return new Thread(r);
+        }
+    }
+}
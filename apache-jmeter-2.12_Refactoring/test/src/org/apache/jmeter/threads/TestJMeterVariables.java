@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import junit.framework.TestCase;
+
+public class TestJMeterVariables extends TestCase {
+
+    public TestJMeterVariables(String name) {
+        super(name);
+    }
+
+    public void testSlotsAndNames() throws Exception {
+        JMeterVariables vars = new JMeterVariables();
+        vars.put("TestJMeterVariables.a", "1");
+        int slot = JMeterVariables.slotOf("TestJMeterVariables.a");
+        assertTrue(slot >= 0);
+        assertEquals(slot, JMeterVariables.slotOf("TestJMeterVariables.a"));
+        assertEquals("1", vars.get(slot));
+        vars.putObject(slot, "2");
+        assertEquals("2", vars.get("TestJMeterVariables.a"));
+        assertEquals("2", vars.remove("TestJMeterVariables.a"));
+        assertNull(vars.get(slot));
+        assertNull(vars.remove("TestJMeterVariables.a"));
+    }
+
+    public void testThreadsDoNotShareValues() throws Exception {
+        JMeterVariables first = new JMeterVariables();
+        JMeterVariables second = new JMeterVariables();
+        int slot = JMeterVariables.slotOf("TestJMeterVariables.b");
+        first.put("TestJMeterVariables.b", "first");
+        assertNull(second.get(slot));
+        assertNull(second.get("TestJMeterVariables.b"));
+        second.putAll(first);
+        assertEquals("first", second.get(slot));
+    }
+
+    public void testEntrySet() throws Exception {
+        JMeterVariables vars = new JMeterVariables();
+        Map<String, Object> expected = new HashMap<String, Object>();
+        for (Iterator<Entry<String, Object>> it = vars.getIterator(); it.hasNext();) {
+            Entry<String, Object> entry = it.next();
+            expected.put(entry.getKey(), entry.getValue());
+        }
+        Map<String, String> added = new HashMap<String, String>();
+        added.put("TestJMeterVariables.c", "c");
+        added.put("TestJMeterVariables.d", "d");
+        vars.putAll(added);
+        vars.putObject("TestJMeterVariables.e", Integer.valueOf(5));
+        expected.putAll(added);
+        expected.put("TestJMeterVariables.e", Integer.valueOf(5));
+        Map<String, Object> actual = new HashMap<String, Object>();
+        for (Entry<String, Object> entry : vars.entrySet()) {
+            actual.put(entry.getKey(), entry.getValue());
+        }
+        assertEquals(expected, actual);
+    }
+
+    public void testNamesOnlyGetSlotsFromSlotOf() throws Exception {
+        JMeterVariables vars = new JMeterVariables();
+        vars.put("TestJMeterVariables.f_1", "f");
+        assertFalse(JMeterVariables.hasSlot("TestJMeterVariables.f_1"));
+        // A name given a slot after it was used still finds its value
+        int slot = JMeterVariables.slotOf("TestJMeterVariables.f_1");
+        assertEquals("f", vars.get(slot));
+        vars.putObject(slot, "g");
+        assertEquals("g", vars.get("TestJMeterVariables.f_1"));
+        assertEquals(1, count(vars, "TestJMeterVariables.f_1"));
+    }
+
+    public void testNullValues() throws Exception {
+        JMeterVariables vars = new JMeterVariables();
+        vars.putObject("TestJMeterVariables.g", null);
+        vars.putObject(JMeterVariables.slotOf("TestJMeterVariables.h"), null);
+        Map<String, Object> actual = new HashMap<String, Object>();
+        for (Entry<String, Object> entry : vars.entrySet()) {
+            actual.put(entry.getKey(), entry.getValue());
+        }
+        assertTrue(actual.containsKey("TestJMeterVariables.g"));
+        assertTrue(actual.containsKey("TestJMeterVariables.h"));
+        assertNull(actual.get("TestJMeterVariables.h"));
+        vars.remove("TestJMeterVariables.h");
+        assertEquals(0, count(vars, "TestJMeterVariables.h"));
+    }
+
+    public void testResetSlots() throws Exception {
+        JMeterVariables vars = new JMeterVariables();
+        int generation = JMeterVariables.getSlotGeneration();
+        vars.putObject(JMeterVariables.slotOf("TestJMeterVariables.i"), "i");
+        JMeterVariables.resetSlots();
+        assertEquals(generation + 1, JMeterVariables.getSlotGeneration());
+        assertFalse(JMeterVariables.hasSlot("TestJMeterVariables.i"));
+        int slot = JMeterVariables.slotOf("TestJMeterVariables.j");
+        assertEquals(0, slot);
+        assertNull(vars.get(slot));
+        assertEquals("i", vars.get("TestJMeterVariables.i"));
+        assertEquals("i", vars.get(JMeterVariables.slotOf("TestJMeterVariables.i")));
+    }
+
+    public void testSlotOfPreviousGeneration() throws Exception {
+        JMeterVariables vars = new JMeterVariables();
+        int generation = JMeterVariables.getSlotGeneration();
+        JMeterVariables.slotOf("TestJMeterVariables.k0");
+        int slot = JMeterVariables.slotOf("TestJMeterVariables.k");
+        vars.put("TestJMeterVariables.k", "k");
+        JMeterVariables.resetSlots();
+        // The old slot is given to another name
+        vars.put("TestJMeterVariables.l0", "l0");
+        vars.putObject(JMeterVariables.slotOf("TestJMeterVariables.l0"), "l0");
+        vars.putObject(JMeterVariables.slotOf("TestJMeterVariables.l"), "l");
+        assertEquals("k", vars.get("TestJMeterVariables.k", slot, generation));
+        assertEquals("l", vars.get("TestJMeterVariables.l", slot, JMeterVariables.getSlotGeneration()));
+        // A slot of a later generation than the values is not found rather than failing
+        assertNull(new JMeterVariables().get(slot + 100));
+    }
+
+    public void testNamesWithoutSlots() throws Exception {
+        JMeterVariables vars = new JMeterVariables();
+        vars.put("TestJMeterVariables.m", "1");
+        vars.put("TestJMeterVariables.m", "2");
+        assertFalse(JMeterVariables.hasSlot("TestJMeterVariables.m"));
+        assertEquals("2", vars.get("TestJMeterVariables.m"));
+        vars.put("TestJMeterVariables.m", null);
+        assertNull(vars.get("TestJMeterVariables.m"));
+        // Given a slot while defined: later puts by name go to the slot
+        vars.put("TestJMeterVariables.n", "1");
+        int slot = JMeterVariables.slotOf("TestJMeterVariables.n");
+        vars.put("TestJMeterVariables.n", "2");
+        assertEquals("2", vars.get(slot));
+        vars.putObject(slot, "3");
+        vars.put("TestJMeterVariables.n", "4");
+        assertEquals("4", vars.get(slot));
+        assertEquals("4", vars.get("TestJMeterVariables.n"));
+        assertEquals(1, count(vars, "TestJMeterVariables.n"));
+    }
+
+    private static int count(JMeterVariables vars, String name) {
+        int count = 0;
+        for (Entry<String, Object> entry : vars.entrySet()) {
+            if (entry.getKey().equals(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jmeter.engine.util.NoThreadClone;
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleListener;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.AbstractTestElement;
+
+public class TestListenerNotifier extends JMeterTestCase {
+
+    public TestListenerNotifier(String name) {
+        super(name);
+    }
+
+    public void testAsyncSharedListener() throws Exception {
+        final SharedListener shared = new SharedListener();
+        final ThreadListener perThread = new ThreadListener();
+        final ListenerNotifier notifier = new ListenerNotifier(true);
+        final List<SampleListener> listeners = Arrays.asList(new SampleListener[] { shared, perThread });
+        final int producers = 4;
+        final int perProducer = 5000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread("Producer " + p) {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        SampleResult result = new SampleResult();
+                        result.setSampleLabel(getName() + ":" + i);
+                        notifier.notifyListeners(new SampleEvent(result, "tg"), listeners);
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        for (int p = 0; p < producers; p++) {
+            threads[p].join();
+        }
+        assertEquals(1, ListenerNotifier.getAsyncQueues().size());
+        ListenerNotifier.waitForAsyncListeners();
+        assertEquals(0, ListenerNotifier.getAsyncQueues().size());
+
+        assertEquals(producers * perProducer, shared.labels.size());
+        assertEquals(producers * perProducer, perThread.sampled);
+        assertFalse("shared listener should not run in the sampling threads", shared.inProducer);
+        // Events from one thread keep their order
+        int[] next = new int[producers];
+        for (String label : shared.labels) {
+            int p = label.charAt("Producer ".length()) - '0';
+            assertEquals("Producer " + p + ":" + next[p]++, label);
+        }
+    }
+
+    public void testSync() throws Exception {
+        SharedListener shared = new SharedListener();
+        ListenerNotifier notifier = new ListenerNotifier(false);
+        notifier.notifyListeners(new SampleEvent(new SampleResult(), "tg"),
+                Arrays.asList(new SampleListener[] { shared }));
+        assertEquals(1, shared.labels.size());
+        assertEquals(0, ListenerNotifier.getAsyncQueues().size());
+    }
+
+    public static class SharedListener extends AbstractTestElement implements SampleListener, NoThreadClone {
+        private static final long serialVersionUID = 240L;
+
+        private final List<String> labels = new ArrayList<String>();
+
+        private volatile boolean inProducer;
+
+        @Override
+        public synchronized void sampleOccurred(SampleEvent e) {
+            if (Thread.currentThread().getName().startsWith("Producer")) {
+                inProducer = true;
+            }
+            labels.add(e.getResult().getSampleLabel());
+        }
+
+        @Override
+        public void sampleStarted(SampleEvent e) {
+        }
+
+        @Override
+        public void sampleStopped(SampleEvent e) {
+        }
+    }
+
+    public static class ThreadListener extends AbstractTestElement implements SampleListener {
+        private static final long serialVersionUID = 240L;
+
+        private int sampled;
+
+        @Override
+        public synchronized void sampleOccurred(SampleEvent e) {
+            assertTrue("listeners cloned per thread should run in the sampling thread",
+                    Thread.currentThread().getName().startsWith("Producer"));
+            sampled++;
+        }
+
+        @Override
+        public void sampleStarted(SampleEvent e) {
+        }
+
+        @Override
+        public void sampleStopped(SampleEvent e) {
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package org.apache.jmeter.threads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.jmeter.assertions.Assertion;
+import org.apache.jmeter.config.ConfigTestElement;
+import org.apache.jmeter.control.Controller;
+import org.apache.jmeter.processor.PostProcessor;
+import org.apache.jmeter.processor.PreProcessor;
+import org.apache.jmeter.samplers.AbstractSampler;
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleListener;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.timers.Timer;
+
+public class TestSamplePackage extends TestCase {
+
+    public TestSamplePackage(String name) {
+        super(name);
+    }
+
+    private static SamplePackage createPackage(SampleListener... listeners) {
+        SamplePackage pack = new SamplePackage(new ArrayList<ConfigTestElement>(),
+                new ArrayList<SampleListener>(Arrays.asList(listeners)), new ArrayList<Timer>(),
+                new ArrayList<Assertion>(), new ArrayList<PostProcessor>(),
+                new ArrayList<PreProcessor>(), new ArrayList<Controller>());
+        pack.setSampler(new NoopSampler());
+        pack.setRunningVersion(true);
+        return pack;
+    }
+
+    public void testAddSampleListener() {
+        Listener listener = new Listener();
+        SamplePackage pack = createPackage(listener);
+        List<SampleListener> before = pack.getSampleListeners();
+        Listener added = new Listener();
+        pack.addSampleListener(added);
+        assertEquals(Arrays.asList(listener, added), pack.getSampleListeners());
+        assertEquals(Arrays.asList(listener), before);
+        try {
+            pack.getSampleListeners().add(new Listener());
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    public void testSubSamplerListenersFollowAddedListeners() {
+        Listener shared = new Listener();
+        Listener own = new Listener();
+        SamplePackage transactionPack = createPackage(shared);
+        SamplePackage pack = createPackage(shared, own);
+        assertEquals(Arrays.asList(own), pack.getSampleListeners(transactionPack));
+        transactionPack.addSampleListener(own);
+        assertEquals(0, pack.getSampleListeners(transactionPack).size());
+        Listener added = new Listener();
+        pack.addSampleListener(added);
+        assertEquals(Arrays.asList(added), pack.getSampleListeners(transactionPack));
+        assertEquals(Arrays.asList(shared, own, added), pack.getSampleListeners(null));
+    }
+
+    public void testAddedElementsRecovered() {
+        SamplePackage pack = createPackage();
+        NoopTimer timer = new NoopTimer();
+        timer.setName("timer");
+        timer.setRunningVersion(true);
+        pack.addTimer(timer);
+        assertEquals(Arrays.asList(timer), pack.getTimers());
+        timer.setName("changed");
+        pack.recoverRunningVersion();
+        assertEquals("timer", timer.getName());
+    }
+
+    public void testNewSamplerNotRecovered() {
+        SamplePackage pack = createPackage();
+        NoopSampler sampler = new NoopSampler();
+        sampler.setName("sampler");
+        pack.setSampler(sampler);
+        pack.recoverRunningVersion();
+        assertFalse(sampler.recovered);
+    }
+
+    public static class Listener extends AbstractTestElement implements SampleListener {
+        private static final long serialVersionUID = 240L;
+
+        @Override
+        public void sampleOccurred(SampleEvent e) {
+        }
+
+        @Override
+        public void sampleStarted(SampleEvent e) {
+        }
+
+        @Override
+        public void sampleStopped(SampleEvent e) {
+        }
+    }
+
+    public static class NoopTimer extends AbstractTestElement implements Timer {
+        private static final long serialVersionUID = 240L;
+
+        @Override
+        public long delay() {
+            return 0;
+        }
+    }
+
+    public static class NoopSampler extends AbstractSampler {
+        private static final long serialVersionUID = 240L;
+
+        private boolean recovered;
+
+        @Override
+        public SampleResult sample(Entry e) {
+            return null;
+        }
+
+        @Override
+        public void recoverRunningVersion() {
+            recovered = true;
+            super.recoverRunningVersion();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads.benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.apache.jmeter.assertions.Assertion;
+import org.apache.jmeter.assertions.AssertionResult;
+import org.apache.jmeter.control.LoopController;
+import org.apache.jmeter.control.TransactionController;
+import org.apache.jmeter.engine.TurnElementsOn;
+import org.apache.jmeter.processor.PostProcessor;
+import org.apache.jmeter.processor.PreProcessor;
+import org.apache.jmeter.samplers.AbstractSampler;
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleListener;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.threads.JMeterThread;
+import org.apache.jmeter.threads.ListenerNotifier;
+import org.apache.jmeter.threads.ThreadGroup;
+import org.apache.jmeter.timers.Timer;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.collections.HashTree;
+import org.apache.jorphan.collections.ListedHashTree;
+import org.apache.jorphan.logging.LoggingManager;
+
+/**
+ * Measures the overhead of JMeterThread.process_sampler() by running a single thread
+ * over a plan of no-op elements.
+ * <p>
+ * Each iteration runs one sampler on its own and one inside a transaction controller
+ * which generates a parent sample; each sampler has the given number of listeners,
+ * assertions, timers, pre- and post-processors in scope.
+ * <p>
+ * Usage: iterations elementsPerType, e.g. <code>1000000 5</code>
+ */
+public class ProcessSamplerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("missing parameters:");
+            System.out.println("iterations elementsPerType");
+            System.out.println("example: 1000000 5");
+            return;
+        }
+        int iterations = Integer.parseInt(args[0]);
+        int elements = Integer.parseInt(args[1]);
+
+        File props = File.createTempFile("jmeter", ".properties"); // $NON-NLS-1$ $NON-NLS-2$
+        props.deleteOnExit();
+        JMeterUtils.loadJMeterProperties(props.getAbsolutePath());
+        LoggingManager.setPriority("WARN"); // $NON-NLS-1$
+
+        runThread(iterations / 10, elements); // warm up
+        ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        long allocatedBefore = allocatedBytes(mxBean);
+        long start = System.nanoTime();
+        long samples = runThread(iterations, elements);
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes(mxBean) - allocatedBefore;
+
+        System.out.println("iterations:      " + iterations + " with " + elements + " elements of each type");
+        System.out.println("samples:         " + samples);
+        System.out.println("ns/sample:       " + (elapsed / samples));
+        System.out.println("bytes/sample:    " + (allocated >= 0 ? allocated / samples : -1));
+    }
+
+    /**
+     * @return the number of samples seen by the listeners
+     */
+    private static long runThread(int iterations, int elements) {
+        ThreadGroup threadGroup = new ThreadGroup();
+        threadGroup.setName("Thread Group"); // $NON-NLS-1$
+        threadGroup.setNumThreads(1);
+        LoopController loop = new LoopController();
+        loop.setLoops(iterations);
+        threadGroup.setSamplerController(loop);
+
+        ListedHashTree tree = new ListedHashTree();
+        tree.add(threadGroup);
+        HashTree groupTree = tree.getTree(threadGroup);
+        CountingListener counter = new CountingListener();
+        groupTree.add(counter);
+        for (int i = 1; i < elements; i++) {
+            groupTree.add(new CountingListener());
+        }
+        for (int i = 0; i < elements; i++) {
+            groupTree.add(new NoopAssertion());
+            groupTree.add(new NoopTimer());
+            groupTree.add(new NoopPreProcessor());
+            groupTree.add(new NoopPostProcessor());
+        }
+        groupTree.add(new NoopSampler());
+        TransactionController transaction = new TransactionController();
+        transaction.setName("Transaction"); // $NON-NLS-1$
+        transaction.setParent(true);
+        groupTree.add(transaction);
+        groupTree.getTree(transaction).add(new NoopSampler());
+        tree.traverse(new TurnElementsOn());
+
+        JMeterThread thread = new JMeterThread(tree, threadGroup, new ListenerNotifier());
+        thread.setThreadGroup(threadGroup);
+        thread.setThreadName("Thread Group 1-1"); // $NON-NLS-1$
+        thread.run();
+        return counter.count;
+    }
+
+    private static long allocatedBytes(ThreadMXBean mxBean) {
+        if (mxBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) mxBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    public static class NoopSampler extends AbstractSampler {
+        private static final long serialVersionUID = 240L;
+
+        @Override
+        public SampleResult sample(Entry e) {
+            SampleResult result = new SampleResult();
+            result.sampleStart();
+            result.sampleEnd();
+            result.setSuccessful(true);
+            return result;
+        }
+    }
+
+    public static class CountingListener extends AbstractTestElement implements SampleListener {
+        private static final long serialVersionUID = 240L;
+
+        private long count;
+
+        @Override
+        public void sampleOccurred(SampleEvent e) {
+            count++;
+        }
+
+        @Override
+        public void sampleStarted(SampleEvent e) {
+        }
+
+        @Override
+        public void sampleStopped(SampleEvent e) {
+        }
+    }
+
+    public static class NoopAssertion extends AbstractTestElement implements Assertion {
+        private static final long serialVersionUID = 240L;
+
+        @Override
+        public AssertionResult getResult(SampleResult response) {
+            return new AssertionResult(getName());
+        }
+    }
+
+    public static class NoopTimer extends AbstractTestElement implements Timer {
+        private static final long serialVersionUID = 240L;
+
+        @Override
+        public long delay() {
+            return 0;
+        }
+    }
+
+    public static class NoopPreProcessor extends AbstractTestElement implements PreProcessor {
+        private static final long serialVersionUID = 240L;
+
+        @Override
+        public void process() {
+        }
+    }
+
+    public static class NoopPostProcessor extends AbstractTestElement implements PostProcessor {
+        private static final long serialVersionUID = 240L;
+
+        @Override
+        public void process() {
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.threads.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jmeter.control.LoopController;
+import org.apache.jmeter.engine.StandardJMeterEngine;
+import org.apache.jmeter.samplers.AbstractSampler;
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleListener;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.testelement.TestPlan;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterThreadFactory;
+import org.apache.jmeter.threads.ThreadGroup;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.collections.ListedHashTree;
+
+/**
+ * Compares the thread modes of {@link JMeterThreadFactory} running a real test plan.
+ * <p>
+ * Runs a {@link ThreadGroup} of the requested number of threads through {@link StandardJMeterEngine},
+ * each looping over a sampler which blocks for the sample time, with a listener counting the samples.
+ * So the figures include the cost of JMeterThread, the controllers, the sample package and the listener
+ * notification, not just of the JVM threads.
+ * Reports the thread start time, the memory used per thread (resident set size where available,
+ * otherwise heap) and the number of samples per second.
+ * <p>
+ * Usage: jmeter.properties mode threads seconds sampleTimeMs, e.g. <code>bin/jmeter.properties virtual 50000 30 100</code>
+ */
+public class ThreadModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 5) {
+            System.out.println("missing parameters:");
+            System.out.println("jmeter.properties mode threads seconds sampleTimeMs");
+            System.out.println("example: bin/jmeter.properties virtual 50000 30 100");
+            return;
+        }
+        JMeterUtils.loadJMeterProperties(args[0]);
+        String mode = args[1];
+        int threads = Integer.parseInt(args[2]);
+        int seconds = Integer.parseInt(args[3]);
+        long sampleTime = Long.parseLong(args[4]);
+        JMeterUtils.setProperty(JMeterThreadFactory.THREAD_MODE, mode);
+
+        LoopController loop = new LoopController();
+        loop.setLoops(-1);
+        loop.setContinueForever(true);
+        ThreadGroup group = new ThreadGroup();
+        group.setName("Thread Group"); // $NON-NLS-1$
+        group.setNumThreads(threads);
+        group.setRampUp(0);
+        group.setSamplerController(loop);
+        BlockingSampler sampler = new BlockingSampler();
+        sampler.setName("Sampler"); // $NON-NLS-1$
+        sampler.setProperty(BlockingSampler.SAMPLE_TIME, sampleTime);
+        ListedHashTree tree = new ListedHashTree();
+        TestPlan plan = new TestPlan("Plan"); // $NON-NLS-1$
+        tree.add(plan);
+        tree.add(plan, group);
+        tree.add(new Object[] { plan, group }, sampler);
+        tree.add(new Object[] { plan, group }, new SampleCounter());
+
+        long memBefore = usedMemory();
+        StandardJMeterEngine engine = new StandardJMeterEngine();
+        engine.configure(tree);
+        long start = System.currentTimeMillis();
+        engine.runTest();
+        while (JMeterContextService.getNumberOfThreads() < threads) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        long startupTime = System.currentTimeMillis() - start;
+        TimeUnit.SECONDS.sleep(1);
+        long memAfter = usedMemory();
+        long countStart = SampleCounter.SAMPLES.get();
+        TimeUnit.SECONDS.sleep(seconds);
+        long count = SampleCounter.SAMPLES.get() - countStart;
+        engine.stopTest(true);
+        while (engine.isActive()) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+
+        double perThread = (double) (memAfter - memBefore) / threads;
+        System.out.println("mode:            " + mode);
+        System.out.println("threads:         " + threads + " started in " + startupTime + " ms");
+        System.out.println("bytes/thread:    " + (long) perThread);
+        System.out.println("threads/GB:      " + (perThread > 0 ? (long) ((1L << 30) / perThread) : -1));
+        System.out.println("samples/sec:     " + (count / seconds));
+        System.out.println("expected/sec:    " + (threads * 1000L / sampleTime));
+        System.exit(0);
+    }
+
+    /**
+     * Sampler which blocks for the sample time, as a sampler waiting for a server would.
+     */
+    public static class BlockingSampler extends AbstractSampler {
+        private static final long serialVersionUID = 1L;
+
+        static final String SAMPLE_TIME = "BlockingSampler.sampleTime"; // $NON-NLS-1$
+
+        @Override
+        public SampleResult sample(Entry e) {
+            SampleResult res = new SampleResult();
+            res.setSampleLabel(getName());
+            res.sampleStart();
+            try {
+                TimeUnit.MILLISECONDS.sleep(getPropertyAsLong(SAMPLE_TIME));
+                res.setSuccessful(true);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                res.setSuccessful(false);
+            }
+            res.sampleEnd();
+            return res;
+        }
+    }
+
+    /**
+     * Listener counting the samples of all threads.
+     */
+    public static class SampleCounter extends AbstractTestElement implements SampleListener {
+        private static final long serialVersionUID = 1L;
+
+        static final AtomicLong SAMPLES = new AtomicLong();
+
+        @Override
+        public void sampleOccurred(SampleEvent e) {
+            SAMPLES.incrementAndGet();
+        }
+
+        @Override
+        public void sampleStarted(SampleEvent e) {
+        }
+
+        @Override
+        public void sampleStopped(SampleEvent e) {
+        }
+    }
+
+    /**
+     * @return the resident set size if it can be read, otherwise the used heap
+     */
+    private static long usedMemory() throws IOException {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader("/proc/self/status")); // $NON-NLS-1$
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) { // $NON-NLS-1$
+                    String kb = line.substring(6).trim().split("\\s+")[0];
+                    return Long.parseLong(kb) * 1024;
+                }
+            }
+        } catch (IOException e) {
+            // not Linux; use heap instead
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
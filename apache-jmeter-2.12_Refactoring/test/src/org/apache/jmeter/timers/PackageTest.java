@@ -19,6 +19,7 @@
 package org.apache.jmeter.timers;
 
 import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.threads.JMeterContext;
 import org.apache.jmeter.threads.JMeterContextService;
 import org.apache.jmeter.threads.TestJMeterContextService;
 import org.apache.jmeter.util.BeanShellInterpreter;
@@ -72,6 +73,22 @@ public class PackageTest extends JMeterTestCase {
         assertEquals(1,timer.calculateCurrentTarget(0)); // Should delay for 1 milli-second
     }
 
+    public void testTimerIntendedStart() throws Exception {
+        ConstantThroughputTimer timer = new ConstantThroughputTimer();
+        timer.setThroughput(6000.0);// 1 per 10 milli-seconds
+        JMeterContext context = JMeterContextService.getContext();
+        long start = System.currentTimeMillis();
+        assertEquals(0, timer.delay());
+        long first = context.getSampleIntendedStartTime();
+        assertTrue(first >= start);
+        Thread.sleep(100); // a slow sample
+        assertEquals(0, timer.delay()); // behind schedule
+        // The schedule does not catch up, unlike the delay
+        assertEquals(first + 10, context.getSampleIntendedStartTime());
+        assertTrue(timer.delay() > 0);
+        assertEquals(first + 20, context.getSampleIntendedStartTime());
+    }
+
     public void testTimerBSH() throws Exception {
         if (!BeanShellInterpreter.isInterpreterPresent()){
             final String msg = "BeanShell jar not present, test ignored";
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.timers;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TestTimerService extends TestCase {
+
+    public TestTimerService(String name) {
+        super(name);
+    }
+
+    public void testSleep() throws Exception {
+        checkDelays(new TimerService(false, 1));
+    }
+
+    public void testWheel() throws Exception {
+        checkDelays(new TimerService(true, 1));
+    }
+
+    public void testWheelWithCoarseTick() throws Exception {
+        // Delays are not rounded to the tick
+        TimerService service = new TimerService(true, 20);
+        long start = System.nanoTime();
+        service.sleep(30);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("elapsed=" + elapsed, elapsed >= 30 && elapsed < 40 + 500);
+    }
+
+    public void testEarlierWaiterWakesTheWheel() throws Exception {
+        // The wheel is parked until the deadline of the first waiter when the second one arrives
+        final TimerService service = new TimerService(true, 1000);
+        Thread first = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    service.sleep(900);
+                } catch (InterruptedException e) {
+                    // test is over
+                }
+            }
+        };
+        first.start();
+        Thread.sleep(50);
+        long start = System.nanoTime();
+        service.sleep(100);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("elapsed=" + elapsed, elapsed >= 100 && elapsed < 600);
+        first.join();
+        assertEquals(2, service.getLateness().getCount());
+    }
+
+    public void testManyWaiters() throws Exception {
+        final TimerService service = new TimerService(true, 1);
+        final int threads = 200;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger early = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            final long delay = 10 + (i % 50) * 2;
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        long start = System.nanoTime();
+                        service.sleep(delay);
+                        if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                            early.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        // ignored, counted as not done
+                        return;
+                    }
+                    done.countDown();
+                }
+            };
+            t.start();
+        }
+        assertTrue("all waiters should be woken", done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        assertEquals(threads, service.getLateness().getCount());
+    }
+
+    public void testInterrupt() throws Exception {
+        final TimerService service = new TimerService(true, 1);
+        Thread.currentThread().interrupt();
+        try {
+            service.sleep(10000);
+            fail("Expected InterruptedException");
+        } catch (InterruptedException expected) {
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+        assertEquals(0, service.getLateness().getCount());
+    }
+
+    public void testLateness() throws Exception {
+        TimerService.Lateness lateness = new TimerService(false, 1).getLateness();
+        for (int i = 1; i <= 100; i++) {
+            lateness.add(i * 1000L); // 1 to 100 microseconds
+        }
+        assertEquals(100, lateness.getCount());
+        assertEquals(50.5, lateness.getMean(), 0.001);
+        assertEquals(100, lateness.getMax());
+        long p99 = lateness.getPercentile(99.0);
+        assertTrue("p99=" + p99, p99 >= 99 && p99 <= 100);
+        assertTrue(lateness.getPercentile(50.0) >= 50);
+        lateness.reset();
+        assertEquals(0, lateness.getCount());
+        assertEquals(0, lateness.getPercentile(99.0));
+    }
+
+    private static void checkDelays(TimerService service) throws Exception {
+        long[] delays = { 0, 1, 5, 25, 60 };
+        for (int i = 0; i < delays.length; i++) {
+            long start = System.nanoTime();
+            service.sleep(delays[i]);
+            long elapsed = System.nanoTime() - start;
+            assertTrue("delay " + delays[i], elapsed >= TimeUnit.MILLISECONDS.toNanos(delays[i]));
+        }
+        assertEquals(delays.length - 1, service.getLateness().getCount());
+    }
+}
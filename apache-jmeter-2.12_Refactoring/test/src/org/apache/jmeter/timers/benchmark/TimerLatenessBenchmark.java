@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.timers.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.jmeter.timers.TimerService;
+
+/**
+ * Measures the lateness of think times when many threads wait at the same time.
+ * <p>
+ * Each thread repeatedly waits for a uniformly distributed delay, as a
+ * UniformRandomTimer would compute, until the duration has elapsed.
+ * <p>
+ * Usage: sleep|wheel threads constantDelayMs randomDelayMs durationSeconds,
+ * e.g. <code>wheel 10000 100 200 20</code>
+ */
+public class TimerLatenessBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 5) {
+            System.out.println("missing parameters:");
+            System.out.println("sleep|wheel threads constantDelayMs randomDelayMs durationSeconds");
+            System.out.println("example: wheel 10000 100 200 20");
+            return;
+        }
+        final TimerService service = new TimerService(TimerService.MODE_WHEEL.equals(args[0]), 1);
+        int threadCount = Integer.parseInt(args[1]);
+        final long constantDelay = Long.parseLong(args[2]);
+        final int randomDelay = Integer.parseInt(args[3]);
+        final long end = System.currentTimeMillis() + Long.parseLong(args[4]) * 1000;
+
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            final Random random = new Random(i);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (System.currentTimeMillis() < end) {
+                            service.sleep(constantDelay + random.nextInt(randomDelay + 1));
+                        }
+                    } catch (InterruptedException e) {
+                        // stop
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "Thread " + i); // $NON-NLS-1$
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+
+        TimerService.Lateness lateness = service.getLateness();
+        System.out.println("mode:            " + args[0] + " with " + threadCount + " threads");
+        System.out.println("delays:          " + lateness.getCount());
+        System.out.println("mean lateness:   " + Math.round(lateness.getMean()) + " us");
+        System.out.println("90% lateness <=  " + lateness.getPercentile(90.0) + " us");
+        System.out.println("99% lateness <=  " + lateness.getPercentile(99.0) + " us");
+        System.out.println("max lateness:    " + lateness.getMax() + " us");
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.visualizers;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.jmeter.junit.JMeterTestCase;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.Calculator;
+import org.apache.jorphan.gui.ObjectTableModel;
+import org.apache.jorphan.reflect.Functor;
+
+public class TestSampleAggregator extends JMeterTestCase {
+
+    private static final String TOTAL = "TOTAL";
+
+    private ObjectTableModel model;
+
+    private SampleAggregator<Calculator> aggregator;
+
+    // Number of samples added to a row off the event thread
+    private final AtomicInteger offEventThread = new AtomicInteger();
+
+    public TestSampleAggregator(String name) {
+        super(name);
+    }
+
+    @Override
+    public void setUp() {
+        model = new ObjectTableModel(new String[] { "label", "count" }, Calculator.class,
+                new Functor[] { new Functor("getLabel"), new Functor("getCount") },
+                new Functor[] { null, null },
+                new Class[] { String.class, Long.class });
+        aggregator = createAggregator(10000);
+        aggregator.clear();
+    }
+
+    private SampleAggregator<Calculator> createAggregator(int maxQueued) {
+        return new SampleAggregator<Calculator>(model, TOTAL, maxQueued) {
+            @Override
+            protected Calculator createRow(String label) {
+                return new Calculator(label);
+            }
+
+            @Override
+            protected void addSample(Calculator row, SampleResult res) {
+                if (!SwingUtilities.isEventDispatchThread()) {
+                    offEventThread.incrementAndGet();
+                }
+                row.addSample(res);
+            }
+        };
+    }
+
+    private static void fold(final SampleAggregator<?> aggregator) throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                aggregator.fold();
+            }
+        });
+    }
+
+    public void testConcurrentAdd() throws Exception {
+        final int producers = 16;
+        final int labels = 5;
+        final int perProducer = 2000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        SampleResult res = SampleResult.createTestSample(1000, 1010);
+                        aggregator.add("label" + i % labels, res);
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        for (int p = 0; p < producers; p++) {
+            threads[p].join();
+        }
+        fold(aggregator);
+
+        assertEquals(labels + 1, model.getRowCount());
+        assertEquals(TOTAL, model.getValueAt(labels, 0));
+        assertEquals(producers * perProducer, aggregator.getRow(TOTAL).getCount());
+        for (int l = 0; l < labels; l++) {
+            Calculator row = aggregator.getRow("label" + l);
+            assertEquals(producers * perProducer / labels, row.getCount());
+            assertEquals(10, row.getMax());
+        }
+        assertEquals(0, offEventThread.get());
+    }
+
+    public void testFullQueueBlocksSampler() throws Exception {
+        final SampleAggregator<Calculator> bounded = createAggregator(10);
+        bounded.clear();
+        // Keep the event thread busy
+        final CountDownLatch busy = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                busy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        busy.await();
+        final AtomicInteger added = new AtomicInteger();
+        Thread sampler = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 105; i++) {
+                    bounded.add("label", SampleResult.createTestSample(1000, 1010));
+                    added.incrementAndGet();
+                }
+            }
+        };
+        sampler.start();
+        sampler.join(500);
+        // The sampler waits for the event thread rather than folding the queue itself
+        assertTrue(sampler.isAlive());
+        assertEquals(10, added.get());
+        assertEquals(0, bounded.getRow(TOTAL).getCount());
+        release.countDown();
+        sampler.join();
+        fold(bounded);
+        assertEquals(105, bounded.getRow(TOTAL).getCount());
+        assertEquals(105, bounded.getRow("label").getCount());
+        assertEquals(0, offEventThread.get());
+    }
+
+    public void testClear() throws Exception {
+        aggregator.add("label", SampleResult.createTestSample(1000, 1010));
+        fold(aggregator);
+        assertEquals(2, model.getRowCount());
+        aggregator.add("label", SampleResult.createTestSample(1000, 1010));
+        aggregator.clear();
+        fold(aggregator);
+        assertEquals(1, model.getRowCount());
+        assertNull(aggregator.getRow("label"));
+        assertEquals(0, aggregator.getRow(TOTAL).getCount());
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.jmeter.visualizers;
 
 import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.StatisticalSampleResult;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -69,6 +70,119 @@ public class TestSamplingStatCalculator {
         Assert.assertEquals(5,ssc.getAvgPageBytes(),0);
     }
 
+    @Test
+    public void testCorrectedTimes() {
+        for (int i = 1; i <= 8; i++) {
+            ssc.addSample(SampleResult.createTestSample(1000 * i, 1000 * i + 10));
+        }
+        Assert.assertFalse(ssc.hasCorrectedTimes());
+        Assert.assertEquals(10, ssc.getCorrectedPercentPoint(0.9).longValue());
+        // The next two samples were held up by a slow response: the users would have waited for it
+        SampleResult slow = SampleResult.createTestSample(9000, 10000);
+        ssc.addSample(slow);
+        SampleResult late = SampleResult.createTestSample(10000, 10010);
+        late.setIntendedStartTime(9100);
+        ssc.addSample(late);
+        Assert.assertTrue(ssc.hasCorrectedTimes());
+        Assert.assertEquals(10, ssc.getCount());
+        Assert.assertEquals(10, ssc.getPercentPoint(0.9).longValue());
+        Assert.assertEquals(910, ssc.getCorrectedPercentPoint(0.9).longValue());
+        Assert.assertEquals(1000, ssc.getCorrectedMax().longValue());
+        Assert.assertEquals((8 * 10 + 1000 + 910) / 10.0, ssc.getCorrectedMean(), 0.001);
+        Assert.assertEquals((9 * 10 + 1000) / 10.0, ssc.getMean(), 0.001);
+        ssc.clear();
+        Assert.assertFalse(ssc.hasCorrectedTimes());
+    }
+
+    @Test
+    public void testRunningSampleCorrectedTimes() {
+        RunningSample rs = new RunningSample("rs", 0);
+        rs.addSample(SampleResult.createTestSample(1000, 1010));
+        Assert.assertFalse(rs.hasCorrectedTimes());
+        Assert.assertEquals(10, rs.getCorrectedAverage());
+        Assert.assertEquals(10, rs.getCorrectedMax());
+        SampleResult late = SampleResult.createTestSample(2000, 2020);
+        late.setIntendedStartTime(1500);
+        rs.addSample(late);
+        Assert.assertTrue(rs.hasCorrectedTimes());
+        Assert.assertEquals(20, rs.getMax());
+        Assert.assertEquals(520, rs.getCorrectedMax());
+        Assert.assertEquals((10 + 520) / 2, rs.getCorrectedAverage());
+        RunningSample total = new RunningSample("total", 0);
+        total.addSample(rs);
+        Assert.assertTrue(total.hasCorrectedTimes());
+        Assert.assertEquals(520, total.getCorrectedMax());
+        rs.clear();
+        Assert.assertFalse(rs.hasCorrectedTimes());
+        Assert.assertEquals(0, rs.getCorrectedMax());
+    }
+
+    // A percentile of a 3 digit histogram is at most 0.1% above the exact one
+    private static void assertPercentile(Number exact, Number fromHistogram) {
+        long value = fromHistogram.longValue();
+        Assert.assertTrue(exact + " vs " + value, value >= exact.longValue() && value <= exact.longValue() * 1.001);
+    }
+
+    @Test
+    public void testStatisticalSamples() {
+        SamplingStatCalculator expected = new SamplingStatCalculator("JUnit");
+        // Two engines each aggregating two intervals
+        StatisticalSampleResult total = null;
+        for (int engine = 0; engine < 2; engine++) {
+            for (int interval = 0; interval < 2; interval++) {
+                SampleResult first = SampleResult.createTestSample(1400000000000L, 1400000000001L);
+                StatisticalSampleResult stats = new StatisticalSampleResult(first, 3);
+                for (int i = 0; i < 500; i++) {
+                    long start = 1400000000000L + 1000L * interval + i;
+                    SampleResult res = SampleResult.createTestSample(start, start + (i * 37 + engine * 11) % 3000);
+                    res.setSuccessful(i % 50 != 0);
+                    res.setResponseCode(i % 100 == 0 ? "500" : "404");
+                    stats.add(res);
+                    expected.addSample(res);
+                }
+                ssc.addSample(stats);
+                if (total == null) {
+                    total = new StatisticalSampleResult(first, 3);
+                }
+                total.add(stats);
+            }
+        }
+        Assert.assertEquals(expected.getCount(), ssc.getCount());
+        Assert.assertEquals(expected.getMean(), ssc.getMean(), 1e-9);
+        Assert.assertEquals(expected.getStandardDeviation(), ssc.getStandardDeviation(), 1e-6);
+        Assert.assertEquals(expected.getMin(), ssc.getMin());
+        Assert.assertEquals(expected.getMax(), ssc.getMax());
+        // The engines count the times to 3 significant digits, the client keeps them exact
+        assertPercentile(expected.getMedian(), ssc.getMedian());
+        assertPercentile(expected.getPercentPoint(0.95), ssc.getPercentPoint(0.95));
+        assertPercentile(expected.getPercentPoint(0.99), ssc.getPercentPoint(0.99));
+        Assert.assertEquals(expected.getErrorCount(), ssc.getErrorCount());
+        // Results aggregated again keep the histogram
+        SamplingStatCalculator merged = new SamplingStatCalculator("JUnit");
+        merged.addSample(total);
+        assertPercentile(expected.getPercentPoint(0.99), merged.getPercentPoint(0.99));
+        Assert.assertEquals(expected.getMax(), merged.getMax());
+        // The summariser sees the times of the samples, not the total
+        RunningSample running = new RunningSample("JUnit", 0);
+        running.addSample(total);
+        Assert.assertEquals(expected.getMin().longValue(), running.getMin());
+        Assert.assertEquals(expected.getMax().longValue(), running.getMax());
+        Assert.assertEquals(expected.getCount(), running.getNumSamples());
+        // and the failures by response code
+        Assert.assertEquals(2, running.getErrorCodeCounts().size());
+        Assert.assertEquals(Long.valueOf(20), running.getErrorCodeCounts().get("500"));
+        Assert.assertEquals(Long.valueOf(20), running.getErrorCodeCounts().get("404"));
+        RunningSample perSample = new RunningSample("JUnit", 0);
+        perSample.addSample(SampleResult.createTestSample(1400000000000L, 1400000000001L));
+        SampleResult failure = SampleResult.createTestSample(1400000000000L, 1400000000001L);
+        failure.setSuccessful(false);
+        failure.setResponseCode("503");
+        perSample.addSample(failure);
+        running.addSample(perSample);
+        Assert.assertEquals(Long.valueOf(1), running.getErrorCodeCounts().get("503"));
+        Assert.assertEquals(Long.valueOf(20), new RunningSample(running).getErrorCodeCounts().get("404"));
+    }
+
 //    @Test
 //    public void testGetLabel() {
 //        fail("Not yet implemented");
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jmeter.visualizers.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jmeter.visualizers.SampleAggregator;
+import org.apache.jmeter.visualizers.SamplingStatCalculator;
+import org.apache.jorphan.gui.ObjectTableModel;
+import org.apache.jorphan.reflect.Functor;
+
+/**
+ * Compares the time taken by the sampling threads to hand samples to an Aggregate Report style table:
+ * the former way, where each sample is added on the event thread with
+ * {@link JMeterUtils#runSafe(Runnable)} and the table refreshed per sample,
+ * and {@link SampleAggregator}, where samples are queued and folded into the table in batches.
+ * <p>
+ * Usage: threads samplesPerThread labels, e.g. <code>64 20000 10</code>
+ */
+public class SampleAggregatorBenchmark {
+
+    private static final String TOTAL = "TOTAL";
+
+    private interface Sink {
+        void add(String label, SampleResult res);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.out.println("missing parameters:");
+            System.out.println("threads samplesPerThread labels");
+            System.out.println("example: 64 20000 10");
+            return;
+        }
+        int threads = Integer.parseInt(args[0]);
+        int perThread = Integer.parseInt(args[1]);
+        int labels = Integer.parseInt(args[2]);
+
+        // warm up both implementations
+        run(false, threads, perThread / 10, labels, false);
+        run(true, threads, perThread / 10, labels, false);
+        run(false, threads, perThread, labels, true);
+        run(true, threads, perThread, labels, true);
+        System.exit(0); // the event thread is not a daemon
+    }
+
+    private static void run(boolean aggregate, int threads, final int perThread, final int labels, boolean print)
+            throws Exception {
+        final ObjectTableModel model = new ObjectTableModel(new String[] { "label", "count" },
+                SamplingStatCalculator.class,
+                new Functor[] { new Functor("getLabel"), new Functor("getCount") },
+                new Functor[] { null, null },
+                new Class[] { String.class, Long.class });
+        final Sink sink;
+        final SampleAggregator<SamplingStatCalculator> aggregator;
+        if (aggregate) {
+            aggregator = new SampleAggregator<SamplingStatCalculator>(model, TOTAL) {
+                @Override
+                protected SamplingStatCalculator createRow(String label) {
+                    return new SamplingStatCalculator(label);
+                }
+
+                @Override
+                protected void addSample(SamplingStatCalculator row, SampleResult res) {
+                    row.addSample(res);
+                }
+            };
+            aggregator.clear();
+            sink = new Sink() {
+                @Override
+                public void add(String label, SampleResult res) {
+                    aggregator.add(label, res);
+                }
+            };
+        } else {
+            aggregator = null;
+            sink = new RunSafeSink(model);
+        }
+
+        final String[] names = new String[labels];
+        for (int i = 0; i < labels; i++) {
+            names[i] = "label" + i;
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            producers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        sink.add(names[i % labels], SampleResult.createTestSample(1000, 1000 + i % 500));
+                    }
+                }
+            };
+            producers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (int t = 0; t < threads; t++) {
+            producers[t].join();
+        }
+        long produced = System.nanoTime();
+        // wait for the table to be up to date
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                if (aggregator != null) {
+                    aggregator.fold();
+                }
+            }
+        });
+        long folded = System.nanoTime();
+        if (print) {
+            long samples = (long) threads * perThread;
+            String name = aggregate ? "aggregator" : "runSafe";
+            System.out.println(String.format("%-24s", name + " samples:") + samples + " from " + threads + " threads");
+            System.out.println(String.format("%-24s", name + " add:") + (produced - begin) / samples + " ns/sample");
+            System.out.println(String.format("%-24s", name + " up to date:") + (folded - begin) / 1000000 + " ms");
+        }
+    }
+
+    /**
+     * The way the visualizers added samples before {@link SampleAggregator}
+     */
+    private static class RunSafeSink implements Sink {
+        private final ObjectTableModel model;
+
+        private final Object lock = new Object();
+
+        private final Map<String, SamplingStatCalculator> tableRows =
+            new ConcurrentHashMap<String, SamplingStatCalculator>();
+
+        RunSafeSink(ObjectTableModel model) {
+            this.model = model;
+            tableRows.put(TOTAL, new SamplingStatCalculator(TOTAL));
+            model.addRow(tableRows.get(TOTAL));
+        }
+
+        @Override
+        public void add(final String sampleLabel, final SampleResult res) {
+            JMeterUtils.runSafe(new Runnable() {
+                @Override
+                public void run() {
+                    SamplingStatCalculator row = null;
+                    synchronized (lock) {
+                        row = tableRows.get(sampleLabel);
+                        if (row == null) {
+                            row = new SamplingStatCalculator(sampleLabel);
+                            tableRows.put(row.getLabel(), row);
+                            model.insertRow(row, model.getRowCount() - 1);
+                        }
+                    }
+                    synchronized (row) {
+                        row.addSample(res);
+                    }
+                    SamplingStatCalculator tot = tableRows.get(TOTAL);
+                    synchronized (tot) {
+                        tot.addSample(res);
+                    }
+                    model.fireTableDataChanged();
+                }
+            });
+        }
+    }
+}
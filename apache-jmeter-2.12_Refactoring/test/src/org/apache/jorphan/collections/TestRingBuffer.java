@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jorphan.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestRingBuffer extends TestCase {
+
+    public TestRingBuffer(String name) {
+        super(name);
+    }
+
+    public void testCapacity() throws Exception {
+        assertEquals(1, new RingBuffer<String>(1).capacity());
+        assertEquals(8, new RingBuffer<String>(5).capacity());
+        assertEquals(16, new RingBuffer<String>(16).capacity());
+        try {
+            new RingBuffer<String>(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testFifo() throws Exception {
+        RingBuffer<Integer> ring = new RingBuffer<Integer>(4);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        // Go round the ring several times
+        int next = 0;
+        for (int turn = 0; turn < 5; turn++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(ring.offer(Integer.valueOf(turn * 4 + i)));
+            }
+            assertFalse("ring should be full", ring.offer(Integer.valueOf(-1)));
+            assertEquals(4, ring.size());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(next++, ring.poll().intValue());
+            }
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    public void testDrainTo() throws Exception {
+        RingBuffer<Integer> ring = new RingBuffer<Integer>(16);
+        for (int i = 0; i < 10; i++) {
+            ring.offer(Integer.valueOf(i));
+        }
+        List<Integer> sink = new ArrayList<Integer>();
+        assertEquals(4, ring.drainTo(sink, 4));
+        assertEquals(6, ring.drainTo(sink, 100));
+        assertEquals(0, ring.drainTo(sink, 100));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, sink.get(i).intValue());
+        }
+    }
+
+    public void testProducers() throws Exception {
+        final RingBuffer<long[]> ring = new RingBuffer<long[]>(64);
+        final int producers = 4;
+        final int perProducer = 20000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        long[] e = new long[] { id, i };
+                        while (!ring.offer(e)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        long[] expected = new long[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            long[] e = ring.poll();
+            if (e == null) {
+                Thread.yield();
+                continue;
+            }
+            // Each producer's elements arrive in order
+            assertEquals(expected[(int) e[0]]++, e[1]);
+            received++;
+        }
+        for (int p = 0; p < producers; p++) {
+            threads[p].join();
+            assertEquals(perProducer, expected[p]);
+        }
+        assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jorphan.math;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestLongHistogram extends TestCase {
+
+    public TestLongHistogram(String name) {
+        super(name);
+    }
+
+    public void testDigits() throws Exception {
+        try {
+            new LongHistogram(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new LongHistogram(6);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testEmpty() throws Exception {
+        LongHistogram h = new LongHistogram(3);
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMin());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getPercentPoint(0.5));
+    }
+
+    public void testSmallValuesAreExact() throws Exception {
+        LongHistogram h = new LongHistogram(3);
+        for (int i = 2000; i >= 0; i--) {
+            h.record(i);
+        }
+        assertEquals(2001, h.getCount());
+        assertEquals(0, h.getMin());
+        assertEquals(2000, h.getMax());
+        assertEquals(1000, h.getPercentPoint(0.5));
+        assertEquals(1800, h.getPercentPoint(0.9));
+        assertEquals(2000, h.getPercentPoint(1.0));
+    }
+
+    public void testRelativeError() throws Exception {
+        for (int digits = 1; digits <= 4; digits++) {
+            LongHistogram h = new LongHistogram(digits);
+            Random random = new Random(digits);
+            long[] values = new long[10000];
+            for (int i = 0; i < values.length; i++) {
+                // log-uniform from 1 to about 10^12
+                values[i] = (long) Math.exp(random.nextDouble() * 27.6);
+                h.record(values[i]);
+            }
+            Arrays.sort(values);
+            double maxError = Math.pow(10, -digits);
+            double[] percents = { 0.01, 0.1, 0.5, 0.9, 0.99, 0.999 };
+            for (int i = 0; i < percents.length; i++) {
+                long exact = values[(int) Math.round(values.length * percents[i]) - 1];
+                long actual = h.getPercentPoint(percents[i]);
+                assertTrue("digits=" + digits + " p=" + percents[i] + " exact=" + exact + " actual=" + actual,
+                        actual >= exact && actual - exact <= exact * maxError);
+            }
+            assertEquals(values[0], h.getMin());
+            assertEquals(values[values.length - 1], h.getMax());
+        }
+    }
+
+    public void testBuckets() throws Exception {
+        LongHistogram h = new LongHistogram(2);
+        h.record(Long.MAX_VALUE);
+        long previous = -1;
+        for (int i = 0; i < h.getIndexCount(); i++) {
+            long low = h.lowestValueAt(i);
+            long high = h.highestValueAt(i);
+            if (i > 0 && h.lowestValueAt(i) <= h.lowestValueAt(i - 1)) {
+                continue; // unused part of the first bucket
+            }
+            assertEquals("gap before index " + i, previous + 1, low);
+            assertTrue(high >= low);
+            previous = high;
+        }
+        assertEquals(Long.MAX_VALUE, previous);
+        assertEquals(1, h.getCount());
+        assertEquals(Long.MAX_VALUE, h.getPercentPoint(0.5));
+    }
+
+    public void testAddAndClear() throws Exception {
+        LongHistogram a = new LongHistogram(3);
+        LongHistogram b = new LongHistogram(3);
+        for (int i = 1; i <= 100; i++) {
+            a.record(i);
+            b.record(i * 1000L, 2);
+        }
+        a.add(b);
+        assertEquals(300, a.getCount());
+        assertEquals(1, a.getMin());
+        assertEquals(100000, a.getMax());
+        assertEquals(100, a.getPercentPoint(1.0 / 3));
+        try {
+            a.add(new LongHistogram(2));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        a.clear();
+        assertEquals(0, a.getCount());
+        assertEquals(0, a.getPercentPoint(0.5));
+        a.record(-5);
+        assertEquals(0, a.getMax());
+    }
+
+    public void testSerialization() throws Exception {
+        LongHistogram h = new LongHistogram(3);
+        for (int i = 1; i <= 100; i++) {
+            h.record(i * 997L, i);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(h);
+        out.close();
+        // Only the used buckets are written
+        assertTrue("size=" + bytes.size(), bytes.size() < 8 * h.getIndexCount() / 4);
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        LongHistogram copy = (LongHistogram) in.readObject();
+        in.close();
+        assertEquals(h.getSignificantDigits(), copy.getSignificantDigits());
+        assertEquals(h.getCount(), copy.getCount());
+        assertEquals(h.getMin(), copy.getMin());
+        assertEquals(h.getMax(), copy.getMax());
+        assertEquals(h.getIndexCount(), copy.getIndexCount());
+        for (int i = 0; i < h.getIndexCount(); i++) {
+            assertEquals(h.getCountAt(i), copy.getCountAt(i));
+        }
+        copy.record(5);
+        assertEquals(h.getCount() + 1, copy.getCount());
+    }
+
+    public void testOversizedStreamRejected() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new LongHistogram(3));
+        out.close();
+        byte[] data = bytes.toByteArray();
+        // The block of the sparse counts: the number of counts, 2048, then the number used, 0
+        byte[] counts = { 0x77, 8, 0, 0, 8, 0, 0, 0, 0, 0 };
+        int at = -1;
+        for (int i = 0; at < 0 && i <= data.length - counts.length; i++) {
+            if (Arrays.equals(counts, Arrays.copyOfRange(data, i, i + counts.length))) {
+                at = i;
+            }
+        }
+        assertTrue(at >= 0);
+        data[at + 2] = 0x7F; // about 2^31 counts
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+        try {
+            in.readObject();
+            fail("Expected InvalidObjectException");
+        } catch (InvalidObjectException expected) {
+        }
+    }
+}
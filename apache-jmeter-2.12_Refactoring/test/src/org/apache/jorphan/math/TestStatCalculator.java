@@ -151,4 +151,101 @@ public class TestStatCalculator extends TestCase {
         assertEquals(12.0, calc.getSum());
         assertEquals(0.5773502691896255, calc.getStandardDeviation());
     }
+
+    public void testAddHistogram() {
+        StatCalculatorLong hist = new StatCalculatorLong(3);
+        LongHistogram values = new LongHistogram(3);
+        double sum = 0;
+        double sumOfSquares = 0;
+        for (long i = 1; i <= 1000; i++) {
+            long value = i * 7 % 1500;
+            calc.addValue(value);
+            values.record(value);
+            sum += value;
+            sumOfSquares += value * value;
+        }
+        hist.addValue(20L);
+        hist.addHistogram(values, sum, sumOfSquares);
+        calc.addValue(20L);
+        assertEquals(calc.getCount(), hist.getCount());
+        assertEquals(calc.getSum(), hist.getSum(), 0.0);
+        assertEquals(calc.getMean(), hist.getMean(), 0.0);
+        assertEquals(calc.getStandardDeviation(), hist.getStandardDeviation(), 1e-9);
+        assertEquals(calc.getMin(), hist.getMin());
+        assertEquals(calc.getMax(), hist.getMax());
+        assertEquals(calc.getPercentPoint(0.95), hist.getPercentPoint(0.95));
+        assertEquals(calc.getPercentPoint(0.99), hist.getPercentPoint(0.99));
+        // Without a histogram of the same precision, the values are added one bucket at a time
+        StatCalculatorLong exact = new StatCalculatorLong();
+        exact.addValue(20L);
+        exact.addHistogram(values, sum, sumOfSquares);
+        assertEquals(calc.getCount(), exact.getCount());
+        assertEquals(calc.getPercentPoint(0.99), exact.getPercentPoint(0.99));
+        assertEquals(calc.getMean(), exact.getMean(), 0.0);
+        hist.addHistogram(new LongHistogram(3), 0, 0);
+        assertEquals(calc.getCount(), hist.getCount());
+    }
+
+    public void testDefaultValueOf() {
+        // As a subclass written before histograms were added
+        StatCalculator<Long> old = new StatCalculator<Long>(Long.valueOf(0L),
+                Long.valueOf(Long.MIN_VALUE), Long.valueOf(Long.MAX_VALUE)) {
+            @Override
+            protected Long divide(Long val, int n) {
+                return Long.valueOf(val.longValue() / n);
+            }
+
+            @Override
+            protected Long divide(Long val, long n) {
+                return Long.valueOf(val.longValue() / n);
+            }
+        };
+        LongHistogram values = new LongHistogram(3);
+        values.record(10);
+        values.record(30);
+        old.addHistogram(values, 40, 1000);
+        assertEquals(2, old.getCount());
+        assertEquals(Long.valueOf(10L), old.getMin());
+        assertEquals(Long.valueOf(30L), old.getMax());
+        assertEquals(Long.valueOf(30L), old.getPercentPoint(0.9));
+    }
+
+    public void testHistogram() {
+        StatCalculatorLong hist = new StatCalculatorLong(3);
+        assertEquals(3, hist.getSignificantDigits());
+        assertEquals(0, calc.getSignificantDigits());
+        for (long i = 1; i <= 1000; i++) {
+            calc.addValue(i);
+            hist.addValue(i);
+        }
+        // Exact below 2048
+        assertEquals(calc.getPercentPoint(0.9), hist.getPercentPoint(0.9));
+        assertEquals(calc.getMedian(), hist.getMedian());
+        assertEquals(calc.getMean(), hist.getMean(), 0.0);
+        assertEquals(calc.getDistribution().size(), hist.getDistribution().size());
+        hist.addValue(123456L);
+        assertEquals(123456L, hist.getMax().longValue());
+        assertEquals(123456L, hist.getPercentPoint(1.0).longValue());
+        long p = hist.getPercentPoint(0.9999).longValue();
+        assertTrue("p=" + p, p >= 123456L - 123 && p <= 123456L);
+
+        StatCalculatorLong copy = new StatCalculatorLong();
+        copy.addAll(hist);
+        assertEquals(1001, copy.getCount());
+        assertEquals(hist.getMedian(), copy.getMedian());
+        // The sums stay exact although the largest value is only kept to 3 digits
+        assertEquals(hist.getSum(), copy.getSum(), 0.0);
+        assertEquals(hist.getStandardDeviation(), copy.getStandardDeviation(), 1e-9);
+        assertEquals(hist.getMax(), copy.getMax());
+        StatCalculatorLong merged = new StatCalculatorLong(3);
+        merged.addValue(5L);
+        merged.addAll(hist);
+        assertEquals(1002, merged.getCount());
+        assertEquals(hist.getSum() + 5, merged.getSum(), 0.0);
+        assertEquals(hist.getPercentPoint(0.9999), merged.getPercentPoint(0.9999));
+        assertEquals(1L, merged.getMin().longValue());
+        hist.clear();
+        assertEquals(0, hist.getCount());
+        assertEquals(0L, hist.getPercentPoint(0.5).longValue());
+    }
 }
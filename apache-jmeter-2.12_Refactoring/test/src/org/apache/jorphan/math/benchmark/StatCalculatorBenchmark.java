@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.apache.jorphan.math.benchmark;
+
+import java.util.Random;
+
+import org.apache.jorphan.math.StatCalculatorLong;
+
+/**
+ * Compares the exact StatCalculator, which keeps every distinct value in a TreeMap,
+ * with the histogram-backed one: time to record a value, time to compute a percentile,
+ * and heap retained by the calculator.
+ * <p>
+ * The values are exponentially distributed response times with the given mean, in milliseconds,
+ * as recorded in a long soak test.
+ * <p>
+ * Usage: values meanMs significantDigits, e.g. <code>5000000 500 3</code>
+ */
+public class StatCalculatorBenchmark {
+
+    private static final int QUERIES = 200;
+
+    // so that the percentile queries are not optimised away
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.out.println("missing parameters:");
+            System.out.println("values meanMs significantDigits");
+            System.out.println("example: 5000000 500 3");
+            return;
+        }
+        int count = Integer.parseInt(args[0]);
+        double mean = Double.parseDouble(args[1]);
+        int digits = Integer.parseInt(args[2]);
+
+        long[] values = new long[count];
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            values[i] = (long) (-Math.log(1 - random.nextDouble()) * mean);
+        }
+
+        // Heap retained by each calculator, measured before anything else is allocated
+        StatCalculatorLong exact = new StatCalculatorLong();
+        StatCalculatorLong histogram = new StatCalculatorLong(digits);
+        long exactHeap = usedHeap();
+        fill(exact, values);
+        exactHeap = usedHeap() - exactHeap;
+        long histogramHeap = usedHeap();
+        fill(histogram, values);
+        histogramHeap = usedHeap() - histogramHeap;
+
+        // warm up both implementations
+        for (int i = 0; i < 3; i++) {
+            run(new StatCalculatorLong(), values, false);
+            run(new StatCalculatorLong(digits), values, false);
+        }
+        run(new StatCalculatorLong(), values, true);
+        run(new StatCalculatorLong(digits), values, true);
+
+        System.out.println("values:               " + count + " with mean " + mean + " ms");
+        System.out.println("distinct values:      " + exact.getDistribution().size());
+        System.out.println("exact heap:           " + exactHeap / 1024 + " KB");
+        System.out.println("histogram heap:       " + histogramHeap / 1024 + " KB (" + digits + " digits)");
+        double[] percents = { 0.5, 0.9, 0.99, 0.999 };
+        for (int i = 0; i < percents.length; i++) {
+            long e = exact.getPercentPoint(percents[i]).longValue();
+            long h = histogram.getPercentPoint(percents[i]).longValue();
+            System.out.println(String.format("%-22s", percents[i] * 100 + "% exact/hist:") + e + " / " + h);
+        }
+        // keep the calculators reachable until the heap has been measured
+        if (exact.getCount() != histogram.getCount()) {
+            throw new IllegalStateException();
+        }
+    }
+
+    private static void fill(StatCalculatorLong calc, long[] values) {
+        for (int i = 0; i < values.length; i++) {
+            calc.addValue(values[i]);
+        }
+    }
+
+    private static void run(StatCalculatorLong calc, long[] values, boolean print) {
+        long start = System.nanoTime();
+        for (int i = 0; i < values.length; i++) {
+            calc.addValue(values[i]);
+        }
+        long recorded = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            sink += calc.getPercentPoint(0.9).longValue();
+        }
+        long queried = System.nanoTime();
+        if (print) {
+            String name = calc.getSignificantDigits() == 0 ? "exact" : "histogram";
+            System.out.println(String.format("%-22s", name + " record:") + (recorded - start) / values.length
+                    + " ns/value");
+            System.out.println(String.format("%-22s", name + " percentile:") + (queried - recorded) / QUERIES
+                    + " ns/query");
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}